@@ -0,0 +1,201 @@
+package com.custom.transaction;
+
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+/**
+ * Compares the cost of {@link CustomTransactionInterceptor} with the stock Spring
+ * {@link TransactionInterceptor} on every path of {@link BookService}.
+ *
+ * <p>Each benchmark runs against a transaction manager that does nothing ({@code noop}), which
+ * isolates the cost of the interception itself, and against the H2 backed
+ * {@link org.springframework.orm.jpa.JpaTransactionManager} of the example application
+ * ({@code jpa}). Run it with {@code ./gradlew jmh}; the GC profiler reports the allocation rate
+ * next to the throughput.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionInterceptorBenchmark {
+
+  @Param({"custom", "stock"})
+  public String interceptor;
+
+  @Param({"noop", "jpa"})
+  public String transactionManager;
+
+  private ConfigurableApplicationContext context;
+
+  private BookService bookService;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    PlatformTransactionManager platformTransactionManager;
+    BookRepository bookRepository;
+    if ("jpa".equals(transactionManager)) {
+      context = new SpringApplicationBuilder(TransactionApplication.class)
+          .web(WebApplicationType.NONE)
+          .logStartupInfo(false)
+          .run("--logging.level.root=WARN");
+      platformTransactionManager = context.getBean(PlatformTransactionManager.class);
+      bookRepository = uniqueIsbnRepository(context.getBean(BookRepository.class));
+    } else {
+      platformTransactionManager = new NoOpTransactionManager();
+      bookRepository = inMemoryRepository();
+    }
+
+    TransactionAttributeSource tas = new AnnotationTransactionAttributeSource();
+    TransactionInterceptor transactionInterceptor = "custom".equals(interceptor)
+        ? new CustomTransactionInterceptor(platformTransactionManager, tas)
+        : new TransactionInterceptor(platformTransactionManager, tas);
+
+    ProxyFactory proxyFactory = new ProxyFactory(new BookService(bookRepository));
+    proxyFactory.setProxyTargetClass(true);
+    proxyFactory.addAdvice(transactionInterceptor);
+    bookService = (BookService) proxyFactory.getProxy();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (context != null) {
+      context.close();
+    }
+  }
+
+  @Benchmark
+  public Object trySuccess() {
+    return bookService.addBookTry(false);
+  }
+
+  @Benchmark
+  public Object tryFailureWithRollback() {
+    return bookService.addBookTry(true);
+  }
+
+  @Benchmark
+  public Object tryFailureWithNoRollbackFor() {
+    return bookService.addBookTryNoRollbackException(true);
+  }
+
+  @Benchmark
+  public void thrownException(Blackhole blackhole) {
+    try {
+      blackhole.consume(bookService.alwaysThrowingException());
+    } catch (RuntimeException ex) {
+      // The stock interceptor rethrows what the method throws
+      blackhole.consume(ex);
+    }
+  }
+
+  @Benchmark
+  public Long plainReturn() {
+    return bookService.addBook(false);
+  }
+
+  /**
+   * Wraps the Spring Data repository so that every saved book gets a unique isbn, otherwise the
+   * natural id constraint would fail every insert after the first one.
+   */
+  private static BookRepository uniqueIsbnRepository(BookRepository delegate) {
+    AtomicLong isbnSequence = new AtomicLong();
+    return repositoryProxy((method, args) -> {
+      if ("save".equals(method.getName()) && args[0] instanceof BookEntity book) {
+        book.setIsbn("bench-" + isbnSequence.incrementAndGet());
+      }
+      try {
+        return method.invoke(delegate, args);
+      } catch (InvocationTargetException ex) {
+        throw ex.getCause();
+      }
+    });
+  }
+
+  /**
+   * A repository that only supports {@code save}, which is the only method that
+   * {@link BookService} calls.
+   */
+  private static BookRepository inMemoryRepository() {
+    AtomicLong idSequence = new AtomicLong();
+    return repositoryProxy((method, args) -> {
+      if ("save".equals(method.getName()) && args[0] instanceof BookEntity book) {
+        book.setId(idSequence.incrementAndGet());
+        return book;
+      }
+      throw new UnsupportedOperationException(method.getName());
+    });
+  }
+
+  private static BookRepository repositoryProxy(RepositoryMethodHandler handler) {
+    return (BookRepository) Proxy.newProxyInstance(BookRepository.class.getClassLoader(),
+        new Class<?>[]{BookRepository.class}, (proxy, method, args) -> {
+          if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+              case "equals" -> proxy == args[0];
+              case "hashCode" -> System.identityHashCode(proxy);
+              default -> "BookRepository benchmark proxy";
+            };
+          }
+          return handler.handle(method, args);
+        });
+  }
+
+  @FunctionalInterface
+  private interface RepositoryMethodHandler {
+
+    Object handle(Method method, Object[] args) throws Throwable;
+  }
+
+  /**
+   * A transaction manager that does nothing, so that only the interception itself is measured.
+   */
+  static class NoOpTransactionManager implements PlatformTransactionManager {
+
+    @Override
+    public TransactionStatus getTransaction(@Nullable TransactionDefinition definition) {
+      return new SimpleTransactionStatus();
+    }
+
+    @Override
+    public void commit(TransactionStatus status) {
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) {
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package com.custom.transaction;
+
+import com.soumakis.control.Try;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Continuations of a returned {@link Try} that run once the transaction it is returned from has
+ * committed, such as cache updates, notifications or event publishing, so that the transaction
+ * does not hold its locks and its connection while they run:
+ * <pre>{@code
+ * return AfterCommit.onSuccess(Try.of(() -> repository.save(book)), cache::put);
+ * }</pre>
+ *
+ * <p>A continuation registered within a transaction that {@link CustomTransactionInterceptor}
+ * begins is handed to its after-commit executor once the commit has succeeded, and only if the
+ * method that began the transaction completed successfully; {@link #onCommit} continuations run
+ * after a committed {@code noRollbackFor} failure as well. Nothing runs when the transaction rolls
+ * back. A continuation registered by a method that joins a transaction waits for the outer one.
+ * A continuation that throws is logged and has no effect on the committed result or on the other
+ * continuations.
+ *
+ * <p>Within a transaction the interceptor did not begin, a continuation runs on the committing
+ * thread once that transaction has committed, and outside of any transaction it runs right away.
+ */
+public final class AfterCommit {
+
+  private static final Log logger = LogFactory.getLog(AfterCommit.class);
+
+  private static final ThreadLocal<Scopes> SCOPES = ThreadLocal.withInitial(Scopes::new);
+
+  private AfterCommit() {
+  }
+
+  /**
+   * Registers a continuation of the value of a successful Try. Nothing is registered for a
+   * Try#Failure.
+   *
+   * @param result   the Try to be returned
+   * @param callback the continuation of its value
+   * @param <T>      the type of the value of the Try
+   * @return the given Try
+   */
+  public static <T> Try<T> onSuccess(Try<T> result, Consumer<? super T> callback) {
+    if (result.isSuccess()) {
+      T value = result.get();
+      register(() -> callback.accept(value), false);
+    }
+    return result;
+  }
+
+  /**
+   * Registers a continuation of a Try that runs whenever the transaction commits, including when
+   * the method that began it returns or throws a failure its {@code noRollbackFor} rules commit.
+   *
+   * @param result   the Try to be returned
+   * @param callback the continuation of the Try
+   * @param <T>      the type of the value of the Try
+   * @return the given Try
+   */
+  public static <T> Try<T> onCommit(Try<T> result, Consumer<? super Try<T>> callback) {
+    register(() -> callback.accept(result), true);
+    return result;
+  }
+
+  private static void register(Runnable callback, boolean onCommittedFailure) {
+    Scopes scopes = SCOPES.get();
+    if (scopes.depth > 0) {
+      scopes.callbacks.add(new Callback(callback, onCommittedFailure));
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          runIsolated(callback);
+        }
+      });
+      return;
+    }
+    runIsolated(callback);
+  }
+
+  /**
+   * Opens the scope of a transaction the interceptor has begun on the current thread, which
+   * collects the continuations registered until it is closed.
+   *
+   * @return the beginning of the enclosing scope, to be passed to {@link #close}
+   */
+  static int open() {
+    Scopes scopes = SCOPES.get();
+    int previousStart = scopes.start;
+    scopes.start = scopes.callbacks.size();
+    scopes.depth++;
+    return previousStart;
+  }
+
+  /**
+   * Whether continuations have been registered in the innermost scope of the current thread.
+   */
+  static boolean hasCallbacks() {
+    Scopes scopes = SCOPES.get();
+    return scopes.callbacks.size() > scopes.start;
+  }
+
+  /**
+   * Hands the continuations of the innermost scope to the executor, once its transaction has
+   * committed. The scope stays open, with no continuations left.
+   *
+   * @param succeeded whether the method that began the transaction completed successfully, as
+   *                  opposed to with a failure that was committed
+   * @param executor  the executor the continuations run on
+   */
+  static void dispatch(boolean succeeded, Executor executor) {
+    Scopes scopes = SCOPES.get();
+    List<Callback> callbacks = scopes.callbacks;
+    dispatch(callbacks.subList(scopes.start, callbacks.size()), succeeded, executor);
+    scopes.truncate();
+  }
+
+  /**
+   * Takes the continuations out of the innermost scope, for a transaction that stays open after
+   * the scope is closed.
+   *
+   * @return the continuations, to be dispatched once the transaction commits, or null if there are
+   * none
+   */
+  @Nullable
+  static Deferred defer() {
+    Scopes scopes = SCOPES.get();
+    if (scopes.callbacks.size() == scopes.start) {
+      return null;
+    }
+    Deferred deferred = new Deferred(
+        List.copyOf(scopes.callbacks.subList(scopes.start, scopes.callbacks.size())));
+    scopes.truncate();
+    return deferred;
+  }
+
+  private static void dispatch(List<Callback> callbacks, boolean succeeded, Executor executor) {
+    for (int i = 0; i < callbacks.size(); i++) {
+      Callback callback = callbacks.get(i);
+      if (succeeded || callback.onCommittedFailure()) {
+        execute(executor, callback.task());
+      }
+    }
+  }
+
+  /**
+   * Closes the innermost scope and drops the continuations it has not dispatched, those of a
+   * transaction that rolled back.
+   *
+   * @param previousStart the value returned by {@link #open}
+   */
+  static void close(int previousStart) {
+    Scopes scopes = SCOPES.get();
+    scopes.truncate();
+    scopes.start = previousStart;
+    scopes.depth--;
+  }
+
+  private static void execute(Executor executor, Runnable callback) {
+    try {
+      executor.execute(() -> runIsolated(callback));
+    } catch (RejectedExecutionException ex) {
+      // The transaction has already committed, so the committing thread is free to run it
+      runIsolated(callback);
+    }
+  }
+
+  private static void runIsolated(Runnable callback) {
+    try {
+      callback.run();
+    } catch (RuntimeException | Error ex) {
+      logger.error("After-commit callback failed", ex);
+    }
+  }
+
+  private record Callback(Runnable task, boolean onCommittedFailure) {
+
+  }
+
+  /**
+   * The continuations of a transaction that outlived its scope.
+   */
+  static final class Deferred {
+
+    private final List<Callback> callbacks;
+
+    private Deferred(List<Callback> callbacks) {
+      this.callbacks = callbacks;
+    }
+
+    /**
+     * Hands the continuations to the executor, once the transaction has committed.
+     *
+     * @param succeeded whether the transaction completed successfully, as opposed to with a
+     *                  failure that was committed
+     * @param executor  the executor the continuations run on
+     */
+    void dispatch(boolean succeeded, Executor executor) {
+      AfterCommit.dispatch(callbacks, succeeded, executor);
+    }
+  }
+
+  /**
+   * The continuations of the nested scopes open on a thread, in the order they were registered.
+   * The continuations of the innermost scope are the ones from {@code start} onwards.
+   */
+  private static final class Scopes {
+
+    private final ArrayList<Callback> callbacks = new ArrayList<>();
+
+    private int start;
+
+    private int depth;
+
+    void truncate() {
+      if (callbacks.size() > start) {
+        callbacks.subList(start, callbacks.size()).clear();
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.custom.transaction;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the number of concurrent invocations of a {@code @Transactional} method, or of every such
+ * method of a class, that {@link CustomTransactionInterceptor} lets in. The limit is checked before
+ * the transaction begins, and an invocation over it is rejected right away instead of waiting for
+ * a pooled connection: a method returning a Try, or a {@code CompletableFuture} of a Try, gets a
+ * Try#Failure with a {@link BulkheadFullException}, and any other method throws it. A slow method
+ * then only ever holds as many connections as its limit, whatever the traffic, and the other
+ * methods keep theirs.
+ *
+ * <p>The limit is either fixed at {@link #maxConcurrentCalls()}, or, when
+ * {@link #targetLatencyMillis()} is set, adapted to the observed latency: every invocation slower
+ * than the target shrinks it by a tenth, down to {@link #minConcurrentCalls()}, and every
+ * invocation within the target that completes while the limit is reached grows it by one, up to
+ * {@link #maxConcurrentCalls()}.
+ *
+ * <p>Methods naming the same {@link #value() bulkhead} share a limit, which the first of them to be
+ * invoked configures. Each method has a bulkhead of its own otherwise. A permit is held from the
+ * call until the method returns, including any retries and the wait of a {@link GroupCommit}
+ * batch, or until the returned {@code CompletableFuture} completes. A method returning a Try of a
+ * {@code Stream} whose transaction begins with the call holds its permit until the stream has been
+ * consumed or closed, since its transaction keeps its connection until then. Methods returning a
+ * {@code Mono} or a {@code Flux} are not limited.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface Bulkhead {
+
+  /**
+   * The name of the bulkhead, shared by the methods that name it. Defaults to the joinpoint
+   * identification of the method.
+   */
+  String value() default "";
+
+  /**
+   * The maximum number of concurrent invocations, and the initial one of an adaptive limit.
+   */
+  int maxConcurrentCalls() default 16;
+
+  /**
+   * The lowest an adaptive limit shrinks to.
+   */
+  int minConcurrentCalls() default 1;
+
+  /**
+   * The latency above which an adaptive limit shrinks, in milliseconds, or zero for a fixed limit.
+   */
+  long targetLatencyMillis() default 0;
+}
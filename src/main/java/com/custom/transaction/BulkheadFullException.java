@@ -0,0 +1,18 @@
+package com.custom.transaction;
+
+import java.io.Serial;
+
+/**
+ * Reports an invocation rejected because its {@link Bulkhead} was full. A rejection is expected
+ * under load, so, like a {@link BusinessFailure}, the exception neither fills in its stack trace
+ * nor records suppressed exceptions, and each bulkhead rejects with the same instance.
+ */
+public class BulkheadFullException extends RuntimeException {
+
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  public BulkheadFullException(String bulkhead) {
+    super("Bulkhead [" + bulkhead + "] is full", null, false, false);
+  }
+}
@@ -0,0 +1,45 @@
+package com.custom.transaction;
+
+import com.soumakis.control.Try;
+import java.io.Serial;
+
+/**
+ * A failure of the business rules, such as a rejected request, that is cheap enough to be the
+ * common outcome of a call. It neither fills in its stack trace nor records suppressed exceptions,
+ * so an instance is immutable and can be preallocated as a constant and shared by every call that
+ * fails for the same reason.
+ *
+ * <p>A Try returning method should return {@link #toTry()} rather than throw the failure. The
+ * interceptor then rolls back, or commits for a {@code noRollbackFor} type, according to the
+ * rollback rules of the method without a throw and catch in between, and the returned Try#Failure
+ * is preallocated as well.
+ */
+public class BusinessFailure extends RuntimeException {
+
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  private transient Try<?> failure;
+
+  public BusinessFailure(String message) {
+    super(message, null, false, false);
+    this.failure = Try.failure(this);
+  }
+
+  /**
+   * Returns the Try#Failure of this failure, the same instance on every call.
+   *
+   * @param <T> the type of the value of the Try
+   * @return the Try#Failure
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Try<T> toTry() {
+    Try<?> result = this.failure;
+    if (result == null) {
+      // Only a deserialized failure gets here
+      result = Try.failure(this);
+      this.failure = result;
+    }
+    return (Try<T>) result;
+  }
+}
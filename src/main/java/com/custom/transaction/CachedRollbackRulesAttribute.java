@@ -0,0 +1,61 @@
+package com.custom.transaction;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serial;
+import java.util.Map;
+import org.springframework.transaction.interceptor.DelegatingTransactionAttribute;
+import org.springframework.transaction.interceptor.RuleBasedTransactionAttribute;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.ConcurrentReferenceHashMap.ReferenceType;
+
+/**
+ * A {@link RuleBasedTransactionAttribute} named after its joinpoint, that remembers its rollback
+ * decision per exception type. The rules of the target only ever look at the type of the
+ * exception, so the decision is computed once per type instead of walking the rules and the class
+ * hierarchy of the exception on every failure.
+ *
+ * <p>The decisions are held through weak references, so that the exception types of a class
+ * loader that is gone, like the one of a redeployed application, do not keep it from being
+ * collected. A decision cleared by the garbage collector is computed again on the next failure of
+ * its type.
+ */
+final class CachedRollbackRulesAttribute extends DelegatingTransactionAttribute {
+
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  private final String name;
+
+  private transient Map<Class<?>, Boolean> rollbackDecisions = newRollbackDecisions();
+
+  CachedRollbackRulesAttribute(RuleBasedTransactionAttribute target, String name) {
+    super(target);
+    this.name = name;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public boolean rollbackOn(Throwable ex) {
+    Boolean rollback = this.rollbackDecisions.get(ex.getClass());
+    if (rollback == null) {
+      rollback = super.rollbackOn(ex);
+      this.rollbackDecisions.put(ex.getClass(), rollback);
+    }
+    return rollback;
+  }
+
+  @Serial
+  private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    ois.defaultReadObject();
+    this.rollbackDecisions = newRollbackDecisions();
+  }
+
+  private static Map<Class<?>, Boolean> newRollbackDecisions() {
+    return new ConcurrentReferenceHashMap<>(8, ReferenceType.WEAK);
+  }
+}
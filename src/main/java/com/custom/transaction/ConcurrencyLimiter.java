@@ -0,0 +1,223 @@
+package com.custom.transaction;
+
+import com.soumakis.control.Try;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
+
+/**
+ * The permits of a {@link Bulkhead}. Acquiring a permit never blocks: it either succeeds or counts
+ * a rejection. An adaptive limit is adjusted as permits are released, without any coordination
+ * between the threads releasing them, so it is only ever approximately where its latency
+ * observations would put it.
+ *
+ * <p>The permit of an invocation of a streaming method is offered to the streaming transaction the
+ * invocation begins, which takes it and holds it until its stream completes the transaction, since
+ * the transaction keeps its connection until then.
+ */
+public final class ConcurrencyLimiter {
+
+  /**
+   * The share of its value an adaptive limit keeps after a slow invocation.
+   */
+  private static final double BACKOFF_RATIO = 0.9;
+
+  /**
+   * The permit offered to the streaming transaction about to begin on the current thread.
+   */
+  private static final ThreadLocal<Permit> OFFERED = new ThreadLocal<>();
+
+  private final String name;
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private final long targetLatencyNanos;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final LongAdder rejected = new LongAdder();
+
+  private final BulkheadFullException rejection;
+
+  private final Try<?> rejectionFailure;
+
+  private volatile int limit;
+
+  private ConcurrencyLimiter(String name, int minLimit, int maxLimit, long targetLatencyNanos) {
+    this.name = name;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.targetLatencyNanos = targetLatencyNanos;
+    this.limit = maxLimit;
+    this.rejection = new BulkheadFullException(name);
+    this.rejectionFailure = Try.failure(this.rejection);
+  }
+
+  /**
+   * Resolves the {@link Bulkhead} of a method, or the one of its target class.
+   *
+   * @param method      the Method being invoked
+   * @param targetClass the target class that we're invoking the method on
+   * @return the bulkhead, or null if the method is not limited
+   */
+  @Nullable
+  static Bulkhead findBulkhead(Method method, @Nullable Class<?> targetClass) {
+    Bulkhead bulkhead = AnnotatedElementUtils.findMergedAnnotation(
+        AopUtils.getMostSpecificMethod(method, targetClass), Bulkhead.class);
+    if (bulkhead == null) {
+      bulkhead = AnnotatedElementUtils.findMergedAnnotation(
+          targetClass != null ? targetClass : method.getDeclaringClass(), Bulkhead.class);
+    }
+    return bulkhead;
+  }
+
+  /**
+   * Creates the limiter of a bulkhead.
+   *
+   * @param name     the name of the bulkhead
+   * @param bulkhead the configuration of the bulkhead
+   * @return the limiter
+   */
+  static ConcurrencyLimiter of(String name, Bulkhead bulkhead) {
+    int maxLimit = Math.max(bulkhead.maxConcurrentCalls(), 1);
+    return new ConcurrencyLimiter(name, Math.min(Math.max(bulkhead.minConcurrentCalls(), 1),
+        maxLimit), maxLimit,
+        TimeUnit.MILLISECONDS.toNanos(Math.max(bulkhead.targetLatencyMillis(), 0)));
+  }
+
+  /**
+   * Takes a permit if the limit allows it, and counts a rejection otherwise.
+   *
+   * @return whether a permit was taken
+   */
+  boolean tryAcquire() {
+    for (; ; ) {
+      int current = inFlight.get();
+      if (current >= limit) {
+        rejected.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns a permit and, for an adaptive limit, adjusts the limit to the latency of the invocation
+   * that held it.
+   *
+   * @param latencyNanos the time the permit was held for
+   */
+  void release(long latencyNanos) {
+    int previousInFlight = inFlight.getAndDecrement();
+    if (targetLatencyNanos == 0) {
+      return;
+    }
+    int current = limit;
+    if (latencyNanos > targetLatencyNanos) {
+      limit = Math.max(minLimit, Math.min(current - 1, (int) (current * BACKOFF_RATIO)));
+    } else if (previousInFlight >= current && current < maxLimit) {
+      limit = current + 1;
+    }
+  }
+
+  /**
+   * Offers the permit of an invocation to the streaming transaction it begins on the current
+   * thread, if any.
+   *
+   * @param permit the permit of the invocation
+   * @return the permit offered by an enclosing invocation, to be passed to {@link #withdraw}
+   */
+  @Nullable
+  static Permit offer(Permit permit) {
+    Permit previous = OFFERED.get();
+    OFFERED.set(permit);
+    return previous;
+  }
+
+  /**
+   * Takes the permit offered to the streaming transaction beginning on the current thread, which
+   * then releases it once it completes. The methods its invocation calls see no offer.
+   *
+   * @return the permit, or null if none was offered
+   */
+  @Nullable
+  static Permit take() {
+    Permit permit = OFFERED.get();
+    if (permit != null) {
+      OFFERED.remove();
+    }
+    return permit;
+  }
+
+  /**
+   * Withdraws the offer of a permit once its invocation has returned.
+   *
+   * @param permit   the permit of the invocation
+   * @param previous the value returned by {@link #offer}
+   * @return whether the permit was not taken, in which case the invocation releases it
+   */
+  static boolean withdraw(Permit permit, @Nullable Permit previous) {
+    boolean kept = OFFERED.get() == permit;
+    if (previous != null) {
+      OFFERED.set(previous);
+    } else {
+      OFFERED.remove();
+    }
+    return kept;
+  }
+
+  /**
+   * The exception invocations are rejected with, the same instance every time.
+   */
+  BulkheadFullException rejection() {
+    return rejection;
+  }
+
+  /**
+   * The Try#Failure of the rejection, the same instance every time.
+   */
+  @SuppressWarnings("unchecked")
+  <T> Try<T> rejectionFailure() {
+    return (Try<T>) rejectionFailure;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  /**
+   * A permit taken by an invocation, released exactly once.
+   *
+   * @param limiter    the limiter the permit was taken from
+   * @param startNanos the time the permit was taken at
+   */
+  record Permit(ConcurrencyLimiter limiter, long startNanos) {
+
+    /**
+     * Returns the permit, for as long as it was held.
+     */
+    void release() {
+      limiter.release(System.nanoTime() - startNanos);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.custom.transaction;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.TransactionUsageException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Manages JDBC savepoints directly on the connection of the current transaction.
+ *
+ * <p>The {@code JpaTransactionManager} only supports savepoints through its {@code JpaDialect},
+ * which is not implemented for Hibernate, although it binds the JDBC connection of every
+ * transaction as a {@link ConnectionHolder}. The savepoints of group commits and of
+ * {@link SavepointBatch} are therefore taken on that connection.
+ */
+final class ConnectionSavepointManager implements SavepointManager {
+
+  private final ConnectionHolder connectionHolder;
+
+  private ConnectionSavepointManager(ConnectionHolder connectionHolder) {
+    this.connectionHolder = connectionHolder;
+  }
+
+  /**
+   * Returns the savepoint manager of the current transaction: the JDBC connection bound to it if
+   * there is one, or the transaction status itself otherwise.
+   *
+   * @param status the status of the current transaction
+   * @return the savepoint manager
+   */
+  static SavepointManager forCurrentTransaction(SavepointManager status) {
+    for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+      if (resource instanceof ConnectionHolder holder) {
+        return new ConnectionSavepointManager(holder);
+      }
+    }
+    return status;
+  }
+
+  @Override
+  public Object createSavepoint() throws TransactionException {
+    try {
+      return connectionHolder.createSavepoint();
+    } catch (SQLException ex) {
+      throw new CannotCreateTransactionException("Could not create JDBC savepoint", ex);
+    }
+  }
+
+  @Override
+  public void rollbackToSavepoint(Object savepoint) throws TransactionException {
+    try {
+      connectionHolder.getConnection().rollback(asSavepoint(savepoint));
+    } catch (SQLException ex) {
+      throw new TransactionSystemException("Could not roll back to JDBC savepoint", ex);
+    }
+  }
+
+  @Override
+  public void releaseSavepoint(Object savepoint) throws TransactionException {
+    try {
+      connectionHolder.getConnection().releaseSavepoint(asSavepoint(savepoint));
+    } catch (SQLException ex) {
+      throw new TransactionSystemException("Could not explicitly release JDBC savepoint", ex);
+    }
+  }
+
+  private static Savepoint asSavepoint(Object savepoint) {
+    if (!(savepoint instanceof Savepoint jdbcSavepoint)) {
+      throw new TransactionUsageException(
+          "Savepoint [" + savepoint + "] is not a JDBC Savepoint");
+    }
+    return jdbcSavepoint;
+  }
+}
@@ -1,205 +1,2103 @@
 package com.custom.transaction;
 
+import com.custom.transaction.InvocationPlan.Dispatch;
+import com.custom.transaction.InvocationPlan.ReturnKind;
+import com.custom.transaction.deadline.Deadline;
+import com.custom.transaction.idempotency.IdempotencyStore;
+import com.custom.transaction.jfr.ConnectionAcquisitionEvent;
+import com.custom.transaction.jfr.RollbackCause;
+import com.custom.transaction.jfr.TransactionBeginEvent;
+import com.custom.transaction.jfr.TransactionCommitEvent;
+import com.custom.transaction.jfr.TransactionEvent;
+import com.custom.transaction.jfr.TransactionRollbackEvent;
+import com.custom.transaction.metrics.JoinpointMetrics;
+import com.custom.transaction.metrics.TransactionMetrics;
+import com.custom.transaction.metrics.TransactionOutcome;
+import com.custom.transaction.routing.ReadOnlyRoutingContext;
+import com.custom.transaction.sharding.Shards;
+import com.custom.transaction.watchdog.TransactionWatchdog;
 import com.soumakis.control.Try;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.lang.reflect.Method;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Consumer;
-import lombok.SneakyThrows;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import org.aopalliance.intercept.MethodInvocation;
+import org.reactivestreams.Publisher;
+import org.springframework.aop.ProxyMethodInvocation;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.lang.Nullable;
+import org.springframework.transaction.IllegalTransactionStateException;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.ReactiveTransaction;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionExecution;
 import org.springframework.transaction.TransactionManager;
 import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionTimedOutException;
 import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
 import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+import org.springframework.transaction.interceptor.DelegatingTransactionAttribute;
+import org.springframework.transaction.interceptor.RuleBasedTransactionAttribute;
 import org.springframework.transaction.interceptor.TransactionAttribute;
 import org.springframework.transaction.interceptor.TransactionAttributeSource;
 import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.reactive.TransactionContextManager;
 import org.springframework.transaction.support.CallbackPreferringPlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * CustomTransactionInterceptor is a Spring AOP MethodInterceptor for managing transactions in
  * methods that return Try monad types. It extends TransactionInterceptor to utilize its transaction
  * management functionalities.
+ *
+ * <p>Everything that can be resolved from the method and target class alone (the transaction
+ * attribute, the transaction manager, the joinpoint identification and the shape of the return
+ * type) is resolved once per method into an {@link InvocationPlan} and cached, so that the hot path
+ * only looks up the plan.
+ *
+ * <p>Methods returning a {@code Mono} or a {@code Flux} are demarcated by a
+ * {@link ReactiveTransactionManager} when one is configured, and their transaction completes when
+ * the returned publisher terminates.
+ *
+ * <p>Methods returning a {@code CompletableFuture<Try<T>>} run their whole transaction on the
+ * asynchronous transaction executor, virtual threads by default.
+ *
+ * <p>The outcome and the latency of every transaction that begins here are recorded against its
+ * joinpoint in the {@link TransactionMetrics} of the interceptor.
+ *
+ * <p>Try returning methods annotated with {@link RetryableTransaction} are re-run, transaction
+ * included, when they fail with a transient exception and own the outer transaction.
+ *
+ * <p>Concurrent invocations of Try returning methods annotated with {@link GroupCommit} share
+ * physical transactions, each under a savepoint of its own.
+ *
+ * <p>When a {@link TransactionWatchdog} is set, every transaction that begins here is registered
+ * with it, and a transaction the watchdog aborts completes as a Try#Failure, or with its
+ * {@link TransactionTimedOutException}, once its method returns.
+ *
+ * <p>Methods known to the {@link TransactionMetadata} computed ahead of time are planned from it,
+ * as long as the transaction attributes come from a plain
+ * {@link AnnotationTransactionAttributeSource}, which the metadata was computed with.
+ *
+ * <p>Invocations of methods annotated with {@link Bulkhead} over the concurrency limit of their
+ * bulkhead are rejected before their transaction begins, as a Try#Failure for Try methods.
+ *
+ * <p>With {@link Shards}, the transaction of a method with a {@link ShardKey} parameter begins on
+ * the shard of the key, and a Try method with a collection of keys commits on every shard they map
+ * to.
+ *
+ * <p>With an {@link IdempotencyStore}, the successful result of a Try method with an
+ * {@link IdempotencyKey} parameter is stored within its transaction, and returned to the later
+ * calls with the same key without invoking the method again.
+ *
+ * <p>Every transaction is bounded by a {@link Deadline}, the earlier of the deadline of its caller
+ * and its own timeout, if either is set. The transaction begins with the remaining time as its
+ * timeout, and once the deadline has passed, the transaction rolls back and completes as a
+ * Try#Failure, or with a {@link TransactionTimedOutException}.
+ *
+ * <p>A transaction that begins with a method returning a {@code Try<Stream<T>>} stays open until
+ * the returned stream has been consumed or closed, so that the stream can be read lazily. Another
+ * transaction that begins on the thread meanwhile, other than from the processing of an element,
+ * fails and rolls the streaming transaction back, and a stream that becomes unreachable is rolled
+ * back from the thread of a cleaner.
+ *
+ * <p>The {@link AfterCommit} continuations registered within a transaction that begins here run on
+ * the after-commit executor once the transaction has committed, and are dropped when it rolls
+ * back.
+ *
+ * <p>While a Java Flight Recorder recording has them enabled, the beginning, the commit and the
+ * rollback of every transaction are recorded as {@link TransactionEvent}s, the rollbacks with their
+ * {@link RollbackCause}.
+ *
+ * <p>With {@link #setLightweightFailures lightweight failures}, unchecked exceptions are rethrown
+ * unwrapped and rollback decisions are cached per exception type.
+ *
+ * <p>On the standard path, a call that returns a plain value or a successful Try allocates nothing
+ * beyond what Spring itself needs to demarcate the transaction (the {@code TransactionInfo} and the
+ * status created by the transaction manager).
  */
-public class CustomTransactionInterceptor extends TransactionInterceptor {
+public class CustomTransactionInterceptor extends TransactionInterceptor implements
+    ApplicationListener<ContextRefreshedEvent> {
+
+  private static final int AFTER_COMMIT_THREADS = 64;
+
+  private static final int AFTER_COMMIT_QUEUE_CAPACITY = 10_000;
+
+  private static final int DEFAULT_STREAM_DETACH_INTERVAL = 1_000;
+
+  private transient Map<Method, InvocationPlan> invocationPlans = new ConcurrentHashMap<>(256);
+
+  private transient Map<MethodClassKey, InvocationPlan> targetClassInvocationPlans =
+      new ConcurrentHashMap<>(16);
+
+  private transient Executor asyncTransactionExecutor = defaultAsyncTransactionExecutor();
+
+  private transient Executor afterCommitExecutor = defaultAfterCommitExecutor();
+
+  private transient int streamDetachInterval = DEFAULT_STREAM_DETACH_INTERVAL;
+
+  private transient TransactionMetrics transactionMetrics = new TransactionMetrics();
+
+  @Nullable
+  private transient TransactionWatchdog transactionWatchdog;
+
+  private transient boolean lightweightFailures;
+
+  @Nullable
+  private transient TransactionMetadata transactionMetadata;
+
+  @Nullable
+  private transient Shards shards;
+
+  @Nullable
+  private transient IdempotencyStore idempotencyStore;
+
+  // Outlives the invocation plans, so that rebuilt plans keep counting the permits already taken
+  private transient Map<String, ConcurrencyLimiter> concurrencyLimiters =
+      new ConcurrentHashMap<>(16);
 
   public CustomTransactionInterceptor(TransactionManager transactionManager,
       TransactionAttributeSource tas) {
     super(transactionManager, tas);
   }
 
+  /**
+   * Sets the executor that runs the transactions of methods returning a
+   * {@code CompletableFuture<Try<T>>}. Each transaction occupies an executor thread for its whole
+   * duration, so an executor of virtual threads is a natural fit. Defaults to a
+   * {@link SimpleAsyncTaskExecutor} that starts a virtual thread per transaction.
+   *
+   * @param asyncTransactionExecutor the executor of asynchronous transactions
+   */
+  public void setAsyncTransactionExecutor(Executor asyncTransactionExecutor) {
+    this.asyncTransactionExecutor = asyncTransactionExecutor;
+  }
+
+  /**
+   * Sets the executor that runs the {@link AfterCommit} continuations of committed transactions.
+   * An executor that rejects a continuation leaves it to the committing thread, after the commit.
+   * Defaults to at most 64 virtual threads with a queue of 10,000 continuations.
+   *
+   * @param afterCommitExecutor the executor of after-commit continuations
+   */
+  public void setAfterCommitExecutor(Executor afterCommitExecutor) {
+    this.afterCommitExecutor = afterCommitExecutor;
+  }
+
+  /**
+   * Sets the number of elements of a streaming transaction after which the entities its
+   * persistence contexts hold are detached, so that they don't grow with the number of rows read.
+   * Defaults to 1,000.
+   *
+   * @param streamDetachInterval the number of elements, or 0 to never detach the entities
+   */
+  public void setStreamDetachInterval(int streamDetachInterval) {
+    this.streamDetachInterval = streamDetachInterval;
+  }
+
+  /**
+   * Sets the metrics the outcome and latency of every transaction are recorded in. Drops the cached
+   * invocation plans, which hold the metrics of their joinpoint.
+   *
+   * @param transactionMetrics the transaction metrics
+   */
+  public void setTransactionMetrics(TransactionMetrics transactionMetrics) {
+    this.transactionMetrics = transactionMetrics;
+    clearInvocationPlans();
+  }
+
+  public TransactionMetrics getTransactionMetrics() {
+    return transactionMetrics;
+  }
+
+  /**
+   * Sets the watchdog every transaction that begins here is registered with, until its
+   * transaction info is cleaned up. None by default.
+   *
+   * @param transactionWatchdog the transaction watchdog, or null for none
+   */
+  public void setTransactionWatchdog(@Nullable TransactionWatchdog transactionWatchdog) {
+    this.transactionWatchdog = transactionWatchdog;
+  }
+
+  @Nullable
+  public TransactionWatchdog getTransactionWatchdog() {
+    return transactionWatchdog;
+  }
+
+  /**
+   * Sets whether failures take the lightweight path. When enabled, an unchecked exception thrown by
+   * a method that does not return a Try is rethrown as is instead of being wrapped into a new
+   * {@link RuntimeException}, and the rollback rules of every transaction remember their decision
+   * per exception type. Combined with {@link BusinessFailure}, a rejected call then completes
+   * without filling in a single stack trace. Disabled by default. Drops the cached invocation
+   * plans, which hold the transaction attributes.
+   *
+   * @param lightweightFailures whether failures take the lightweight path
+   */
+  public void setLightweightFailures(boolean lightweightFailures) {
+    this.lightweightFailures = lightweightFailures;
+    clearInvocationPlans();
+  }
+
+  public boolean isLightweightFailures() {
+    return lightweightFailures;
+  }
+
+  /**
+   * Sets the transaction metadata computed ahead of time. A method it knows is planned from it,
+   * without resolving its transaction attribute or the shape of its return type, unless the
+   * transaction attribute source is another one than a plain
+   * {@link AnnotationTransactionAttributeSource}. None by default. Drops the cached invocation
+   * plans.
+   *
+   * @param transactionMetadata the transaction metadata, or null for none
+   */
+  public void setTransactionMetadata(@Nullable TransactionMetadata transactionMetadata) {
+    this.transactionMetadata = transactionMetadata;
+    clearInvocationPlans();
+  }
+
+  /**
+   * Sets the shards the transactions of methods with a {@link ShardKey} parameter are routed to.
+   * None by default, in which case the shard keys are ignored. Drops the cached invocation plans.
+   *
+   * @param shards the shards, or null for none
+   */
+  public void setShards(@Nullable Shards shards) {
+    this.shards = shards;
+    clearInvocationPlans();
+  }
+
+  @Nullable
+  public Shards getShards() {
+    return shards;
+  }
+
+  /**
+   * Sets the store of the results of the methods with an {@link IdempotencyKey} parameter. None by
+   * default, in which case the idempotency keys are ignored. Drops the cached invocation plans.
+   *
+   * @param idempotencyStore the store, or null for none
+   */
+  public void setIdempotencyStore(@Nullable IdempotencyStore idempotencyStore) {
+    this.idempotencyStore = idempotencyStore;
+    clearInvocationPlans();
+  }
+
+  @Nullable
+  public IdempotencyStore getIdempotencyStore() {
+    return idempotencyStore;
+  }
+
+  /**
+   * Returns the limiter of the {@link Bulkhead} with the given name, once a method it limits has
+   * been invoked.
+   *
+   * @param name the name of the bulkhead, the joinpoint identification of the method by default
+   * @return the limiter, or null if no method it limits has been invoked
+   */
+  @Nullable
+  public ConcurrencyLimiter getConcurrencyLimiter(String name) {
+    return concurrencyLimiters.get(name);
+  }
+
+  private static Executor defaultAsyncTransactionExecutor() {
+    SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("async-tx-");
+    executor.setVirtualThreads(true);
+    return executor;
+  }
+
+  private static Executor defaultAfterCommitExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(AFTER_COMMIT_THREADS,
+        AFTER_COMMIT_THREADS, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(AFTER_COMMIT_QUEUE_CAPACITY),
+        Thread.ofVirtual().name("after-commit-", 0).factory());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   @Override
   @Nullable
   public Object invoke(MethodInvocation invocation) {
     Class<?> targetClass = (invocation.getThis() != null ? AopUtils.getTargetClass(
         invocation.getThis()) : null);
 
-    return invokeWithinTransaction(invocation.getMethod(), targetClass, invocation::proceed);
+    InvocationPlan plan = getInvocationPlan(invocation.getMethod(), targetClass);
+    TransactionalStream.unbindReleased();
+    ConcurrencyLimiter concurrencyLimiter = plan.concurrencyLimiter();
+    if (concurrencyLimiter != null) {
+      return invokeWithinBulkhead(plan, concurrencyLimiter, invocation);
+    }
+    return invokeAdmitted(plan, invocation);
+  }
+
+  /**
+   * Invokes the method if its bulkhead has a permit left, and rejects the invocation right away
+   * otherwise. The permit is held until the method returns or, for an asynchronous transaction,
+   * until the returned future completes. A streaming transaction that begins with the invocation
+   * takes the permit over and holds it until its stream completes it, since it keeps its connection
+   * until then.
+   *
+   * @param plan               the invocation plan of the method being invoked
+   * @param concurrencyLimiter the limiter of the bulkhead of the method
+   * @param invocation         the invocation to proceed with
+   * @return the result of the method invocation, or the rejection
+   */
+  @Nullable
+  private Object invokeWithinBulkhead(InvocationPlan plan, ConcurrencyLimiter concurrencyLimiter,
+      MethodInvocation invocation) {
+    if (!concurrencyLimiter.tryAcquire()) {
+      return switch (plan.returnKind()) {
+        case TRY, STREAM_TRY -> concurrencyLimiter.rejectionFailure();
+        case FUTURE_TRY ->
+            CompletableFuture.completedFuture(concurrencyLimiter.rejectionFailure());
+        default -> throw concurrencyLimiter.rejection();
+      };
+    }
+    long startNanos = System.nanoTime();
+    if (plan.dispatch() == Dispatch.STREAMING) {
+      ConcurrencyLimiter.Permit permit = new ConcurrencyLimiter.Permit(concurrencyLimiter,
+          startNanos);
+      ConcurrencyLimiter.Permit previous = ConcurrencyLimiter.offer(permit);
+      try {
+        return invokeAdmitted(plan, invocation);
+      } finally {
+        if (ConcurrencyLimiter.withdraw(permit, previous)) {
+          permit.release();
+        }
+      }
+    }
+    if (plan.dispatch() != Dispatch.ASYNC) {
+      try {
+        return invokeAdmitted(plan, invocation);
+      } finally {
+        concurrencyLimiter.release(System.nanoTime() - startNanos);
+      }
+    }
+    CompletableFuture<?> result;
+    try {
+      result = (CompletableFuture<?>) invokeAdmitted(plan, invocation);
+    } catch (RuntimeException | Error ex) {
+      concurrencyLimiter.release(System.nanoTime() - startNanos);
+      throw ex;
+    }
+    result.whenComplete((value, ex) ->
+        concurrencyLimiter.release(System.nanoTime() - startNanos));
+    return result;
+  }
+
+  @Nullable
+  private Object invokeAdmitted(InvocationPlan plan, MethodInvocation invocation) {
+    if (plan.idempotency() != null) {
+      return invokeIdempotently(plan, plan.idempotency(), invocation);
+    }
+    ShardRouting shardRouting = plan.shardRouting();
+    if (shardRouting != null) {
+      Object key = shardRouting.key(invocation.getArguments());
+      if (key instanceof Collection<?> keys) {
+        return invokeOnShards(plan, shardRouting, keys, invocation);
+      }
+      if (key != null) {
+        return invokeOnPlan(shardRouting.planFor(key), invocation);
+      }
+    }
+    return invokeOnPlan(plan, invocation);
+  }
+
+  @Nullable
+  private Object invokeOnPlan(InvocationPlan plan, MethodInvocation invocation) {
+    if (plan.groupCommitter() != null && invocation instanceof ProxyMethodInvocation proxyInvocation
+        && !TransactionSynchronizationManager.isActualTransactionActive()) {
+      Deadline deadline = deadlineOf(plan.transactionAttribute());
+      if (deadline != null) {
+        return runWithinDeadline(plan, deadline, transactionAttribute -> plan.groupCommitter()
+            .submit(proxyInvocation, deadline, batch -> runGroupCommit(plan, batch)));
+      }
+      return plan.groupCommitter().submit(proxyInvocation, null,
+          batch -> runGroupCommit(plan, batch));
+    }
+    if (plan.retryPolicy() != null && invocation instanceof ProxyMethodInvocation proxyInvocation
+        && ownsOuterTransaction(plan)) {
+      return invokeWithRetry(plan, proxyInvocation);
+    }
+    return invokeWithinTransaction(plan, invocation::proceed);
+  }
+
+  /**
+   * Invokes a Try method with an {@link IdempotencyKey} parameter, unless a result is stored under
+   * its key. A call made while an execution with the same key is in progress waits for it, and
+   * returns its result if it succeeded, or runs once it failed. A failed execution looks the key up
+   * again, in case the same request has succeeded elsewhere meanwhile, such as on another instance
+   * of the application.
+   *
+   * @param plan        the invocation plan of the method being invoked
+   * @param idempotency the stored results of the method
+   * @param invocation  the invocation to proceed with
+   * @return the stored result, or the result of the method invocation
+   */
+  @Nullable
+  private Object invokeIdempotently(InvocationPlan plan, Idempotency idempotency,
+      MethodInvocation invocation) {
+    String key = idempotency.key(invocation.getArguments());
+    if (key == null || !ownsOuterTransaction(plan)) {
+      return invokeOnPlan(plan, invocation);
+    }
+    while (true) {
+      Try<?> stored = idempotency.find(key);
+      if (stored != null) {
+        return stored;
+      }
+      CompletableFuture<Try<?>> execution = new CompletableFuture<>();
+      CompletableFuture<Try<?>> first = idempotency.begin(key, execution);
+      if (first != null) {
+        Try<?> firstResult = awaitFirstExecution(plan, first);
+        if (firstResult != null) {
+          return firstResult;
+        }
+        continue;
+      }
+      Try<?> result = null;
+      Idempotency.Execution previous = idempotency.enter(key);
+      try {
+        result = (Try<?>) invokeOnPlan(plan, invocation);
+      } finally {
+        Idempotency.restore(previous);
+        idempotency.end(key, execution, result);
+      }
+      if (result != null && result.isFailure()) {
+        stored = idempotency.find(key);
+        if (stored != null) {
+          return stored;
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Waits for an execution with the same key, within the deadline of the caller, if any.
+   *
+   * @return the successful result of the execution, the failure to wait for it, or null if it
+   * failed and the caller is to run
+   */
+  @Nullable
+  private static Try<?> awaitFirstExecution(InvocationPlan plan,
+      CompletableFuture<Try<?>> first) {
+    Deadline deadline = Deadline.current();
+    Try<?> result;
+    try {
+      result = (deadline == null) ? first.get()
+          : first.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException ex) {
+      return Try.failure(new TransactionTimedOutException("Deadline passed while waiting for ["
+          + plan.joinpointIdentification() + "] with the same idempotency key"));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return Try.failure(ex);
+    } catch (ExecutionException ex) {
+      // Never completed exceptionally
+      return null;
+    }
+    return (result != null && result.isSuccess()) ? result : null;
+  }
+
+  /**
+   * Invokes a Try method whose keys map to several shards within a transaction on each of them,
+   * begun in shard order. Once the method has returned a Try that does not roll back, the
+   * transactions commit in reverse order. If a commit fails, the shards not committed yet are
+   * rolled back, and the outcome of every shard is reported by a {@link ShardCommitException}.
+   * Keys that map to a single shard are invoked on it as usual. A successful {@link ShardedResult}
+   * is returned with the outcome of every shard.
+   *
+   * @param plan         the invocation plan of the method being invoked
+   * @param shardRouting the shards of the method
+   * @param keys         the shard keys of the invocation
+   * @param invocation   the invocation to proceed with
+   * @return the result of the method invocation, or the Try#Failure of its commit
+   */
+  @Nullable
+  private Object invokeOnShards(InvocationPlan plan, ShardRouting shardRouting, Collection<?> keys,
+      MethodInvocation invocation) {
+    TreeSet<Integer> shardIndexes = shardRouting.shardsOf(keys);
+    if (shardIndexes.isEmpty()) {
+      return invokeOnPlan(plan, invocation);
+    }
+    if (shardIndexes.size() == 1) {
+      int shard = shardIndexes.first();
+      boolean begins = !TransactionSynchronizationManager.isActualTransactionActive();
+      Object retVal = invokeOnPlan(shardRouting.shardPlans().get(shard), invocation);
+      // The transaction of a successful Try that began here has committed
+      return begins ? withShardOutcomes(retVal,
+          Map.of(shard, ShardCommitException.Outcome.COMMITTED)) : retVal;
+    }
+    if (plan.returnKind() != ReturnKind.TRY) {
+      throw new IllegalStateException("Method [" + plan.joinpointIdentification()
+          + "] must return a Try to run on several shards");
+    }
+    Deadline deadline = deadlineOf(plan.transactionAttribute());
+    if (deadline != null) {
+      return runWithinDeadline(plan, deadline, transactionAttribute -> runOnShards(plan,
+          shardRouting, shardIndexes, transactionAttribute, invocation));
+    }
+    return runOnShards(plan, shardRouting, shardIndexes, plan.transactionAttribute(), invocation);
+  }
+
+  private Try<?> runOnShards(InvocationPlan plan, ShardRouting shardRouting,
+      TreeSet<Integer> shardIndexes, TransactionAttribute transactionAttribute,
+      MethodInvocation invocation) {
+    long startNanos = System.nanoTime();
+    List<Integer> begun = new ArrayList<>(shardIndexes.size());
+    List<TransactionInfo> txInfos = new ArrayList<>(shardIndexes.size());
+    boolean scoped = false;
+    int previousAfterCommitScope = 0;
+    try {
+      for (int shard : shardIndexes) {
+        InvocationPlan shardPlan = shardRouting.shardPlans().get(shard);
+        txInfos.add(createTransactionIfNecessary(shardPlan.platformTransactionManager(),
+            transactionAttribute, shardPlan.joinpointIdentification()));
+        begun.add(shard);
+      }
+      // The continuations wait for every shard, instead of the first one to synchronize with
+      scoped = beginsTransaction(txInfos.get(0));
+      if (scoped) {
+        previousAfterCommitScope = AfterCommit.open();
+      }
+      Try<?> result = (Try<?>) invocation.proceed();
+      evaluateTryFailure(result, transactionAttribute, txInfos.get(0).getTransactionStatus());
+      int rollbackOnly = rollbackOnlyShard(txInfos);
+      if (rollbackOnly >= 0) {
+        rollbackShards(txInfos, txInfos.size(), RollbackCause.TRY_FAILURE, null);
+        recordOutcome(plan, txInfos.get(0), result.isFailure()
+            ? TransactionOutcome.FAILURE_ROLLBACK : TransactionOutcome.ROLLBACK_ONLY, startNanos);
+        if (result.isFailure()) {
+          return result;
+        }
+        return Try.failure(new UnexpectedRollbackException("Transaction on shard ["
+            + begun.get(rollbackOnly) + "] has been marked as rollback-only"));
+      }
+      return commitShards(plan, begun, txInfos, result, startNanos, scoped);
+    } catch (Throwable ex) {
+      rollbackShards(txInfos, txInfos.size(), RollbackCause.EXCEPTION, ex);
+      if (!txInfos.isEmpty()) {
+        recordOutcome(plan, txInfos.get(0), TransactionOutcome.EXCEPTION_ROLLBACK, startNanos);
+      }
+      return Try.failure(ex);
+    } finally {
+      if (scoped) {
+        AfterCommit.close(previousAfterCommitScope);
+      }
+      for (int i = txInfos.size() - 1; i >= 0; i--) {
+        cleanupTransactionInfo(txInfos.get(i));
+      }
+    }
+  }
+
+  /**
+   * Returns the index in the list of the first shard whose transaction is rollback-only, whether
+   * the method marked it or data access code that joined it did.
+   *
+   * @return the index, or -1 if every transaction can commit
+   */
+  private static int rollbackOnlyShard(List<TransactionInfo> txInfos) {
+    for (int i = 0; i < txInfos.size(); i++) {
+      if (txInfos.get(i).getTransactionStatus().isRollbackOnly()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a successful {@link ShardedResult} with the outcomes of the shards it ran on, and any
+   * other result as is.
+   */
+  @Nullable
+  private static Object withShardOutcomes(@Nullable Object retVal,
+      Map<Integer, ShardCommitException.Outcome> outcomes) {
+    if (retVal instanceof Try<?> result && result.isSuccess()
+        && result.get() instanceof ShardedResult<?> shardedResult) {
+      ShardedResult<?> committed = shardedResult.withOutcomes(outcomes);
+      return Try.of(() -> committed);
+    }
+    return retVal;
+  }
+
+  /**
+   * Commits the transactions of a multi-shard invocation in reverse order, so that the first one,
+   * which owns the transaction synchronizations, completes last. A successful
+   * {@link ShardedResult} is returned with every shard reported as committed. The
+   * {@link AfterCommit} continuations of the method are dispatched once every shard has committed,
+   * if the transactions began here, and dropped if any commit fails.
+   */
+  private Try<?> commitShards(InvocationPlan plan, List<Integer> shards,
+      List<TransactionInfo> txInfos, Try<?> result, long startNanos, boolean dispatchAfterCommit) {
+    Map<Integer, ShardCommitException.Outcome> outcomes = new TreeMap<>();
+    for (int i = txInfos.size() - 1; i >= 0; i--) {
+      try {
+        commitTransactionAfterReturning(txInfos.get(i));
+        outcomes.put(shards.get(i), ShardCommitException.Outcome.COMMITTED);
+      } catch (RuntimeException | Error ex) {
+        outcomes.put(shards.get(i), ShardCommitException.Outcome.COMMIT_FAILED);
+        rollbackShards(txInfos, i, RollbackCause.COMMIT_FAILURE, ex);
+        for (int j = 0; j < i; j++) {
+          outcomes.put(shards.get(j), ShardCommitException.Outcome.ROLLED_BACK);
+        }
+        recordOutcome(plan, txInfos.get(0), TransactionOutcome.COMMIT_FAILURE, startNanos);
+        ShardCommitException failure = new ShardCommitException(outcomes, ex);
+        if (result.isFailure()) {
+          result.onFailure(failure::addSuppressed);
+        }
+        return Try.failure(failure);
+      }
+    }
+    recordOutcome(plan, txInfos.get(0), result.isFailure() ? TransactionOutcome.NO_ROLLBACK_COMMIT
+        : TransactionOutcome.COMMIT, startNanos);
+    if (dispatchAfterCommit) {
+      AfterCommit.dispatch(result.isSuccess(), this.afterCommitExecutor);
+    }
+    return (Try<?>) withShardOutcomes(result, outcomes);
+  }
+
+  /**
+   * Rolls back the first {@code count} transactions of a multi-shard invocation, in reverse order,
+   * logging the rollbacks that fail.
+   */
+  private void rollbackShards(List<TransactionInfo> txInfos, int count, RollbackCause cause,
+      @Nullable Throwable failure) {
+    for (int i = count - 1; i >= 0; i--) {
+      TransactionStatus status = txInfos.get(i).getTransactionStatus();
+      if (status == null || status.isCompleted()) {
+        continue;
+      }
+      try {
+        rollback(txInfos.get(i), status, cause, failure);
+      } catch (RuntimeException | Error ex) {
+        logger.error("Rollback of shard transaction [" + txInfos.get(i).getJoinpointIdentification()
+            + "] failed", ex);
+      }
+    }
+  }
+
+  /**
+   * Runs a batch of {@link GroupCommit} invocations in one shared transaction, each under a savepoint
+   * of its own, and completes every member once the shared transaction has committed. If anything
+   * breaks the shared transaction, including its commit, it is rolled back and every member runs
+   * again in a transaction of its own.
+   *
+   * <p>Every member runs with its own deadline bound to the thread, instead of the one of the
+   * leader, and the shared transaction gets the earliest deadline of its members as its timeout. A
+   * member whose deadline has passed before it starts fails without running, and one whose deadline
+   * passes while it runs is rolled back to its savepoint, so the others still commit.
+   *
+   * <p>Every member collects its {@link AfterCommit} continuations in a scope of its own. The
+   * continuations of a member rolled back to its savepoint are dropped with it, and those of the
+   * others are dispatched once the shared transaction has committed.
+   *
+   * @param plan  the invocation plan of the method being invoked
+   * @param batch the invocations of the batch
+   */
+  private void runGroupCommit(InvocationPlan plan, List<GroupCommitter.Member> batch) {
+    if (batch.size() == 1) {
+      runGroupMemberAlone(plan, batch.get(0));
+      return;
+    }
+    long startNanos = System.nanoTime();
+    Deadline earliest = null;
+    for (GroupCommitter.Member member : batch) {
+      if (member.deadline() != null) {
+        earliest = member.deadline().earlierOf(earliest);
+      }
+    }
+    TransactionAttribute transactionAttribute = (earliest != null)
+        ? deadlineTransactionAttribute(plan.transactionAttribute(), earliest)
+        : plan.transactionAttribute();
+    TransactionInfo txInfo = createTransactionIfNecessary(plan.platformTransactionManager(),
+        transactionAttribute, plan.joinpointIdentification());
+    // The deadlines of the members are checked one by one, not the one of the leader
+    Deadline leaderDeadline = Deadline.enter(null);
+    Object[] results = new Object[batch.size()];
+    TransactionOutcome[] outcomes = new TransactionOutcome[batch.size()];
+    AfterCommit.Deferred[] afterCommits = new AfterCommit.Deferred[batch.size()];
+    boolean committed = false;
+    TransactionTimedOutException abortCause = null;
+    try {
+      TransactionStatus status = txInfo.getTransactionStatus();
+      SavepointManager savepointManager = ConnectionSavepointManager.forCurrentTransaction(status);
+      for (int i = 0; i < batch.size(); i++) {
+        GroupCommitter.Member member = batch.get(i);
+        if (!member.start()) {
+          // Its caller stopped waiting when its deadline passed
+          continue;
+        }
+        Deadline deadline = member.deadline();
+        if (deadline != null && deadline.isExpired()) {
+          results[i] = Try.failure(deadlinePassed(plan));
+          continue;
+        }
+        MethodInvocation memberInvocation = member.invocation().invocableClone();
+        Deadline.enter(deadline);
+        int previousAfterCommitScope = AfterCommit.open();
+        try {
+          outcomes[i] = SavepointBatch.runUnderSavepoint(transactionAttribute, status,
+              savepointManager, () -> proceedWithinDeadline(memberInvocation, deadline), results,
+              i);
+          if (outcomes[i] == TransactionOutcome.COMMIT
+              || outcomes[i] == TransactionOutcome.NO_ROLLBACK_COMMIT) {
+            afterCommits[i] = AfterCommit.defer();
+          }
+        } finally {
+          AfterCommit.close(previousAfterCommitScope);
+          Deadline.restore(null);
+        }
+      }
+      abortCause = abortCause(txInfo, status);
+      if (abortCause != null) {
+        // Running the members again would hold a connection just as long
+        rollbackGroupCommit(txInfo, abortCause);
+      } else {
+        commitTransactionAfterReturning(txInfo);
+        committed = true;
+      }
+    } catch (Throwable ex) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Group commit of " + batch.size() + " invocations of ["
+            + plan.joinpointIdentification() + "] failed, running them one by one", ex);
+      }
+      rollbackGroupCommit(txInfo, ex);
+    } finally {
+      cleanupTransactionInfo(txInfo);
+      Deadline.restore(leaderDeadline);
+    }
+
+    if (abortCause != null) {
+      for (int i = 0; i < batch.size(); i++) {
+        if (outcomes[i] != null) {
+          recordOutcome(plan, TransactionOutcome.EXCEPTION_ROLLBACK, startNanos);
+          batch.get(i).result().complete(Try.failure(abortCause));
+        } else {
+          completeUnrunGroupMember(batch.get(i), results[i]);
+        }
+      }
+      return;
+    }
+    if (!committed) {
+      batch.forEach(member -> runGroupMemberAlone(plan, member));
+      return;
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      if (outcomes[i] != null) {
+        recordOutcome(plan, outcomes[i], startNanos);
+        if (afterCommits[i] != null) {
+          afterCommits[i].dispatch(outcomes[i] == TransactionOutcome.COMMIT,
+              this.afterCommitExecutor);
+        }
+        batch.get(i).result().complete(results[i]);
+      } else {
+        completeUnrunGroupMember(batch.get(i), results[i]);
+      }
+    }
+  }
+
+  /**
+   * Completes a member of a group commit that never ran, because its deadline passed before it
+   * started, and does nothing for one whose caller has stopped waiting.
+   */
+  private static void completeUnrunGroupMember(GroupCommitter.Member member,
+      @Nullable Object result) {
+    if (result != null) {
+      member.result().complete(result);
+    }
+  }
+
+  /**
+   * Proceeds with a member of a group commit, and fails it if its deadline passed while it ran, so
+   * that its work is rolled back to its savepoint.
+   */
+  @Nullable
+  private static Object proceedWithinDeadline(MethodInvocation invocation,
+      @Nullable Deadline deadline) throws Throwable {
+    Object retVal = invocation.proceed();
+    if (deadline != null && deadline.isExpired()) {
+      throw new TransactionTimedOutException("Deadline passed while running in a group commit");
+    }
+    return retVal;
+  }
+
+  private void rollbackGroupCommit(TransactionInfo txInfo, Throwable cause) {
+    TransactionStatus status = txInfo.getTransactionStatus();
+    if (status == null || status.isCompleted()) {
+      return;
+    }
+    try {
+      rollback(txInfo, status, RollbackCause.EXCEPTION, cause);
+    } catch (RuntimeException | Error ex) {
+      logger.error("Rollback of group commit failed", ex);
+    }
+  }
+
+  /**
+   * Runs a member of a group commit in a transaction of its own, within its own deadline, unless
+   * its caller has stopped waiting.
+   */
+  private void runGroupMemberAlone(InvocationPlan plan, GroupCommitter.Member member) {
+    if (!member.start()) {
+      return;
+    }
+    MethodInvocation memberInvocation = member.invocation().invocableClone();
+    Deadline previous = Deadline.enter(member.deadline());
+    try {
+      member.result().complete(handleStandardTransaction(plan, memberInvocation::proceed));
+    } finally {
+      Deadline.restore(previous);
+    }
+  }
+
+  /**
+   * The transaction attribute of the innermost transactional method running on the current thread,
+   * whose rollback rules apply to the work it does.
+   *
+   * @return the transaction attribute, or null if no transactional method is running
+   */
+  @Nullable
+  static TransactionAttribute currentTransactionAttribute() {
+    TransactionInfo txInfo = currentTransactionInfo();
+    return (txInfo != null ? txInfo.getTransactionAttribute() : null);
+  }
+
+  /**
+   * Whether the transaction of the method is the outer one, so that a failed attempt can be re-run
+   * as a whole instead of leaving a transaction of the caller to complete.
+   */
+  private static boolean ownsOuterTransaction(InvocationPlan plan) {
+    return !TransactionSynchronizationManager.isActualTransactionActive()
+        || plan.transactionAttribute().getPropagationBehavior()
+        == TransactionDefinition.PROPAGATION_REQUIRES_NEW;
+  }
+
+  /**
+   * Invokes the method within a transaction and re-runs the whole cycle, transaction included, while
+   * it returns a Try#Failure the {@link RetryPolicy} of the method retries. Each attempt proceeds
+   * with a clone of the invocation, so that the rest of the interceptor chain runs again as well.
+   * If the thread is interrupted while backing off, or the deadline of the caller would pass before
+   * the next attempt, the last failure is returned.
+   *
+   * @param plan       the invocation plan of the method being invoked
+   * @param invocation the invocation to clone for every attempt
+   * @return the result of the last attempt
+   */
+  @Nullable
+  private Object invokeWithRetry(InvocationPlan plan, ProxyMethodInvocation invocation) {
+    RetryPolicy retryPolicy = plan.retryPolicy();
+    for (int attempt = 1; ; attempt++) {
+      MethodInvocation attemptInvocation = invocation.invocableClone();
+      Object result = invokeWithinTransaction(plan, attemptInvocation::proceed);
+      if (attempt >= retryPolicy.maxAttempts() || !(result instanceof Try<?> tryResult)
+          || !tryResult.isFailure()) {
+        return result;
+      }
+      Throwable[] failure = new Throwable[1];
+      tryResult.onFailure(ex -> failure[0] = ex);
+      if (!retryPolicy.isRetryable(failure[0])) {
+        return result;
+      }
+      long backoffMillis = retryPolicy.backoffMillis(attempt);
+      Deadline deadline = Deadline.current();
+      if (deadline != null
+          && deadline.remainingNanos() <= TimeUnit.MILLISECONDS.toNanos(backoffMillis)) {
+        return result;
+      }
+      try {
+        Thread.sleep(backoffMillis);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return result;
+      }
+    }
+  }
+
+  /**
+   * Invokes the method within a transaction and manages the transaction based on the return type of
+   * the method. If the method returns a Try type, it will manage the transaction accordingly.
+   * Otherwise, it will manage the transaction as usual.
+   *
+   * @param method      the Method being invoked
+   * @param targetClass the target class that we're invoking the method on
+   * @param invocation  the callback to use for proceeding with the target invocation
+   * @return the result of the method invocation
+   */
+  @Override
+  @Nullable
+  protected Object invokeWithinTransaction(Method method, @Nullable Class<?> targetClass,
+      final InvocationCallback invocation) {
+    return invokeWithinTransaction(getInvocationPlan(method, targetClass), invocation);
+  }
+
+  /**
+   * Demarcates the invocation according to the dispatch of the plan. A transaction that begins here
+   * enters the {@link ReadOnlyRoutingContext} first, so that the connection of a read-only one can
+   * be routed to a replica, and the one of a read-write one nested in it is not; asynchronous
+   * transactions enter it on the executor thread instead. An invocation outside of any transaction
+   * of the interceptor fails if a streaming transaction has been left open on the thread, which it
+   * would otherwise join, and the streaming transaction is rolled back.
+   */
+  @Nullable
+  private Object invokeWithinTransaction(InvocationPlan plan, InvocationCallback invocation) {
+    if (plan.transactionAttribute() != null && plan.dispatch() != Dispatch.ASYNC
+        && plan.dispatch() != Dispatch.REACTIVE && TransactionalStream.isOpen()
+        && currentTransactionInfo() == null) {
+      IllegalTransactionStateException ex =
+          TransactionalStream.rollBackOpen(plan.joinpointIdentification());
+      if (ex != null) {
+        if (plan.returnKind().returnsTry()) {
+          return Try.failure(ex);
+        }
+        throw ex;
+      }
+    }
+    if (plan.transactionAttribute() != null && plan.dispatch() != Dispatch.ASYNC
+        && plan.dispatch() != Dispatch.REACTIVE && ownsOuterTransaction(plan)) {
+      boolean previous = ReadOnlyRoutingContext.enter(plan.routesReadOnly());
+      try {
+        return dispatch(plan, invocation);
+      } finally {
+        ReadOnlyRoutingContext.restore(previous);
+      }
+    }
+    return dispatch(plan, invocation);
+  }
+
+  @Nullable
+  private Object dispatch(InvocationPlan plan, InvocationCallback invocation) {
+    return switch (plan.dispatch()) {
+      case STANDARD -> handleStandardTransaction(plan, invocation);
+      case CALLBACK_PREFERRING -> handleCallbackPreferringTransaction(plan, invocation);
+      case REACTIVE -> handleReactiveTransaction(plan, invocation);
+      case ASYNC -> handleAsyncTransaction(plan, invocation);
+      case STREAMING -> handleStreamingTransaction(plan, invocation);
+    };
+  }
+
+  /**
+   * Drops every cached {@link InvocationPlan} once the application context has been refreshed, so
+   * that transaction attributes and managers are resolved again against the refreshed bean
+   * factory.
+   *
+   * @param event the context refreshed event
+   */
+  @Override
+  public void onApplicationEvent(ContextRefreshedEvent event) {
+    clearInvocationPlans();
+  }
+
+  /**
+   * Drops every cached {@link InvocationPlan}. The next invocation of each method resolves its
+   * plan again.
+   */
+  public void clearInvocationPlans() {
+    this.invocationPlans.clear();
+    this.targetClassInvocationPlans.clear();
+  }
+
+  /**
+   * Returns the cached plan for the given method and target class, building it on first use.
+   *
+   * <p>Plans are keyed by the method alone, which is enough for the common case of a method that is
+   * only ever invoked on one target class, and does not allocate a composite key per call. A method
+   * that is invoked on several target classes keeps its further plans in a second cache keyed by
+   * method and target class.
+   *
+   * @param method      the Method being invoked
+   * @param targetClass the target class that we're invoking the method on
+   * @return the invocation plan
+   */
+  private InvocationPlan getInvocationPlan(Method method, @Nullable Class<?> targetClass) {
+    InvocationPlan plan = this.invocationPlans.get(method);
+    if (plan != null && plan.targetClass() == targetClass) {
+      return plan;
+    }
+    if (plan == null) {
+      plan = this.invocationPlans.computeIfAbsent(method,
+          key -> buildInvocationPlan(method, targetClass));
+      if (plan.targetClass() == targetClass) {
+        return plan;
+      }
+    }
+    return this.targetClassInvocationPlans.computeIfAbsent(new MethodClassKey(method, targetClass),
+        key -> buildInvocationPlan(method, targetClass));
+  }
+
+  /**
+   * Whether the source resolves the transaction attributes the way the
+   * {@link TransactionMetadataAotProcessor} precomputed them, with a default
+   * {@link AnnotationTransactionAttributeSource}. The attributes of any other source, a subclass
+   * included, are resolved from it at runtime, so that the configured source always decides.
+   */
+  private static boolean resolvesAsPrecomputed(@Nullable TransactionAttributeSource source) {
+    return source != null && source.getClass() == AnnotationTransactionAttributeSource.class;
+  }
+
+  private InvocationPlan buildInvocationPlan(Method method, @Nullable Class<?> targetClass) {
+    TransactionMetadata.Joinpoint precomputed = (this.transactionMetadata != null
+        && resolvesAsPrecomputed(getTransactionAttributeSource()))
+        ? this.transactionMetadata.get(method, targetClass) : null;
+    final TransactionAttribute transactionAttribute;
+    final String joinpointIdentification;
+    final ReturnKind returnKind;
+    if (precomputed != null) {
+      transactionAttribute = precomputed.transactionAttribute();
+      joinpointIdentification = precomputed.joinpointIdentification();
+      returnKind = precomputed.returnKind();
+    } else {
+      // Retrieves the source of the transaction attribute which can be via spring configuration,
+      // programmatic transaction management or annotation based
+      // or null if no transaction attribute is found.
+      TransactionAttributeSource transactionAttributeSource = getTransactionAttributeSource();
+      transactionAttribute = (transactionAttributeSource != null)
+          ? transactionAttributeSource.getTransactionAttribute(method, targetClass) : null;
+      // Retrieves the method aop joinpoint identification
+      joinpointIdentification = methodIdentification(method, targetClass, transactionAttribute);
+      returnKind = ReturnKind.of(method);
+    }
+    // Retrieves the transaction manager to be used for managing the transaction
+    final TransactionManager transactionManager = determineTransactionManager(transactionAttribute);
+
+    final JoinpointMetrics metrics = (transactionAttribute != null)
+        ? this.transactionMetrics.forJoinpoint(joinpointIdentification) : null;
+
+    // Only synchronously returned Try failures are retried
+    final RetryPolicy retryPolicy = (transactionAttribute != null && returnKind == ReturnKind.TRY)
+        ? RetryPolicy.of(method, targetClass) : null;
+
+    // Methods returning a Mono or a Flux are demarcated by a ReactiveTransactionManager if one is
+    // configured, otherwise we operate only on PlatformTransactionManager
+    if (transactionAttribute != null && returnKind.isReactive()
+        && transactionManager instanceof ReactiveTransactionManager) {
+      return new InvocationPlan(targetClass,
+          planTransactionAttribute(transactionAttribute, joinpointIdentification),
+          transactionManager, joinpointIdentification, returnKind, Dispatch.REACTIVE, metrics,
+          null, null, null, null, null);
+    }
+    PlatformTransactionManager platformTransactionManager = asPlatformTransactionManager(
+        transactionManager);
+
+    Dispatch dispatch = dispatchOf(transactionAttribute, returnKind, platformTransactionManager);
+
+    final Shards shards = this.shards;
+    final int shardKeyIndex = (shards != null && transactionAttribute != null
+        && !returnKind.isReactive())
+        ? ShardRouting.keyIndex(method, targetClass) : -1;
+
+    // Results are stored by the standard path, within the transaction of the method
+    final IdempotencyStore idempotencyStore = this.idempotencyStore;
+    final Idempotency idempotency = (idempotencyStore != null && transactionAttribute != null
+        && shardKeyIndex < 0
+        && dispatch == Dispatch.STANDARD && returnKind == ReturnKind.TRY)
+        ? Idempotency.of(method, targetClass, idempotencyStore, joinpointIdentification) : null;
+
+    // Only read-write invocations that begin a transaction of their own can share one, and a
+    // shared transaction would span the shards of its members or the result of an idempotent one
+    final GroupCommitter groupCommitter = (transactionAttribute != null && retryPolicy == null
+        && shardKeyIndex < 0 && idempotency == null
+        && !transactionAttribute.isReadOnly()
+        && dispatch == Dispatch.STANDARD && returnKind == ReturnKind.TRY
+        && transactionAttribute.getPropagationBehavior()
+        == TransactionDefinition.PROPAGATION_REQUIRED)
+        ? GroupCommitter.of(method, targetClass) : null;
+
+    // Publishers return before their transaction even begins, so there is nothing to limit
+    final ConcurrencyLimiter concurrencyLimiter = (transactionAttribute != null
+        && !returnKind.isReactive())
+        ? concurrencyLimiter(method, targetClass, joinpointIdentification) : null;
+
+    final TransactionAttribute plannedTransactionAttribute =
+        planTransactionAttribute(transactionAttribute, joinpointIdentification);
+    final ShardRouting shardRouting = (shardKeyIndex >= 0)
+        ? shardRouting(shards, shardKeyIndex, plannedTransactionAttribute, joinpointIdentification,
+        returnKind, metrics, retryPolicy) : null;
+
+    return new InvocationPlan(targetClass, plannedTransactionAttribute,
+        platformTransactionManager, joinpointIdentification, returnKind, dispatch, metrics,
+        retryPolicy, groupCommitter, concurrencyLimiter, shardRouting, idempotency);
+  }
+
+  private static Dispatch dispatchOf(@Nullable TransactionAttribute transactionAttribute,
+      ReturnKind returnKind, @Nullable PlatformTransactionManager platformTransactionManager) {
+    if (transactionAttribute != null && returnKind == ReturnKind.FUTURE_TRY) {
+      return Dispatch.ASYNC;
+    }
+    if (transactionAttribute != null && returnKind == ReturnKind.STREAM_TRY
+        && !(platformTransactionManager instanceof CallbackPreferringPlatformTransactionManager)) {
+      return Dispatch.STREAMING;
+    }
+    if (transactionAttribute == null
+        || !(platformTransactionManager instanceof CallbackPreferringPlatformTransactionManager)) {
+      return Dispatch.STANDARD;
+    }
+    return Dispatch.CALLBACK_PREFERRING;
+  }
+
+  /**
+   * The plans of a method with a {@link ShardKey} parameter on every shard, which only differ from
+   * its own plan by the transaction manager of the shard. The bulkhead of the method is entered
+   * before the shard is chosen, so the plans of the shards have none.
+   */
+  private static ShardRouting shardRouting(Shards shards, int keyIndex,
+      TransactionAttribute transactionAttribute, String joinpointIdentification,
+      ReturnKind returnKind, @Nullable JoinpointMetrics metrics,
+      @Nullable RetryPolicy retryPolicy) {
+    List<InvocationPlan> shardPlans = new ArrayList<>(shards.size());
+    for (int i = 0; i < shards.size(); i++) {
+      PlatformTransactionManager shardTransactionManager = shards.getTransactionManager(i);
+      shardPlans.add(new InvocationPlan(null, transactionAttribute, shardTransactionManager,
+          joinpointIdentification, returnKind,
+          dispatchOf(transactionAttribute, returnKind, shardTransactionManager), metrics,
+          retryPolicy, null, null, null, null));
+    }
+    return new ShardRouting(keyIndex, shards, List.copyOf(shardPlans));
+  }
+
+  /**
+   * The limiter of the {@link Bulkhead} of the method, created by the first method that names the
+   * bulkhead.
+   */
+  @Nullable
+  private ConcurrencyLimiter concurrencyLimiter(Method method, @Nullable Class<?> targetClass,
+      String joinpointIdentification) {
+    Bulkhead bulkhead = ConcurrencyLimiter.findBulkhead(method, targetClass);
+    if (bulkhead == null) {
+      return null;
+    }
+    String name = bulkhead.value().isEmpty() ? joinpointIdentification : bulkhead.value();
+    return this.concurrencyLimiters.computeIfAbsent(name,
+        key -> ConcurrencyLimiter.of(key, bulkhead));
+  }
+
+  /**
+   * The transaction attribute the plan demarcates with. With lightweight failures, rule based
+   * attributes cache their rollback decisions as well.
+   */
+  @Nullable
+  private TransactionAttribute planTransactionAttribute(
+      @Nullable TransactionAttribute transactionAttribute, String joinpointIdentification) {
+    if (this.lightweightFailures
+        && transactionAttribute instanceof RuleBasedTransactionAttribute ruleBasedAttribute) {
+      String name = ruleBasedAttribute.getName();
+      return new CachedRollbackRulesAttribute(ruleBasedAttribute,
+          name != null ? name : joinpointIdentification);
+    }
+    return namedTransactionAttribute(transactionAttribute, joinpointIdentification);
+  }
+
+  /**
+   * Names the transaction attribute after the joinpoint once, instead of letting
+   * {@code createTransactionIfNecessary} wrap it into a new {@link DelegatingTransactionAttribute}
+   * on every call.
+   */
+  @Nullable
+  private static TransactionAttribute namedTransactionAttribute(
+      @Nullable TransactionAttribute transactionAttribute, String joinpointIdentification) {
+    if (transactionAttribute == null || transactionAttribute.getName() != null) {
+      return transactionAttribute;
+    }
+    return new DelegatingTransactionAttribute(transactionAttribute) {
+      @Override
+      public String getName() {
+        return joinpointIdentification;
+      }
+    };
+  }
+
+  /**
+   * Handles a standard transaction by creating a transaction if necessary, proceeding with the
+   * method invocation, evaluating the transaction, and cleaning up the transaction info.
+   *
+   * @param plan       the invocation plan of the method being invoked
+   * @param invocation the callback to use for proceeding with the target invocation
+   * @return the result of the method invocation
+   */
+  private Object handleStandardTransaction(InvocationPlan plan, InvocationCallback invocation) {
+    Deadline deadline = deadlineOf(plan.transactionAttribute());
+    if (deadline != null) {
+      return runWithinDeadline(plan, deadline,
+          transactionAttribute -> runStandardTransaction(plan, transactionAttribute, invocation));
+    }
+    return runStandardTransaction(plan, plan.transactionAttribute(), invocation);
+  }
+
+  private Object runStandardTransaction(InvocationPlan plan,
+      @Nullable TransactionAttribute transactionAttribute, InvocationCallback invocation) {
+    long startNanos = System.nanoTime();
+    TransactionInfo txInfo = createTransactionIfNecessary(plan.platformTransactionManager(),
+        transactionAttribute, plan.joinpointIdentification());
+    boolean begun = beginsTransaction(txInfo);
+    int previousAfterCommitScope = begun ? AfterCommit.open() : 0;
+
+    try {
+      Object retVal = invocation.proceedWithInvocation();
+      return processTransactionResult(plan, txInfo, retVal, startNanos);
+    } catch (Throwable ex) {
+      return handleTransactionException(plan, ex, txInfo, startNanos, begun);
+    } finally {
+      if (begun) {
+        AfterCommit.close(previousAfterCommitScope);
+      }
+      cleanupTransactionInfo(txInfo);
+    }
   }
 
   /**
-   * Invokes the method within a transaction and manages the transaction based on the return type of
-   * the method. If the method returns a Try type, it will manage the transaction accordingly.
-   * Otherwise, it will manage the transaction as usual.
+   * Handles a method returning a {@code Try<Stream<T>>}. When the transaction begins with the
+   * invocation and the method returns a stream, the transaction is neither committed nor rolled
+   * back on return. It stays bound to the thread, though no longer as the current transaction of
+   * the interceptor, until the returned stream has been consumed or closed. Otherwise the
+   * transaction completes as a standard one.
    *
-   * @param method      the Method being invoked
-   * @param targetClass the target class that we're invoking the method on
-   * @param invocation  the callback to use for proceeding with the target invocation
-   * @return the result of the method invocation
+   * @param plan       the invocation plan of the method being invoked
+   * @param invocation the callback to use for proceeding with the target invocation
+   * @return the Try of the stream that completes the transaction
    */
-  @Override
-  @Nullable
-  protected Object invokeWithinTransaction(Method method, @Nullable Class<?> targetClass,
-      final InvocationCallback invocation) {
-    // Retrieves the source of the transaction attribute which can be via spring configuration,
-    // programmatic transaction management or annotation based
-    // or null if no transaction attribute is found.
-    TransactionAttributeSource transactionAttributeSource = getTransactionAttributeSource();
-    final TransactionAttribute transactionAttribute = (transactionAttributeSource != null)
-        ? transactionAttributeSource.getTransactionAttribute(method, targetClass) : null;
-    // Retrieves the transaction manager to be used for managing the transaction
-    final TransactionManager transactionManager = determineTransactionManager(transactionAttribute);
+  private Object handleStreamingTransaction(InvocationPlan plan, InvocationCallback invocation) {
+    Deadline deadline = deadlineOf(plan.transactionAttribute());
+    if (deadline != null) {
+      return runWithinDeadline(plan, deadline,
+          transactionAttribute -> runStreamingTransaction(plan, transactionAttribute, invocation));
+    }
+    return runStreamingTransaction(plan, plan.transactionAttribute(), invocation);
+  }
 
-    // Typically we operate only on PlatformTransactionManager
-    PlatformTransactionManager platformTransactionManager = asPlatformTransactionManager(
-        transactionManager);
+  private Object runStreamingTransaction(InvocationPlan plan,
+      @Nullable TransactionAttribute transactionAttribute, InvocationCallback invocation) {
+    long startNanos = System.nanoTime();
+    TransactionInfo txInfo = createTransactionIfNecessary(plan.platformTransactionManager(),
+        transactionAttribute, plan.joinpointIdentification());
+    boolean begun = beginsTransaction(txInfo);
+    int previousAfterCommitScope = begun ? AfterCommit.open() : 0;
+    // The permit of the bulkhead of the method, if any, is held until the stream completes
+    ConcurrencyLimiter.Permit permit = ConcurrencyLimiter.take();
+    boolean deferred = false;
 
-    // Retrieves the method aop joinpoint identification
-    final String joinpointIdentification = methodIdentification(method, targetClass,
-        transactionAttribute);
+    try {
+      Object retVal = invocation.proceedWithInvocation();
+      if (begun && retVal instanceof Try<?> result && result.isSuccess()
+          && result.get() instanceof Stream<?> stream) {
+        AfterCommit.Deferred afterCommit = AfterCommit.defer();
+        Stream<?> transactionalStream = TransactionalStream.of(stream, this.streamDetachInterval,
+            (ending, failure) -> {
+              try {
+                completeStreamingTransaction(plan, txInfo, startNanos, afterCommit, ending,
+                    failure);
+              } finally {
+                if (permit != null) {
+                  permit.release();
+                }
+              }
+            });
+        deferred = true;
+        return Try.of(() -> transactionalStream);
+      }
+      return processTransactionResult(plan, txInfo, retVal, startNanos);
+    } catch (Throwable ex) {
+      return handleTransactionException(plan, ex, txInfo, startNanos, begun);
+    } finally {
+      if (begun) {
+        AfterCommit.close(previousAfterCommitScope);
+      }
+      if (deferred) {
+        // The watchdog keeps tracking the transaction until the stream completes it
+        super.cleanupTransactionInfo(txInfo);
+      } else {
+        cleanupTransactionInfo(txInfo);
+        if (permit != null) {
+          permit.release();
+        }
+      }
+    }
+  }
 
-    if (transactionAttribute == null
-        || !(platformTransactionManager instanceof CallbackPreferringPlatformTransactionManager)) {
-      return handleStandardTransaction(method, platformTransactionManager, transactionAttribute,
-          joinpointIdentification, invocation);
-    } else {
-      return handleCallbackPreferringTransaction(
-          method,
-          (CallbackPreferringPlatformTransactionManager) platformTransactionManager,
-          transactionAttribute, joinpointIdentification, invocation);
+  /**
+   * Completes a streaming transaction once its stream has been consumed or closed, on the thread
+   * the transaction began on. A transaction aborted because another one is about to begin on the
+   * thread rolls back whatever its rollback rules, and one whose stream has been abandoned has been
+   * rolled back already, on the thread of a cleaner, so only its outcome is recorded.
+   *
+   * @param plan        the invocation plan of the method that returned the stream
+   * @param txInfo      the transaction info
+   * @param startNanos  the time the transaction began at
+   * @param afterCommit the {@link AfterCommit} continuations registered by the method, if any
+   * @param ending      how the transaction ends
+   * @param failure     the exception consuming the stream failed with, or the one the transaction
+   *                    is aborted with, or null if there is none
+   */
+  private void completeStreamingTransaction(InvocationPlan plan, TransactionInfo txInfo,
+      long startNanos, @Nullable AfterCommit.Deferred afterCommit,
+      TransactionalStream.Ending ending, @Nullable Throwable failure) {
+    TransactionStatus status = txInfo.getTransactionStatus();
+    try {
+      if (ending != TransactionalStream.Ending.CONSUMED) {
+        try {
+          if (ending == TransactionalStream.Ending.ABORTED) {
+            rollback(txInfo, status, RollbackCause.EXCEPTION, failure);
+          }
+        } finally {
+          recordOutcome(plan, TransactionOutcome.EXCEPTION_ROLLBACK, startNanos);
+        }
+        return;
+      }
+      if (failure != null) {
+        TransactionOutcome outcome = txInfo.getTransactionAttribute().rollbackOn(failure)
+            ? TransactionOutcome.EXCEPTION_ROLLBACK : TransactionOutcome.NO_ROLLBACK_COMMIT;
+        boolean commits = outcome == TransactionOutcome.NO_ROLLBACK_COMMIT
+            && !status.isRollbackOnly();
+        try {
+          completeTransactionAfterThrowing(txInfo, failure);
+        } finally {
+          recordOutcome(plan, outcome, startNanos);
+        }
+        if (commits && afterCommit != null) {
+          afterCommit.dispatch(false, this.afterCommitExecutor);
+        }
+        return;
+      }
+      TransactionTimedOutException abortCause = abortCause(txInfo, status);
+      boolean commits = !status.isRollbackOnly();
+      TransactionOutcome outcome = (abortCause != null) ? TransactionOutcome.EXCEPTION_ROLLBACK
+          : completionOutcome(false, status);
+      try {
+        commitTransactionAfterReturning(txInfo);
+      } catch (RuntimeException | Error ex) {
+        recordOutcome(plan, TransactionOutcome.COMMIT_FAILURE, startNanos);
+        throw ex;
+      }
+      recordOutcome(plan, outcome, startNanos);
+      if (abortCause != null) {
+        throw abortCause;
+      }
+      if (commits && afterCommit != null) {
+        afterCommit.dispatch(true, this.afterCommitExecutor);
+      }
+    } finally {
+      TransactionWatchdog watchdog = this.transactionWatchdog;
+      if (watchdog != null) {
+        watchdog.unregister(txInfo);
+      }
     }
   }
 
   /**
-   * Handles a standard transaction by creating a transaction if necessary, proceeding with the
-   * method invocation, evaluating the transaction, and cleaning up the transaction info.
+   * The deadline of a transaction about to begin: the earlier of the deadline bound to the thread
+   * and the timeout of the transaction attribute.
    *
-   * @param method                     the method being invoked
-   * @param platformTransactionManager the transaction manager
-   * @param transactionAttribute       the transaction attribute
-   * @param joinpointIdentification    the identification of the joinpoint
-   * @param invocation                 the callback to use for proceeding with the target
-   *                                   invocation
-   * @return the result of the method invocation
+   * @param transactionAttribute the transaction attribute, or null if no transaction is demarcated
+   * @return the deadline, or null if the transaction has none
    */
-  private Object handleStandardTransaction(
-      Method method,
-      PlatformTransactionManager platformTransactionManager,
-      TransactionAttribute transactionAttribute,
-      String joinpointIdentification, InvocationCallback invocation) {
-    TransactionInfo txInfo = createTransactionIfNecessary(platformTransactionManager,
-        transactionAttribute, joinpointIdentification);
-    AtomicReference<Object> retVal = new AtomicReference<>();
+  @Nullable
+  private static Deadline deadlineOf(@Nullable TransactionAttribute transactionAttribute) {
+    if (transactionAttribute == null) {
+      return null;
+    }
+    Deadline inherited = Deadline.current();
+    int timeout = transactionAttribute.getTimeout();
+    if (timeout == TransactionDefinition.TIMEOUT_DEFAULT) {
+      return inherited;
+    }
+    return Deadline.afterNanos(TimeUnit.SECONDS.toNanos(timeout)).earlierOf(inherited);
+  }
 
+  /**
+   * Runs a transaction with its deadline bound to the thread, so that nested calls inherit it, and
+   * with the remaining time as its timeout. A deadline that has already passed fails the invocation
+   * without beginning the transaction.
+   *
+   * @param plan        the invocation plan of the method being invoked
+   * @param deadline    the deadline of the transaction
+   * @param transaction runs the transaction with the given transaction attribute
+   * @return the result of the method invocation
+   */
+  private Object runWithinDeadline(InvocationPlan plan, Deadline deadline,
+      Function<TransactionAttribute, Object> transaction) {
+    if (deadline.isExpired()) {
+      TransactionTimedOutException ex = deadlinePassed(plan);
+      if (plan.returnKind().returnsTry()) {
+        return Try.failure(ex);
+      }
+      throw ex;
+    }
+    Deadline previous = Deadline.enter(deadline);
     try {
-      retVal.set(invocation.proceedWithInvocation());
-      return processTransactionResult(transactionAttribute, txInfo, retVal);
-    } catch (Throwable ex) {
-      return handleTransactionException(method, ex, txInfo);
+      return transaction.apply(deadlineTransactionAttribute(plan.transactionAttribute(), deadline));
     } finally {
-      cleanupTransactionInfo(txInfo);
+      Deadline.restore(previous);
+    }
+  }
+
+  private static TransactionTimedOutException deadlinePassed(InvocationPlan plan) {
+    return new TransactionTimedOutException(
+        "Deadline passed before transaction [" + plan.joinpointIdentification() + "] began");
+  }
+
+  /**
+   * The transaction attribute with the time left until the deadline as its timeout, unless its own
+   * timeout is already the shorter one.
+   */
+  private static TransactionAttribute deadlineTransactionAttribute(
+      TransactionAttribute transactionAttribute, Deadline deadline) {
+    int remainingSeconds = Math.max(deadline.remainingSeconds(), 1);
+    int timeout = transactionAttribute.getTimeout();
+    if (timeout != TransactionDefinition.TIMEOUT_DEFAULT && timeout <= remainingSeconds) {
+      return transactionAttribute;
     }
+    return new DelegatingTransactionAttribute(transactionAttribute) {
+      @Override
+      public int getTimeout() {
+        return remainingSeconds;
+      }
+    };
   }
 
-  private Try<Object> handleTransactionException(Method method, Throwable ex,
-      TransactionInfo txInfo) {
-    rollback(txInfo,
-        ignored -> super.completeTransactionAfterThrowing(txInfo, ex));
-    if (method.getReturnType().isAssignableFrom(Try.class)) {
+  /**
+   * Completes the transaction after the method threw, and returns the exception as a Try#Failure
+   * for Try methods or rethrows it otherwise.
+   *
+   * @param plan              the invocation plan of the method being invoked
+   * @param ex                the exception the method threw
+   * @param txInfo            the transaction info
+   * @param startNanos        the time the transaction began at
+   * @param afterCommitScoped whether an {@link AfterCommit} scope was opened for the transaction
+   * @return the Try#Failure of the exception
+   */
+  private Try<Object> handleTransactionException(InvocationPlan plan, Throwable ex,
+      TransactionInfo txInfo, long startNanos, boolean afterCommitScoped) {
+    TransactionStatus status = txInfo.getTransactionStatus();
+    if (status != null) {
+      // A transaction whose commit has already failed was recorded as a commit failure, and one
+      // that was joined is recorded by the method that began it
+      TransactionOutcome outcome = (status.isCompleted() || !status.isNewTransaction()) ? null
+          : txInfo.getTransactionAttribute().rollbackOn(ex) ? TransactionOutcome.EXCEPTION_ROLLBACK
+              : TransactionOutcome.NO_ROLLBACK_COMMIT;
+      boolean afterCommit = afterCommitScoped && outcome == TransactionOutcome.NO_ROLLBACK_COMMIT
+          && hasAfterCommitCallbacks(status);
+      try {
+        completeTransactionAfterThrowing(txInfo, ex);
+      } finally {
+        if (outcome != null) {
+          recordOutcome(plan, outcome, startNanos);
+        }
+      }
+      if (afterCommit) {
+        AfterCommit.dispatch(false, this.afterCommitExecutor);
+      }
+    }
+    if (plan.returnKind().returnsTry()) {
       return Try.failure(ex);
     }
+    if (this.lightweightFailures) {
+      if (ex instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (ex instanceof Error error) {
+        throw error;
+      }
+    }
     throw new RuntimeException(ex);
   }
 
-  private Object processTransactionResult(TransactionAttribute transactionAttribute,
-      TransactionInfo txInfo,
-      AtomicReference<Object> retVal) {
-    if (transactionAttribute != null) {
-      return evaluateTransaction(txInfo, retVal, transactionAttribute);
+  private Object processTransactionResult(InvocationPlan plan, TransactionInfo txInfo,
+      @Nullable Object retVal, long startNanos) {
+    if (plan.transactionAttribute() != null) {
+      return evaluateTransaction(plan, txInfo, retVal, startNanos);
     }
     // It means that no transaction is demarcated.
     return retVal;
   }
 
+  private static void recordOutcome(InvocationPlan plan, TransactionOutcome outcome,
+      long startNanos) {
+    JoinpointMetrics metrics = plan.metrics();
+    if (metrics != null) {
+      metrics.record(outcome, System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * Records the outcome of a transaction, unless the transaction info joined a transaction of the
+   * caller, whose own method records it.
+   */
+  private static void recordOutcome(InvocationPlan plan, TransactionInfo txInfo,
+      TransactionOutcome outcome, long startNanos) {
+    if (beginsTransaction(txInfo)) {
+      recordOutcome(plan, outcome, startNanos);
+    }
+  }
+
   /**
    * Handles a callback preferring transaction by executing the transaction, proceeding with the
    * method invocation, evaluating the transaction, and cleaning up the transaction info.
    *
-   * @param method                     the Method being invoked
-   * @param platformTransactionManager the transaction manager
-   * @param transactionAttribute       the transaction attribute
-   * @param joinpointIdentification    the identification of the joinpoint
-   * @param invocation                 the callback to use for proceeding with the target
-   *                                   invocation
+   * @param plan       the invocation plan of the method being invoked
+   * @param invocation the callback to use for proceeding with the target invocation
    * @return the result of the method invocation
    */
-  private Object handleCallbackPreferringTransaction(
-      Method method,
-      CallbackPreferringPlatformTransactionManager platformTransactionManager,
-      TransactionAttribute transactionAttribute, String joinpointIdentification,
+  private Object handleCallbackPreferringTransaction(InvocationPlan plan,
       InvocationCallback invocation) {
+    CallbackPreferringPlatformTransactionManager platformTransactionManager =
+        (CallbackPreferringPlatformTransactionManager) plan.transactionManager();
+    TransactionAttribute transactionAttribute = plan.transactionAttribute();
+    String joinpointIdentification = plan.joinpointIdentification();
+    long startNanos = System.nanoTime();
+    // The transaction only completes once the callback has returned, so a successful invocation is
+    // recorded afterwards with the outcome decided by the callback, unless the callback has already
+    // recorded a thrown exception or joined a transaction of its caller
+    TransactionOutcome[] outcome = new TransactionOutcome[1];
+    Object retVal;
     try {
-      return platformTransactionManager.execute(transactionAttribute, status -> {
+      retVal = platformTransactionManager.execute(transactionAttribute, status -> {
         TransactionInfo txInfo = prepareTransactionInfo(platformTransactionManager,
             transactionAttribute, joinpointIdentification, status);
         try {
-          return invocation.proceedWithInvocation();
+          Object result = invocation.proceedWithInvocation();
+          if (status.isNewTransaction()) {
+            outcome[0] = completionOutcome(result instanceof Try<?> tryResult
+                && tryResult.isFailure(), status);
+          }
+          return result;
         } catch (Throwable ex) {
-          return handleTransactionException(method, ex, txInfo);
+          return handleTransactionException(plan, ex, txInfo, startNanos, false);
         } finally {
           cleanupTransactionInfo(txInfo);
         }
       });
     } catch (TransactionSystemException ex) {
+      if (outcome[0] != null) {
+        recordOutcome(plan, TransactionOutcome.COMMIT_FAILURE, startNanos);
+      }
       return Try.failure(ex);
     }
+    if (outcome[0] != null) {
+      recordOutcome(plan, outcome[0], startNanos);
+    }
+    return retVal;
+  }
+
+  /**
+   * Handles a reactive transaction. The transaction begins when the returned publisher is
+   * subscribed to, and commits or rolls back when it terminates:
+   * <ul>
+   *   <li>a {@link Try} emitted by the publisher is evaluated with the same rollback rules as a
+   *   synchronously returned one</li>
+   *   <li>an error rolls back if the transaction attribute rolls back on it and commits otherwise;
+   *   for a {@code Mono<Try<T>>} the error is emitted as a Try#Failure instead</li>
+   *   <li>a cancelled subscription rolls back</li>
+   * </ul>
+   *
+   * @param plan       the invocation plan of the method being invoked
+   * @param invocation the callback to use for proceeding with the target invocation
+   * @return the publisher that runs the method invocation within the transaction
+   */
+  private Object handleReactiveTransaction(InvocationPlan plan, InvocationCallback invocation) {
+    ReactiveTransactionManager reactiveTransactionManager =
+        (ReactiveTransactionManager) plan.transactionManager();
+    TransactionAttribute transactionAttribute = plan.transactionAttribute();
+
+    if (plan.returnKind() == ReturnKind.FLUX) {
+      return TransactionContextManager.currentContext().flatMapMany(context -> {
+            long startNanos = System.nanoTime();
+            return Flux.usingWhen(
+                reactiveTransactionManager.getReactiveTransaction(transactionAttribute),
+                transaction -> Flux.from(proceedReactively(invocation))
+                    .doOnNext(element -> evaluateReactiveElement(element, transactionAttribute,
+                        transaction)),
+                transaction -> commitReactiveTransaction(reactiveTransactionManager, plan,
+                    transaction, startNanos),
+                (transaction, ex) -> completeReactiveTransactionAfterThrowing(
+                    reactiveTransactionManager, plan, transaction, ex, startNanos),
+                reactiveTransactionManager::rollback);
+          })
+          .contextWrite(TransactionContextManager.getOrCreateContext())
+          .contextWrite(TransactionContextManager.getOrCreateContextHolder());
+    }
+
+    boolean returnsTry = plan.returnKind() == ReturnKind.MONO_TRY;
+    Mono<Object> result = TransactionContextManager.currentContext().flatMap(context -> {
+          long startNanos = System.nanoTime();
+          return Mono.usingWhen(
+              reactiveTransactionManager.getReactiveTransaction(transactionAttribute),
+              transaction -> {
+                Mono<Object> body = Mono.from(proceedReactively(invocation));
+                if (returnsTry) {
+                  body = body.onErrorResume(ex -> Mono.just(Try.failure(ex)));
+                }
+                return body.doOnNext(element -> evaluateReactiveElement(element,
+                    transactionAttribute, transaction));
+              },
+              transaction -> commitReactiveTransaction(reactiveTransactionManager, plan,
+                  transaction, startNanos),
+              (transaction, ex) -> completeReactiveTransactionAfterThrowing(
+                  reactiveTransactionManager, plan, transaction, ex, startNanos),
+              reactiveTransactionManager::rollback);
+        })
+        .contextWrite(TransactionContextManager.getOrCreateContext())
+        .contextWrite(TransactionContextManager.getOrCreateContextHolder());
+    if (returnsTry) {
+      // A failed commit respects the return type as well and is emitted as a Try#Failure
+      return result.onErrorResume(ex -> Mono.just(Try.failure(ex)));
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Publisher<Object> proceedReactively(InvocationCallback invocation) {
+    try {
+      Object retVal = invocation.proceedWithInvocation();
+      return retVal != null ? (Publisher<Object>) retVal : Mono.empty();
+    } catch (Throwable ex) {
+      return Mono.error(ex);
+    }
+  }
+
+  private static void evaluateReactiveElement(Object element,
+      TransactionAttribute transactionAttribute, ReactiveTransaction transaction) {
+    if (element instanceof Try<?> result) {
+      evaluateTryFailure(result, transactionAttribute, transaction);
+    }
+  }
+
+  private static Mono<Void> commitReactiveTransaction(
+      ReactiveTransactionManager reactiveTransactionManager, InvocationPlan plan,
+      ReactiveTransaction transaction, long startNanos) {
+    if (!transaction.isNewTransaction()) {
+      return reactiveTransactionManager.commit(transaction);
+    }
+    // A Try#Failure marks the transaction rollback-only, so the commit actually rolls back
+    TransactionOutcome outcome = transaction.isRollbackOnly()
+        ? TransactionOutcome.FAILURE_ROLLBACK : TransactionOutcome.COMMIT;
+    return reactiveTransactionManager.commit(transaction)
+        .doOnSuccess(ignored -> recordOutcome(plan, outcome, startNanos))
+        .doOnError(ex -> recordOutcome(plan, TransactionOutcome.COMMIT_FAILURE, startNanos));
+  }
+
+  private static Mono<Void> completeReactiveTransactionAfterThrowing(
+      ReactiveTransactionManager reactiveTransactionManager, InvocationPlan plan,
+      ReactiveTransaction transaction, Throwable ex, long startNanos) {
+    if (!transaction.isNewTransaction()) {
+      return plan.transactionAttribute().rollbackOn(ex)
+          ? reactiveTransactionManager.rollback(transaction)
+          : reactiveTransactionManager.commit(transaction);
+    }
+    if (plan.transactionAttribute().rollbackOn(ex)) {
+      return reactiveTransactionManager.rollback(transaction).doOnTerminate(() ->
+          recordOutcome(plan, TransactionOutcome.EXCEPTION_ROLLBACK, startNanos));
+    }
+    return reactiveTransactionManager.commit(transaction).doOnTerminate(() ->
+        recordOutcome(plan, TransactionOutcome.NO_ROLLBACK_COMMIT, startNanos));
+  }
+
+  /**
+   * Handles a method returning a {@code CompletableFuture<Try<T>>} by running the whole transaction,
+   * including the method invocation, on the asynchronous transaction executor. The transaction and
+   * the {@link org.springframework.transaction.support.TransactionSynchronizationManager} state are
+   * bound to the executor thread, so the method never joins a transaction of the calling thread,
+   * although it inherits its deadline.
+   * The returned future always completes with a Try, a Try#Failure if anything went wrong, and never
+   * exceptionally.
+   *
+   * @param plan       the invocation plan of the method being invoked
+   * @param invocation the callback to use for proceeding with the target invocation
+   * @return the future of the Try of the method invocation
+   */
+  private CompletableFuture<Object> handleAsyncTransaction(InvocationPlan plan,
+      InvocationCallback invocation) {
+    Deadline callerDeadline = Deadline.current();
+    return CompletableFuture.supplyAsync(() -> {
+      boolean previous = ReadOnlyRoutingContext.enter(plan.routesReadOnly());
+      Deadline previousDeadline = Deadline.enter(callerDeadline);
+      try {
+        if (plan.transactionManager() instanceof CallbackPreferringPlatformTransactionManager) {
+          return handleCallbackPreferringTransaction(plan,
+              () -> awaitFuture(invocation.proceedWithInvocation()));
+        }
+        return runAsyncTransaction(plan, invocation);
+      } catch (RuntimeException ex) {
+        return Try.failure(ex);
+      } finally {
+        Deadline.restore(previousDeadline);
+        ReadOnlyRoutingContext.restore(previous);
+      }
+    }, this.asyncTransactionExecutor);
+  }
+
+  /**
+   * The standard path of an asynchronous transaction. It mirrors
+   * {@link #handleStandardTransaction} instead of wrapping the invocation callback, so that the
+   * synchronous path keeps its own call profile and stays free of allocations.
+   */
+  private Object runAsyncTransaction(InvocationPlan plan, InvocationCallback invocation) {
+    Deadline deadline = deadlineOf(plan.transactionAttribute());
+    if (deadline != null) {
+      return runWithinDeadline(plan, deadline,
+          transactionAttribute -> runAsyncTransaction(plan, transactionAttribute, invocation));
+    }
+    return runAsyncTransaction(plan, plan.transactionAttribute(), invocation);
+  }
+
+  private Object runAsyncTransaction(InvocationPlan plan,
+      @Nullable TransactionAttribute transactionAttribute, InvocationCallback invocation) {
+    long startNanos = System.nanoTime();
+    TransactionInfo txInfo = createTransactionIfNecessary(plan.platformTransactionManager(),
+        transactionAttribute, plan.joinpointIdentification());
+    boolean begun = beginsTransaction(txInfo);
+    int previousAfterCommitScope = begun ? AfterCommit.open() : 0;
+
+    try {
+      Object retVal = awaitFuture(invocation.proceedWithInvocation());
+      return processTransactionResult(plan, txInfo, retVal, startNanos);
+    } catch (Throwable ex) {
+      return handleTransactionException(plan, ex, txInfo, startNanos, begun);
+    } finally {
+      if (begun) {
+        AfterCommit.close(previousAfterCommitScope);
+      }
+      cleanupTransactionInfo(txInfo);
+    }
+  }
+
+  /**
+   * Waits, within the transaction, for the future returned by the method and unwraps its value or
+   * its failure.
+   */
+  @Nullable
+  private static Object awaitFuture(@Nullable Object retVal) throws Throwable {
+    if (!(retVal instanceof CompletionStage<?> stage)) {
+      return retVal;
+    }
+    try {
+      return stage.toCompletableFuture().join();
+    } catch (CompletionException | CancellationException ex) {
+      throw (ex instanceof CompletionException && ex.getCause() != null) ? ex.getCause() : ex;
+    }
+  }
+
+  /**
+   * Registers the transaction with the watchdog, if any, when the transaction begins here.
+   */
+  @Override
+  protected TransactionInfo prepareTransactionInfo(@Nullable PlatformTransactionManager tm,
+      @Nullable TransactionAttribute txAttr, String joinpointIdentification,
+      @Nullable TransactionStatus status) {
+    TransactionInfo txInfo = super.prepareTransactionInfo(tm, txAttr, joinpointIdentification,
+        status);
+    TransactionWatchdog watchdog = this.transactionWatchdog;
+    if (watchdog != null && status != null && status.isNewTransaction()) {
+      watchdog.register(txInfo, joinpointIdentification);
+    }
+    return txInfo;
+  }
+
+  /**
+   * Unregisters the transaction from the watchdog, if any, so that the watchdog only ever holds
+   * active transactions.
+   */
+  @Override
+  protected void cleanupTransactionInfo(@Nullable TransactionInfo txInfo) {
+    TransactionWatchdog watchdog = this.transactionWatchdog;
+    if (watchdog != null && txInfo != null) {
+      watchdog.unregister(txInfo);
+    }
+    super.cleanupTransactionInfo(txInfo);
+  }
+
+  /**
+   * Enters the transaction being begun in {@link ConnectionAcquisitionEvent}, if enabled, so that
+   * the connection it acquires while beginning is attributed to it.
+   */
+  @Override
+  protected TransactionInfo createTransactionIfNecessary(@Nullable PlatformTransactionManager tm,
+      @Nullable TransactionAttribute txAttr, String joinpointIdentification) {
+    if (txAttr == null || !ConnectionAcquisitionEvent.enabled()) {
+      return createRecordedTransactionIfNecessary(tm, txAttr, joinpointIdentification);
+    }
+    ConnectionAcquisitionEvent.Beginning previous = ConnectionAcquisitionEvent.enter(
+        (txAttr.getName() != null) ? txAttr.getName() : joinpointIdentification,
+        txAttr.isReadOnly());
+    try {
+      return createRecordedTransactionIfNecessary(tm, txAttr, joinpointIdentification);
+    } finally {
+      ConnectionAcquisitionEvent.restore(previous);
+    }
+  }
+
+  /**
+   * Records the beginning of the transaction as a {@link TransactionBeginEvent}, if enabled.
+   */
+  private TransactionInfo createRecordedTransactionIfNecessary(
+      @Nullable PlatformTransactionManager tm, @Nullable TransactionAttribute txAttr,
+      String joinpointIdentification) {
+    if (txAttr == null || !TransactionBeginEvent.enabled()) {
+      return super.createTransactionIfNecessary(tm, txAttr, joinpointIdentification);
+    }
+    TransactionBeginEvent event = new TransactionBeginEvent();
+    event.begin();
+    TransactionInfo txInfo = super.createTransactionIfNecessary(tm, txAttr,
+        joinpointIdentification);
+    event.end();
+    if (event.shouldCommit()) {
+      event.describe(joinpointIdentification, txAttr);
+      event.setNewTransaction(beginsTransaction(txInfo));
+      event.commit();
+    }
+    return txInfo;
+  }
+
+  /**
+   * Records the completion of a transaction that began here, if enabled. A transaction that is
+   * rollback-only by now rolls back, which is recorded as caused by a Try#Failure.
+   */
+  @Override
+  protected void commitTransactionAfterReturning(@Nullable TransactionInfo txInfo) {
+    TransactionStatus status = (txInfo != null) ? txInfo.getTransactionStatus() : null;
+    if (status == null || !status.isNewTransaction() || !completionRecorded()) {
+      super.commitTransactionAfterReturning(txInfo);
+      return;
+    }
+    completeRecorded(txInfo, !status.isRollbackOnly(), RollbackCause.TRY_FAILURE, null,
+        () -> super.commitTransactionAfterReturning(txInfo));
+  }
+
+  /**
+   * Records the completion of a transaction that began here, if enabled.
+   */
+  @Override
+  protected void completeTransactionAfterThrowing(@Nullable TransactionInfo txInfo, Throwable ex) {
+    TransactionStatus status = (txInfo != null) ? txInfo.getTransactionStatus() : null;
+    if (status == null || !status.isNewTransaction() || !completionRecorded()) {
+      super.completeTransactionAfterThrowing(txInfo, ex);
+      return;
+    }
+    completeRecorded(txInfo, !txInfo.getTransactionAttribute().rollbackOn(ex),
+        RollbackCause.EXCEPTION, ex, () -> super.completeTransactionAfterThrowing(txInfo, ex));
+  }
+
+  /**
+   * Rolls back a transaction through its transaction manager, recording the rollback if it began
+   * here.
+   */
+  private static void rollback(TransactionInfo txInfo, TransactionStatus status,
+      RollbackCause cause, @Nullable Throwable failure) {
+    if (!status.isNewTransaction() || !TransactionRollbackEvent.enabled()) {
+      txInfo.getTransactionManager().rollback(status);
+      return;
+    }
+    completeRecorded(txInfo, false, cause, failure,
+        () -> txInfo.getTransactionManager().rollback(status));
+  }
+
+  private static boolean completionRecorded() {
+    return TransactionCommitEvent.enabled() || TransactionRollbackEvent.enabled();
+  }
+
+  /**
+   * Commits or rolls back a transaction, recording a {@link TransactionCommitEvent}, or a
+   * {@link TransactionRollbackEvent} if it rolls back or its commit fails.
+   *
+   * @param txInfo     the transaction info
+   * @param commits    whether the completion commits, as opposed to rolling back
+   * @param cause      what causes the rollback, if the completion rolls back
+   * @param failure    the exception that causes the rollback, if any
+   * @param completion commits or rolls back the transaction
+   */
+  private static void completeRecorded(TransactionInfo txInfo, boolean commits,
+      RollbackCause cause, @Nullable Throwable failure, Runnable completion) {
+    // Both begin together, since a commit that fails rolls back instead
+    TransactionCommitEvent commitEvent = commits ? new TransactionCommitEvent() : null;
+    TransactionRollbackEvent rollbackEvent = new TransactionRollbackEvent();
+    if (commitEvent != null) {
+      commitEvent.begin();
+    }
+    rollbackEvent.begin();
+    try {
+      completion.run();
+    } catch (RuntimeException | Error ex) {
+      if (commitEvent != null) {
+        commitEvent = null;
+        cause = RollbackCause.COMMIT_FAILURE;
+        failure = ex;
+      }
+      throw ex;
+    } finally {
+      TransactionEvent event = (commitEvent != null) ? commitEvent : rollbackEvent;
+      event.end();
+      if (event.shouldCommit()) {
+        event.describe(txInfo.getJoinpointIdentification(), txInfo.getTransactionAttribute());
+        if (event == rollbackEvent) {
+          rollbackEvent.setCause(cause, failure);
+        }
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Whether a transaction began with the transaction info, rather than joined one of the caller or
+   * none being demarcated.
+   */
+  private static boolean beginsTransaction(TransactionInfo txInfo) {
+    TransactionStatus status = txInfo.getTransactionStatus();
+    return status != null && status.isNewTransaction();
+  }
+
+  /**
+   * Whether the transaction began here and has {@link AfterCommit} continuations to dispatch once
+   * it commits. Decided before the commit, since the commit of a rollback-only transaction rolls
+   * it back instead.
+   */
+  private static boolean hasAfterCommitCallbacks(TransactionStatus status) {
+    return status.isNewTransaction() && AfterCommit.hasCallbacks() && !status.isRollbackOnly();
   }
 
   /**
    * Evaluates the transaction by committing the transaction after returning and returning the
    * result of the method invocation.
    *
-   * @param txInfo               the transaction info
-   * @param retVal               the result of the method invocation
-   * @param transactionAttribute the transaction attribute
+   * @param plan       the invocation plan of the method being invoked
+   * @param txInfo     the transaction info
+   * @param retVal     the result of the method invocation
+   * @param startNanos the time the transaction began at
    * @return the result of the method invocation
    */
-  private Object evaluateTransaction(TransactionInfo txInfo,
-      AtomicReference<Object> retVal, TransactionAttribute transactionAttribute) {
+  private Object evaluateTransaction(InvocationPlan plan, TransactionInfo txInfo,
+      @Nullable Object retVal, long startNanos) {
     TransactionStatus status = txInfo.getTransactionStatus();
-    if (status != null && (retVal.get() instanceof Try<?>)) {
-      retVal.set(evaluateTryFailure(retVal, transactionAttribute, status));
+    TransactionTimedOutException abortCause = abortCause(txInfo, status);
+    boolean begun = beginsTransaction(txInfo);
+    if (status != null && (retVal instanceof Try<?> tryResult)) {
+      Try<?> result = (abortCause != null && tryResult.isSuccess())
+          ? Try.failure(abortCause) : tryResult;
+      if (plan.idempotency() != null && result.isSuccess() && begun) {
+        result = plan.idempotency().save(result, status);
+      }
+      evaluateTryFailure(result, plan.transactionAttribute(), status);
+      TransactionOutcome outcome = completionOutcome(result.isFailure(), status);
+      boolean afterCommit = hasAfterCommitCallbacks(status);
       try {
-        return commitTransaction(txInfo, retVal);
+        commitTransactionAfterReturning(txInfo);
+        if (begun) {
+          recordOutcome(plan, outcome, startNanos);
+        }
       } catch (Exception e) {
+        if (begun) {
+          recordOutcome(plan, TransactionOutcome.COMMIT_FAILURE, startNanos);
+        }
+        // Keeps the failure that made the transaction roll back, as the rollback failure hides it
+        if (result.isFailure()) {
+          result.onFailure(e::addSuppressed);
+        }
         // For any exception do not propagage the exception but respect the return type and return a Try#Failure.
         return Try.failure(e);
       }
+      if (afterCommit) {
+        AfterCommit.dispatch(outcome == TransactionOutcome.COMMIT, this.afterCommitExecutor);
+      }
+      return result;
+    }
+    if (abortCause != null) {
+      // Rolled back and recorded by the exception handling of the caller
+      throw abortCause;
+    }
+    boolean afterCommit = status != null && hasAfterCommitCallbacks(status);
+    TransactionOutcome outcome = begun ? completionOutcome(false, status) : null;
+    try {
+      commitTransactionAfterReturning(txInfo);
+    } catch (RuntimeException | Error ex) {
+      if (begun) {
+        recordOutcome(plan, TransactionOutcome.COMMIT_FAILURE, startNanos);
+      }
+      throw ex;
+    }
+    if (begun) {
+      recordOutcome(plan, outcome, startNanos);
+    }
+    if (afterCommit) {
+      AfterCommit.dispatch(true, this.afterCommitExecutor);
+    }
+    return retVal;
+  }
+
+  /**
+   * How a transaction about to be committed completes, unless its commit fails. Decided right
+   * before the commit, which rolls back a transaction that is rollback-only by then, since the
+   * rollback-only flag of a transaction joined by a resource may no longer be readable once the
+   * transaction has completed.
+   *
+   * @param failed whether the method failed, with a Try#Failure
+   * @param status the status of the transaction
+   * @return the outcome of the transaction
+   */
+  private static TransactionOutcome completionOutcome(boolean failed, TransactionStatus status) {
+    if (status.isRollbackOnly()) {
+      return failed ? TransactionOutcome.FAILURE_ROLLBACK : TransactionOutcome.ROLLBACK_ONLY;
     }
-    return commitTransaction(txInfo, retVal);
+    return failed ? TransactionOutcome.NO_ROLLBACK_COMMIT : TransactionOutcome.COMMIT;
   }
 
-  private Object commitTransaction(TransactionInfo txInfo, AtomicReference<Object> retVal) {
-    commitTransactionAfterReturning(txInfo);
-    return retVal.get();
+  /**
+   * Returns why the transaction must be aborted, if it must: because the watchdog aborted it, or
+   * because its deadline has passed, and marks it rollback-only. Called right before the outcome of
+   * the transaction is decided. The watchdog only publishes its aborts, and can no longer abort the
+   * transaction once this has been called, so the transaction is only ever marked rollback-only by
+   * its own thread, before its outcome is decided.
+   */
+  @Nullable
+  private TransactionTimedOutException abortCause(TransactionInfo txInfo,
+      @Nullable TransactionStatus status) {
+    if (status == null) {
+      return null;
+    }
+    TransactionWatchdog watchdog = this.transactionWatchdog;
+    TransactionTimedOutException abortCause = (watchdog != null)
+        ? watchdog.beginCompletion(txInfo) : null;
+    if (abortCause == null) {
+      Deadline deadline = Deadline.current();
+      if (deadline != null && deadline.isExpired()) {
+        abortCause = new TransactionTimedOutException(
+            "Deadline of transaction [" + txInfo.getJoinpointIdentification() + "] passed");
+      }
+    }
+    if (abortCause != null) {
+      status.setRollbackOnly();
+    }
+    return abortCause;
   }
 
   @Serial
@@ -214,6 +2112,13 @@ public class CustomTransactionInterceptor extends TransactionInterceptor {
   @Serial
   private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
     ois.defaultReadObject();
+    this.invocationPlans = new ConcurrentHashMap<>(256);
+    this.targetClassInvocationPlans = new ConcurrentHashMap<>(16);
+    this.asyncTransactionExecutor = defaultAsyncTransactionExecutor();
+    this.afterCommitExecutor = defaultAfterCommitExecutor();
+    this.streamDetachInterval = DEFAULT_STREAM_DETACH_INTERVAL;
+    this.transactionMetrics = new TransactionMetrics();
+    this.concurrencyLimiters = new ConcurrentHashMap<>(16);
     setTransactionManagerBeanName((String) ois.readObject());
     setTransactionManager((PlatformTransactionManager) ois.readObject());
     setTransactionAttributeSource((TransactionAttributeSource) ois.readObject());
@@ -248,21 +2153,16 @@ public class CustomTransactionInterceptor extends TransactionInterceptor {
     return methodIdentification;
   }
 
-  @SneakyThrows
-  private void rollback(TransactionInfo txInfo, Consumer<?> rollbackAction) {
-    if (txInfo.getTransactionStatus() != null) {
-      rollbackAction.accept(null);
+  private static void evaluateTryFailure(Try<?> result, TransactionAttribute txAttr,
+      TransactionExecution status) {
+    // Checked first so that a successful Try does not pay for the capturing lambda
+    if (result.isFailure()) {
+      result.onFailure(ex -> {
+        // This basically will respect the @Transactional(noRollbackFor= {...})
+        if (txAttr.rollbackOn(ex)) {
+          status.setRollbackOnly();
+        }
+      });
     }
   }
-
-  private static Object evaluateTryFailure(AtomicReference<Object> retVal,
-      TransactionAttribute txAttr,
-      TransactionStatus status) {
-    return ((Try<?>) retVal.get()).onFailure(ex -> {
-      // This basically will respect the @Transactional(noRollbackFor= {...})
-      if (txAttr.rollbackOn(ex)) {
-        status.setRollbackOnly();
-      }
-    });
-  }
 }
@@ -0,0 +1,48 @@
+package com.custom.transaction;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code @Transactional} method returning a Try to have concurrent invocations coalesced
+ * by {@link CustomTransactionInterceptor} into shared physical transactions.
+ *
+ * <p>The first caller to arrive becomes the leader of a batch and waits up to
+ * {@link #maxDelayMicros()} for further callers, or until {@link #maxBatchSize()} callers have
+ * joined. The leader then begins one transaction and runs every member of the batch in it, each
+ * under its own savepoint and flushed before the next one starts. A member that fails, by throwing
+ * or by returning a Try#Failure the transaction attribute rolls back on, is rolled back to its
+ * savepoint without affecting the others. Every caller gets its own Try once the shared
+ * transaction has committed. If the shared transaction is lost, because its commit fails or
+ * because a failed member left it rollback-only, as Hibernate does when a flush fails, every member
+ * is run again in a transaction of its own, so one bad member never fails the others.
+ *
+ * <p>Members run on the thread of the leader, so thread-bound state of the other callers, such as
+ * a security context, is not visible to them, with the exception of their
+ * {@link com.custom.transaction.deadline.Deadline}: each member runs within its own, a caller stops
+ * waiting for a member that has not started by then, and the shared transaction times out at the
+ * earliest one. Invocations that participate in an existing transaction are never batched, and
+ * neither are methods that are also {@link RetryableTransaction} or whose propagation is not
+ * {@code REQUIRED}. Savepoints are taken on the JDBC connection bound to the transaction, as the
+ * {@code JpaTransactionManager} and the {@code DataSourceTransactionManager} do, or through the
+ * transaction manager otherwise; if neither supports savepoints, every batch ends up running its
+ * members one by one.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface GroupCommit {
+
+  /**
+   * The maximum number of invocations that share one transaction.
+   */
+  int maxBatchSize() default 64;
+
+  /**
+   * The maximum time the leader of a batch waits for more invocations, in microseconds.
+   */
+  long maxDelayMicros() default 1000;
+}
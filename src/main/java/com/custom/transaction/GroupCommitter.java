@@ -0,0 +1,211 @@
+package com.custom.transaction;
+
+import com.custom.transaction.deadline.Deadline;
+import com.soumakis.control.Try;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionTimedOutException;
+
+/**
+ * Collects the concurrent invocations of a {@link GroupCommit} method into batches. The first
+ * invocation that finds no batch being collected becomes its leader: it waits for the batch to
+ * fill up or for the delay to elapse, and then runs the whole batch on its own thread. The other
+ * invocations of the batch wait for their result, which is a Try#Failure if the leader failed to
+ * run the batch.
+ *
+ * <p>An invocation with a {@link Deadline} waits no longer than its deadline for the leader to
+ * start running it. If the deadline passes first, the invocation leaves the batch, is never run
+ * and fails with a {@link TransactionTimedOutException}. Once the leader has started running it,
+ * the invocation waits for the shared transaction to complete, whose timeout is the earliest
+ * deadline of its members.
+ *
+ * <p>A new batch starts being collected as soon as the previous one is full or its leader stops
+ * waiting, so several batches of the same method may run at the same time.
+ */
+final class GroupCommitter {
+
+  private final int maxBatchSize;
+
+  private final long maxDelayNanos;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private final Condition batchFull = lock.newCondition();
+
+  // The batch being collected, if any; a full batch stops being collected right away
+  @Nullable
+  private List<Member> collecting;
+
+  private GroupCommitter(int maxBatchSize, long maxDelayNanos) {
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelayNanos;
+  }
+
+  /**
+   * Resolves the group committer of a method from its {@link GroupCommit}.
+   *
+   * @param method      the Method being invoked
+   * @param targetClass the target class that we're invoking the method on
+   * @return the group committer, or null if the method is not group committed
+   */
+  @Nullable
+  static GroupCommitter of(Method method, @Nullable Class<?> targetClass) {
+    GroupCommit groupCommit = AnnotatedElementUtils.findMergedAnnotation(
+        AopUtils.getMostSpecificMethod(method, targetClass), GroupCommit.class);
+    if (groupCommit == null || groupCommit.maxBatchSize() <= 1) {
+      return null;
+    }
+    return new GroupCommitter(groupCommit.maxBatchSize(),
+        TimeUnit.MICROSECONDS.toNanos(Math.max(groupCommit.maxDelayMicros(), 0)));
+  }
+
+  /**
+   * Adds an invocation to the batch being collected and waits for its result. If the invocation
+   * becomes the leader of the batch, the batch is run by the given runner on the current thread,
+   * which must complete every member.
+   *
+   * @param invocation  the invocation to add
+   * @param deadline    the deadline of the invocation, or null if it has none
+   * @param batchRunner the runner of a complete batch
+   * @return the result of the invocation
+   */
+  Object submit(ProxyMethodInvocation invocation, @Nullable Deadline deadline,
+      Consumer<List<Member>> batchRunner) {
+    Member member = new Member(invocation, deadline, new CompletableFuture<>(),
+        new AtomicInteger(Member.WAITING));
+    List<Member> batch;
+    boolean leader;
+    lock.lock();
+    try {
+      batch = collecting;
+      leader = (batch == null);
+      if (leader) {
+        batch = new ArrayList<>(maxBatchSize);
+        collecting = batch;
+      }
+      batch.add(member);
+      if (batch.size() >= maxBatchSize) {
+        collecting = null;
+        batchFull.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (leader) {
+      awaitBatch(batch);
+      try {
+        batchRunner.accept(batch);
+      } catch (RuntimeException | Error ex) {
+        // Followers must never wait forever on a batch whose leader failed
+        batch.forEach(m -> m.result().complete(Try.failure(ex)));
+        if (ex instanceof Error) {
+          throw ex;
+        }
+      }
+    }
+    return awaitResult(member);
+  }
+
+  /**
+   * Waits for the result of a member, no longer than its deadline unless the leader has started
+   * running it.
+   */
+  private static Object awaitResult(Member member) {
+    Deadline deadline = member.deadline();
+    if (deadline == null) {
+      return member.result().join();
+    }
+    try {
+      return member.result().get(Math.max(deadline.remainingNanos(), 0), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException ex) {
+      if (member.abandon()) {
+        return Try.failure(new TransactionTimedOutException(
+            "Deadline passed while waiting for a group commit"));
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      if (member.abandon()) {
+        return Try.failure(ex);
+      }
+    } catch (ExecutionException ex) {
+      // The result is never completed exceptionally
+      return Try.failure(ex.getCause());
+    }
+    // The leader runs the member already, within the timeout of the shared transaction
+    return member.result().join();
+  }
+
+  /**
+   * Waits until the batch is full or the delay has elapsed, and stops collecting it. The batch is
+   * not modified afterwards.
+   */
+  private void awaitBatch(List<Member> batch) {
+    lock.lock();
+    try {
+      long remainingNanos = maxDelayNanos;
+      while (collecting == batch && remainingNanos > 0) {
+        try {
+          remainingNanos = batchFull.awaitNanos(remainingNanos);
+        } catch (InterruptedException ex) {
+          // The members of the batch are waiting for the leader, so the batch still runs
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      if (collecting == batch) {
+        collecting = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * An invocation waiting in a batch.
+   *
+   * @param invocation the invocation, to be cloned for every run
+   * @param deadline   the deadline of the invocation, or null if it has none
+   * @param result     the result of the invocation
+   * @param state      whether the invocation waits, is started by the leader or was abandoned
+   */
+  record Member(ProxyMethodInvocation invocation, @Nullable Deadline deadline,
+                CompletableFuture<Object> result, AtomicInteger state) {
+
+    private static final int WAITING = 0;
+
+    private static final int STARTED = 1;
+
+    private static final int ABANDONED = 2;
+
+    /**
+     * Called by the leader before running the member, in the shared transaction or alone.
+     *
+     * @return false if the caller has stopped waiting, so the member must not run
+     */
+    boolean start() {
+      return state.compareAndSet(WAITING, STARTED) || state.get() == STARTED;
+    }
+
+    /**
+     * Called by the caller once it stops waiting.
+     *
+     * @return false if the leader has started running the member already
+     */
+    private boolean abandon() {
+      return state.compareAndSet(WAITING, ABANDONED);
+    }
+  }
+}
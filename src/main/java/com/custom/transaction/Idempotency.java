@@ -0,0 +1,169 @@
+package com.custom.transaction;
+
+import com.custom.transaction.idempotency.IdempotencyStore;
+import com.soumakis.control.Try;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * The results of a method with an {@link IdempotencyKey} parameter: the ones stored in the
+ * {@link IdempotencyStore}, and the executions in progress on this instance, which the calls with
+ * the same key wait for.
+ *
+ * <p>The key of the execution in progress on a thread is bound to it while the method runs, so that
+ * the interceptor can store the result within the transaction once the method has returned.
+ */
+final class Idempotency {
+
+  private static final ThreadLocal<Execution> EXECUTION = new ThreadLocal<>();
+
+  private final int keyIndex;
+
+  private final Duration timeToLive;
+
+  private final IdempotencyStore store;
+
+  private final String joinpointIdentification;
+
+  private final ConcurrentHashMap<String, CompletableFuture<Try<?>>> inFlight =
+      new ConcurrentHashMap<>();
+
+  private Idempotency(int keyIndex, Duration timeToLive, IdempotencyStore store,
+      String joinpointIdentification) {
+    this.keyIndex = keyIndex;
+    this.timeToLive = timeToLive;
+    this.store = store;
+    this.joinpointIdentification = joinpointIdentification;
+  }
+
+  /**
+   * Finds the {@link IdempotencyKey} parameter of a method.
+   *
+   * @param method                  the Method being invoked
+   * @param targetClass             the target class that we're invoking the method on
+   * @param store                   the store of the results
+   * @param joinpointIdentification the joinpoint identification of the method, which scopes its
+   *                                keys
+   * @return the results of the method, or null if it has no idempotency key
+   */
+  @Nullable
+  static Idempotency of(Method method, @Nullable Class<?> targetClass, IdempotencyStore store,
+      String joinpointIdentification) {
+    Parameter[] parameters = AopUtils.getMostSpecificMethod(method, targetClass).getParameters();
+    for (int i = 0; i < parameters.length; i++) {
+      IdempotencyKey idempotencyKey = parameters[i].getAnnotation(IdempotencyKey.class);
+      if (idempotencyKey != null) {
+        return new Idempotency(i, Duration.ofSeconds(idempotencyKey.timeToLiveSeconds()), store,
+            joinpointIdentification);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the key of an invocation, qualified by the joinpoint of the method.
+   *
+   * @param arguments the arguments of the invocation
+   * @return the key, or null if the invocation has none
+   */
+  @Nullable
+  String key(Object[] arguments) {
+    Object key = arguments[keyIndex];
+    return (key != null) ? joinpointIdentification + ':' + key : null;
+  }
+
+  /**
+   * Returns the result stored under a key, if any.
+   */
+  @Nullable
+  Try<?> find(String key) {
+    Optional<Object> stored = store.find(key);
+    return stored.isPresent() ? Try.of(stored::get) : null;
+  }
+
+  /**
+   * Registers the execution of a key on this instance, unless another one is in progress.
+   *
+   * @param key       the key
+   * @param execution completes with the result of the execution
+   * @return the execution already in progress, or null if the given one was registered
+   */
+  @Nullable
+  CompletableFuture<Try<?>> begin(String key, CompletableFuture<Try<?>> execution) {
+    return inFlight.putIfAbsent(key, execution);
+  }
+
+  /**
+   * Unregisters the execution of a key and hands its result to the calls waiting for it.
+   *
+   * @param key       the key
+   * @param execution the execution registered by {@link #begin}
+   * @param result    the result of the execution, or null if it threw
+   */
+  void end(String key, CompletableFuture<Try<?>> execution, @Nullable Try<?> result) {
+    inFlight.remove(key, execution);
+    execution.complete(result);
+  }
+
+  /**
+   * Binds the key of the execution in progress to the current thread.
+   *
+   * @return the previously bound execution, to be passed to {@link #restore}
+   */
+  @Nullable
+  Execution enter(String key) {
+    Execution previous = EXECUTION.get();
+    EXECUTION.set(new Execution(this, key));
+    return previous;
+  }
+
+  static void restore(@Nullable Execution previous) {
+    if (previous == null) {
+      EXECUTION.remove();
+    } else {
+      EXECUTION.set(previous);
+    }
+  }
+
+  /**
+   * Stores the value of a successful Try under the key bound to the current thread, within the
+   * transaction the method returned it in. A null value is not stored, so the call runs again when
+   * repeated. If it cannot be stored, the transaction is marked rollback-only and the failure is
+   * returned instead.
+   *
+   * @param result the successful Try returned by the method
+   * @param status the status of the transaction
+   * @return the given Try, or the failure to store its value
+   */
+  Try<?> save(Try<?> result, TransactionStatus status) {
+    Execution execution = EXECUTION.get();
+    if (execution == null || execution.idempotency() != this) {
+      return result;
+    }
+    Object value = result.get();
+    if (value == null) {
+      return result;
+    }
+    try {
+      store.save(execution.key(), value, timeToLive);
+      return result;
+    } catch (RuntimeException ex) {
+      status.setRollbackOnly();
+      return Try.failure(ex);
+    }
+  }
+
+  /**
+   * The execution of a key in progress on a thread.
+   */
+  record Execution(Idempotency idempotency, String key) {
+
+  }
+}
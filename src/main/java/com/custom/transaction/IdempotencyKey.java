@@ -0,0 +1,36 @@
+package com.custom.transaction;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the parameter of a {@code @Transactional} method returning a Try whose value identifies a
+ * request the caller may repeat, such as a write retried after a timeout, when
+ * {@link CustomTransactionInterceptor} has an
+ * {@link com.custom.transaction.idempotency.IdempotencyStore}.
+ *
+ * <p>The value of a successful Try is stored under the key within the transaction of the method, so
+ * it is only ever stored along with the data the method committed. A later call with the same key
+ * returns the stored value as a Try#Success without invoking the method or beginning its
+ * transaction, until the value expires. A call made while another one with the same key runs waits
+ * for it instead of running alongside it, and returns its value if it succeeded. Failures are not
+ * stored, so a failed call runs again when repeated. Neither is a Try#Success with a null value, so
+ * a method whose success may be null runs again too, and should return a non-null value such as
+ * {@code Optional.empty()} if it must not.
+ *
+ * <p>Keys are scoped to the method. A call with a null key, or one that joins the transaction of
+ * its caller, runs as usual.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface IdempotencyKey {
+
+  /**
+   * How long a stored value is returned for, in seconds.
+   */
+  long timeToLiveSeconds() default 86_400;
+}
@@ -0,0 +1,185 @@
+package com.custom.transaction;
+
+import com.custom.transaction.metrics.JoinpointMetrics;
+import com.soumakis.control.Try;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+import org.springframework.core.ResolvableType;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionManager;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Everything {@link CustomTransactionInterceptor} needs to demarcate a call to a specific method on
+ * a specific target class. A plan is built once, on the first invocation, and then reused for every
+ * later invocation of the same method.
+ *
+ * @param targetClass             the target class the plan was built for
+ * @param transactionAttribute    the resolved transaction attribute, named after the joinpoint, or
+ *                                null if the method is not transactional
+ * @param transactionManager      the transaction manager that demarcates the transaction, a
+ *                                {@link org.springframework.transaction.ReactiveTransactionManager}
+ *                                for {@link Dispatch#REACTIVE} plans and a
+ *                                {@link PlatformTransactionManager} otherwise
+ * @param joinpointIdentification the identification of the joinpoint
+ * @param returnKind              the shape of the method return type
+ * @param dispatch                the branch of the interceptor that handles the invocation
+ * @param metrics                 the metrics of the joinpoint, or null if the method is not
+ *                                transactional
+ * @param retryPolicy             the policy failed attempts are retried with, or null if the
+ *                                method is not retried
+ * @param groupCommitter          the batches concurrent invocations are collected into, or null if
+ *                                the method is not group committed
+ * @param concurrencyLimiter      the limiter of the bulkhead of the method, or null if the method
+ *                                is not limited
+ * @param shardRouting            the plans of the method on every shard, or null if the method is
+ *                                not routed to a shard, including on a plan of a shard
+ * @param idempotency             the stored results of the method, or null if it has no
+ *                                idempotency key
+ */
+record InvocationPlan(
+    @Nullable Class<?> targetClass,
+    @Nullable TransactionAttribute transactionAttribute,
+    @Nullable TransactionManager transactionManager,
+    String joinpointIdentification,
+    ReturnKind returnKind,
+    Dispatch dispatch,
+    @Nullable JoinpointMetrics metrics,
+    @Nullable RetryPolicy retryPolicy,
+    @Nullable GroupCommitter groupCommitter,
+    @Nullable ConcurrencyLimiter concurrencyLimiter,
+    @Nullable ShardRouting shardRouting,
+    @Nullable Idempotency idempotency) {
+
+  @Nullable
+  PlatformTransactionManager platformTransactionManager() {
+    return (PlatformTransactionManager) transactionManager;
+  }
+
+  /**
+   * Whether the transactions this plan begins are read-only and acquire their connection on the
+   * calling thread, so that the connection can be routed to a replica.
+   */
+  boolean routesReadOnly() {
+    return transactionAttribute != null && transactionAttribute.isReadOnly()
+        && dispatch != Dispatch.REACTIVE;
+  }
+
+  /**
+   * The shape of the return type of an intercepted method.
+   */
+  enum ReturnKind {
+    /**
+     * The method returns a {@link Try} of a {@link Stream}, which is consumed after the method has
+     * returned.
+     */
+    STREAM_TRY,
+    /**
+     * The method returns a {@link Try} (or a supertype of it) and failures are reported as
+     * Try#Failure.
+     */
+    TRY,
+    /**
+     * The method returns nothing.
+     */
+    VOID,
+    /**
+     * The method returns any other type.
+     */
+    PLAIN,
+    /**
+     * The method returns a {@link Mono} that emits a {@link Try}.
+     */
+    MONO_TRY,
+    /**
+     * The method returns any other {@link Mono}.
+     */
+    MONO,
+    /**
+     * The method returns a {@link Flux}.
+     */
+    FLUX,
+    /**
+     * The method returns a {@link CompletableFuture} that completes with a {@link Try}.
+     */
+    FUTURE_TRY;
+
+    static ReturnKind of(Method method) {
+      Class<?> returnType = method.getReturnType();
+      if (returnType.isAssignableFrom(Try.class)) {
+        Class<?> valueType = ResolvableType.forMethodReturnType(method).as(Try.class)
+            .getGeneric(0).resolve();
+        return (valueType != null && Stream.class.isAssignableFrom(valueType))
+            ? STREAM_TRY : TRY;
+      }
+      if (returnType == void.class || returnType == Void.class) {
+        return VOID;
+      }
+      if (Mono.class.isAssignableFrom(returnType)) {
+        Class<?> elementType = ResolvableType.forMethodReturnType(method).as(Mono.class)
+            .getGeneric(0).resolve();
+        return (elementType != null && Try.class.isAssignableFrom(elementType))
+            ? MONO_TRY : MONO;
+      }
+      if (Flux.class.isAssignableFrom(returnType)) {
+        return FLUX;
+      }
+      if (returnType == CompletableFuture.class || returnType == CompletionStage.class) {
+        Class<?> valueType = ResolvableType.forMethodReturnType(method).as(CompletionStage.class)
+            .getGeneric(0).resolve();
+        if (valueType != null && Try.class.isAssignableFrom(valueType)) {
+          return FUTURE_TRY;
+        }
+      }
+      return PLAIN;
+    }
+
+    /**
+     * Whether failures of the transaction are reported as a Try#Failure, once the returned value
+     * has been unwrapped.
+     */
+    boolean returnsTry() {
+      return this == TRY || this == STREAM_TRY || this == FUTURE_TRY;
+    }
+
+    boolean isReactive() {
+      return this == MONO_TRY || this == MONO || this == FLUX;
+    }
+  }
+
+  /**
+   * The branch of {@link CustomTransactionInterceptor} that handles the invocation.
+   */
+  enum Dispatch {
+    /**
+     * The transaction is demarcated by the interceptor itself.
+     */
+    STANDARD,
+    /**
+     * The transaction is demarcated by a
+     * {@link org.springframework.transaction.support.CallbackPreferringPlatformTransactionManager}.
+     */
+    CALLBACK_PREFERRING,
+    /**
+     * The transaction is demarcated by a
+     * {@link org.springframework.transaction.ReactiveTransactionManager} and completes when the
+     * returned publisher terminates.
+     */
+    REACTIVE,
+    /**
+     * The whole transaction runs on the asynchronous transaction executor of the interceptor and
+     * the returned future completes with its Try.
+     */
+    ASYNC,
+    /**
+     * The transaction is demarcated by the interceptor itself and, when it begins with the
+     * invocation, stays open until the returned stream has been consumed or closed.
+     */
+    STREAMING
+  }
+}
@@ -0,0 +1,213 @@
+package com.custom.transaction;
+
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.hibernate.Cache;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.cache.spi.access.NaturalIdDataAccess;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.lang.Nullable;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Discards what the persistence contexts of the current transaction hold after a rollback to a
+ * savepoint, which neither JPA nor Hibernate know about, or once a streaming read has visited it.
+ */
+final class PersistenceContexts {
+
+  private PersistenceContexts() {
+  }
+
+  /**
+   * Takes a snapshot of the entities the persistence contexts bound to the current transaction
+   * hold, with the state they were loaded or last flushed with, before a unit of work runs under a
+   * savepoint. The persistence contexts must have been flushed.
+   *
+   * @return the snapshot
+   */
+  static Snapshot snapshot() {
+    Map<SessionImplementor, Map<Object, Object[]>> loadedStates = new IdentityHashMap<>();
+    for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+      if (resource instanceof EntityManagerHolder entityManagerHolder
+          && entityManagerHolder.getEntityManager().getDelegate()
+          instanceof SessionImplementor session) {
+        Map<Object, Object[]> entities = new IdentityHashMap<>();
+        for (Map.Entry<Object, EntityEntry> entry
+            : session.getPersistenceContextInternal().reentrantSafeEntityEntries()) {
+          entities.put(entry.getKey(), entry.getValue().getLoadedState());
+        }
+        loadedStates.put(session, entities);
+      }
+    }
+    return new Snapshot(loadedStates);
+  }
+
+  /**
+   * Discards what the unit of work run since the snapshot left in the persistence contexts bound to
+   * the current transaction, once its savepoint has been rolled back to. Its pending changes are
+   * dropped, the entities it brought in are detached and the entities of the snapshot it changed
+   * are refreshed, so the other entities stay managed. An entity the unit of work deleted is
+   * detached if its deletion was flushed. Hibernate still puts the entities the rolled back work
+   * inserted or updated into the second-level cache when the transaction commits, so their cached
+   * state and natural ids are evicted in the same completion pass.
+   *
+   * @param before the snapshot taken before the unit of work ran
+   */
+  static void discardAfterSavepointRollback(Snapshot before) {
+    for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+      if (resource instanceof EntityManagerHolder entityManagerHolder) {
+        EntityManager entityManager = entityManagerHolder.getEntityManager();
+        if (entityManager.getDelegate() instanceof SessionImplementor session) {
+          discard(entityManager, session,
+              before.loadedStates().getOrDefault(session, Map.of()));
+        } else {
+          entityManager.clear();
+        }
+      }
+    }
+  }
+
+  private static void discard(EntityManager entityManager, SessionImplementor session,
+      Map<Object, Object[]> loadedStates) {
+    // The session was flushed before the savepoint, so its pending actions are all of the work
+    session.getActionQueue().clear();
+    PersistenceContext persistenceContext = session.getPersistenceContextInternal();
+    List<Map.Entry<Object, EntityEntry>> touched = new ArrayList<>();
+    List<Object> added = new ArrayList<>();
+    List<Object> changed = new ArrayList<>();
+    for (Map.Entry<Object, EntityEntry> entry
+        : persistenceContext.reentrantSafeEntityEntries()) {
+      Object entity = entry.getKey();
+      EntityEntry entityEntry = entry.getValue();
+      if (!loadedStates.containsKey(entity)) {
+        touched.add(entry);
+        added.add(entity);
+      } else if (isChanged(session, entity, entityEntry, loadedStates.get(entity))) {
+        touched.add(entry);
+        changed.add(entity);
+      }
+    }
+    evictFromSecondLevelCacheAfterCompletion(session, touched);
+    for (Object entity : added) {
+      entityManager.detach(entity);
+    }
+    for (Object entity : changed) {
+      entityManager.refresh(entity);
+    }
+  }
+
+  private static boolean isChanged(SessionImplementor session, Object entity, EntityEntry entry,
+      @Nullable Object[] loadedState) {
+    if (entry.getStatus() == Status.DELETED) {
+      // Its deletion was never flushed, and was dropped with the pending actions
+      session.getPersistenceContextInternal().setEntryStatus(entry, Status.MANAGED);
+      return true;
+    }
+    if (entry.getLoadedState() != loadedState) {
+      // A flush replaces the loaded state
+      return true;
+    }
+    if (loadedState == null) {
+      // Read-only entities are not dirty checked
+      return false;
+    }
+    EntityPersister persister = entry.getPersister();
+    return persister.findDirty(persister.getPropertyValues(entity), loadedState, entity, session)
+        != null;
+  }
+
+  /**
+   * Detaches every entity the persistence contexts bound to the current transaction hold, so that
+   * they don't grow with the number of rows a stream has visited. Pending changes are flushed
+   * first, unless the transaction is read-only.
+   */
+  static void detachAll() {
+    boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+      if (resource instanceof EntityManagerHolder entityManagerHolder) {
+        EntityManager entityManager = entityManagerHolder.getEntityManager();
+        if (!readOnly) {
+          entityManager.flush();
+        }
+        entityManager.clear();
+      }
+    }
+  }
+
+  /**
+   * Evicts the cached state and the natural id of every entity the rolled back work touched once
+   * the transaction completes. The eviction runs as a completion process of the session, after the
+   * ones of the rolled back inserts and updates registered when they were flushed, so it follows
+   * their puts in the same completion pass instead of after Spring's synchronizations.
+   */
+  private static void evictFromSecondLevelCacheAfterCompletion(SessionImplementor session,
+      List<Map.Entry<Object, EntityEntry>> entries) {
+    SessionFactoryImplementor sessionFactory = session.getSessionFactory();
+    if (entries.isEmpty()
+        || !sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled()) {
+      return;
+    }
+    List<Evicted> evicted = new ArrayList<>(entries.size());
+    for (Map.Entry<Object, EntityEntry> entry : entries) {
+      EntityPersister persister = entry.getValue().getPersister();
+      if (!persister.canWriteToCache()) {
+        continue;
+      }
+      Object naturalId = persister.hasNaturalIdCache()
+          ? persister.getNaturalIdMapping().extractNaturalIdFromEntity(entry.getKey())
+          : null;
+      evicted.add(new Evicted(persister, entry.getValue().getId(), naturalId));
+    }
+    if (evicted.isEmpty()) {
+      return;
+    }
+    AfterTransactionCompletionProcess eviction = (success, completedSession) -> {
+      if (!success) {
+        // Nothing of the transaction was put
+        return;
+      }
+      Cache cache = sessionFactory.getCache();
+      for (Evicted entity : evicted) {
+        cache.evictEntityData(entity.persister().getEntityName(), entity.id());
+        if (entity.naturalId() != null) {
+          NaturalIdDataAccess naturalIds = entity.persister().getNaturalIdMapping()
+              .getCacheAccess();
+          naturalIds.evict(naturalIds.generateCacheKey(entity.naturalId(),
+              entity.persister().getRootEntityDescriptor().getEntityPersister(),
+              completedSession));
+        }
+      }
+    };
+    session.getActionQueue().registerProcess(eviction);
+  }
+
+  /**
+   * An entity whose cached state is evicted.
+   *
+   * @param persister the persister of the entity
+   * @param id        the id of the entity
+   * @param naturalId the natural id of the entity as the rolled back work left it, or null if its
+   *                  natural ids are not cached
+   */
+  private record Evicted(EntityPersister persister, Object id, @Nullable Object naturalId) {
+
+  }
+
+  /**
+   * The entities the persistence contexts held before a unit of work ran, keyed by identity.
+   *
+   * @param loadedStates the state every entity was loaded or last flushed with, by session
+   */
+  record Snapshot(Map<SessionImplementor, Map<Object, Object[]>> loadedStates) {
+
+  }
+}
@@ -0,0 +1,86 @@
+package com.custom.transaction;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.lang.Nullable;
+
+/**
+ * The resolved {@link RetryableTransaction} of a method.
+ *
+ * @param maxAttempts          the maximum number of attempts, including the first one
+ * @param initialBackoffMillis the upper bound of the delay before the first retry
+ * @param maxBackoffMillis     the upper bound of the delay before any retry
+ * @param multiplier           the factor the upper bound grows by after every attempt
+ * @param retryOn              the exceptions that are retried
+ */
+record RetryPolicy(
+    int maxAttempts,
+    long initialBackoffMillis,
+    long maxBackoffMillis,
+    double multiplier,
+    Class<? extends Throwable>[] retryOn) {
+
+  /**
+   * Resolves the retry policy of a method from its {@link RetryableTransaction}, or the one of its
+   * target class.
+   *
+   * @param method      the Method being invoked
+   * @param targetClass the target class that we're invoking the method on
+   * @return the retry policy, or null if the method is not retryable
+   */
+  @Nullable
+  static RetryPolicy of(Method method, @Nullable Class<?> targetClass) {
+    Method specificMethod = AopUtils.getMostSpecificMethod(method, targetClass);
+    RetryableTransaction retryable = AnnotatedElementUtils.findMergedAnnotation(specificMethod,
+        RetryableTransaction.class);
+    if (retryable == null) {
+      retryable = AnnotatedElementUtils.findMergedAnnotation(
+          targetClass != null ? targetClass : method.getDeclaringClass(),
+          RetryableTransaction.class);
+    }
+    if (retryable == null || retryable.maxAttempts() <= 1) {
+      return null;
+    }
+    return new RetryPolicy(retryable.maxAttempts(), Math.max(retryable.initialBackoffMillis(), 0),
+        Math.max(retryable.maxBackoffMillis(), 0), Math.max(retryable.multiplier(), 1.0),
+        retryable.retryOn());
+  }
+
+  /**
+   * Whether the failure, or any of its causes, is one of the retried exceptions. The suppressed
+   * exceptions are searched as well, since a failure that rolled the transaction back is suppressed
+   * by the failure of the rollback itself, e.g. when the pool has already evicted a connection
+   * that timed out.
+   */
+  boolean isRetryable(Throwable failure) {
+    for (Throwable cause = failure; cause != null;
+        cause = (cause.getCause() != cause ? cause.getCause() : null)) {
+      for (Class<? extends Throwable> retryable : retryOn) {
+        if (retryable.isInstance(cause)) {
+          return true;
+        }
+      }
+      for (Throwable suppressed : cause.getSuppressed()) {
+        if (suppressed != failure && isRetryable(suppressed)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns a full jitter delay to wait before the next attempt.
+   *
+   * @param attempt the attempt that has just failed, starting at 1
+   * @return the delay in milliseconds
+   */
+  long backoffMillis(int attempt) {
+    double bound = Math.min(maxBackoffMillis,
+        initialBackoffMillis * Math.pow(multiplier, attempt - 1));
+    long upperBound = (long) bound;
+    return upperBound > 0 ? ThreadLocalRandom.current().nextLong(upperBound + 1) : 0;
+  }
+}
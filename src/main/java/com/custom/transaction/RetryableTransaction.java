@@ -0,0 +1,61 @@
+package com.custom.transaction;
+
+import jakarta.persistence.OptimisticLockException;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.sql.SQLTransientException;
+import org.springframework.dao.TransientDataAccessException;
+
+/**
+ * Marks a {@code @Transactional} method returning a Try, or every such method of a class, to be
+ * re-run by {@link CustomTransactionInterceptor} when it fails with a transient exception, such as
+ * an optimistic locking failure, a deadlock, a lock timeout or a serialization failure.
+ *
+ * <p>Every attempt runs the whole transaction again: begin, method invocation and commit. The
+ * attempts are separated by a full jitter exponential backoff, i.e. a random delay between zero
+ * and {@code min(maxBackoffMillis, initialBackoffMillis * multiplier^(attempt - 1))}.
+ *
+ * <p>A failure is only retried if the method owns the outer transaction, i.e. there is no actual
+ * transaction active when the method is invoked or its propagation is
+ * {@code REQUIRES_NEW}. A method participating in the transaction of its caller cannot re-run it,
+ * so the failure is returned to the caller as is.
+ *
+ * <p>The annotation is ignored on methods that do not return a Try.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface RetryableTransaction {
+
+  /**
+   * The maximum number of attempts, including the first one.
+   */
+  int maxAttempts() default 3;
+
+  /**
+   * The upper bound of the delay before the first retry, in milliseconds.
+   */
+  long initialBackoffMillis() default 20;
+
+  /**
+   * The upper bound of the delay before any retry, in milliseconds.
+   */
+  long maxBackoffMillis() default 1000;
+
+  /**
+   * The factor the upper bound of the delay grows by after every attempt.
+   */
+  double multiplier() default 2.0;
+
+  /**
+   * The exceptions that are retried. A failure is retried if it, or any of its causes, is an
+   * instance of one of them.
+   */
+  Class<? extends Throwable>[] retryOn() default {TransientDataAccessException.class,
+      SQLTransientException.class, OptimisticLockException.class};
+}
@@ -0,0 +1,146 @@
+package com.custom.transaction;
+
+import com.custom.transaction.metrics.TransactionOutcome;
+import com.soumakis.control.Try;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.SavepointManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+/**
+ * Runs the items of a bulk operation each under a savepoint of its own within the current
+ * transaction, so that a failed item only rolls back its own changes instead of the whole
+ * transaction.
+ *
+ * <pre>{@code
+ * @Transactional(noRollbackFor = DuplicateBookException.class)
+ * public Try<List<Try<Long>>> importBooks(List<BookEntity> books) {
+ *   return Try.of(() -> SavepointBatch.run(books, book -> Try.of(() -> save(book))));
+ * }
+ * }</pre>
+ *
+ * <p>An item fails when its action returns a Try#Failure or throws. The failure is matched against
+ * the rollback rules of the transactional method that began or joined the current transaction, so
+ * {@code rollbackFor} and {@code noRollbackFor} apply per item: a failure the rules roll back on
+ * rolls back to the savepoint of the item, any other failure keeps its changes. The pending changes
+ * of the caller are flushed before the first savepoint, so that no item can lose them, and each
+ * item is flushed before the next one starts, so that its constraint violations surface while its
+ * savepoint can still be rolled back to. A rolled back item only discards the entities it brought
+ * into the persistence context or changed; the entities the caller loaded stay managed.
+ *
+ * <p>Some failures cannot be undone by a savepoint. Hibernate marks its transaction rollback-only
+ * when a flush fails, so a constraint violation detected by the database loses the whole
+ * transaction and {@link #run} throws an {@link UnexpectedRollbackException}. Items should check
+ * such constraints themselves, e.g. look up a natural id before persisting.
+ */
+public final class SavepointBatch {
+
+  private static final TransactionAttribute DEFAULT_ROLLBACK_RULES =
+      new DefaultTransactionAttribute();
+
+  private SavepointBatch() {
+  }
+
+  /**
+   * Runs the action on every item, each under a savepoint of the current transaction.
+   *
+   * @param items  the items of the batch
+   * @param action the action run on each item
+   * @param <T>    the type of the items
+   * @param <R>    the type of the results
+   * @return the Try of every item, in the order of the items
+   * @throws org.springframework.transaction.NoTransactionException if no transaction is active
+   * @throws UnexpectedRollbackException                             if the transaction can no
+   *                                                                 longer commit after a failed
+   *                                                                 item
+   */
+  @SuppressWarnings("unchecked")
+  public static <T, R> List<Try<R>> run(Iterable<? extends T> items,
+      Function<? super T, Try<R>> action) {
+    TransactionStatus status = TransactionAspectSupport.currentTransactionStatus();
+    TransactionAttribute transactionAttribute = Objects.requireNonNullElse(
+        CustomTransactionInterceptor.currentTransactionAttribute(), DEFAULT_ROLLBACK_RULES);
+    SavepointManager savepointManager = ConnectionSavepointManager.forCurrentTransaction(status);
+    List<Try<R>> results = new ArrayList<>();
+    Object[] result = new Object[1];
+    for (T item : items) {
+      runUnderSavepoint(transactionAttribute, status, savepointManager,
+          () -> Objects.requireNonNull(action.apply(item), "action returned null"), result, 0);
+      results.add((Try<R>) result[0]);
+    }
+    return results;
+  }
+
+  /**
+   * Runs a unit of work under a savepoint of the current transaction, and flushes it. The pending
+   * changes of the transaction are flushed before the savepoint is created, so that they are not
+   * rolled back with the work. A failure the transaction attribute rolls back on rolls back to the
+   * savepoint and discards what the failed work left in the persistence contexts of the
+   * transaction.
+   *
+   * @param transactionAttribute the rollback rules
+   * @param status               the status of the current transaction
+   * @param savepointManager     the savepoint manager of the current transaction
+   * @param work                 the unit of work
+   * @param results              receives the value of the work, or a Try#Failure if it threw
+   * @param index                the index of the value in the results
+   * @return the outcome of the work, final once the transaction has committed
+   * @throws UnexpectedRollbackException if the transaction has been marked rollback-only
+   */
+  static TransactionOutcome runUnderSavepoint(TransactionAttribute transactionAttribute,
+      TransactionStatus status, SavepointManager savepointManager, Work work, Object[] results,
+      int index) {
+    status.flush();
+    PersistenceContexts.Snapshot before = PersistenceContexts.snapshot();
+    Object savepoint = savepointManager.createSavepoint();
+    Throwable failure;
+    boolean thrown = false;
+    try {
+      Object retVal = work.run();
+      status.flush();
+      results[index] = retVal;
+      if (!(retVal instanceof Try<?> result) || !result.isFailure()) {
+        savepointManager.releaseSavepoint(savepoint);
+        return TransactionOutcome.COMMIT;
+      }
+      Throwable[] tryFailure = new Throwable[1];
+      result.onFailure(ex -> tryFailure[0] = ex);
+      failure = tryFailure[0];
+    } catch (Throwable ex) {
+      results[index] = Try.failure(ex);
+      failure = ex;
+      thrown = true;
+    }
+
+    if (status.isRollbackOnly()) {
+      // E.g. Hibernate marks its transaction rollback-only when a flush fails, and no savepoint
+      // can undo that, so the transaction is lost
+      throw new UnexpectedRollbackException(
+          "Transaction has been marked as rollback-only by a failed unit of work", failure);
+    }
+    if (transactionAttribute.rollbackOn(failure)) {
+      savepointManager.rollbackToSavepoint(savepoint);
+      PersistenceContexts.discardAfterSavepointRollback(before);
+      return thrown ? TransactionOutcome.EXCEPTION_ROLLBACK : TransactionOutcome.FAILURE_ROLLBACK;
+    }
+    savepointManager.releaseSavepoint(savepoint);
+    return TransactionOutcome.NO_ROLLBACK_COMMIT;
+  }
+
+  /**
+   * A unit of work run under a savepoint.
+   */
+  @FunctionalInterface
+  interface Work {
+
+    @Nullable
+    Object run() throws Throwable;
+  }
+}
@@ -0,0 +1,52 @@
+package com.custom.transaction;
+
+import java.io.Serial;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import org.springframework.transaction.TransactionSystemException;
+
+/**
+ * Reports a multi-shard transaction whose shards did not all commit, with the outcome of every
+ * shard. The shards reported as {@link Outcome#COMMITTED} keep their changes, which the application
+ * has to reconcile.
+ */
+public class ShardCommitException extends TransactionSystemException {
+
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  private final Map<Integer, Outcome> outcomes;
+
+  public ShardCommitException(Map<Integer, Outcome> outcomes, Throwable cause) {
+    super("Multi-shard commit did not complete: " + outcomes, cause);
+    this.outcomes = Collections.unmodifiableMap(new TreeMap<>(outcomes));
+  }
+
+  /**
+   * Returns the outcome of every shard of the transaction.
+   *
+   * @return the outcomes keyed and sorted by shard index
+   */
+  public Map<Integer, Outcome> getOutcomes() {
+    return outcomes;
+  }
+
+  /**
+   * How the transaction of a shard completed.
+   */
+  public enum Outcome {
+    /**
+     * The transaction of the shard committed.
+     */
+    COMMITTED,
+    /**
+     * The commit of the transaction of the shard failed.
+     */
+    COMMIT_FAILED,
+    /**
+     * The transaction of the shard was rolled back after the commit of another shard failed.
+     */
+    ROLLED_BACK
+  }
+}
@@ -0,0 +1,31 @@
+package com.custom.transaction;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the parameter of a {@code @Transactional} method whose value picks the shard the
+ * transaction runs on, when {@link CustomTransactionInterceptor} has
+ * {@link com.custom.transaction.sharding.Shards}. The transaction begins on the shard of the key,
+ * through the transaction manager of that shard, and a call with a null key runs on the
+ * transaction manager of the application instead.
+ *
+ * <p>A method returning a Try may take a {@code Collection} of keys instead. Its invocation begins
+ * a transaction on every shard the keys map to, and once the method has returned a successful Try
+ * they commit one after the other. This is a best-effort commit, not a two-phase one. If a commit
+ * fails, the shards that have not committed yet are rolled back, and the method returns a
+ * Try#Failure with a {@link ShardCommitException} reporting the outcome of every shard. A method
+ * returning its value as a {@link ShardedResult} gets the outcome of every shard on success too.
+ * If the transaction of any shard is rollback-only, every shard rolls back. The {@link AfterCommit}
+ * continuations registered by the method are dispatched once every shard has committed, and
+ * dropped if any shard doesn't.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ShardKey {
+
+}
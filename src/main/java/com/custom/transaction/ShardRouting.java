@@ -0,0 +1,69 @@
+package com.custom.transaction;
+
+import com.custom.transaction.sharding.Shards;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.lang.Nullable;
+
+/**
+ * The shards a method with a {@link ShardKey} parameter is routed to, with the invocation plan of
+ * the method on every shard.
+ *
+ * @param keyIndex   the index of the {@link ShardKey} parameter
+ * @param shards     the shards
+ * @param shardPlans the invocation plan of the method on every shard, in shard order
+ */
+record ShardRouting(int keyIndex, Shards shards, List<InvocationPlan> shardPlans) {
+
+  /**
+   * Finds the {@link ShardKey} parameter of a method.
+   *
+   * @param method      the Method being invoked
+   * @param targetClass the target class that we're invoking the method on
+   * @return the index of the parameter, or -1 if the method has none
+   */
+  static int keyIndex(Method method, @Nullable Class<?> targetClass) {
+    Parameter[] parameters = AopUtils.getMostSpecificMethod(method, targetClass).getParameters();
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i].isAnnotationPresent(ShardKey.class)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the shard key of an invocation.
+   *
+   * @param arguments the arguments of the invocation
+   * @return the key, a collection of keys, or null if the invocation has none
+   */
+  @Nullable
+  Object key(Object[] arguments) {
+    return arguments[keyIndex];
+  }
+
+  /**
+   * Returns the invocation plan of the method on the shard of a key.
+   */
+  InvocationPlan planFor(Object key) {
+    return shardPlans.get(shards.shardOf(key));
+  }
+
+  /**
+   * Returns the shards a collection of keys maps to, in shard order.
+   */
+  TreeSet<Integer> shardsOf(Collection<?> keys) {
+    TreeSet<Integer> shardIndexes = new TreeSet<>();
+    for (Object key : keys) {
+      if (key != null) {
+        shardIndexes.add(shards.shardOf(key));
+      }
+    }
+    return shardIndexes;
+  }
+}
@@ -0,0 +1,70 @@
+package com.custom.transaction;
+
+import com.custom.transaction.ShardCommitException.Outcome;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The value of a Try method with {@link ShardKey}s, together with the outcome of the transaction
+ * of every shard it ran on. The method returns its value wrapped with {@link #of}, and once the
+ * transactions of the shards have all committed, {@link CustomTransactionInterceptor} returns it
+ * with their outcomes:
+ * <pre>{@code
+ * return Try.of(() -> ShardedResult.of(insertAll(isbns)));
+ * }</pre>
+ *
+ * <p>A commit that fails is reported by a {@link ShardCommitException} instead, with the same
+ * outcomes. A call whose keys map to no shard runs on the transaction manager of the application,
+ * and its result has no outcomes, as has the result of a call on a single shard that joined a
+ * transaction of its caller.
+ *
+ * @param <T> the type of the value
+ */
+public final class ShardedResult<T> {
+
+  private final T value;
+
+  private final Map<Integer, Outcome> outcomes;
+
+  private ShardedResult(T value, Map<Integer, Outcome> outcomes) {
+    this.value = value;
+    this.outcomes = outcomes;
+  }
+
+  /**
+   * Wraps the value a method returns, before its shards have committed.
+   *
+   * @param value the value of the method
+   * @param <T>   the type of the value
+   * @return the result, with no outcomes yet
+   */
+  public static <T> ShardedResult<T> of(T value) {
+    return new ShardedResult<>(value, Map.of());
+  }
+
+  /**
+   * Returns the result with the outcome of every shard, once they have committed.
+   */
+  ShardedResult<T> withOutcomes(Map<Integer, Outcome> outcomes) {
+    return new ShardedResult<>(value, Collections.unmodifiableMap(new TreeMap<>(outcomes)));
+  }
+
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the outcome of every shard the method ran on.
+   *
+   * @return the outcomes keyed and sorted by shard index
+   */
+  public Map<Integer, Outcome> getOutcomes() {
+    return outcomes;
+  }
+
+  @Override
+  public String toString() {
+    return "ShardedResult{value=" + value + ", outcomes=" + outcomes + "}";
+  }
+}
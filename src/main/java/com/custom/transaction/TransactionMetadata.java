@@ -0,0 +1,101 @@
+package com.custom.transaction;
+
+import com.custom.transaction.InvocationPlan.ReturnKind;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.interceptor.RollbackRuleAttribute;
+import org.springframework.transaction.interceptor.RuleBasedTransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+
+/**
+ * The transaction metadata of the {@code @Transactional} bean methods of an application, computed
+ * ahead of time by {@link TransactionMetadataAotProcessor}. For every method it holds the
+ * transaction attribute, the shape of the return type and the joinpoint identification, so that
+ * {@link CustomTransactionInterceptor} builds the invocation plan of the method without resolving
+ * annotations or generic return types.
+ *
+ * <p>An application running with Spring AOT registers it as the {@value #BEAN_NAME} bean. Methods
+ * it does not know are resolved as usual.
+ */
+public final class TransactionMetadata {
+
+  /**
+   * The name of the bean the generated code registers the metadata as.
+   */
+  public static final String BEAN_NAME = "transactionMetadata";
+
+  private final Map<String, Joinpoint> joinpoints = new HashMap<>(64);
+
+  /**
+   * Registers the metadata of a method. Called by the generated code.
+   *
+   * @param key                     the key of the method, see {@link #key}
+   * @param joinpointIdentification the identification of the joinpoint
+   * @param returnKind              the shape of the return type of the method
+   * @param transactionAttribute    the transaction attribute of the method
+   */
+  void register(String key, String joinpointIdentification, ReturnKind returnKind,
+      TransactionAttribute transactionAttribute) {
+    this.joinpoints.put(key,
+        new Joinpoint(joinpointIdentification, returnKind, transactionAttribute));
+  }
+
+  @Nullable
+  Joinpoint get(Method method, @Nullable Class<?> targetClass) {
+    return (targetClass != null ? this.joinpoints.get(key(method, targetClass)) : null);
+  }
+
+  public int size() {
+    return joinpoints.size();
+  }
+
+  /**
+   * The key of a method invoked on a target class, made of the names of the target class, the
+   * method and its parameter types, so that it is the same whichever class declares the method.
+   */
+  static String key(Method method, Class<?> targetClass) {
+    StringBuilder key = new StringBuilder(targetClass.getName()).append('#')
+        .append(method.getName()).append('(');
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (i > 0) {
+        key.append(',');
+      }
+      key.append(parameterTypes[i].getName());
+    }
+    return key.append(')').toString();
+  }
+
+  /**
+   * Builds the transaction attribute of a method as the annotation parser did. Called by the
+   * generated code.
+   */
+  static RuleBasedTransactionAttribute attribute(String descriptor, int propagationBehavior,
+      int isolationLevel, int timeout, boolean readOnly, @Nullable String qualifier,
+      List<String> labels, List<RollbackRuleAttribute> rollbackRules) {
+    RuleBasedTransactionAttribute attribute = new RuleBasedTransactionAttribute(
+        propagationBehavior, rollbackRules);
+    attribute.setDescriptor(descriptor);
+    attribute.setIsolationLevel(isolationLevel);
+    attribute.setTimeout(timeout);
+    attribute.setReadOnly(readOnly);
+    attribute.setQualifier(qualifier);
+    attribute.setLabels(labels);
+    return attribute;
+  }
+
+  /**
+   * The precomputed metadata of a method.
+   *
+   * @param joinpointIdentification the identification of the joinpoint
+   * @param returnKind              the shape of the return type of the method
+   * @param transactionAttribute    the transaction attribute of the method
+   */
+  record Joinpoint(String joinpointIdentification, ReturnKind returnKind,
+                   TransactionAttribute transactionAttribute) {
+
+  }
+}
@@ -0,0 +1,192 @@
+package com.custom.transaction;
+
+import com.custom.transaction.InvocationPlan.ReturnKind;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.lang.model.element.Modifier;
+import org.springframework.aot.generate.GeneratedClass;
+import org.springframework.aot.generate.GeneratedMethod;
+import org.springframework.aot.generate.GenerationContext;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotContribution;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotProcessor;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationCode;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.javapoet.CodeBlock;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.NoRollbackRuleAttribute;
+import org.springframework.transaction.interceptor.RollbackRuleAttribute;
+import org.springframework.transaction.interceptor.RuleBasedTransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Computes the {@link TransactionMetadata} of the application at build time, when Spring AOT
+ * processes the bean factory, and contributes code that registers it as a bean on startup.
+ *
+ * <p>The transaction attributes are resolved from the {@code @Transactional} annotations of the
+ * public methods of every concrete bean class, as a default
+ * {@link AnnotationTransactionAttributeSource} resolves them at runtime.
+ * Methods whose attribute the generated code could not reproduce faithfully are left out and are
+ * resolved at runtime: attributes of another type, and attributes holding placeholders, which are
+ * only resolved against the runtime environment.
+ */
+class TransactionMetadataAotProcessor implements BeanFactoryInitializationAotProcessor {
+
+  @Override
+  @Nullable
+  public BeanFactoryInitializationAotContribution processAheadOfTime(
+      ConfigurableListableBeanFactory beanFactory) {
+    Map<String, Precomputed> precomputed = precompute(beanFactory);
+    return precomputed.isEmpty() ? null : new Contribution(precomputed);
+  }
+
+  private static Map<String, Precomputed> precompute(ConfigurableListableBeanFactory beanFactory) {
+    AnnotationTransactionAttributeSource attributeSource =
+        new AnnotationTransactionAttributeSource();
+    Map<String, Precomputed> precomputed = new LinkedHashMap<>();
+    for (String beanName : beanFactory.getBeanDefinitionNames()) {
+      Class<?> beanType = beanFactory.getType(beanName, false);
+      if (beanType == null) {
+        continue;
+      }
+      Class<?> targetClass = ClassUtils.getUserClass(beanType);
+      if (targetClass.isInterface() || !attributeSource.isCandidateClass(targetClass)) {
+        continue;
+      }
+      for (Method method : ReflectionUtils.getUniqueDeclaredMethods(targetClass,
+          ReflectionUtils.USER_DECLARED_METHODS)) {
+        TransactionAttribute attribute = attributeSource.getTransactionAttribute(method,
+            targetClass);
+        if (attribute instanceof RuleBasedTransactionAttribute ruleBasedAttribute
+            && isReproducible(ruleBasedAttribute)) {
+          precomputed.put(TransactionMetadata.key(method, targetClass),
+              new Precomputed(targetClass, ReturnKind.of(method), ruleBasedAttribute));
+        }
+      }
+    }
+    return precomputed;
+  }
+
+  private static boolean isReproducible(RuleBasedTransactionAttribute attribute) {
+    if (attribute.getDescriptor() == null || StringUtils.hasLength(attribute.getTimeoutString())
+        || hasPlaceholder(attribute.getQualifier())) {
+      return false;
+    }
+    for (String label : attribute.getLabels()) {
+      if (hasPlaceholder(label)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasPlaceholder(@Nullable String value) {
+    return value != null && value.contains("${");
+  }
+
+  private record Precomputed(Class<?> targetClass, ReturnKind returnKind,
+                             RuleBasedTransactionAttribute attribute) {
+
+  }
+
+  private static final class Contribution implements BeanFactoryInitializationAotContribution {
+
+    private final Map<String, Precomputed> precomputed;
+
+    private Contribution(Map<String, Precomputed> precomputed) {
+      this.precomputed = precomputed;
+    }
+
+    @Override
+    public void applyTo(GenerationContext generationContext,
+        BeanFactoryInitializationCode beanFactoryInitializationCode) {
+      GeneratedClass generatedClass = generationContext.getGeneratedClasses()
+          .addForFeatureComponent("TransactionMetadata", CustomTransactionInterceptor.class,
+              type -> type.addJavadoc("Registers the transaction metadata computed ahead of time.")
+                  .addModifiers(Modifier.PUBLIC));
+      GeneratedMethod generatedMethod = generatedClass.getMethods().add(
+          "registerTransactionMetadata", method -> {
+            method.addJavadoc("Registers the {@link $T} bean.", TransactionMetadata.class);
+            method.addModifiers(Modifier.PUBLIC, Modifier.STATIC);
+            method.addParameter(DefaultListableBeanFactory.class, "beanFactory");
+            method.addStatement("$T metadata = new $T()", TransactionMetadata.class,
+                TransactionMetadata.class);
+            this.precomputed.forEach((key, value) -> method.addStatement(
+                "metadata.register($S, $S, $T.$L, $L)", key, value.attribute().getDescriptor(),
+                ReturnKind.class, value.returnKind().name(), attributeCode(value.attribute())));
+            method.addStatement("beanFactory.registerSingleton($S, metadata)",
+                TransactionMetadata.BEAN_NAME);
+          });
+      beanFactoryInitializationCode.addInitializer(generatedMethod.toMethodReference());
+      // The interceptor still reads the retry, group commit and bulkhead annotations of the methods
+      for (Precomputed value : this.precomputed.values()) {
+        generationContext.getRuntimeHints().reflection().registerType(value.targetClass(),
+            MemberCategory.INTROSPECT_DECLARED_METHODS);
+      }
+    }
+
+    private static CodeBlock attributeCode(RuleBasedTransactionAttribute attribute) {
+      return CodeBlock.of("$T.attribute($S, $L, $L, $L, $L, $S, $L, $L)",
+          TransactionMetadata.class, attribute.getDescriptor(),
+          attribute.getPropagationBehavior(), attribute.getIsolationLevel(),
+          attribute.getTimeout(), attribute.isReadOnly(), attribute.getQualifier(),
+          labelsCode(attribute.getLabels()), rollbackRulesCode(attribute.getRollbackRules()));
+    }
+
+    private static CodeBlock labelsCode(Collection<String> labels) {
+      List<CodeBlock> elements = new ArrayList<>(labels.size());
+      for (String label : labels) {
+        elements.add(CodeBlock.of("$S", label));
+      }
+      return CodeBlock.of("$T.of($L)", List.class, CodeBlock.join(elements, ", "));
+    }
+
+    /**
+     * The rollback rules, type based when the exception type is on the build classpath. A rule only
+     * exposes its pattern, which is the fully qualified name of its type for a type based rule, so
+     * a name based rule naming an existing type becomes type based. Both match the type and its
+     * subclasses alike.
+     */
+    private static CodeBlock rollbackRulesCode(List<RollbackRuleAttribute> rollbackRules) {
+      List<CodeBlock> elements = new ArrayList<>(rollbackRules.size());
+      for (RollbackRuleAttribute rule : rollbackRules) {
+        Class<?> ruleType = (rule instanceof NoRollbackRuleAttribute)
+            ? NoRollbackRuleAttribute.class : RollbackRuleAttribute.class;
+        Class<?> exceptionType = resolveExceptionType(rule.getExceptionName());
+        elements.add(exceptionType != null
+            ? CodeBlock.of("new $T($T.class)", ruleType, exceptionType)
+            : CodeBlock.of("new $T($S)", ruleType, rule.getExceptionName()));
+      }
+      return CodeBlock.of("$T.of($L)", List.class, CodeBlock.join(elements, ", "));
+    }
+
+    @Nullable
+    private static Class<?> resolveExceptionType(String exceptionName) {
+      if (!ClassUtils.isPresent(exceptionName, TransactionMetadataAotProcessor.class
+          .getClassLoader())) {
+        return null;
+      }
+      Class<?> type = ClassUtils.resolveClassName(exceptionName,
+          TransactionMetadataAotProcessor.class.getClassLoader());
+      return (Throwable.class.isAssignableFrom(type) && isPublic(type)) ? type : null;
+    }
+
+    private static boolean isPublic(Class<?> type) {
+      for (Class<?> current = type; current != null; current = current.getEnclosingClass()) {
+        if (!java.lang.reflect.Modifier.isPublic(current.getModifiers())) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
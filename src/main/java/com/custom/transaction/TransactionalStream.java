@@ -0,0 +1,380 @@
+package com.custom.transaction;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import java.lang.ref.Cleaner;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.lang.Nullable;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The stream returned within the Try of a streaming transaction, which completes the transaction
+ * once it has been consumed or closed, whichever comes first. The transaction commits unless an
+ * element failed to be read or processed, in which case it completes with the failure according
+ * to its rollback rules and the failure is rethrown.
+ *
+ * <p>The stream must be consumed on the thread the transaction began on, which its resources are
+ * bound to. It does not split, so even a parallel pipeline reads the rows one by one. Every
+ * {@code detachInterval} elements, the entities the persistence contexts hold are detached.
+ *
+ * <p>While the stream is open, transactional methods called from the pipeline, while it processes
+ * an element, join its transaction. Any other transaction about to begin on the thread would
+ * silently join it as well, so {@link #rollBackOpen} rolls the streaming transaction back instead
+ * and fails the new one. A stream that becomes unreachable before it has been consumed or closed
+ * releases its transaction from the thread of a {@link Cleaner}: the transaction is rolled back
+ * and its entity managers or connections are closed, without going through the transaction
+ * manager, since the synchronizations of the transaction are bound to the thread it began on. The
+ * stale resources left bound to that thread are unbound by {@link #unbindReleased} on its next
+ * call to a transactional method, whatever the method does. Until then, code of that thread that
+ * reaches them without going through the interceptor, like a {@code JdbcTemplate} called directly,
+ * sees a transaction that is still active, on an entity manager or a connection that is closed.
+ *
+ * @param <T> the type of the elements of the stream
+ */
+final class TransactionalStream<T> implements Spliterator<T> {
+
+  private static final Log logger = LogFactory.getLog(TransactionalStream.class);
+
+  private static final Cleaner CLEANER = Cleaner.create();
+
+  // The innermost streaming transaction still open on the current thread
+  private static final ThreadLocal<OpenTransaction> OPEN = new ThreadLocal<>();
+
+  private final Spliterator<T> spliterator;
+
+  private final int detachInterval;
+
+  private final OpenTransaction transaction;
+
+  private long visited;
+
+  private TransactionalStream(Stream<T> source, int detachInterval,
+      OpenTransaction transaction) {
+    this.spliterator = source.spliterator();
+    this.detachInterval = detachInterval;
+    this.transaction = transaction;
+  }
+
+  /**
+   * Wraps the stream of a streaming transaction.
+   *
+   * @param source         the stream returned by the method
+   * @param detachInterval the number of elements after which the persistence contexts are
+   *                       detached, or 0 to never detach them
+   * @param completion     completes the transaction
+   * @param <T>            the type of the elements of the stream
+   * @return the stream that completes the transaction
+   */
+  static <T> Stream<T> of(Stream<T> source, int detachInterval, Completion completion) {
+    OpenTransaction transaction = new OpenTransaction(source, completion,
+        Map.copyOf(TransactionSynchronizationManager.getResourceMap()), OPEN.get());
+    OPEN.set(transaction);
+    TransactionalStream<T> stream = new TransactionalStream<>(source, detachInterval, transaction);
+    // The transaction, not the stream, is reachable from the action
+    CLEANER.register(stream, transaction::release);
+    return StreamSupport.stream(stream, false).onClose(() -> transaction.complete(null));
+  }
+
+  /**
+   * Whether a streaming transaction may still be open on the current thread.
+   */
+  static boolean isOpen() {
+    return OPEN.get() != null;
+  }
+
+  /**
+   * Unbinds the resources of the streaming transactions of the current thread the cleaner released
+   * meanwhile, which are still bound to it, before the thread calls another transactional method.
+   */
+  static void unbindReleased() {
+    // Only the cleaner completes a transaction without unlinking it
+    for (OpenTransaction open = OPEN.get(); open != null && open.completed.get();
+        open = OPEN.get()) {
+      open.unbindStaleResources();
+      setOpen(open.previous);
+    }
+  }
+
+  /**
+   * Rolls back the streaming transaction left open on the current thread, unless the thread is
+   * processing an element of its stream, before another transaction begins that would join it.
+   * Unbinds the resources of the streaming transactions the cleaner released meanwhile.
+   *
+   * @param joinpointIdentification the method about to begin a transaction
+   * @return the exception to fail the method with, or null if no streaming transaction was open
+   */
+  @Nullable
+  static IllegalTransactionStateException rollBackOpen(String joinpointIdentification) {
+    for (OpenTransaction open = OPEN.get(); open != null; open = OPEN.get()) {
+      if (open.completed.get()) {
+        // Only the cleaner completes a transaction without unlinking it
+        open.unbindStaleResources();
+        setOpen(open.previous);
+        continue;
+      }
+      if (open.advancing > 0) {
+        return null;
+      }
+      IllegalTransactionStateException ex = new IllegalTransactionStateException("Transaction ["
+          + joinpointIdentification + "] cannot begin while the stream of a streaming "
+          + "transaction is open on the same thread; consume or close the stream first");
+      if (open.abort(ex)) {
+        return ex;
+      }
+    }
+    return null;
+  }
+
+  private static void setOpen(@Nullable OpenTransaction open) {
+    if (open == null) {
+      OPEN.remove();
+    } else {
+      OPEN.set(open);
+    }
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (transaction.completed.get()) {
+      if (transaction.abortCause != null) {
+        throw new IllegalTransactionStateException(
+            "Streaming transaction was rolled back before its stream was consumed",
+            transaction.abortCause);
+      }
+      return false;
+    }
+    boolean advanced;
+    transaction.advancing++;
+    try {
+      advanced = spliterator.tryAdvance(action);
+    } catch (RuntimeException | Error ex) {
+      completeAfterThrowing(ex);
+      throw ex;
+    } finally {
+      transaction.advancing--;
+    }
+    if (!advanced) {
+      transaction.complete(null);
+      return false;
+    }
+    if (detachInterval > 0 && ++visited % detachInterval == 0) {
+      PersistenceContexts.detachAll();
+    }
+    return true;
+  }
+
+  @Override
+  @Nullable
+  public Spliterator<T> trySplit() {
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    return transaction.completed.get() ? 0 : spliterator.estimateSize();
+  }
+
+  @Override
+  public int characteristics() {
+    return spliterator.characteristics() & ~(SIZED | SUBSIZED | CONCURRENT);
+  }
+
+  private void completeAfterThrowing(Throwable ex) {
+    try {
+      transaction.complete(ex);
+    } catch (RuntimeException | Error completionFailure) {
+      ex.addSuppressed(completionFailure);
+    }
+  }
+
+  /**
+   * Releases the resources of a transaction from another thread than the one they are bound to:
+   * rolls back and closes its entity managers, or its connections if it has none.
+   */
+  private static void releaseResources(Map<Object, Object> resources) {
+    boolean entityManagers = false;
+    for (Object resource : resources.values()) {
+      if (resource instanceof EntityManagerHolder entityManagerHolder) {
+        entityManagers = true;
+        EntityManager entityManager = entityManagerHolder.getEntityManager();
+        try {
+          EntityTransaction entityTransaction = entityManager.getTransaction();
+          if (entityTransaction.isActive()) {
+            entityTransaction.rollback();
+          }
+        } finally {
+          entityManager.close();
+        }
+      }
+    }
+    if (entityManagers) {
+      // The connections are those of the entity managers
+      return;
+    }
+    for (Object resource : resources.values()) {
+      if (resource instanceof ConnectionHolder connectionHolder
+          && connectionHolder.hasConnection()) {
+        try (Connection connection = connectionHolder.getConnection()) {
+          connection.rollback();
+        } catch (SQLException ex) {
+          logger.error("Could not release the connection of an abandoned stream", ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * How the transaction of a stream ends.
+   */
+  enum Ending {
+
+    /**
+     * The stream has been consumed or closed, or reading or processing an element failed.
+     */
+    CONSUMED,
+    /**
+     * Another transaction is about to begin on the thread while the stream is open, so the
+     * transaction must roll back.
+     */
+    ABORTED,
+    /**
+     * The stream became unreachable while open, and the transaction has been rolled back and its
+     * resources released already, on another thread.
+     */
+    ABANDONED
+  }
+
+  /**
+   * Completes a streaming transaction.
+   */
+  @FunctionalInterface
+  interface Completion {
+
+    /**
+     * Commits or rolls back the transaction, or records its release once it has been abandoned.
+     *
+     * @param ending  how the transaction ends
+     * @param failure the exception consuming the stream failed with, or the one the transaction is
+     *                aborted with, or null if there is none
+     */
+    void complete(Ending ending, @Nullable Throwable failure);
+  }
+
+  /**
+   * A streaming transaction whose stream may still be read. Everything but its completion is only
+   * accessed from the thread the transaction began on.
+   */
+  private static final class OpenTransaction {
+
+    private final Stream<?> source;
+
+    private final Completion completion;
+
+    private final Map<Object, Object> resources;
+
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    @Nullable
+    private OpenTransaction previous;
+
+    // The number of elements being processed, more than one if the pipeline reenters the stream
+    private int advancing;
+
+    @Nullable
+    private RuntimeException abortCause;
+
+    private OpenTransaction(Stream<?> source, Completion completion,
+        Map<Object, Object> resources, @Nullable OpenTransaction previous) {
+      this.source = source;
+      this.completion = completion;
+      this.resources = resources;
+      this.previous = previous;
+    }
+
+    /**
+     * Closes the source, which releases its cursor, and then completes the transaction, once.
+     */
+    void complete(@Nullable Throwable failure) {
+      if (!completed.compareAndSet(false, true)) {
+        return;
+      }
+      unlink();
+      try {
+        source.close();
+      } finally {
+        completion.complete(Ending.CONSUMED, failure);
+      }
+    }
+
+    /**
+     * Rolls the transaction back, unless the cleaner has released it meanwhile.
+     *
+     * @return whether the transaction has been rolled back
+     */
+    boolean abort(RuntimeException cause) {
+      if (!completed.compareAndSet(false, true)) {
+        return false;
+      }
+      abortCause = cause;
+      unlink();
+      try {
+        source.close();
+      } finally {
+        completion.complete(Ending.ABORTED, cause);
+      }
+      return true;
+    }
+
+    /**
+     * The action of the cleaner, run on its thread once the stream is unreachable.
+     */
+    void release() {
+      if (!completed.compareAndSet(false, true)) {
+        return;
+      }
+      logger.warn("Stream of a streaming transaction became unreachable before it was consumed "
+          + "or closed; rolling the transaction back");
+      try {
+        releaseResources(resources);
+        completion.complete(Ending.ABANDONED, null);
+      } catch (RuntimeException | Error ex) {
+        logger.error("Could not release the transaction of an abandoned stream", ex);
+      }
+    }
+
+    void unbindStaleResources() {
+      for (Object key : resources.keySet()) {
+        TransactionSynchronizationManager.unbindResourceIfPossible(key);
+      }
+      if (TransactionSynchronizationManager.isSynchronizationActive()) {
+        TransactionSynchronizationManager.clear();
+      }
+    }
+
+    private void unlink() {
+      OpenTransaction open = OPEN.get();
+      if (open == this) {
+        setOpen(previous);
+        return;
+      }
+      for (; open != null; open = open.previous) {
+        if (open.previous == this) {
+          open.previous = previous;
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.custom.transaction.datasource;
+
+import com.custom.transaction.jfr.ConnectionAcquisitionEvent;
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Records the time spent waiting for each connection of the target DataSource as a
+ * {@link ConnectionAcquisitionEvent}, while a Java Flight Recorder recording has it enabled. The
+ * check costs a volatile read per connection otherwise.
+ *
+ * <p>Wrapping the connection pool itself, rather than a DataSource further out, keeps the event to
+ * the wait for the pool: a transaction begun on a plain pool records it when it begins, and one
+ * begun on a {@link LazyTransactionDataSource} on its first statement.
+ */
+public class ConnectionAcquisitionDataSource extends DelegatingDataSource implements
+    AutoCloseable {
+
+  public ConnectionAcquisitionDataSource(DataSource targetDataSource) {
+    super(targetDataSource);
+  }
+
+  /**
+   * Wraps the DataSource, unless it records its connection acquisitions already.
+   *
+   * @param dataSource the DataSource
+   * @return a DataSource that records its connection acquisitions
+   */
+  public static DataSource of(DataSource dataSource) {
+    return (dataSource instanceof ConnectionAcquisitionDataSource) ? dataSource
+        : new ConnectionAcquisitionDataSource(dataSource);
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    ConnectionAcquisitionEvent event = ConnectionAcquisitionEvent.beginIfEnabled();
+    Connection connection = obtainTargetDataSource().getConnection();
+    if (event != null) {
+      event.endAndCommit();
+    }
+    return connection;
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    ConnectionAcquisitionEvent event = ConnectionAcquisitionEvent.beginIfEnabled();
+    Connection connection = obtainTargetDataSource().getConnection(username, password);
+    if (event != null) {
+      event.endAndCommit();
+    }
+    return connection;
+  }
+
+  /**
+   * Closes the target DataSource if it can be closed, such as a connection pool, which the bean
+   * factory only sees through this wrapper.
+   */
+  @Override
+  public void close() throws Exception {
+    if (obtainTargetDataSource() instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package com.custom.transaction.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Hands out connections that only acquire a physical connection from the target DataSource when
+ * they first run a statement. Transactions begin and end on them as usual, but a transaction that
+ * never reaches the database, like a Try method failing validation before its first query, never
+ * takes a connection from the pool.
+ *
+ * <p>Every connection handed out acquires at most one physical connection, so the difference
+ * between the two counts is the number of connections, and therefore transactions, that didn't
+ * need the database. Connections that are still open and haven't run a statement yet are included
+ * in it. The difference is therefore not monotonic, and is published as a gauge next to the two
+ * counters it is derived from.
+ *
+ * <p>The time spent waiting for each physical connection is recorded as a
+ * {@link com.custom.transaction.jfr.ConnectionAcquisitionEvent} by the
+ * {@link ConnectionAcquisitionDataSource} the target DataSource is wrapped in, unless it is one
+ * already.
+ */
+public class LazyTransactionDataSource extends LazyConnectionDataSourceProxy implements MeterBinder,
+    AutoCloseable {
+
+  private final LongAdder logicalConnections = new LongAdder();
+
+  private final CountingDataSource countingDataSource;
+
+  private volatile boolean defaultsRead;
+
+  public LazyTransactionDataSource(DataSource targetDataSource) {
+    this(new CountingDataSource(ConnectionAcquisitionDataSource.of(targetDataSource)));
+  }
+
+  private LazyTransactionDataSource(CountingDataSource countingDataSource) {
+    super(countingDataSource);
+    this.countingDataSource = countingDataSource;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    readDefaultConnectionProperties();
+    Connection connection = super.getConnection();
+    logicalConnections.increment();
+    return connection;
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    readDefaultConnectionProperties();
+    Connection connection = super.getConnection(username, password);
+    logicalConnections.increment();
+    return connection;
+  }
+
+  /**
+   * Reads the defaults the lazy connections report before acquiring, with the first connection
+   * handed out rather than on startup, from a connection of the target DataSource that is not
+   * counted as a physical one. Defaults set explicitly are kept.
+   */
+  private void readDefaultConnectionProperties() throws SQLException {
+    if (defaultsRead) {
+      return;
+    }
+    synchronized (this) {
+      if (!defaultsRead) {
+        if (defaultAutoCommit() == null || defaultTransactionIsolation() == null) {
+          try (Connection connection = countingDataSource.target.getConnection()) {
+            checkDefaultConnectionProperties(connection);
+          }
+        }
+        defaultsRead = true;
+      }
+    }
+  }
+
+  /**
+   * The number of connections handed out.
+   *
+   * @return the number of logical connections
+   */
+  public long getLogicalConnectionCount() {
+    return logicalConnections.sum();
+  }
+
+  /**
+   * The number of connections acquired from the target DataSource.
+   *
+   * @return the number of physical connections
+   */
+  public long getPhysicalConnectionCount() {
+    return countingDataSource.physicalConnections.sum();
+  }
+
+  /**
+   * The number of connections handed out that never acquired a physical connection.
+   *
+   * @return the number of unacquired connections
+   */
+  public long getUnacquiredConnectionCount() {
+    return Math.max(0, getLogicalConnectionCount() - getPhysicalConnectionCount());
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("custom.transaction.connections.logical", this,
+            LazyTransactionDataSource::getLogicalConnectionCount)
+        .description("Connections handed out to transactions")
+        .register(registry);
+    Gauge.builder("custom.transaction.connections.unacquired", this,
+            LazyTransactionDataSource::getUnacquiredConnectionCount)
+        .description("Connections handed out to transactions that haven't reached the database")
+        .register(registry);
+    FunctionCounter.builder("custom.transaction.connections.physical", this,
+            LazyTransactionDataSource::getPhysicalConnectionCount)
+        .description("Connections acquired from the target DataSource")
+        .register(registry);
+  }
+
+  /**
+   * Closes the target DataSource if it can be closed, such as a connection pool.
+   */
+  @Override
+  public void close() throws Exception {
+    if (countingDataSource.target instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  /**
+   * Counts the connections the lazy connections acquire from the target DataSource. It is not a
+   * DelegatingDataSource, so that unwrapping the lazy DataSource reaches the target one.
+   */
+  private static final class CountingDataSource implements DataSource {
+
+    private final DataSource target;
+
+    private final LongAdder physicalConnections = new LongAdder();
+
+    private CountingDataSource(DataSource target) {
+      this.target = target;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+      Connection connection = target.getConnection();
+      physicalConnections.increment();
+      return connection;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+      Connection connection = target.getConnection(username, password);
+      physicalConnections.increment();
+      return connection;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+      return target.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+      target.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+      target.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+      return target.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+      return target.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+      return iface.isInstance(target) ? iface.cast(target) : target.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+      return iface.isInstance(target) || target.isWrapperFor(iface);
+    }
+  }
+}
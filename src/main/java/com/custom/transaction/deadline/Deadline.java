@@ -0,0 +1,123 @@
+package com.custom.transaction.deadline;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.springframework.lang.Nullable;
+
+/**
+ * A point in time by which the work of the current thread must be done, such as the deadline of an
+ * inbound request or of a transaction with a timeout.
+ *
+ * <p>{@link com.custom.transaction.CustomTransactionInterceptor} binds the deadline of every
+ * transaction it demarcates to the thread for the duration of the transaction: the earlier of the
+ * deadline already bound, if any, and the timeout of the transaction attribute. Nested calls
+ * therefore inherit the remaining budget of their caller and can only shrink it. The transaction
+ * begins with the remaining time as its timeout, which the {@code JpaTransactionManager} hands to
+ * Hibernate, and Hibernate sets the time that is left as the query timeout of every statement it
+ * prepares.
+ */
+public final class Deadline {
+
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+  private final long expiresAtNanos;
+
+  private Deadline(long expiresAtNanos) {
+    this.expiresAtNanos = expiresAtNanos;
+  }
+
+  /**
+   * Creates a deadline the given time from now.
+   *
+   * @param timeout the time from now
+   * @return the deadline
+   */
+  public static Deadline after(Duration timeout) {
+    return afterNanos(timeout.toNanos());
+  }
+
+  /**
+   * Creates a deadline the given number of nanoseconds from now.
+   *
+   * @param timeoutNanos the time from now in nanoseconds
+   * @return the deadline
+   */
+  public static Deadline afterNanos(long timeoutNanos) {
+    return new Deadline(System.nanoTime() + timeoutNanos);
+  }
+
+  /**
+   * Returns the deadline bound to the current thread.
+   *
+   * @return the deadline, or null if the current thread has none
+   */
+  @Nullable
+  public static Deadline current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Binds a deadline to the current thread until {@link #restore} is called. Callers wanting to
+   * keep the deadline already bound bind {@link #earlierOf} the two.
+   *
+   * @param deadline the deadline, or null for none
+   * @return the deadline bound before, to be passed to {@link #restore}
+   */
+  @Nullable
+  public static Deadline enter(@Nullable Deadline deadline) {
+    Deadline previous = CURRENT.get();
+    CURRENT.set(deadline);
+    return previous;
+  }
+
+  /**
+   * Restores the deadline bound before {@link #enter} was called.
+   *
+   * @param previous the deadline returned by {@link #enter}
+   */
+  public static void restore(@Nullable Deadline previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Returns the earlier of this deadline and the given one.
+   *
+   * @param other the other deadline, or null for none
+   * @return the earlier deadline
+   */
+  public Deadline earlierOf(@Nullable Deadline other) {
+    return (other != null && other.expiresAtNanos - expiresAtNanos < 0) ? other : this;
+  }
+
+  public long remainingNanos() {
+    return expiresAtNanos - System.nanoTime();
+  }
+
+  /**
+   * Returns the remaining time in whole seconds, rounded up, as a transaction or query timeout
+   * expects it.
+   *
+   * @return the remaining seconds, or zero if the deadline has passed
+   */
+  public int remainingSeconds() {
+    long remainingNanos = remainingNanos();
+    if (remainingNanos <= 0) {
+      return 0;
+    }
+    long seconds = (remainingNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+    return (int) Math.min(seconds, Integer.MAX_VALUE);
+  }
+
+  public boolean isExpired() {
+    return remainingNanos() <= 0;
+  }
+
+  @Override
+  public String toString() {
+    return "Deadline{remaining=" + TimeUnit.NANOSECONDS.toMillis(remainingNanos()) + "ms}";
+  }
+}
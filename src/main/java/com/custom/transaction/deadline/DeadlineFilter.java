@@ -0,0 +1,57 @@
+package com.custom.transaction.deadline;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Binds the deadline of an inbound request to the thread that handles it, so that every
+ * transaction the request begins is bounded by it. The deadline is read from a header holding the
+ * time the caller is willing to wait, in milliseconds; a request without a valid one has no
+ * deadline.
+ */
+public class DeadlineFilter extends OncePerRequestFilter {
+
+  private final String headerName;
+
+  /**
+   * Creates a filter reading the given header.
+   *
+   * @param headerName the name of the header holding the timeout in milliseconds
+   */
+  public DeadlineFilter(String headerName) {
+    this.headerName = headerName;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+    long timeoutMillis = parseTimeout(request.getHeader(headerName));
+    if (timeoutMillis < 0) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+    Deadline requestDeadline = Deadline.afterNanos(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    Deadline previous = Deadline.enter(requestDeadline.earlierOf(Deadline.current()));
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      Deadline.restore(previous);
+    }
+  }
+
+  private static long parseTimeout(String header) {
+    if (header == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(header.trim());
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package com.custom.transaction.example;
+
+import com.custom.transaction.datasource.ConnectionAcquisitionDataSource;
+import com.custom.transaction.datasource.LazyTransactionDataSource;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+
+/**
+ * Records the wait for every connection of the application as a
+ * {@link com.custom.transaction.jfr.ConnectionAcquisitionEvent}, whether the connections are lazy
+ * or not.
+ */
+@Configuration
+public class ConnectionAcquisitionConfig {
+
+  /**
+   * Wraps every DataSource in a {@link ConnectionAcquisitionDataSource}, before the
+   * {@link LazyConnectionConfig} post processor wraps it further, if enabled.
+   *
+   * @return the BeanPostProcessor
+   */
+  @Bean
+  public static ConnectionAcquisitionDataSourcePostProcessor
+      connectionAcquisitionDataSourcePostProcessor() {
+    return new ConnectionAcquisitionDataSourcePostProcessor();
+  }
+
+  /**
+   * Registered ahead of the auto proxy creator, like the lazy DataSource post processor, and
+   * ordered ahead of that one, so that the lazy DataSource records the wait of its physical
+   * connections rather than of its logical ones.
+   */
+  static final class ConnectionAcquisitionDataSourcePostProcessor implements BeanPostProcessor,
+      PriorityOrdered {
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+      if (!(bean instanceof DataSource dataSource) || bean instanceof LazyTransactionDataSource) {
+        return bean;
+      }
+      return ConnectionAcquisitionDataSource.of(dataSource);
+    }
+
+    @Override
+    public int getOrder() {
+      return Ordered.LOWEST_PRECEDENCE - 1;
+    }
+  }
+
+}
@@ -1,8 +1,24 @@
 package com.custom.transaction.example;
 
 import com.custom.transaction.CustomTransactionInterceptor;
+import com.custom.transaction.TransactionMetadata;
+import com.custom.transaction.deadline.DeadlineFilter;
+import com.custom.transaction.idempotency.IdempotencyStore;
+import com.custom.transaction.idempotency.JdbcIdempotencyStore;
+import com.custom.transaction.metrics.TransactionMetrics;
+import com.custom.transaction.sharding.Shards;
+import com.custom.transaction.watchdog.TransactionWatchdog;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.transaction.TransactionManager;
 import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
@@ -11,6 +27,7 @@ import org.springframework.transaction.interceptor.TransactionInterceptor;
 
 @Configuration
 @EnableTransactionManagement
+@ImportRuntimeHints(ExampleRuntimeHints.class)
 public class ExampleConfig {
 
   /**
@@ -25,13 +42,123 @@ public class ExampleConfig {
     return new AnnotationTransactionAttributeSource();
   }
 
+  /**
+   * The per joinpoint metrics of the transactions. They are always available through
+   * {@link TransactionMetrics#snapshot()}, and are also exposed as meters when a
+   * {@link MeterRegistry} is present.
+   *
+   * @param meterRegistries the meter registry, if any
+   * @return the TransactionMetrics
+   */
+  @Bean
+  public TransactionMetrics transactionMetrics(ObjectProvider<MeterRegistry> meterRegistries) {
+    TransactionMetrics transactionMetrics = new TransactionMetrics();
+    meterRegistries.ifAvailable(transactionMetrics::bindTo);
+    return transactionMetrics;
+  }
+
+  /**
+   * The watchdog of long-running transactions, only created when
+   * {@code example.transaction.watchdog.threshold} is set, since registering every transaction
+   * costs an allocation per transaction. It flags the transactions that have been active for
+   * longer than the threshold, and marks them rollback-only when
+   * {@code example.transaction.watchdog.abort} is true. Its counts are exposed as meters when a
+   * {@link MeterRegistry} is present.
+   *
+   * @param threshold       how long a transaction may be active before it is flagged
+   * @param abort           whether flagged transactions are marked rollback-only
+   * @param meterRegistries the meter registry, if any
+   * @return the TransactionWatchdog
+   */
+  @Bean
+  @ConditionalOnProperty(prefix = "example.transaction.watchdog", name = "threshold")
+  public TransactionWatchdog transactionWatchdog(
+      @Value("${example.transaction.watchdog.threshold}") Duration threshold,
+      @Value("${example.transaction.watchdog.abort:false}") boolean abort,
+      ObjectProvider<MeterRegistry> meterRegistries) {
+    TransactionWatchdog transactionWatchdog = new TransactionWatchdog(threshold, abort);
+    meterRegistries.ifAvailable(transactionWatchdog::bindTo);
+    return transactionWatchdog;
+  }
+
+  /**
+   * The transaction interceptor. Transactions are registered with the {@link TransactionWatchdog},
+   * if any, failures take the lightweight path when
+   * {@code example.transaction.lightweight-failures} is true, streaming transactions detach their
+   * entities every {@code example.transaction.stream-detach-interval} elements, the methods with a
+   * shard key run on the {@link Shards}, if any, and the methods with an idempotency key store
+   * their results in the {@link IdempotencyStore}, if any. When the application runs with Spring
+   * AOT, the interceptor plans its methods from the {@link TransactionMetadata} computed at build
+   * time.
+   */
   @Bean
   public CustomTransactionInterceptor transactionInterceptorCustomizer(
       TransactionManager transactionManager,
-      TransactionAttributeSource transactionAttributeSource) {
+      TransactionAttributeSource transactionAttributeSource,
+      TransactionMetrics transactionMetrics,
+      ObjectProvider<TransactionWatchdog> transactionWatchdog,
+      ObjectProvider<TransactionMetadata> transactionMetadata,
+      ObjectProvider<Shards> shards,
+      ObjectProvider<IdempotencyStore> idempotencyStore,
+      @Value("${example.transaction.lightweight-failures:false}") boolean lightweightFailures,
+      @Value("${example.transaction.stream-detach-interval:1000}") int streamDetachInterval) {
 
-    return new CustomTransactionInterceptor(transactionManager,
+    CustomTransactionInterceptor interceptor = new CustomTransactionInterceptor(transactionManager,
         transactionAttributeSource);
+    interceptor.setAsyncTransactionExecutor(asyncTransactionExecutor());
+    interceptor.setTransactionMetrics(transactionMetrics);
+    transactionWatchdog.ifAvailable(interceptor::setTransactionWatchdog);
+    interceptor.setLightweightFailures(lightweightFailures);
+    interceptor.setStreamDetachInterval(streamDetachInterval);
+    transactionMetadata.ifAvailable(interceptor::setTransactionMetadata);
+    shards.ifAvailable(interceptor::setShards);
+    idempotencyStore.ifAvailable(interceptor::setIdempotencyStore);
+    return interceptor;
+  }
+
+  /**
+   * The results of the methods with an idempotency key, only created when
+   * {@code example.transaction.idempotency-keys} is true, since every call with a key then costs a
+   * lookup and an insert. They are stored in the {@code idempotency_key} table of the database the
+   * books are stored in, created by {@code schema.sql}, within the transactions that add them.
+   *
+   * @param dataSource the DataSource of the books
+   * @return the IdempotencyStore
+   */
+  @Bean
+  @ConditionalOnProperty(prefix = "example.transaction", name = "idempotency-keys",
+      havingValue = "true")
+  public IdempotencyStore idempotencyStore(DataSource dataSource) {
+    return new JdbcIdempotencyStore(dataSource);
+  }
+
+  /**
+   * Binds the deadline of every inbound request, the number of milliseconds in its
+   * {@code example.transaction.deadline-header} header, to the thread handling it, so that the
+   * transactions of the request are bounded by it.
+   *
+   * @param headerName the name of the header holding the timeout of the request
+   * @return the DeadlineFilter
+   */
+  @Bean
+  public DeadlineFilter deadlineFilter(
+      @Value("${example.transaction.deadline-header:X-Request-Timeout}") String headerName) {
+    return new DeadlineFilter(headerName);
+  }
+
+  /**
+   * The executor that runs the transactions of methods returning a CompletableFuture of a Try. A
+   * transaction blocks its thread while waiting on JDBC, so every transaction gets its own virtual
+   * thread and the number of concurrent transactions is bounded by the connection pool instead of
+   * a thread pool. It is deliberately not exposed as a bean, so that it doesn't replace the task
+   * executor that Spring Boot auto-configures.
+   *
+   * @return the executor of asynchronous transactions
+   */
+  private static Executor asyncTransactionExecutor() {
+    SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("book-tx-");
+    executor.setVirtualThreads(true);
+    return executor;
   }
 
   @Bean
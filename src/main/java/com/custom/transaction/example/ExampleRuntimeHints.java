@@ -0,0 +1,17 @@
+package com.custom.transaction.example;
+
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.lang.Nullable;
+
+/**
+ * The runtime hints of the example application in a native image: the Caffeine configuration of
+ * the second-level cache is read as a classpath resource.
+ */
+class ExampleRuntimeHints implements RuntimeHintsRegistrar {
+
+  @Override
+  public void registerHints(RuntimeHints hints, @Nullable ClassLoader classLoader) {
+    hints.resources().registerPattern("caffeine.conf");
+  }
+}
@@ -0,0 +1,66 @@
+package com.custom.transaction.example;
+
+import com.custom.transaction.datasource.LazyTransactionDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+
+/**
+ * Makes transactions acquire their physical connection on their first statement instead of when
+ * they begin, when {@code example.datasource.lazy-connections} is true.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "example.datasource", name = "lazy-connections",
+    havingValue = "true")
+public class LazyConnectionConfig {
+
+  /**
+   * Wraps every DataSource, including the routing one, in a {@link LazyTransactionDataSource}, so
+   * that a Try method failing before its first query never takes a connection from the pool. The
+   * counts of the lazy DataSource are exposed as meters when a {@link MeterRegistry} is present.
+   *
+   * @param meterRegistries the meter registry, if any
+   * @return the BeanPostProcessor
+   */
+  @Bean
+  public static LazyTransactionDataSourcePostProcessor lazyTransactionDataSourcePostProcessor(
+      ObjectProvider<MeterRegistry> meterRegistries) {
+    return new LazyTransactionDataSourcePostProcessor(meterRegistries);
+  }
+
+  /**
+   * Registered ahead of the auto proxy creator, which would otherwise create the transaction
+   * advisor, and the DataSource with it, before this post processor can see the DataSource.
+   */
+  static final class LazyTransactionDataSourcePostProcessor implements BeanPostProcessor,
+      PriorityOrdered {
+
+    private final ObjectProvider<MeterRegistry> meterRegistries;
+
+    private LazyTransactionDataSourcePostProcessor(ObjectProvider<MeterRegistry> meterRegistries) {
+      this.meterRegistries = meterRegistries;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+      if (!(bean instanceof DataSource dataSource) || bean instanceof LazyTransactionDataSource) {
+        return bean;
+      }
+      LazyTransactionDataSource lazyDataSource = new LazyTransactionDataSource(dataSource);
+      meterRegistries.ifAvailable(lazyDataSource::bindTo);
+      return lazyDataSource;
+    }
+
+    @Override
+    public int getOrder() {
+      return Ordered.LOWEST_PRECEDENCE;
+    }
+  }
+
+}
@@ -0,0 +1,56 @@
+package com.custom.transaction.example;
+
+import com.custom.transaction.routing.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Routes read-only transactions to replicas of the primary database when
+ * {@code example.datasource.replica-urls} lists the JDBC urls of the replicas. The primary database
+ * is configured by the usual {@code spring.datasource} properties, and the replicas share its
+ * driver and credentials.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "example.datasource", name = "replica-urls")
+public class ReplicaRoutingConfig {
+
+  /**
+   * Replaces the auto-configured DataSource, so that the EntityManagerFactory and the
+   * JpaTransactionManager acquire their connections through the routing one.
+   *
+   * @param properties  the properties of the primary database
+   * @param replicaUrls the JDBC urls of the replicas
+   * @return the routing DataSource
+   */
+  @Bean
+  public ReplicaRoutingDataSource dataSource(DataSourceProperties properties,
+      @Value("${example.datasource.replica-urls}") List<String> replicaUrls) {
+    HikariDataSource primary = properties.initializeDataSourceBuilder()
+        .type(HikariDataSource.class)
+        .build();
+    primary.setPoolName("primary");
+    List<DataSource> replicas = new ArrayList<>(replicaUrls.size());
+    for (int i = 0; i < replicaUrls.size(); i++) {
+      HikariDataSource replica = DataSourceBuilder.create()
+          .type(HikariDataSource.class)
+          .driverClassName(properties.determineDriverClassName())
+          .url(replicaUrls.get(i))
+          .username(properties.determineUsername())
+          .password(properties.determinePassword())
+          .build();
+      replica.setPoolName("replica-" + i);
+      replica.setReadOnly(true);
+      replicas.add(replica);
+    }
+    return new ReplicaRoutingDataSource(primary, replicas);
+  }
+
+}
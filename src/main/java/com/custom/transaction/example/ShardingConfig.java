@@ -0,0 +1,58 @@
+package com.custom.transaction.example;
+
+import com.custom.transaction.datasource.ConnectionAcquisitionDataSource;
+import com.custom.transaction.sharding.Shards;
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Shards the books of {@link com.custom.transaction.example.service.ShardedBookService} by isbn
+ * when {@code example.sharding.urls} lists the JDBC urls of the shards. The shards share the
+ * driver and credentials of the primary database, and are demarcated by a
+ * {@code DataSourceTransactionManager} each, so they are not exposed as beans and the
+ * auto-configured DataSource and JpaTransactionManager are left alone.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "example.sharding", name = "urls")
+public class ShardingConfig {
+
+  private static final String CREATE_BOOK_TABLE = "create table if not exists sharded_book ("
+      + "isbn varchar(255) primary key, title varchar(255), author varchar(255), price integer)";
+
+  /**
+   * The shards, whose transactions the interceptor begins for the methods with a
+   * {@link com.custom.transaction.ShardKey} parameter.
+   *
+   * @param properties the properties of the primary database
+   * @param urls       the JDBC urls of the shards
+   * @return the Shards
+   */
+  @Bean
+  public Shards shards(DataSourceProperties properties,
+      @Value("${example.sharding.urls}") List<String> urls) {
+    List<DataSource> dataSources = new ArrayList<>(urls.size());
+    for (int i = 0; i < urls.size(); i++) {
+      HikariDataSource shard = DataSourceBuilder.create()
+          .type(HikariDataSource.class)
+          .driverClassName(properties.determineDriverClassName())
+          .url(urls.get(i))
+          .username(properties.determineUsername())
+          .password(properties.determinePassword())
+          .build();
+      shard.setPoolName("shard-" + i);
+      new JdbcTemplate(shard).execute(CREATE_BOOK_TABLE);
+      dataSources.add(new ConnectionAcquisitionDataSource(shard));
+    }
+    return new Shards(dataSources);
+  }
+
+}
@@ -0,0 +1,11 @@
+package com.custom.transaction.example.repository;
+
+/**
+ * The outcome of a batched insert.
+ *
+ * @param inserted the number of entities inserted
+ * @param flushes  the number of times the persistence context was flushed and cleared
+ */
+public record BatchResult(int inserted, int flushes) {
+
+}
@@ -0,0 +1,21 @@
+package com.custom.transaction.example.repository;
+
+import com.custom.transaction.example.repository.entity.BookEntity;
+import java.util.Collection;
+
+/**
+ * Bulk writes of books, added to {@link BookRepository} as a repository fragment.
+ */
+public interface BookBatchRepository {
+
+  /**
+   * Persists new books in JDBC batches within the current transaction. The persistence context is
+   * flushed and cleared every JDBC batch size books, so it doesn't grow with the number of books,
+   * and the books are detached once this returns.
+   *
+   * @param books the new books
+   * @return the outcome of the insert
+   */
+  BatchResult insertInBatches(Collection<BookEntity> books);
+
+}
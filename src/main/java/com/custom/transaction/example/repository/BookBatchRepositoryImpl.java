@@ -0,0 +1,44 @@
+package com.custom.transaction.example.repository;
+
+import com.custom.transaction.example.repository.entity.BookEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.Collection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+class BookBatchRepositoryImpl implements BookBatchRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final int batchSize;
+
+  BookBatchRepositoryImpl(
+      @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}") int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public BatchResult insertInBatches(Collection<BookEntity> books) {
+    int inserted = 0;
+    int flushes = 0;
+    for (BookEntity book : books) {
+      entityManager.persist(book);
+      if (++inserted % batchSize == 0) {
+        entityManager.flush();
+        entityManager.clear();
+        flushes++;
+      }
+    }
+    if (inserted % batchSize != 0) {
+      entityManager.flush();
+      entityManager.clear();
+      flushes++;
+    }
+    return new BatchResult(inserted, flushes);
+  }
+
+}
@@ -0,0 +1,24 @@
+package com.custom.transaction.example.repository;
+
+import com.custom.transaction.example.repository.entity.BookEntity;
+import java.util.Optional;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Lookups of books by their natural id, added to {@link BookRepository} as a repository fragment.
+ */
+public interface BookNaturalIdRepository {
+
+  /**
+   * Finds a book by its isbn through the natural id cache, so that a cached book is returned
+   * without a query. The lookup needs a session of its own, so it runs in a read-only transaction
+   * unless there is one already. Unlike {@link BookRepository#findByIsbn}, a call outside of a
+   * transaction therefore begins a read-only one, which may run on a replica.
+   *
+   * @param isbn the isbn of the book
+   * @return the book, if any
+   */
+  @Transactional(readOnly = true)
+  Optional<BookEntity> findByNaturalIsbn(String isbn);
+
+}
@@ -0,0 +1,21 @@
+package com.custom.transaction.example.repository;
+
+import com.custom.transaction.example.repository.entity.BookEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.Optional;
+import org.hibernate.Session;
+
+class BookNaturalIdRepositoryImpl implements BookNaturalIdRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Override
+  public Optional<BookEntity> findByNaturalIsbn(String isbn) {
+    return entityManager.unwrap(Session.class)
+        .bySimpleNaturalId(BookEntity.class)
+        .loadOptional(isbn);
+  }
+
+}
@@ -6,7 +6,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface BookRepository extends JpaRepository<BookEntity, Long> {
+public interface BookRepository extends JpaRepository<BookEntity, Long>, BookBatchRepository,
+    BookNaturalIdRepository, BookStreamRepository {
 
   Optional<BookEntity> findByIsbn(String isbn);
 
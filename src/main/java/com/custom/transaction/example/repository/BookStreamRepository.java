@@ -0,0 +1,21 @@
+package com.custom.transaction.example.repository;
+
+import com.custom.transaction.example.repository.entity.BookEntity;
+import java.util.stream.Stream;
+
+/**
+ * Streaming reads of books, added to {@link BookRepository} as a repository fragment.
+ */
+public interface BookStreamRepository {
+
+  /**
+   * Streams every book, ordered by id, through a forward-only cursor that fetches
+   * {@code example.books.stream-fetch-size} rows at a time. The books are read-only and bypass
+   * the second-level cache. The stream holds the cursor open until it is closed, so it must be
+   * consumed within the current transaction.
+   *
+   * @return the stream of every book
+   */
+  Stream<BookEntity> streamAll();
+
+}
@@ -0,0 +1,35 @@
+package com.custom.transaction.example.repository;
+
+import com.custom.transaction.example.repository.entity.BookEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.util.stream.Stream;
+import org.hibernate.CacheMode;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+class BookStreamRepositoryImpl implements BookStreamRepository {
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final int fetchSize;
+
+  BookStreamRepositoryImpl(@Value("${example.books.stream-fetch-size:500}") int fetchSize) {
+    this.fetchSize = fetchSize;
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public Stream<BookEntity> streamAll() {
+    // Hibernate reads a result stream through a forward-only ScrollableResults
+    return entityManager.createQuery("select b from BookEntity b order by b.id", BookEntity.class)
+        .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+        .setHint(HibernateHints.HINT_READ_ONLY, true)
+        .setHint(HibernateHints.HINT_CACHE_MODE, CacheMode.IGNORE)
+        .getResultStream();
+  }
+
+}
@@ -0,0 +1,57 @@
+package com.custom.transaction.example.repository;
+
+import com.custom.transaction.sharding.Shards;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * The books stored on the shard of their isbn. Every shard is accessed through a JdbcTemplate of
+ * its own, which joins the transaction the interceptor began on that shard.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "example.sharding", name = "urls")
+public class ShardedBookRepository {
+
+  private final Shards shards;
+
+  private final List<JdbcTemplate> jdbcTemplates;
+
+  public ShardedBookRepository(Shards shards) {
+    this.shards = shards;
+    this.jdbcTemplates = new ArrayList<>(shards.size());
+    for (int i = 0; i < shards.size(); i++) {
+      jdbcTemplates.add(new JdbcTemplate(shards.getDataSource(i)));
+    }
+  }
+
+  public void insert(String isbn, String title, String author, int price) {
+    shardOf(isbn).update(
+        "insert into sharded_book (isbn, title, author, price) values (?, ?, ?, ?)",
+        isbn, title, author, price);
+  }
+
+  public Optional<String> findTitle(String isbn) {
+    return shardOf(isbn).queryForList("select title from sharded_book where isbn = ?",
+        String.class, isbn).stream().findFirst();
+  }
+
+  /**
+   * Counts the books stored on a shard.
+   *
+   * @param shard the index of the shard
+   * @return the number of books
+   */
+  public long count(int shard) {
+    Long count = jdbcTemplates.get(shard).queryForObject("select count(*) from sharded_book",
+        Long.class);
+    return count == null ? 0 : count;
+  }
+
+  private JdbcTemplate shardOf(String isbn) {
+    return jdbcTemplates.get(shards.shardOf(isbn));
+  }
+}
@@ -1,25 +1,44 @@
 package com.custom.transaction.example.repository.entity;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import java.util.Objects;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
+/**
+ * A book. Books and their isbn resolutions are kept in the second-level cache, with a read-write
+ * strategy so that a book becomes visible there only once the transaction that wrote it has
+ * committed.
+ */
 @Table(name = "book")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NaturalIdCache
 @Getter
 @Setter
 @NoArgsConstructor
 public class BookEntity {
 
+  /**
+   * Allocated from the sequence fifty at a time, with the pooled-lo optimizer configured in the
+   * application properties, so that bulk inserts don't pay a sequence round-trip per book.
+   */
   @Id
-  @GeneratedValue
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+  @SequenceGenerator(name = "book_seq", sequenceName = "book_seq", allocationSize = 50)
   private Long id;
 
   @Column(name = "title")
@@ -1,8 +1,19 @@
 package com.custom.transaction.example.service;
 
+import com.custom.transaction.Bulkhead;
+import com.custom.transaction.BusinessFailure;
+import com.custom.transaction.GroupCommit;
+import com.custom.transaction.IdempotencyKey;
+import com.custom.transaction.RetryableTransaction;
+import com.custom.transaction.SavepointBatch;
+import com.custom.transaction.example.repository.BatchResult;
 import com.custom.transaction.example.repository.BookRepository;
 import com.custom.transaction.example.repository.entity.BookEntity;
 import com.soumakis.control.Try;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -11,6 +22,8 @@ import org.springframework.transaction.annotation.Transactional;
 @RequiredArgsConstructor
 public class BookService {
 
+  private static final BusinessFailure INVALID_ISBN = new BusinessFailure("Invalid isbn");
+
   private final BookRepository bookRepository;
 
   /**
@@ -80,6 +93,27 @@ public class BookService {
     });
   }
 
+  /**
+   * Adds a book to the database once per idempotency key. A client retrying the request after a
+   * timeout gets the id of the book its first request added, without the book being added again.
+   *
+   * @param idempotencyKey the key of the request, chosen by the client
+   * @param isbn           the isbn of the book
+   * @return a Try with the id of the book
+   */
+  @Transactional
+  public Try<Long> addBookIdempotently(@IdempotencyKey String idempotencyKey, String isbn) {
+    return Try.of(() -> {
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn(isbn);
+      book.setPrice(100);
+      book.setTitle("Title");
+      bookRepository.save(book);
+      return book.getId();
+    });
+  }
+
   /**
    * Adds a book to the database. If an exception is thrown, the transaction will not roll back for
    * the specified exception and return a Try#Failure. If no exception is thrown, it will return a
@@ -106,6 +140,195 @@ public class BookService {
     });
   }
 
+  /**
+   * Adds a book with the given isbn to the database, after validating the isbn. An invalid isbn is
+   * reported as a Try#Failure before the database is touched, so the transaction ends without ever
+   * acquiring a connection. If no exception is thrown, it will return a Try#Success with the id of
+   * the book.
+   *
+   * @param isbn the isbn of the book, 10 or 13 digits
+   * @return a Try with the id of the book
+   */
+  @Transactional
+  public Try<Long> addBookValidated(String isbn) {
+
+    return Try.of(() -> {
+      validateIsbn(isbn);
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn(isbn);
+      book.setPrice(100);
+      book.setTitle("Title");
+      bookRepository.save(book);
+      return book.getId();
+    });
+  }
+
+  /**
+   * Adds a book with the given isbn to the database, rejecting an invalid isbn with a preallocated
+   * {@link BusinessFailure} instead of throwing. A rejection neither throws nor fills in a stack
+   * trace, and the transaction still rolls back. If the isbn is valid, it will return a Try#Success
+   * with the id of the book.
+   *
+   * @param isbn the isbn of the book, 10 or 13 digits
+   * @return a Try with the id of the book
+   */
+  @Transactional
+  public Try<Long> addBookOrReject(String isbn) {
+    if (!isValidIsbn(isbn)) {
+      return INVALID_ISBN.toTry();
+    }
+    var book = new BookEntity();
+    book.setAuthor("Author");
+    book.setIsbn(isbn);
+    book.setPrice(100);
+    book.setTitle("Title");
+    bookRepository.save(book);
+    return Try.of(book::getId);
+  }
+
+  /**
+   * Adds books to the database in JDBC batches, all in one transaction. If an exception is thrown,
+   * for example because of a duplicate isbn, the whole transaction rolls back and a Try#Failure is
+   * returned. If no exception is thrown, it will return a Try#Success with the outcome of the
+   * insert. At most four bulk inserts run at a time, so that they never hold every pooled
+   * connection; any further one is rejected right away with a Try#Failure.
+   *
+   * @param books the new books
+   * @return a Try with the outcome of the insert
+   */
+  @Transactional
+  @Bulkhead(maxConcurrentCalls = 4)
+  public Try<BatchResult> addBooks(Collection<BookEntity> books) {
+
+    return Try.of(() -> bookRepository.insertInBatches(books));
+  }
+
+  /**
+   * Imports books in one transaction, each under a savepoint of its own. A book with an invalid or
+   * already existing isbn gets a Try#Failure and only its own changes are rolled back, while the
+   * other books are committed together.
+   *
+   * @param books the new books
+   * @return a Try with the Try of every book, the id of the book if it was imported
+   */
+  @Transactional
+  public Try<List<Try<Long>>> importBooks(Collection<BookEntity> books) {
+
+    return Try.of(() -> SavepointBatch.run(books, book -> Try.of(() -> {
+      validateIsbn(book.getIsbn());
+      if (bookRepository.findByNaturalIsbn(book.getIsbn()).isPresent()) {
+        throw new IllegalStateException("Duplicate isbn: " + book.getIsbn());
+      }
+      bookRepository.save(book);
+      return book.getId();
+    })));
+  }
+
+  /**
+   * Adds a book with the given isbn to the database on a virtual thread. The whole transaction runs
+   * asynchronously and the returned future completes with a Try#Failure, after rolling back, if an
+   * exception is thrown. If no exception is thrown, it completes with a Try#Success with the id of
+   * the book.
+   *
+   * @param isbn                the isbn of the book
+   * @param shouldReturnFailure if true, the method will return a Try#Failure with an exception
+   * @return a future of a Try with the id of the book
+   */
+  @Transactional
+  public CompletableFuture<Try<Long>> addBookAsync(String isbn, boolean shouldReturnFailure) {
+
+    return CompletableFuture.completedFuture(Try.of(() -> {
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn(isbn);
+      book.setPrice(100);
+      book.setTitle("Title");
+      bookRepository.save(book);
+      if (shouldReturnFailure) {
+        throw new RuntimeException("Exception thrown intentionally");
+      }
+      return book.getId();
+    }));
+  }
+
+  /**
+   * Streams the whole book catalogue, e.g. to export it. The read-only transaction stays open
+   * until the returned stream has been consumed or closed, and the books are read through a
+   * cursor and detached as the stream goes, so that exporting the catalogue takes bounded memory
+   * however many books there are. The stream must be consumed, or closed, on the calling thread.
+   *
+   * @return a Try with the stream of every book
+   */
+  @Transactional(readOnly = true)
+  public Try<Stream<BookEntity>> streamBooks() {
+
+    return Try.of(bookRepository::streamAll);
+  }
+
+  /**
+   * Finds a book by its isbn. The transaction is read-only, so its connection may be routed to a
+   * replica, and the Hibernate session neither flushes nor dirty checks the loaded book. If the book
+   * doesn't exist, a Try#Failure is returned.
+   *
+   * @param isbn the isbn of the book
+   * @return a Try with the book
+   */
+  @Transactional(readOnly = true)
+  public Try<BookEntity> findBookTry(String isbn) {
+
+    return Try.of(() -> bookRepository.findByNaturalIsbn(isbn).orElseThrow());
+  }
+
+  /**
+   * Updates the price of a book. If another transaction holds a lock on the book, the update fails
+   * with a transient exception and the whole transaction is retried with a jittered backoff, up to
+   * five attempts, before a Try#Failure is returned.
+   *
+   * @param isbn  the isbn of the book
+   * @param price the new price of the book
+   * @return a Try with the new price of the book
+   */
+  @Transactional
+  @RetryableTransaction(maxAttempts = 5)
+  public Try<Integer> updatePriceTry(String isbn, int price) {
+
+    return Try.of(() -> {
+      var book = bookRepository.findByNaturalIsbn(isbn).orElseThrow();
+      book.setPrice(price);
+      bookRepository.saveAndFlush(book);
+      return book.getPrice();
+    });
+  }
+
+  /**
+   * Adds a book with the given isbn to the database. Concurrent invocations share a transaction,
+   * each under a savepoint of its own, so that a burst of small inserts pays for a single commit. If
+   * an exception is thrown, only the changes of this invocation are rolled back and a Try#Failure is
+   * returned. If no exception is thrown, it will return a Try#Success with the id of the book.
+   *
+   * @param isbn                the isbn of the book
+   * @param shouldReturnFailure if true, the method will return a Try#Failure with an exception
+   * @return a Try with the id of the book
+   */
+  @Transactional
+  @GroupCommit
+  public Try<Long> addBookGroupCommitted(String isbn, boolean shouldReturnFailure) {
+
+    return Try.of(() -> {
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn(isbn);
+      book.setPrice(100);
+      book.setTitle("Title");
+      bookRepository.save(book);
+      if (shouldReturnFailure) {
+        throw new RuntimeException("Exception thrown intentionally");
+      }
+      return book.getId();
+    });
+  }
+
   @Transactional
   public Try<Void> alwaysThrowingException() {
     var book = new BookEntity();
@@ -130,4 +353,14 @@ public class BookService {
     throw new IllegalStateException();
   }
 
+  private static void validateIsbn(String isbn) {
+    if (!isValidIsbn(isbn)) {
+      throw new IllegalArgumentException("Invalid isbn: " + isbn);
+    }
+  }
+
+  private static boolean isValidIsbn(String isbn) {
+    return isbn != null && isbn.matches("\\d{10}|\\d{13}");
+  }
+
 }
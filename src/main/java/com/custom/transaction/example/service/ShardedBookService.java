@@ -0,0 +1,66 @@
+package com.custom.transaction.example.service;
+
+import com.custom.transaction.ShardKey;
+import com.custom.transaction.ShardedResult;
+import com.custom.transaction.example.repository.ShardedBookRepository;
+import com.soumakis.control.Try;
+import java.util.Collection;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+@Service
+@ConditionalOnProperty(prefix = "example.sharding", name = "urls")
+@RequiredArgsConstructor
+public class ShardedBookService {
+
+  private final ShardedBookRepository shardedBookRepository;
+
+  /**
+   * Adds a book within a transaction on the shard of its isbn.
+   *
+   * @param isbn  the isbn of the book, which picks its shard
+   * @param title the title of the book
+   * @return the isbn of the book that was added
+   */
+  @Transactional
+  public Try<String> addBook(@ShardKey String isbn, String title) {
+    return Try.of(() -> {
+      shardedBookRepository.insert(isbn, title, "Author", 100);
+      return isbn;
+    });
+  }
+
+  /**
+   * Adds books within a transaction on every shard their isbns map to. If an insert fails, no shard
+   * commits. Otherwise the shards commit one after the other, on a best-effort basis: if a commit
+   * fails, the books of the shards that committed before it stay added, and the Try#Failure holds
+   * a {@link com.custom.transaction.ShardCommitException} whose outcomes tell the caller which
+   * shards to compensate. On success, the outcome of every shard is returned with the count.
+   *
+   * @param isbns the isbns of the books, which pick their shards
+   * @return the number of books that were added, with the outcome of every shard
+   */
+  @Transactional
+  public Try<ShardedResult<Integer>> addBooks(@ShardKey Collection<String> isbns) {
+    return Try.of(() -> {
+      for (String isbn : isbns) {
+        shardedBookRepository.insert(isbn, "Title", "Author", 100);
+      }
+      return ShardedResult.of(isbns.size());
+    });
+  }
+
+  /**
+   * Finds the title of a book on the shard of its isbn.
+   *
+   * @param isbn the isbn of the book
+   * @return the title of the book, if it exists
+   */
+  @Transactional(readOnly = true)
+  public Try<Optional<String>> findTitle(@ShardKey String isbn) {
+    return Try.of(() -> shardedBookRepository.findTitle(isbn));
+  }
+}
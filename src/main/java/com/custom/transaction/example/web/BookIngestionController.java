@@ -0,0 +1,159 @@
+package com.custom.transaction.example.web;
+
+import com.custom.transaction.example.repository.BatchResult;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.soumakis.control.Try;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Ingests a catalogue of books sent as NDJSON, one book per line, in chunks of
+ * {@code example.ingest.chunk-size} lines. Each chunk is written by {@link BookService#addBooks},
+ * in a transaction of its own, and its outcome is streamed back as a line of the response once it
+ * has completed, so a failed chunk neither rolls back nor stops the ones around it.
+ *
+ * <p>The request body is read line by line on the request thread, which writes every chunk before
+ * reading the next one, so the client is held back by TCP flow control while a chunk is written,
+ * and only one chunk of books is ever in memory. A line that isn't a book, or is longer than
+ * {@code example.ingest.max-line-length} characters, fails its chunk without writing any of it.
+ */
+@RestController
+public class BookIngestionController {
+
+  public static final String NDJSON = "application/x-ndjson";
+
+  private final BookService bookService;
+
+  private final ObjectReader bookReader;
+
+  private final ObjectWriter outcomeWriter;
+
+  private final int chunkSize;
+
+  private final int maxLineLength;
+
+  public BookIngestionController(BookService bookService, ObjectMapper objectMapper,
+      @Value("${example.ingest.chunk-size:1000}") int chunkSize,
+      @Value("${example.ingest.max-line-length:65536}") int maxLineLength) {
+    this.bookService = bookService;
+    this.bookReader = objectMapper.readerFor(BookRecord.class);
+    this.outcomeWriter = objectMapper.writerFor(ChunkOutcome.class);
+    this.chunkSize = chunkSize;
+    this.maxLineLength = maxLineLength;
+  }
+
+  /**
+   * Ingests the books of the request body.
+   *
+   * @param request  the request, whose body holds one book per line
+   * @param response the response, which gets the outcome of every chunk as a line
+   * @throws IOException if the request body can't be read or the response can't be written
+   */
+  @PostMapping(path = "/books/ingest", consumes = {NDJSON, MediaType.APPLICATION_JSON_VALUE})
+  public void ingest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType(NDJSON);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    OutputStream output = response.getOutputStream();
+    Reader body = new BufferedReader(
+        new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+
+    List<BookEntity> books = new ArrayList<>(chunkSize);
+    StringBuilder line = new StringBuilder();
+    long chunk = 1;
+    long lineNumber = 0;
+    long firstLine = 1;
+    String error = null;
+    boolean more = true;
+    while (more) {
+      more = readLine(body, line);
+      if (line.length() > 0 || more) {
+        lineNumber++;
+        if (error == null) {
+          error = parse(line, lineNumber, books);
+        }
+      }
+      if (lineNumber - firstLine + 1 == chunkSize || (!more && lineNumber >= firstLine)) {
+        ChunkOutcome outcome = (error != null)
+            ? ChunkOutcome.failed(chunk, firstLine, lineNumber, error)
+            : write(chunk, firstLine, lineNumber, books);
+        output.write(outcomeWriter.writeValueAsBytes(outcome));
+        output.write('\n');
+        output.flush();
+        books.clear();
+        error = null;
+        chunk++;
+        firstLine = lineNumber + 1;
+      }
+    }
+  }
+
+  /**
+   * Parses a line into a book of the chunk, skipping blank lines.
+   *
+   * @return why the line isn't a book, or null if it is one or is blank
+   */
+  private String parse(StringBuilder line, long lineNumber, List<BookEntity> books) {
+    if (line.length() > maxLineLength) {
+      return "Line " + lineNumber + " is longer than " + maxLineLength + " characters";
+    }
+    if (line.toString().isBlank()) {
+      return null;
+    }
+    try {
+      books.add(bookReader.<BookRecord>readValue(line.toString()).toEntity());
+      return null;
+    } catch (JsonProcessingException ex) {
+      return "Line " + lineNumber + " is not a book: " + ex.getOriginalMessage();
+    }
+  }
+
+  private ChunkOutcome write(long chunk, long firstLine, long lastLine, List<BookEntity> books) {
+    if (books.isEmpty()) {
+      return ChunkOutcome.committed(chunk, firstLine, lastLine, 0);
+    }
+    Try<BatchResult> result = bookService.addBooks(books);
+    if (result.isSuccess()) {
+      return ChunkOutcome.committed(chunk, firstLine, lastLine, result.get().inserted());
+    }
+    String[] error = new String[1];
+    result.onFailure(ex -> error[0] = String.valueOf(ex.getMessage()));
+    return ChunkOutcome.failed(chunk, firstLine, lastLine, error[0]);
+  }
+
+  /**
+   * Reads the next line of the body into the builder, keeping at most one character more than the
+   * maximum length of a line, so that an overlong line is detected without being held in memory.
+   *
+   * @return whether the body has more lines after this one
+   */
+  private boolean readLine(Reader body, StringBuilder line) throws IOException {
+    line.setLength(0);
+    int c;
+    while ((c = body.read()) != -1) {
+      if (c == '\n') {
+        return true;
+      }
+      if (c != '\r' && line.length() <= maxLineLength) {
+        line.append((char) c);
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,23 @@
+package com.custom.transaction.example.web;
+
+import com.custom.transaction.example.repository.entity.BookEntity;
+
+/**
+ * A line of an NDJSON book ingestion.
+ *
+ * @param isbn   the isbn of the book
+ * @param title  the title of the book
+ * @param author the author of the book
+ * @param price  the price of the book
+ */
+public record BookRecord(String isbn, String title, String author, Integer price) {
+
+  BookEntity toEntity() {
+    var book = new BookEntity();
+    book.setIsbn(isbn);
+    book.setTitle(title);
+    book.setAuthor(author);
+    book.setPrice(price);
+    return book;
+  }
+}
@@ -0,0 +1,26 @@
+package com.custom.transaction.example.web;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of a chunk of an NDJSON book ingestion, streamed back as a line of the response.
+ *
+ * @param chunk     the number of the chunk, from 1
+ * @param firstLine the first line of the request body in the chunk, from 1
+ * @param lastLine  the last line of the request body in the chunk
+ * @param books     the number of books committed by the chunk
+ * @param status    {@code committed} or {@code failed}
+ * @param error     why the chunk failed, or null if it committed
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ChunkOutcome(long chunk, long firstLine, long lastLine, int books, String status,
+    String error) {
+
+  static ChunkOutcome committed(long chunk, long firstLine, long lastLine, int books) {
+    return new ChunkOutcome(chunk, firstLine, lastLine, books, "committed", null);
+  }
+
+  static ChunkOutcome failed(long chunk, long firstLine, long lastLine, String error) {
+    return new ChunkOutcome(chunk, firstLine, lastLine, 0, "failed", error);
+  }
+}
@@ -0,0 +1,30 @@
+package com.custom.transaction.idempotency;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Stores the results of the methods with an {@link com.custom.transaction.IdempotencyKey}
+ * parameter.
+ */
+public interface IdempotencyStore {
+
+  /**
+   * Finds the value stored under a key. Called outside of any transaction of the method.
+   *
+   * @param key the key, qualified by the joinpoint of the method
+   * @return the value, or an empty Optional if there is none or it has expired
+   */
+  Optional<Object> find(String key);
+
+  /**
+   * Stores a value under a key, within the transaction of the method that returned it, so that it
+   * commits or rolls back with the transaction. Throws if a value is already stored under the key,
+   * which rolls the transaction back.
+   *
+   * @param key        the key, qualified by the joinpoint of the method
+   * @param value      the value of the successful Try the method returned
+   * @param timeToLive how long the value is returned for
+   */
+  void save(String key, Object value, Duration timeToLive);
+}
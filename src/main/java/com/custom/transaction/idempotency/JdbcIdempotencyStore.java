@@ -0,0 +1,181 @@
+package com.custom.transaction.idempotency;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.lang.Nullable;
+
+/**
+ * Stores idempotent results in a table of the database the methods write to:
+ * <pre>{@code
+ * create table idempotency_key (
+ *   idempotency_key varchar(512) primary key,
+ *   result blob not null,
+ *   expires_at timestamp not null)
+ * }</pre>
+ *
+ * <p>A value is written through the same DataSource as the data of the method, so it joins the
+ * transaction of the method, and the primary key makes a second execution with the same key fail
+ * to commit, even on another instance of the application. Values are stored with Java
+ * serialization, so they must be {@link Serializable}. Anyone able to write to the table could
+ * otherwise have any class on the classpath deserialized, so values are read through an
+ * {@link ObjectInputFilter} that only lets in the types it allows, by default those of
+ * {@link #DEFAULT_FILTER}. A value of a type the filter rejects fails to be saved, rather than to
+ * be read back.
+ *
+ * <p>The table holds the keys of one time-to-live window: a key whose value has expired is
+ * replaced when it is stored again, and a background thread of the store deletes the expired rows
+ * every {@code purgeInterval}, off the path of the lookups.
+ */
+public class JdbcIdempotencyStore implements IdempotencyStore, AutoCloseable {
+
+  /**
+   * Lets in the values made of the types of {@code java.lang}, {@code java.util},
+   * {@code java.time} and {@code java.math}, such as boxed primitives, strings, collections and
+   * dates, and rejects any other type.
+   */
+  public static final ObjectInputFilter DEFAULT_FILTER = ObjectInputFilter.Config.createFilter(
+      "maxdepth=20;maxrefs=10000;maxbytes=1048576;java.lang.*;java.util.*;java.time.*;"
+          + "java.math.*;!*");
+
+  private static final Log logger = LogFactory.getLog(JdbcIdempotencyStore.class);
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final String tableName;
+
+  private final ObjectInputFilter filter;
+
+  private final Clock clock;
+
+  @Nullable
+  private final ScheduledExecutorService purger;
+
+  public JdbcIdempotencyStore(DataSource dataSource) {
+    this(dataSource, "idempotency_key", Duration.ofMinutes(1), DEFAULT_FILTER, Clock.systemUTC());
+  }
+
+  /**
+   * Creates a store and starts the purges of its expired values.
+   *
+   * @param dataSource    the DataSource the methods write to
+   * @param tableName     the name of the table of the values
+   * @param purgeInterval the time between two purges of the expired values, or zero to only
+   *                      purge them through {@link #purgeExpired}
+   * @param filter        the filter of the types the values may be made of
+   * @param clock         the clock the values expire by
+   */
+  public JdbcIdempotencyStore(DataSource dataSource, String tableName, Duration purgeInterval,
+      ObjectInputFilter filter, Clock clock) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.tableName = tableName;
+    this.filter = filter;
+    this.clock = clock;
+    if (purgeInterval.isPositive()) {
+      this.purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "idempotency-purge");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long periodNanos = purgeInterval.toNanos();
+      purger.scheduleWithFixedDelay(this::purgeQuietly, periodNanos, periodNanos,
+          TimeUnit.NANOSECONDS);
+    } else {
+      this.purger = null;
+    }
+  }
+
+  @Override
+  public Optional<Object> find(String key) {
+    List<byte[]> results = jdbcTemplate.query("select result from " + tableName
+            + " where idempotency_key = ? and expires_at > ?",
+        (resultSet, rowNum) -> resultSet.getBytes(1), key, Timestamp.from(clock.instant()));
+    return results.isEmpty() ? Optional.empty() : Optional.of(deserialize(results.get(0)));
+  }
+
+  @Override
+  public void save(String key, Object value, Duration timeToLive) {
+    Instant now = clock.instant();
+    jdbcTemplate.update("delete from " + tableName
+        + " where idempotency_key = ? and expires_at <= ?", key, Timestamp.from(now));
+    byte[] bytes = serialize(value);
+    try {
+      deserialize(bytes);
+    } catch (IllegalStateException ex) {
+      throw new IllegalArgumentException("Idempotent result of type [" + value.getClass().getName()
+          + "] is not allowed by the filter of the store", ex);
+    }
+    jdbcTemplate.update("insert into " + tableName
+            + " (idempotency_key, result, expires_at) values (?, ?, ?)", key, bytes,
+        Timestamp.from(now.plus(timeToLive)));
+  }
+
+  /**
+   * Deletes the expired values.
+   *
+   * @return the number of values deleted
+   */
+  public int purgeExpired() {
+    return jdbcTemplate.update("delete from " + tableName + " where expires_at <= ?",
+        Timestamp.from(clock.instant()));
+  }
+
+  /**
+   * Stops the purges of the expired values.
+   */
+  @Override
+  public void close() {
+    if (purger != null) {
+      purger.shutdownNow();
+    }
+  }
+
+  private void purgeQuietly() {
+    try {
+      purgeExpired();
+    } catch (RuntimeException ex) {
+      // A failed purge must not cancel the next ones
+      logger.warn("Purge of the expired idempotency keys failed", ex);
+    }
+  }
+
+  private static byte[] serialize(Object value) {
+    if (!(value instanceof Serializable)) {
+      throw new IllegalArgumentException("Idempotent result of type [" + value.getClass().getName()
+          + "] is not Serializable");
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(value);
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Failed to serialize idempotent result", ex);
+    }
+    return bytes.toByteArray();
+  }
+
+  private Object deserialize(byte[] bytes) {
+    try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      input.setObjectInputFilter(filter);
+      return input.readObject();
+    } catch (IOException | ClassNotFoundException ex) {
+      throw new IllegalStateException("Failed to deserialize idempotent result", ex);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package com.custom.transaction.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The acquisition of a connection from a
+ * {@link com.custom.transaction.datasource.ConnectionAcquisitionDataSource}, whose duration is the
+ * time spent waiting for the connection pool. It carries the transaction the connection is
+ * acquired for, if any, which is named after the joinpoint that began it.
+ *
+ * <p>A transaction acquires its connection while it begins, before the transaction manager binds
+ * its name and read-only flag to the thread, unless it begins on a
+ * {@link com.custom.transaction.datasource.LazyTransactionDataSource}.
+ * {@link com.custom.transaction.CustomTransactionInterceptor} therefore enters the transaction it
+ * is beginning here first, which the event prefers over the bound one.
+ */
+@Name("com.custom.transaction.ConnectionAcquisition")
+@Label("Connection Acquisition")
+@Description("Waits for a connection from the pool, for a transaction or not")
+@Category({"Custom Transaction"})
+public final class ConnectionAcquisitionEvent extends Event {
+
+  private static final ConnectionAcquisitionEvent PROBE = new ConnectionAcquisitionEvent();
+
+  private static final ThreadLocal<Beginning> BEGINNING = new ThreadLocal<>();
+
+  @Label("Transaction")
+  @Description("The name of the transaction, the joinpoint that began it")
+  String transaction;
+
+  @Label("Read Only")
+  boolean readOnly;
+
+  /**
+   * Whether the events are being recorded.
+   */
+  public static boolean enabled() {
+    return PROBE.isEnabled();
+  }
+
+  /**
+   * Attributes the connections acquired on the current thread to the transaction it is beginning,
+   * until {@link #restore} is called.
+   *
+   * @param transaction the name of the transaction
+   * @param readOnly    whether the transaction is read-only
+   * @return the previous transaction, to be passed to {@link #restore}
+   */
+  @Nullable
+  public static Beginning enter(String transaction, boolean readOnly) {
+    Beginning previous = BEGINNING.get();
+    BEGINNING.set(new Beginning(transaction, readOnly));
+    return previous;
+  }
+
+  /**
+   * Restores the transaction that was beginning before {@link #enter} was called.
+   *
+   * @param previous the transaction returned by {@link #enter}
+   */
+  public static void restore(@Nullable Beginning previous) {
+    if (previous == null) {
+      BEGINNING.remove();
+    } else {
+      BEGINNING.set(previous);
+    }
+  }
+
+  /**
+   * Begins the event, if the events are being recorded.
+   *
+   * @return the event, or null if the events are not being recorded
+   */
+  @Nullable
+  public static ConnectionAcquisitionEvent beginIfEnabled() {
+    if (!PROBE.isEnabled()) {
+      return null;
+    }
+    ConnectionAcquisitionEvent event = new ConnectionAcquisitionEvent();
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Ends the event and commits it, with the transaction beginning on the current thread or else
+   * the one bound to it, if its duration exceeds the threshold of the recording.
+   */
+  public void endAndCommit() {
+    end();
+    if (shouldCommit()) {
+      Beginning beginning = BEGINNING.get();
+      if (beginning != null) {
+        transaction = beginning.transaction();
+        readOnly = beginning.readOnly();
+      } else {
+        transaction = TransactionSynchronizationManager.getCurrentTransactionName();
+        readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+      }
+      commit();
+    }
+  }
+
+  /**
+   * A transaction the current thread is beginning.
+   *
+   * @param transaction the name of the transaction
+   * @param readOnly    whether the transaction is read-only
+   */
+  public record Beginning(String transaction, boolean readOnly) {
+
+  }
+}
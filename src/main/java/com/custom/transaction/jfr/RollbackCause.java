@@ -0,0 +1,21 @@
+package com.custom.transaction.jfr;
+
+/**
+ * What caused a {@link TransactionRollbackEvent}.
+ */
+public enum RollbackCause {
+
+  /**
+   * The method threw an exception the transaction attribute rolls back on.
+   */
+  EXCEPTION,
+  /**
+   * The transaction was rollback-only when the method returned, usually because it returned a
+   * Try#Failure the transaction attribute rolls back on.
+   */
+  TRY_FAILURE,
+  /**
+   * The commit failed, and the transaction was rolled back instead.
+   */
+  COMMIT_FAILURE
+}
@@ -0,0 +1,32 @@
+package com.custom.transaction.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The beginning of a transaction, or the joining of the one of the caller. Unless connections are
+ * acquired lazily, its duration includes the time spent waiting for a connection.
+ */
+@Name("com.custom.transaction.Begin")
+@Label("Transaction Begin")
+@Description("Begins or joins a transaction")
+public final class TransactionBeginEvent extends TransactionEvent {
+
+  private static final TransactionBeginEvent PROBE = new TransactionBeginEvent();
+
+  @Label("New Transaction")
+  @Description("Whether a transaction began, as opposed to joining the one of the caller")
+  boolean newTransaction;
+
+  /**
+   * Whether the events are being recorded.
+   */
+  public static boolean enabled() {
+    return PROBE.isEnabled();
+  }
+
+  public void setNewTransaction(boolean newTransaction) {
+    this.newTransaction = newTransaction;
+  }
+}
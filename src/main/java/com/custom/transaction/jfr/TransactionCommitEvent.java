@@ -0,0 +1,24 @@
+package com.custom.transaction.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The commit of a transaction, including the commits of failures the transaction does not roll
+ * back on.
+ */
+@Name("com.custom.transaction.Commit")
+@Label("Transaction Commit")
+@Description("Commits a transaction")
+public final class TransactionCommitEvent extends TransactionEvent {
+
+  private static final TransactionCommitEvent PROBE = new TransactionCommitEvent();
+
+  /**
+   * Whether the events are being recorded.
+   */
+  public static boolean enabled() {
+    return PROBE.isEnabled();
+  }
+}
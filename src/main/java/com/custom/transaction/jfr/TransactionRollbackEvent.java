@@ -0,0 +1,48 @@
+package com.custom.transaction.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.springframework.lang.Nullable;
+
+/**
+ * The rollback of a transaction, with what caused it.
+ */
+@Name("com.custom.transaction.Rollback")
+@Label("Transaction Rollback")
+@Description("Rolls back a transaction")
+public final class TransactionRollbackEvent extends TransactionEvent {
+
+  private static final TransactionRollbackEvent PROBE = new TransactionRollbackEvent();
+
+  @Label("Cause")
+  @Description("EXCEPTION, TRY_FAILURE or COMMIT_FAILURE")
+  String cause;
+
+  @Label("Exception Class")
+  Class<?> exceptionClass;
+
+  @Label("Exception Message")
+  String exceptionMessage;
+
+  /**
+   * Whether the events are being recorded.
+   */
+  public static boolean enabled() {
+    return PROBE.isEnabled();
+  }
+
+  /**
+   * Sets the cause of the rollback.
+   *
+   * @param cause     what caused the rollback
+   * @param exception the exception that caused it, or null if it is not known
+   */
+  public void setCause(RollbackCause cause, @Nullable Throwable exception) {
+    this.cause = cause.name();
+    if (exception != null) {
+      this.exceptionClass = exception.getClass();
+      this.exceptionMessage = exception.getMessage();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.custom.transaction.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of the transactions begun for a single joinpoint: a striped counter per
+ * {@link TransactionOutcome} and a histogram of the latency from the beginning of the transaction
+ * to its completion.
+ */
+public final class JoinpointMetrics {
+
+  private static final TransactionOutcome[] OUTCOMES = TransactionOutcome.values();
+
+  private final String joinpointIdentification;
+
+  private final LongAdder[] outcomeCounts = new LongAdder[OUTCOMES.length];
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  JoinpointMetrics(String joinpointIdentification) {
+    this.joinpointIdentification = joinpointIdentification;
+    for (int i = 0; i < outcomeCounts.length; i++) {
+      outcomeCounts[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records a completed transaction. Allocates nothing unless the counters are contended.
+   *
+   * @param outcome       how the transaction completed
+   * @param durationNanos the time from the beginning of the transaction to its completion
+   */
+  public void record(TransactionOutcome outcome, long durationNanos) {
+    outcomeCounts[outcome.ordinal()].increment();
+    latency.record(durationNanos);
+  }
+
+  public String getJoinpointIdentification() {
+    return joinpointIdentification;
+  }
+
+  /**
+   * Returns the number of transactions that completed with the given outcome.
+   *
+   * @param outcome the outcome
+   * @return the number of transactions
+   */
+  public long count(TransactionOutcome outcome) {
+    return outcomeCounts[outcome.ordinal()].sum();
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  /**
+   * Takes a snapshot of the counters and of the latency histogram.
+   *
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    return new Snapshot(joinpointIdentification,
+        count(TransactionOutcome.COMMIT),
+        count(TransactionOutcome.EXCEPTION_ROLLBACK),
+        count(TransactionOutcome.FAILURE_ROLLBACK),
+        count(TransactionOutcome.NO_ROLLBACK_COMMIT),
+        count(TransactionOutcome.ROLLBACK_ONLY),
+        count(TransactionOutcome.COMMIT_FAILURE),
+        latency.snapshot());
+  }
+
+  /**
+   * A point in time copy of the metrics of a joinpoint.
+   *
+   * @param joinpointIdentification the identification of the joinpoint
+   * @param commits                 the transactions that committed
+   * @param exceptionRollbacks      the transactions rolled back because of a thrown exception
+   * @param failureRollbacks        the transactions rolled back because of a returned
+   *                                Try#Failure
+   * @param noRollbackCommits       the failed transactions that committed because of
+   *                                {@code noRollbackFor}
+   * @param rollbackOnlyRollbacks   the successful transactions rolled back because they had been
+   *                                marked rollback-only
+   * @param commitFailures          the transactions whose commit failed
+   * @param latency                 the latency from the beginning of the transactions to their
+   *                                completion
+   */
+  public record Snapshot(
+      String joinpointIdentification,
+      long commits,
+      long exceptionRollbacks,
+      long failureRollbacks,
+      long noRollbackCommits,
+      long rollbackOnlyRollbacks,
+      long commitFailures,
+      LatencyHistogram.Snapshot latency) {
+
+    /**
+     * Returns the total number of completed transactions.
+     *
+     * @return the number of transactions
+     */
+    public long total() {
+      return commits + exceptionRollbacks + failureRollbacks + noRollbackCommits
+          + rollbackOnlyRollbacks + commitFailures;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.custom.transaction.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds with HdrHistogram style log-linear buckets.
+ * Values below 128 are counted exactly; larger values fall into 64 linear buckets per power of two,
+ * which bounds the relative error of any reported value to 1/64 (about 1.6%) over the whole range
+ * of a long.
+ *
+ * <p>Recording a value is a single {@link AtomicLongArray} increment plus a few striped updates, and
+ * allocates nothing.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+  private static final int BUCKET_COUNT =
+      SUB_BUCKET_COUNT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+  private final LongAdder count = new LongAdder();
+
+  private final LongAdder totalNanos = new LongAdder();
+
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records a latency. Negative values are recorded as zero.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long value = Math.max(nanos, 0);
+    counts.incrementAndGet(indexOf(value));
+    count.increment();
+    totalNanos.add(value);
+    maxNanos.accumulate(value);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public long totalNanos() {
+    return totalNanos.sum();
+  }
+
+  public long maxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Takes a snapshot of the histogram. Values recorded while the snapshot is taken may or may not be
+   * part of it, but the count of the snapshot always matches its buckets.
+   *
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    long[] bucketCounts = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      bucketCounts[i] = counts.get(i);
+      count += bucketCounts[i];
+    }
+    return new Snapshot(count, totalNanos.sum(), maxNanos.get(), bucketCounts);
+  }
+
+  static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // Shifts the value so that it lands in the upper half of the sub-buckets
+    int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT
+        + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * A point in time copy of a {@link LatencyHistogram}.
+   *
+   * @param count      the number of recorded latencies
+   * @param totalNanos the sum of the recorded latencies
+   * @param maxNanos   the highest recorded latency
+   * @param counts     the count of every bucket
+   */
+  public record Snapshot(long count, long totalNanos, long maxNanos, long[] counts) {
+
+    /**
+     * Returns the mean latency, or zero if nothing was recorded.
+     *
+     * @return the mean latency in nanoseconds
+     */
+    public double meanNanos() {
+      return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * Returns the latency at the given percentile, i.e. the highest latency that is equivalent,
+     * within the precision of the histogram, to the value below which the given percentage of the
+     * recorded latencies fall.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, or zero if nothing was recorded
+     */
+    public long valueAtPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      double boundedPercentile = Math.min(Math.max(percentile, 0), 100);
+      long rank = Math.max(1, (long) Math.ceil(boundedPercentile / 100 * count));
+      long cumulative = 0;
+      for (int i = 0; i < counts.length; i++) {
+        cumulative += counts[i];
+        if (cumulative >= rank) {
+          return Math.min(highestEquivalentValue(i), maxNanos);
+        }
+      }
+      return maxNanos;
+    }
+  }
+}
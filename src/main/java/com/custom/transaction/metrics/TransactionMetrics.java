@@ -0,0 +1,110 @@
+package com.custom.transaction.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per joinpoint metrics of the transactions demarcated by
+ * {@link com.custom.transaction.CustomTransactionInterceptor}.
+ *
+ * <p>The metrics are always available in process through {@link #snapshot()}. When bound to a
+ * Micrometer {@link MeterRegistry}, every joinpoint, including the ones first invoked after
+ * binding, is also exposed as:
+ * <ul>
+ *   <li>{@value #OUTCOMES_METER}, a function counter per {@link TransactionOutcome}, tagged with
+ *   {@code joinpoint} and {@code outcome}</li>
+ *   <li>{@value #DURATION_METER}, a function timer of the latency from the beginning of the
+ *   transaction to its completion, tagged with {@code joinpoint}</li>
+ *   <li>{@value #DURATION_MAX_METER} and {@value #DURATION_PERCENTILE_METER} time gauges of the
+ *   maximum and of the percentiles (tagged with {@code phi}) of the latency histogram</li>
+ * </ul>
+ */
+public class TransactionMetrics implements MeterBinder {
+
+  public static final String OUTCOMES_METER = "custom.transaction.outcomes";
+
+  public static final String DURATION_METER = "custom.transaction.duration";
+
+  public static final String DURATION_MAX_METER = "custom.transaction.duration.max";
+
+  public static final String DURATION_PERCENTILE_METER = "custom.transaction.duration.percentile";
+
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final Map<String, JoinpointMetrics> joinpointMetrics = new ConcurrentHashMap<>();
+
+  private final List<MeterRegistry> meterRegistries = new CopyOnWriteArrayList<>();
+
+  /**
+   * Returns the metrics of the given joinpoint, creating and registering them on first use.
+   *
+   * @param joinpointIdentification the identification of the joinpoint
+   * @return the metrics of the joinpoint
+   */
+  public JoinpointMetrics forJoinpoint(String joinpointIdentification) {
+    JoinpointMetrics metrics = joinpointMetrics.get(joinpointIdentification);
+    if (metrics != null) {
+      return metrics;
+    }
+    metrics = joinpointMetrics.computeIfAbsent(joinpointIdentification, JoinpointMetrics::new);
+    // Registering is idempotent, so a registry bound concurrently may safely register it twice
+    for (MeterRegistry registry : meterRegistries) {
+      registerMeters(registry, metrics);
+    }
+    return metrics;
+  }
+
+  /**
+   * Takes a snapshot of the metrics of every joinpoint invoked so far.
+   *
+   * @return the snapshots keyed and sorted by joinpoint identification
+   */
+  public Map<String, JoinpointMetrics.Snapshot> snapshot() {
+    Map<String, JoinpointMetrics.Snapshot> snapshots = new TreeMap<>();
+    joinpointMetrics.forEach((joinpoint, metrics) -> snapshots.put(joinpoint, metrics.snapshot()));
+    return snapshots;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    meterRegistries.add(registry);
+    joinpointMetrics.values().forEach(metrics -> registerMeters(registry, metrics));
+  }
+
+  private static void registerMeters(MeterRegistry registry, JoinpointMetrics metrics) {
+    String joinpoint = metrics.getJoinpointIdentification();
+    for (TransactionOutcome outcome : TransactionOutcome.values()) {
+      FunctionCounter.builder(OUTCOMES_METER, metrics, m -> m.count(outcome))
+          .description("Transactions completed per joinpoint and outcome")
+          .tag("joinpoint", joinpoint)
+          .tag("outcome", outcome.tagValue())
+          .register(registry);
+    }
+    LatencyHistogram latency = metrics.getLatency();
+    FunctionTimer.builder(DURATION_METER, latency,
+            LatencyHistogram::count, LatencyHistogram::totalNanos, TimeUnit.NANOSECONDS)
+        .description("Time from the beginning of a transaction to its completion")
+        .tag("joinpoint", joinpoint)
+        .register(registry);
+    TimeGauge.builder(DURATION_MAX_METER, latency, TimeUnit.NANOSECONDS,
+            LatencyHistogram::maxNanos)
+        .tag("joinpoint", joinpoint)
+        .register(registry);
+    for (double percentile : PERCENTILES) {
+      TimeGauge.builder(DURATION_PERCENTILE_METER, latency, TimeUnit.NANOSECONDS,
+              histogram -> histogram.snapshot().valueAtPercentile(percentile * 100))
+          .tag("joinpoint", joinpoint)
+          .tag("phi", String.valueOf(percentile))
+          .register(registry);
+    }
+  }
+}
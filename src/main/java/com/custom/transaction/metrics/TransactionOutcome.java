@@ -0,0 +1,51 @@
+package com.custom.transaction.metrics;
+
+/**
+ * How a transaction demarcated by
+ * {@link com.custom.transaction.CustomTransactionInterceptor} completed.
+ */
+public enum TransactionOutcome {
+
+  /**
+   * The method completed successfully and the transaction committed.
+   */
+  COMMIT("commit"),
+  /**
+   * The method threw an exception the transaction attribute rolls back on.
+   */
+  EXCEPTION_ROLLBACK("exception_rollback"),
+  /**
+   * The method returned a Try#Failure the transaction attribute rolls back on.
+   */
+  FAILURE_ROLLBACK("failure_rollback"),
+  /**
+   * The method failed, by throwing or by returning a Try#Failure, but the transaction committed
+   * because of {@code noRollbackFor}.
+   */
+  NO_ROLLBACK_COMMIT("no_rollback_commit"),
+  /**
+   * The method completed successfully, but the transaction had been marked rollback-only, so it
+   * rolled back instead of committing.
+   */
+  ROLLBACK_ONLY("rollback_only"),
+  /**
+   * The commit itself failed. For a Try returning method, the failure was returned as a
+   * Try#Failure.
+   */
+  COMMIT_FAILURE("commit_failure");
+
+  private final String tagValue;
+
+  TransactionOutcome(String tagValue) {
+    this.tagValue = tagValue;
+  }
+
+  /**
+   * The value of the {@code outcome} tag of the Micrometer meters.
+   *
+   * @return the tag value
+   */
+  public String tagValue() {
+    return tagValue;
+  }
+}
@@ -0,0 +1,49 @@
+package com.custom.transaction.routing;
+
+/**
+ * Tells the {@link ReplicaRoutingDataSource} whether the transaction about to begin on the current
+ * thread is read-only. {@link com.custom.transaction.CustomTransactionInterceptor} enters the
+ * context around every transaction it begins, read-only or not, before the connection of the
+ * transaction is acquired, which the
+ * {@link org.springframework.transaction.support.TransactionSynchronizationManager} read-only flag
+ * is set too late for.
+ */
+public final class ReadOnlyRoutingContext {
+
+  private static final ThreadLocal<Boolean> READ_ONLY = ThreadLocal.withInitial(() -> false);
+
+  private ReadOnlyRoutingContext() {
+  }
+
+  /**
+   * Marks the transactions begun on the current thread as read-only, or as read-write, until
+   * {@link #restore} is called. A read-write transaction nested in a read-only one enters the
+   * context as well, so that it does not begin on a replica.
+   *
+   * @param readOnly whether the transactions begun on the current thread are read-only
+   * @return the previous state, to be passed to {@link #restore}
+   */
+  public static boolean enter(boolean readOnly) {
+    boolean previous = READ_ONLY.get();
+    READ_ONLY.set(readOnly);
+    return previous;
+  }
+
+  /**
+   * Restores the state the context had before {@link #enter} was called.
+   *
+   * @param previous the state returned by {@link #enter}
+   */
+  public static void restore(boolean previous) {
+    READ_ONLY.set(previous);
+  }
+
+  /**
+   * Whether the transaction begun on the current thread is read-only.
+   *
+   * @return true if the connection can be acquired from a replica
+   */
+  public static boolean isReadOnly() {
+    return READ_ONLY.get();
+  }
+}
@@ -0,0 +1,71 @@
+package com.custom.transaction.routing;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Routes the connections of read-only transactions to replicas of the primary database, chosen in
+ * turn from a pool of replicas, and every other connection to the primary one.
+ *
+ * <p>The decision is taken from the {@link ReadOnlyRoutingContext} when a connection is acquired,
+ * so a whole transaction, including its rollback, runs on the database it began on.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+  private static final String PRIMARY = "primary";
+
+  private final DataSource primary;
+
+  private final List<DataSource> replicas;
+
+  private final AtomicInteger nextReplica = new AtomicInteger();
+
+  public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+    this.primary = primary;
+    this.replicas = List.copyOf(replicas);
+    Map<Object, Object> targetDataSources = new HashMap<>();
+    targetDataSources.put(PRIMARY, primary);
+    for (int i = 0; i < this.replicas.size(); i++) {
+      targetDataSources.put(i, this.replicas.get(i));
+    }
+    setTargetDataSources(targetDataSources);
+    setDefaultTargetDataSource(primary);
+    setLenientFallback(false);
+    afterPropertiesSet();
+  }
+
+  public DataSource getPrimary() {
+    return primary;
+  }
+
+  public List<DataSource> getReplicas() {
+    return replicas;
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (replicas.isEmpty() || !ReadOnlyRoutingContext.isReadOnly()) {
+      return PRIMARY;
+    }
+    return Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+  }
+
+  /**
+   * Closes the primary and the replica data sources that can be closed, such as connection pools.
+   */
+  @Override
+  public void close() throws Exception {
+    for (DataSource replica : replicas) {
+      if (replica instanceof AutoCloseable closeable) {
+        closeable.close();
+      }
+    }
+    if (primary instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.custom.transaction.sharding;
+
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * The shards of a database, each a {@link DataSource} with the transaction manager that demarcates
+ * its transactions. A shard key is mapped to a shard by hashing it, so keys must have a
+ * {@code hashCode} that is the same in every JVM, such as a {@code String} or a {@code Long}, and
+ * the number of shards must not change while the data lives on them.
+ *
+ * <p>{@link com.custom.transaction.CustomTransactionInterceptor} begins the transaction of a method
+ * with a {@link com.custom.transaction.ShardKey} parameter on the shard of the key, through the
+ * transaction manager of the shard. The data access code of the method writes to the
+ * {@link #getDataSource DataSource} of the same shard, e.g. through a {@code JdbcTemplate} per
+ * shard, and so joins the transaction.
+ */
+public class Shards implements AutoCloseable {
+
+  private final List<DataSource> dataSources;
+
+  private final List<PlatformTransactionManager> transactionManagers;
+
+  /**
+   * Creates the shards of the given data sources, each demarcated by a
+   * {@link DataSourceTransactionManager} of its own.
+   *
+   * @param dataSources the data sources of the shards, in shard order
+   */
+  public Shards(List<DataSource> dataSources) {
+    this(dataSources, dataSources.stream()
+        .<PlatformTransactionManager>map(DataSourceTransactionManager::new)
+        .toList());
+  }
+
+  /**
+   * Creates the shards of the given data sources and transaction managers.
+   *
+   * @param dataSources         the data sources of the shards, in shard order
+   * @param transactionManagers the transaction manager of every data source, in shard order
+   */
+  public Shards(List<DataSource> dataSources,
+      List<? extends PlatformTransactionManager> transactionManagers) {
+    if (dataSources.isEmpty() || dataSources.size() != transactionManagers.size()) {
+      throw new IllegalArgumentException("Every shard needs a data source and a transaction "
+          + "manager, got " + dataSources.size() + " data sources and "
+          + transactionManagers.size() + " transaction managers");
+    }
+    this.dataSources = List.copyOf(dataSources);
+    this.transactionManagers = List.copyOf(transactionManagers);
+  }
+
+  public int size() {
+    return dataSources.size();
+  }
+
+  /**
+   * Maps a shard key to its shard.
+   *
+   * @param key the shard key
+   * @return the index of the shard
+   */
+  public int shardOf(Object key) {
+    int hash = key.hashCode();
+    // Spreads the high bits, which the modulo of a small number of shards ignores
+    return Math.floorMod(hash ^ (hash >>> 16), dataSources.size());
+  }
+
+  public DataSource getDataSource(int shard) {
+    return dataSources.get(shard);
+  }
+
+  public PlatformTransactionManager getTransactionManager(int shard) {
+    return transactionManagers.get(shard);
+  }
+
+  /**
+   * Closes the data sources that can be closed, such as connection pools.
+   */
+  @Override
+  public void close() throws Exception {
+    for (DataSource dataSource : dataSources) {
+      if (dataSource instanceof AutoCloseable closeable) {
+        closeable.close();
+      }
+    }
+  }
+}
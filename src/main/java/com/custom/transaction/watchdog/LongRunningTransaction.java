@@ -0,0 +1,26 @@
+package com.custom.transaction.watchdog;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * A snapshot of a transaction that is still active.
+ *
+ * @param joinpointIdentification the joinpoint that began the transaction
+ * @param threadName              the name of the thread that owns the transaction
+ * @param holdTime                how long the transaction has been active
+ * @param flagged                 whether the transaction has been active for longer than the
+ *                                threshold of the watchdog
+ * @param aborted                 whether the watchdog has aborted the transaction
+ * @param stackTrace              the stack of the owning thread when the transaction was flagged,
+ *                                or an empty list if it hasn't been flagged
+ */
+public record LongRunningTransaction(
+    String joinpointIdentification,
+    String threadName,
+    Duration holdTime,
+    boolean flagged,
+    boolean aborted,
+    List<StackTraceElement> stackTrace) {
+
+}
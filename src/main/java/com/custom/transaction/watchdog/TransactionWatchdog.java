@@ -0,0 +1,231 @@
+package com.custom.transaction.watchdog;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionTimedOutException;
+
+/**
+ * Keeps track of the transactions that hold a connection and flags the ones that have been active
+ * for longer than a threshold, which are the usual cause of a starved connection pool.
+ *
+ * <p>{@link com.custom.transaction.CustomTransactionInterceptor} registers every transaction it
+ * begins and unregisters it when the transaction info is cleaned up. A background thread scans the
+ * registry a few times per threshold. The first time a transaction is found past the threshold, the
+ * stack of its thread is captured and logged, and, if the watchdog aborts flagged transactions, the
+ * transaction is aborted so that it completes as a Try#Failure, or with an exception, once its
+ * method returns. The scanner doesn't own the status of the transaction, so it only publishes the
+ * abort: the owning thread reads it with {@link #beginCompletion} before it decides how the
+ * transaction completes, and marks the transaction rollback-only itself. A transaction whose
+ * completion has begun can no longer be aborted, so it never rolls back behind the back of a caller
+ * that has been told it committed.
+ */
+public class TransactionWatchdog implements MeterBinder, AutoCloseable {
+
+  private static final Log logger = LogFactory.getLog(TransactionWatchdog.class);
+
+  private final Map<Object, ActiveTransaction> activeTransactions = new ConcurrentHashMap<>(256);
+
+  private final long thresholdNanos;
+
+  private final boolean abortFlagged;
+
+  private final LongAdder flaggedTransactions = new LongAdder();
+
+  private final ScheduledExecutorService scanner;
+
+  /**
+   * Creates a watchdog and starts its scanner.
+   *
+   * @param threshold    how long a transaction may be active before it is flagged
+   * @param abortFlagged whether flagged transactions are marked rollback-only
+   */
+  public TransactionWatchdog(Duration threshold, boolean abortFlagged) {
+    this.thresholdNanos = threshold.toNanos();
+    this.abortFlagged = abortFlagged;
+    this.scanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "transaction-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long periodNanos = Math.max(thresholdNanos / 4, TimeUnit.MILLISECONDS.toNanos(10));
+    scanner.scheduleAtFixedRate(this::scan, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Registers a transaction that has just begun on the current thread.
+   *
+   * @param key                     identifies the transaction until it is unregistered
+   * @param joinpointIdentification the joinpoint that began the transaction
+   */
+  public void register(Object key, String joinpointIdentification) {
+    activeTransactions.put(key, new ActiveTransaction(joinpointIdentification,
+        Thread.currentThread(), System.nanoTime()));
+  }
+
+  /**
+   * Unregisters a transaction once it has completed.
+   *
+   * @param key identifies the transaction
+   */
+  public void unregister(Object key) {
+    activeTransactions.remove(key);
+  }
+
+  /**
+   * Returns why the watchdog has aborted the transaction, if it has, and stops it from aborting the
+   * transaction from then on. Called by the owning thread right before it decides how the
+   * transaction completes.
+   *
+   * @param key identifies the transaction
+   * @return the cause of the abort, or null if the watchdog hasn't aborted the transaction
+   */
+  @Nullable
+  public TransactionTimedOutException beginCompletion(Object key) {
+    ActiveTransaction transaction = activeTransactions.get(key);
+    return (transaction != null ? transaction.beginCompletion() : null);
+  }
+
+  /**
+   * Returns the transactions that have been active the longest, longest first.
+   *
+   * @param limit the maximum number of transactions to return
+   * @return the snapshots of the transactions
+   */
+  public List<LongRunningTransaction> topOffenders(int limit) {
+    long now = System.nanoTime();
+    return activeTransactions.values().stream()
+        .sorted(Comparator.comparingLong(transaction -> transaction.startNanos))
+        .limit(limit)
+        .map(transaction -> transaction.snapshot(now))
+        .toList();
+  }
+
+  /**
+   * The number of transactions that are active right now.
+   *
+   * @return the number of active transactions
+   */
+  public int getActiveCount() {
+    return activeTransactions.size();
+  }
+
+  /**
+   * The number of transactions flagged since the watchdog started.
+   *
+   * @return the number of flagged transactions
+   */
+  public long getFlaggedCount() {
+    return flaggedTransactions.sum();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("custom.transaction.active", this, TransactionWatchdog::getActiveCount)
+        .description("Transactions that are active right now")
+        .register(registry);
+    FunctionCounter.builder("custom.transaction.flagged", this,
+            TransactionWatchdog::getFlaggedCount)
+        .description("Transactions that have been active for longer than the watchdog threshold")
+        .register(registry);
+  }
+
+  /**
+   * Stops the scanner.
+   */
+  @Override
+  public void close() {
+    scanner.shutdownNow();
+  }
+
+  private void scan() {
+    long now = System.nanoTime();
+    for (ActiveTransaction transaction : activeTransactions.values()) {
+      if (!transaction.flagged && now - transaction.startNanos > thresholdNanos) {
+        flag(transaction, now);
+      }
+    }
+  }
+
+  private void flag(ActiveTransaction transaction, long now) {
+    transaction.stackTrace = transaction.thread.getStackTrace();
+    transaction.flagged = true;
+    flaggedTransactions.increment();
+    Duration holdTime = Duration.ofNanos(now - transaction.startNanos);
+    boolean aborted = abortFlagged && transaction.abort(new TransactionTimedOutException(
+        "Transaction of [" + transaction.joinpointIdentification + "] aborted by the watchdog"
+            + " after " + holdTime.toMillis() + "ms"));
+    if (logger.isWarnEnabled()) {
+      TransactionTimedOutException stack = new TransactionTimedOutException(
+          "Stack of thread [" + transaction.thread.getName() + "] when flagged");
+      stack.setStackTrace(transaction.stackTrace);
+      logger.warn("Transaction of [" + transaction.joinpointIdentification + "] has been active for "
+          + holdTime.toMillis() + "ms" + (aborted ? " and has been aborted" : ""), stack);
+    }
+  }
+
+  private static final class ActiveTransaction {
+
+    private final String joinpointIdentification;
+
+    private final Thread thread;
+
+    private final long startNanos;
+
+    // Written by the scanner only, read by the owning thread and by snapshots
+    private volatile boolean flagged;
+
+    private volatile StackTraceElement[] stackTrace;
+
+    // Guarded by this, as the scanner may only abort the transaction until its completion begins
+    @Nullable
+    private TransactionTimedOutException abortCause;
+
+    private boolean completing;
+
+    private ActiveTransaction(String joinpointIdentification, Thread thread, long startNanos) {
+      this.joinpointIdentification = joinpointIdentification;
+      this.thread = thread;
+      this.startNanos = startNanos;
+    }
+
+    private synchronized boolean abort(TransactionTimedOutException cause) {
+      if (completing) {
+        return false;
+      }
+      abortCause = cause;
+      return true;
+    }
+
+    @Nullable
+    private synchronized TransactionTimedOutException beginCompletion() {
+      completing = true;
+      return abortCause;
+    }
+
+    private synchronized boolean isAborted() {
+      return abortCause != null;
+    }
+
+    private LongRunningTransaction snapshot(long now) {
+      StackTraceElement[] stack = stackTrace;
+      return new LongRunningTransaction(joinpointIdentification, thread.getName(),
+          Duration.ofNanos(now - startNanos), flagged, isAborted(),
+          stack != null ? Arrays.asList(stack) : List.of());
+    }
+  }
+}
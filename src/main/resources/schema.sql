@@ -0,0 +1,6 @@
+-- The results of the methods with an idempotency key, see JdbcIdempotencyStore
+create table if not exists idempotency_key (
+  idempotency_key varchar(512) primary key,
+  result blob not null,
+  expires_at timestamp not null
+);
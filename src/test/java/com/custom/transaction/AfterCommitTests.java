@@ -0,0 +1,185 @@
+package com.custom.transaction;
+
+import static com.custom.transaction.CustomTransactionInterceptorTests.proxy;
+
+import com.custom.transaction.CustomTransactionInterceptorTests.NoOpTransactionManager;
+import com.soumakis.control.Try;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Unit tests of the {@link AfterCommit} continuations of {@link CustomTransactionInterceptor},
+ * against a transaction manager that only counts its commits and rollbacks.
+ */
+class AfterCommitTests {
+
+  @Test
+  void testContinuationRunsOnExecutorAfterCommit() {
+    CountingTransactionManager transactionManager = new CountingTransactionManager();
+    List<Runnable> executed = new ArrayList<>();
+    CallbackService service = service(transactionManager, executed);
+
+    Try<Long> result = service.succeed();
+
+    assert (result.isSuccess());
+    assert (service.seen.isEmpty());
+    assert (executed.size() == 1);
+    executed.forEach(Runnable::run);
+    assert (service.seen.equals(List.of("success 1 after 1 commits")));
+  }
+
+  @Test
+  void testNothingRunsOnRollback() {
+    CountingTransactionManager transactionManager = new CountingTransactionManager();
+    List<Runnable> executed = new ArrayList<>();
+    CallbackService service = service(transactionManager, executed);
+
+    assert (service.fail().isFailure());
+    try {
+      service.succeedThenThrow();
+      assert false;
+    } catch (RuntimeException e) {
+      // Expected
+    }
+
+    // The Try#Failure marks its transaction rollback-only, the exception rolls its one back
+    assert (transactionManager.rollbacks.get() == 1);
+    assert (executed.isEmpty());
+    // The rolled back continuations are dropped rather than left to the next transaction
+    assert (service.succeed().isSuccess());
+    assert (executed.size() == 1);
+  }
+
+  @Test
+  void testOnlyRequestedContinuationsRunAfterCommittedFailure() {
+    CountingTransactionManager transactionManager = new CountingTransactionManager();
+    List<Runnable> executed = new ArrayList<>();
+    CallbackService service = service(transactionManager, executed);
+
+    Try<Long> result = service.failWithoutRollback();
+
+    assert (result.isFailure());
+    assert (transactionManager.commits.get() == 1);
+    executed.forEach(Runnable::run);
+    assert (service.seen.equals(List.of("commit failure after 1 commits")));
+  }
+
+  @Test
+  void testFailingContinuationIsIsolated() {
+    CountingTransactionManager transactionManager = new CountingTransactionManager();
+    CallbackService service = proxy(new CallbackService(transactionManager),
+        interceptor(transactionManager, Runnable::run));
+
+    Try<Long> result = service.succeedWithFailingContinuation();
+
+    assert (result.isSuccess());
+    assert (service.seen.equals(List.of("success 1 after 1 commits")));
+  }
+
+  @Test
+  void testRejectedContinuationRunsOnCommittingThread() {
+    CountingTransactionManager transactionManager = new CountingTransactionManager();
+    CallbackService service = proxy(new CallbackService(transactionManager),
+        interceptor(transactionManager, task -> {
+          throw new RejectedExecutionException();
+        }));
+
+    assert (service.succeed().isSuccess());
+    assert (service.seen.equals(List.of("success 1 after 1 commits")));
+  }
+
+  @Test
+  void testContinuationOutsideTransactionRunsRightAway() {
+    List<String> seen = new ArrayList<>();
+
+    AfterCommit.onSuccess(Try.of(() -> 1L), value -> seen.add("success " + value));
+
+    assert (seen.equals(List.of("success 1")));
+  }
+
+  private static CallbackService service(CountingTransactionManager transactionManager,
+      List<Runnable> executed) {
+    return proxy(new CallbackService(transactionManager),
+        interceptor(transactionManager, executed::add));
+  }
+
+  private static CustomTransactionInterceptor interceptor(
+      CountingTransactionManager transactionManager, Executor executor) {
+    CustomTransactionInterceptor interceptor = new CustomTransactionInterceptor(
+        transactionManager, new AnnotationTransactionAttributeSource());
+    interceptor.setAfterCommitExecutor(executor);
+    return interceptor;
+  }
+
+  static class CallbackService {
+
+    private final CountingTransactionManager transactionManager;
+    private final List<String> seen = new CopyOnWriteArrayList<>();
+
+    CallbackService(CountingTransactionManager transactionManager) {
+      this.transactionManager = transactionManager;
+    }
+
+    @Transactional
+    public Try<Long> succeed() {
+      return AfterCommit.onSuccess(Try.of(() -> 1L), this::recordSuccess);
+    }
+
+    @Transactional
+    public Try<Long> fail() {
+      AfterCommit.onCommit(Try.of(() -> 1L), result -> seen.add("commit"));
+      return AfterCommit.onSuccess(Try.failure(new IllegalArgumentException()),
+          this::recordSuccess);
+    }
+
+    @Transactional
+    public Long succeedThenThrow() {
+      AfterCommit.onSuccess(Try.of(() -> 1L), this::recordSuccess);
+      throw new IllegalArgumentException();
+    }
+
+    @Transactional(noRollbackFor = IllegalStateException.class)
+    public Try<Long> failWithoutRollback() {
+      AfterCommit.onSuccess(Try.of(() -> 1L), this::recordSuccess);
+      return AfterCommit.onCommit(Try.failure(new IllegalStateException()),
+          result -> seen.add((result.isFailure() ? "commit failure" : "commit success")
+              + " after " + transactionManager.commits.get() + " commits"));
+    }
+
+    @Transactional
+    public Try<Long> succeedWithFailingContinuation() {
+      AfterCommit.onSuccess(Try.of(() -> 1L), value -> {
+        throw new IllegalStateException("Notification failed");
+      });
+      return AfterCommit.onSuccess(Try.of(() -> 1L), this::recordSuccess);
+    }
+
+    private void recordSuccess(Long value) {
+      seen.add("success " + value + " after " + transactionManager.commits.get() + " commits");
+    }
+  }
+
+  static class CountingTransactionManager extends NoOpTransactionManager {
+
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+
+    @Override
+    public void commit(TransactionStatus status) {
+      commits.incrementAndGet();
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) {
+      rollbacks.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.custom.transaction;
+
+import com.custom.transaction.AsyncTransactionTests.TransactionThreadProbe;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.service.BookService;
+import com.soumakis.control.Try;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@SpringBootTest
+@Import(TransactionThreadProbe.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class AsyncTransactionTests {
+
+  private static final int CONCURRENT_TRANSACTIONS = 2000;
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private TransactionThreadProbe transactionThreadProbe;
+
+  @Test
+  void testAsyncTryTransactionRunsOnVirtualThread() {
+
+    Try<Boolean> result = transactionThreadProbe.runsOnVirtualThreadWithinTransaction().join();
+
+    assert (result.isSuccess());
+    assert (result.get());
+  }
+
+  @Test
+  void testAddBookAsync() {
+
+    Try<Long> result = bookService.addBookAsync("1234567890", false).join();
+
+    assert (result.isSuccess());
+    assert (result.get() != null);
+    assert (bookRepository.findByIsbn("1234567890").isPresent());
+  }
+
+  @Test
+  void testAddBookAsyncWithFailureAndRollback() {
+
+    CompletableFuture<Try<Long>> future = bookService.addBookAsync("1234567890", true);
+    Try<Long> result = future.join();
+
+    assert (!future.isCompletedExceptionally());
+    assert (result.isFailure());
+    assert (bookRepository.findByIsbn("1234567890").isEmpty());
+  }
+
+  @Test
+  void testAddBookAsyncWithCommitFailure() {
+
+    bookService.addBookAsync("1234567890", false).join();
+    // The isbn is a natural id, so the second insert fails on flush at commit time
+    CompletableFuture<Try<Long>> future = bookService.addBookAsync("1234567890", false);
+    Try<Long> result = future.join();
+
+    assert (!future.isCompletedExceptionally());
+    assert (result.isFailure());
+    assert (bookRepository.count() == 1);
+  }
+
+  @Test
+  void testThousandsOfConcurrentAsyncTransactions() {
+
+    List<CompletableFuture<Try<Long>>> futures = new ArrayList<>(CONCURRENT_TRANSACTIONS);
+    for (int i = 0; i < CONCURRENT_TRANSACTIONS; i++) {
+      // Every tenth transaction fails and rolls back
+      futures.add(bookService.addBookAsync("isbn-" + i, i % 10 == 0));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+    long failures = futures.stream().map(CompletableFuture::join).filter(Try::isFailure).count();
+
+    assert (failures == CONCURRENT_TRANSACTIONS / 10);
+    assert (bookRepository.count() == CONCURRENT_TRANSACTIONS - failures);
+    assert (bookRepository.findByIsbn("isbn-0").isEmpty());
+    assert (bookRepository.findByIsbn("isbn-1").isPresent());
+  }
+
+  static class TransactionThreadProbe {
+
+    @Transactional
+    public CompletableFuture<Try<Boolean>> runsOnVirtualThreadWithinTransaction() {
+      return CompletableFuture.completedFuture(Try.of(() -> Thread.currentThread().isVirtual()
+          && TransactionSynchronizationManager.isActualTransactionActive()));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.custom.transaction;
+
+import com.custom.transaction.example.repository.BatchResult;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.soumakis.control.Try;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class BatchInsertTests {
+
+  private static final int BOOKS = 1000;
+
+  private static final String ADD_BOOKS = BookService.class.getName() + ".addBooks";
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private CustomTransactionInterceptor transactionInterceptor;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void resetStatistics() {
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  void testBooksAreInsertedInJdbcBatches() {
+    Try<BatchResult> result = bookService.addBooks(books(BOOKS));
+
+    assert (result.isSuccess());
+    assert (result.get().inserted() == BOOKS);
+    assert (result.get().flushes() == BOOKS / 50);
+    assert (bookRepository.count() == BOOKS);
+    // One insert and one sequence call per batch of fifty, instead of two statements per book
+    assert (statistics.getPrepareStatementCount() < BOOKS / 10);
+  }
+
+  @Test
+  void testPartialBatchIsFlushed() {
+    Try<BatchResult> result = bookService.addBooks(books(120));
+
+    assert (result.isSuccess());
+    assert (result.get().inserted() == 120);
+    assert (result.get().flushes() == 3);
+    assert (bookRepository.count() == 120);
+  }
+
+  @Test
+  void testDuplicateIsbnRollsBackWholeBatch() {
+    List<BookEntity> books = books(BOOKS);
+    books.get(600).setIsbn(books.get(10).getIsbn());
+
+    Try<BatchResult> result = bookService.addBooks(books);
+
+    assert (result.isFailure());
+    assert (bookRepository.count() == 0);
+  }
+
+  @Test
+  void testInsertOverBulkheadLimitIsRejectedAsFailure() {
+    // The limiter of the bulkhead is created by the first invocation
+    assert (bookService.addBooks(List.of()).isSuccess());
+    ConcurrencyLimiter limiter = transactionInterceptor.getConcurrencyLimiter(ADD_BOOKS);
+    // Takes the four permits the bulk inserts in flight would hold
+    for (int i = 0; i < 4; i++) {
+      assert (limiter.tryAcquire());
+    }
+
+    Try<BatchResult> rejected = bookService.addBooks(books(BOOKS));
+
+    assert (rejected.isFailure());
+    rejected.onFailure(ex -> {
+      assert (ex instanceof BulkheadFullException);
+    });
+    assert (bookRepository.count() == 0);
+
+    for (int i = 0; i < 4; i++) {
+      limiter.release(0);
+    }
+    assert (bookService.addBooks(books(BOOKS)).isSuccess());
+  }
+
+  private static List<BookEntity> books(int count) {
+    List<BookEntity> books = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn(String.format("%010d", i));
+      book.setPrice(100);
+      book.setTitle("Title " + i);
+      books.add(book);
+    }
+    return books;
+  }
+}
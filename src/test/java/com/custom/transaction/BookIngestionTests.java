@@ -0,0 +1,92 @@
+package com.custom.transaction;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.web.BookIngestionController;
+import com.custom.transaction.example.web.ChunkOutcome;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest(properties = "example.ingest.chunk-size=100")
+@AutoConfigureMockMvc
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class BookIngestionTests {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Test
+  void testEveryChunkCommitsInATransactionOfItsOwn() throws Exception {
+    List<ChunkOutcome> outcomes = ingest(books(250, -1, -1));
+
+    assert (outcomes.size() == 3);
+    assert (outcomes.stream().allMatch(outcome -> outcome.status().equals("committed")));
+    assert (outcomes.get(2).firstLine() == 201);
+    assert (outcomes.get(2).lastLine() == 250);
+    assert (outcomes.get(2).books() == 50);
+    assert (bookRepository.count() == 250);
+  }
+
+  @Test
+  void testFailedChunkDoesNotRollBackTheOthers() throws Exception {
+    // The title of book 150 doesn't fit its column, so the second chunk fails to insert
+    List<ChunkOutcome> outcomes = ingest(books(300, 150, -1));
+
+    assert (outcomes.get(0).status().equals("committed"));
+    assert (outcomes.get(1).status().equals("failed"));
+    assert (outcomes.get(2).status().equals("committed"));
+    assert (bookRepository.count() == 200);
+  }
+
+  @Test
+  void testMalformedLineFailsItsChunkWithoutWritingIt() throws Exception {
+    List<ChunkOutcome> outcomes = ingest(books(200, -1, 42));
+
+    assert (outcomes.get(0).status().equals("failed"));
+    assert (outcomes.get(0).error().startsWith("Line 42 is not a book"));
+    assert (outcomes.get(1).status().equals("committed"));
+    assert (bookRepository.count() == 100);
+  }
+
+  private List<ChunkOutcome> ingest(String body) throws Exception {
+    String response = mockMvc.perform(post("/books/ingest")
+            .contentType(BookIngestionController.NDJSON)
+            .content(body.getBytes(StandardCharsets.UTF_8)))
+        .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+    List<ChunkOutcome> outcomes = new ArrayList<>();
+    for (String line : response.split("\n")) {
+      outcomes.add(objectMapper.readValue(line, ChunkOutcome.class));
+    }
+    return outcomes;
+  }
+
+  private static String books(int count, int overlongTitleLine, int malformedLine) {
+    StringBuilder body = new StringBuilder();
+    for (int line = 1; line <= count; line++) {
+      if (line == malformedLine) {
+        body.append("{\"isbn\": \n");
+        continue;
+      }
+      String title = (line == overlongTitleLine) ? "T".repeat(300) : "Title " + line;
+      body.append(String.format(
+          "{\"isbn\":\"%010d\",\"title\":\"%s\",\"author\":\"Author\",\"price\":100}%n", line,
+          title));
+    }
+    return body.toString();
+  }
+}
@@ -0,0 +1,231 @@
+package com.custom.transaction;
+
+import static com.custom.transaction.CustomTransactionInterceptorTests.proxy;
+
+import com.custom.transaction.CustomTransactionInterceptorTests.NoOpTransactionManager;
+import com.soumakis.control.Try;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Unit tests of the {@link Bulkhead} support of {@link CustomTransactionInterceptor}, against a
+ * transaction manager that does nothing.
+ */
+class BulkheadTests {
+
+  private static final String HOLD = BlockingService.class.getName() + ".hold";
+
+  private static final String STREAM = BlockingService.class.getName() + ".stream";
+
+  @Test
+  void testInvocationOverLimitIsRejectedAsFailure() throws Exception {
+    CustomTransactionInterceptor interceptor = interceptor();
+    BlockingService service = proxy(new BlockingService(), interceptor);
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<Future<Try<Long>>> holders = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        holders.add(executor.submit(() -> service.hold()));
+      }
+      service.entered.await(5, TimeUnit.SECONDS);
+
+      Try<Long> rejected = service.hold();
+
+      assert (rejected.isFailure());
+      rejected.onFailure(ex -> {
+        assert (ex instanceof BulkheadFullException);
+      });
+      ConcurrencyLimiter limiter = interceptor.getConcurrencyLimiter(HOLD);
+      assert (limiter.getInFlight() == 2);
+      assert (limiter.getRejectedCount() == 1);
+
+      service.release.countDown();
+      for (Future<Try<Long>> holder : holders) {
+        assert (holder.get().isSuccess());
+      }
+      assert (limiter.getInFlight() == 0);
+    }
+    assert (service.hold().isSuccess());
+  }
+
+  @Test
+  void testPlainInvocationOverLimitThrows() throws Exception {
+    CustomTransactionInterceptor interceptor = interceptor();
+    BlockingService service = proxy(new BlockingService(), interceptor);
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      Future<Try<Long>> holder = executor.submit(() -> service.hold());
+      Future<Try<Long>> sharing = executor.submit(() -> service.holdShared());
+      service.entered.await(5, TimeUnit.SECONDS);
+
+      try {
+        service.plainShared();
+        assert false;
+      } catch (BulkheadFullException e) {
+        // Expected, holdShared has taken the only permit of the shared bulkhead
+      }
+
+      service.release.countDown();
+      assert (holder.get().isSuccess());
+      assert (sharing.get().isSuccess());
+    }
+    assert (service.plainShared() == 42L);
+  }
+
+  @Test
+  void testFutureOverLimitCompletesWithFailureAndHoldsPermitUntilCompletion() {
+    CustomTransactionInterceptor interceptor = interceptor();
+    BlockingService service = proxy(new BlockingService(), interceptor);
+
+    // The permit is taken on the calling thread, before the transaction is handed to the executor
+    CompletableFuture<Try<Long>> holder = service.holdAsync();
+
+    assert (service.holdAsync().join().isFailure());
+
+    service.release.countDown();
+    assert (holder.join().isSuccess());
+    assert (service.holdAsync().join().isSuccess());
+  }
+
+  @Test
+  void testStreamHoldsPermitUntilItCompletesItsTransaction() throws Exception {
+    CustomTransactionInterceptor interceptor = interceptor();
+    BlockingService service = proxy(new BlockingService(), interceptor);
+
+    Try<Stream<Long>> open = service.stream();
+    ConcurrencyLimiter limiter = interceptor.getConcurrencyLimiter(STREAM);
+
+    assert (open.isSuccess());
+    assert (limiter.getInFlight() == 1);
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      Future<Try<Stream<Long>>> rejected = executor.submit(() -> service.stream());
+      assert (rejected.get().isFailure());
+    }
+
+    assert (open.get().toList().equals(List.of(1L, 2L, 3L)));
+    assert (limiter.getInFlight() == 0);
+
+    Try<Stream<Long>> closed = service.stream();
+    assert (limiter.getInFlight() == 1);
+    closed.get().close();
+    assert (limiter.getInFlight() == 0);
+  }
+
+  @Test
+  void testAdaptiveLimitShrinksWhenSlow() {
+    CustomTransactionInterceptor interceptor = interceptor();
+    AdaptiveService service = proxy(new AdaptiveService(), interceptor);
+
+    for (int i = 0; i < 20; i++) {
+      service.call(5);
+    }
+    ConcurrencyLimiter limiter = interceptor.getConcurrencyLimiter("adaptive");
+    assert (limiter.getLimit() == 2);
+
+    // A call within the target only grows the limit when it has been reached
+    for (int i = 0; i < 20; i++) {
+      service.call(0);
+    }
+    assert (limiter.getLimit() == 2);
+  }
+
+  @Test
+  void testLimiterGrowsWhileSaturatedWithinTarget() {
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.of("saturated",
+        AdaptiveService.class.getAnnotation(Bulkhead.class));
+    for (int i = 0; i < 20; i++) {
+      limiter.tryAcquire();
+      limiter.release(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+    assert (limiter.getLimit() == 2);
+
+    // Each round takes every permit there is, so the first release finds the limit reached
+    for (int i = 0; i < 3; i++) {
+      int taken = 0;
+      while (limiter.tryAcquire()) {
+        taken++;
+      }
+      for (int j = 0; j < taken; j++) {
+        limiter.release(0);
+      }
+    }
+    assert (limiter.getLimit() == 5);
+  }
+
+  private static CustomTransactionInterceptor interceptor() {
+    return new CustomTransactionInterceptor(new NoOpTransactionManager(),
+        new AnnotationTransactionAttributeSource());
+  }
+
+  static class BlockingService {
+
+    private final CountDownLatch entered = new CountDownLatch(2);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Transactional
+    @Bulkhead(maxConcurrentCalls = 2)
+    public Try<Long> hold() {
+      return Try.of(this::block);
+    }
+
+    @Transactional
+    @Bulkhead(value = "shared", maxConcurrentCalls = 1)
+    public Try<Long> holdShared() {
+      return Try.of(this::block);
+    }
+
+    @Transactional
+    @Bulkhead("shared")
+    public Long plainShared() {
+      return 42L;
+    }
+
+    @Transactional
+    @Bulkhead(maxConcurrentCalls = 1)
+    public Try<Stream<Long>> stream() {
+      return Try.of(() -> Stream.of(1L, 2L, 3L));
+    }
+
+    @Transactional
+    @Bulkhead(maxConcurrentCalls = 1)
+    public CompletableFuture<Try<Long>> holdAsync() {
+      return CompletableFuture.completedFuture(Try.of(this::block));
+    }
+
+    private long block() {
+      entered.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+      return 1L;
+    }
+  }
+
+  @Bulkhead(value = "adaptive", maxConcurrentCalls = 10, minConcurrentCalls = 2,
+      targetLatencyMillis = 1)
+  static class AdaptiveService {
+
+    @Transactional
+    public Long call(long sleepMillis) {
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return sleepMillis;
+    }
+  }
+}
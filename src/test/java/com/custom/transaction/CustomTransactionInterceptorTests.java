@@ -0,0 +1,195 @@
+package com.custom.transaction;
+
+import com.soumakis.control.Try;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+/**
+ * Unit tests of {@link CustomTransactionInterceptor} that run without an application context,
+ * against a transaction manager that does nothing.
+ */
+class CustomTransactionInterceptorTests {
+
+  private static final double ALLOCATION_TOLERANCE_BYTES = 1.0;
+
+  private static volatile Object sink;
+
+  @Test
+  void testInvocationPlanIsResolvedOnce() {
+    CountingTransactionAttributeSource tas = new CountingTransactionAttributeSource();
+    CustomTransactionInterceptor interceptor = new CustomTransactionInterceptor(
+        new NoOpTransactionManager(), tas);
+    SampleService service = proxy(new SampleService(), interceptor);
+
+    service.succeed();
+    service.succeed();
+    service.succeed();
+
+    assert (tas.lookups.get() == 1);
+
+    interceptor.onApplicationEvent(new ContextRefreshedEvent(new GenericApplicationContext()));
+    service.succeed();
+
+    assert (tas.lookups.get() == 2);
+  }
+
+  @Test
+  void testPlainReturnValueIsReturned() {
+    CustomTransactionInterceptor interceptor = new CustomTransactionInterceptor(
+        new NoOpTransactionManager(), new AnnotationTransactionAttributeSource());
+    SampleService service = proxy(new SampleService(), interceptor);
+
+    assert (service.plain() == 42L);
+    assert (service.succeed().isSuccess());
+  }
+
+  @Test
+  @Tag("allocation")
+  void testStandardPathAllocatesNothingBeyondSpringTransactionInfo() {
+    PlatformTransactionManager transactionManager = new NoOpTransactionManager();
+    AnnotationTransactionAttributeSource tas = new AnnotationTransactionAttributeSource();
+    SampleService custom = proxy(new SampleService(),
+        new CustomTransactionInterceptor(transactionManager, tas));
+    SampleService reference = proxy(new SampleService(),
+        new ReferenceTransactionInterceptor(transactionManager, tas));
+
+    double customTry = allocatedBytesPerCall(custom::succeed);
+    double referenceTry = allocatedBytesPerCall(reference::succeed);
+    double customPlain = allocatedBytesPerCall(custom::plain);
+    double referencePlain = allocatedBytesPerCall(reference::plain);
+
+    assert (customTry <= referenceTry + ALLOCATION_TOLERANCE_BYTES)
+        : "Try success allocates " + customTry + " bytes per call, expected at most "
+        + referenceTry;
+    assert (customPlain <= referencePlain + ALLOCATION_TOLERANCE_BYTES)
+        : "plain return allocates " + customPlain + " bytes per call, expected at most "
+        + referencePlain;
+  }
+
+  private static double allocatedBytesPerCall(Supplier<?> call) {
+    com.sun.management.ThreadMXBean threadMXBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().threadId();
+    // The first rounds run interpreted code, so the lowest round is the steady state
+    double bytesPerCall = Double.MAX_VALUE;
+    for (int round = 0; round < 10; round++) {
+      int calls = 50_000;
+      long before = threadMXBean.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < calls; i++) {
+        sink = call.get();
+      }
+      long after = threadMXBean.getThreadAllocatedBytes(threadId);
+      bytesPerCall = Math.min(bytesPerCall, (double) (after - before) / calls);
+    }
+    return bytesPerCall;
+  }
+
+  static <T> T proxy(T target, TransactionInterceptor interceptor) {
+    ProxyFactory proxyFactory = new ProxyFactory(target);
+    proxyFactory.setProxyTargetClass(true);
+    proxyFactory.addAdvice(interceptor);
+    @SuppressWarnings("unchecked")
+    T proxy = (T) proxyFactory.getProxy();
+    return proxy;
+  }
+
+  static class SampleService {
+
+    private final Try<Long> success = Try.of(() -> 1L);
+
+    @Transactional
+    public Try<Long> succeed() {
+      return success;
+    }
+
+    @Transactional
+    public Long plain() {
+      return 42L;
+    }
+  }
+
+  static class NoOpTransactionManager implements PlatformTransactionManager {
+
+    @Override
+    public TransactionStatus getTransaction(@Nullable TransactionDefinition definition) {
+      return new SimpleTransactionStatus();
+    }
+
+    @Override
+    public void commit(TransactionStatus status) {
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) {
+    }
+  }
+
+  /**
+   * Does only what Spring needs to demarcate a transaction: creates the {@code TransactionInfo},
+   * proceeds and commits. The allocations of {@link CustomTransactionInterceptor} are measured
+   * against it.
+   */
+  static class ReferenceTransactionInterceptor extends TransactionInterceptor {
+
+    ReferenceTransactionInterceptor(TransactionManager transactionManager,
+        TransactionAttributeSource tas) {
+      super(transactionManager, tas);
+    }
+
+    @Override
+    @Nullable
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+      TransactionInfo txInfo = createTransactionIfNecessary(
+          (PlatformTransactionManager) getTransactionManager(), NAMED_ATTRIBUTE, "reference");
+      try {
+        Object retVal = invocation.proceed();
+        commitTransactionAfterReturning(txInfo);
+        return retVal;
+      } finally {
+        cleanupTransactionInfo(txInfo);
+      }
+    }
+
+    private static final TransactionAttribute NAMED_ATTRIBUTE = namedAttribute();
+
+    private static TransactionAttribute namedAttribute() {
+      DefaultTransactionAttribute attribute = new DefaultTransactionAttribute();
+      attribute.setName("reference");
+      return attribute;
+    }
+  }
+
+  static class CountingTransactionAttributeSource implements TransactionAttributeSource {
+
+    private final TransactionAttributeSource delegate = new AnnotationTransactionAttributeSource();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Override
+    @Nullable
+    public TransactionAttribute getTransactionAttribute(Method method,
+        @Nullable Class<?> targetClass) {
+      lookups.incrementAndGet();
+      return delegate.getTransactionAttribute(method, targetClass);
+    }
+  }
+}
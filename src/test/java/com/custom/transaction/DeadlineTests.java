@@ -0,0 +1,202 @@
+package com.custom.transaction;
+
+import static com.custom.transaction.CustomTransactionInterceptorTests.proxy;
+
+import com.custom.transaction.CustomTransactionInterceptorTests.NoOpTransactionManager;
+import com.custom.transaction.deadline.Deadline;
+import com.custom.transaction.deadline.DeadlineFilter;
+import com.soumakis.control.Try;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.Nullable;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Unit tests of the deadlines of {@link CustomTransactionInterceptor}, against a transaction
+ * manager that only records what it is asked to do.
+ */
+class DeadlineTests {
+
+  @AfterEach
+  void clearDeadline() {
+    Deadline.restore(null);
+  }
+
+  @Test
+  void testTransactionBeginsWithRemainingTimeOfCallerAsTimeout() {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    DeadlineService service = service(transactionManager);
+
+    Deadline.enter(Deadline.after(Duration.ofMillis(2500)));
+    assert (service.succeed().isSuccess());
+
+    assert (transactionManager.timeouts.get(0) == 3);
+    assert (transactionManager.rollbackOnly.get(0) == Boolean.FALSE);
+  }
+
+  @Test
+  void testOwnTimeoutIsKeptWhenShorterThanDeadlineOfCaller() {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    DeadlineService service = service(transactionManager);
+
+    Deadline.enter(Deadline.after(Duration.ofMinutes(1)));
+    Deadline inner = service.currentDeadline();
+
+    assert (transactionManager.timeouts.get(0) == 2);
+    assert (inner.remainingSeconds() <= 2);
+    // The deadline of the caller is bound again once the transaction is done
+    assert (Deadline.current().remainingSeconds() > 2);
+  }
+
+  @Test
+  void testTransactionWithoutDeadlineKeepsDefaultTimeout() {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    DeadlineService service = service(transactionManager);
+
+    assert (service.succeed().isSuccess());
+
+    assert (transactionManager.timeouts.get(0) == TransactionDefinition.TIMEOUT_DEFAULT);
+    assert (Deadline.current() == null);
+  }
+
+  @Test
+  void testPassedDeadlineFailsWithoutBeginningTransaction() {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    DeadlineService service = service(transactionManager);
+
+    Deadline.enter(Deadline.afterNanos(-1));
+    Try<Long> result = service.succeed();
+
+    assert (result.isFailure());
+    result.onFailure(ex -> {
+      assert (ex instanceof TransactionTimedOutException);
+    });
+    assert (transactionManager.timeouts.isEmpty());
+
+    try {
+      service.plain();
+      assert false;
+    } catch (TransactionTimedOutException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  void testDeadlinePassingDuringTransactionRollsBackAsFailure() {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    DeadlineService service = service(transactionManager);
+
+    Deadline.enter(Deadline.after(Duration.ofMillis(50)));
+    Try<Long> result = service.succeedSlowly(200);
+
+    assert (result.isFailure());
+    result.onFailure(ex -> {
+      assert (ex instanceof TransactionTimedOutException);
+    });
+    assert (transactionManager.rollbackOnly.get(0) == Boolean.TRUE);
+  }
+
+  @Test
+  void testFutureTransactionInheritsDeadlineOfCaller() {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    DeadlineService service = service(transactionManager);
+
+    Deadline.enter(Deadline.after(Duration.ofMillis(2500)));
+    assert (service.succeedAsync().join().isSuccess());
+
+    assert (transactionManager.timeouts.get(0) == 3);
+  }
+
+  @Test
+  void testFilterBindsDeadlineOfRequest() throws Exception {
+    DeadlineFilter filter = new DeadlineFilter("X-Request-Timeout");
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader("X-Request-Timeout", "1500");
+    AtomicReference<Deadline> seen = new AtomicReference<>();
+
+    filter.doFilter(request, new MockHttpServletResponse(),
+        new MockFilterChain(new HttpServlet() {
+          @Override
+          protected void service(HttpServletRequest req, HttpServletResponse resp) {
+            seen.set(Deadline.current());
+          }
+        }));
+
+    assert (seen.get().remainingSeconds() == 2);
+    assert (Deadline.current() == null);
+  }
+
+  private static DeadlineService service(RecordingTransactionManager transactionManager) {
+    return proxy(new DeadlineService(), new CustomTransactionInterceptor(transactionManager,
+        new AnnotationTransactionAttributeSource()));
+  }
+
+  static class DeadlineService {
+
+    @Transactional
+    public Try<Long> succeed() {
+      return Try.of(() -> 1L);
+    }
+
+    @Transactional
+    public Long plain() {
+      return 1L;
+    }
+
+    @Transactional
+    public Try<Long> succeedSlowly(long millis) {
+      return Try.of(() -> {
+        try {
+          Thread.sleep(millis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException(e);
+        }
+        return 1L;
+      });
+    }
+
+    @Transactional(timeout = 2)
+    public Deadline currentDeadline() {
+      return Deadline.current();
+    }
+
+    @Transactional
+    public CompletableFuture<Try<Long>> succeedAsync() {
+      return CompletableFuture.completedFuture(Try.of(() -> 1L));
+    }
+  }
+
+  static class RecordingTransactionManager extends NoOpTransactionManager {
+
+    private final List<Integer> timeouts = new ArrayList<>();
+    private final List<Boolean> rollbackOnly = new ArrayList<>();
+
+    @Override
+    public synchronized TransactionStatus getTransaction(
+        @Nullable TransactionDefinition definition) {
+      timeouts.add(definition.getTimeout());
+      return super.getTransaction(definition);
+    }
+
+    @Override
+    public synchronized void commit(TransactionStatus status) {
+      rollbackOnly.add(status.isRollbackOnly());
+    }
+  }
+}
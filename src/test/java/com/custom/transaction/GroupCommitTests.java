@@ -0,0 +1,262 @@
+package com.custom.transaction;
+
+import com.custom.transaction.GroupCommitTests.CommitCounter;
+import com.custom.transaction.GroupCommitTests.ContinuationProbe;
+import com.custom.transaction.GroupCommitTests.DeadlineProbe;
+import com.custom.transaction.deadline.Deadline;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.soumakis.control.Try;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest
+@Import({CommitCounter.class, DeadlineProbe.class, ContinuationProbe.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class GroupCommitTests {
+
+  private static final int CONCURRENT_INVOCATIONS = 500;
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private CommitCounter commitCounter;
+
+  @Autowired
+  private DeadlineProbe deadlineProbe;
+
+  @Autowired
+  private ContinuationProbe continuationProbe;
+
+  @Test
+  void testConcurrentInvocationsShareTransactions() {
+    List<Try<Long>> results = addBooksConcurrently(i -> "isbn-" + i, i -> i % 10 == 0);
+
+    long failures = results.stream().filter(Try::isFailure).count();
+    assert (failures == CONCURRENT_INVOCATIONS / 10);
+    assert (results.stream().filter(Try::isSuccess).allMatch(result -> result.get() != null));
+    assert (bookRepository.count() == CONCURRENT_INVOCATIONS - failures);
+    assert (bookRepository.findByIsbn("isbn-0").isEmpty());
+    assert (bookRepository.findByIsbn("isbn-1").isPresent());
+    // Far fewer physical commits than invocations
+    assert (commitCounter.commits.get() < CONCURRENT_INVOCATIONS / 2);
+  }
+
+  @Test
+  void testConstraintViolationOnlyFailsItsOwnInvocation() {
+    // Every isbn is added twice, the natural id lets only one of them in
+    List<Try<Long>> results = addBooksConcurrently(i -> "isbn-" + (i / 2), i -> false);
+
+    long failures = results.stream().filter(Try::isFailure).count();
+    assert (failures == CONCURRENT_INVOCATIONS / 2);
+    assert (bookRepository.count() == CONCURRENT_INVOCATIONS / 2);
+  }
+
+  @Test
+  void testSingleInvocation() {
+    Try<Long> result = bookService.addBookGroupCommitted("1234567890", false);
+
+    assert (result.isSuccess());
+    assert (bookRepository.findByIsbn("1234567890").isPresent());
+  }
+
+  @Test
+  void testFollowerStopsWaitingWhenItsDeadlinePasses() {
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      CompletableFuture<Try<Long>> leader = CompletableFuture.supplyAsync(
+          () -> deadlineProbe.addBook("isbn-leader", 1000), executor);
+      sleep(100);
+
+      long startNanos = System.nanoTime();
+      Deadline.enter(Deadline.after(Duration.ofMillis(200)));
+      Try<Long> follower;
+      try {
+        follower = deadlineProbe.addBook("isbn-follower", 0);
+      } finally {
+        Deadline.restore(null);
+      }
+      long waitedMillis = Duration.ofNanos(System.nanoTime() - startNanos).toMillis();
+
+      assert (follower.isFailure());
+      follower.onFailure(ex -> {
+        assert (ex instanceof TransactionTimedOutException);
+      });
+      assert (waitedMillis < 1000) : "follower waited " + waitedMillis + "ms";
+      assert (leader.join().isSuccess());
+    }
+    // The abandoned follower never ran
+    assert (!deadlineProbe.deadlines.containsKey("isbn-follower"));
+    assert (bookRepository.findByIsbn("isbn-follower").isEmpty());
+    assert (bookRepository.findByIsbn("isbn-leader").isPresent());
+  }
+
+  @Test
+  void testMembersRunWithinTheirOwnDeadline() {
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      CompletableFuture<Try<Long>> leader = CompletableFuture.supplyAsync(
+          () -> deadlineProbe.addBook("isbn-leader", 0), executor);
+      sleep(100);
+
+      Deadline.enter(Deadline.after(Duration.ofSeconds(30)));
+      try {
+        assert (deadlineProbe.addBook("isbn-follower", 0).isSuccess());
+      } finally {
+        Deadline.restore(null);
+      }
+      assert (leader.join().isSuccess());
+    }
+    // The follower ran on the thread of the leader, still within its own deadline
+    assert (deadlineProbe.threads.get("isbn-follower") == deadlineProbe.threads.get("isbn-leader"));
+    assert (deadlineProbe.deadlines.get("isbn-leader").isEmpty());
+    assert (deadlineProbe.deadlines.get("isbn-follower").orElseThrow().remainingSeconds() <= 30);
+  }
+
+  @Test
+  void testContinuationsRunOnlyForMembersThatSurvivedTheirSavepoint()
+      throws InterruptedException {
+    List<Try<Long>> results;
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<CompletableFuture<Try<Long>>> futures = new ArrayList<>();
+      for (int i = 0; i < ContinuationProbe.BATCH_SIZE; i++) {
+        int index = i;
+        futures.add(CompletableFuture.supplyAsync(
+            () -> continuationProbe.addBook("isbn-" + index, index % 2 == 0), executor));
+      }
+      results = futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    assert (continuationProbe.continued.await(5, TimeUnit.SECONDS));
+    // Gives a continuation dispatched by mistake the time to run
+    sleep(200);
+    // All the invocations shared one transaction on the thread of the leader
+    assert (continuationProbe.threads.size() == 1);
+    for (int i = 0; i < ContinuationProbe.BATCH_SIZE; i++) {
+      assert (results.get(i).isFailure() == (i % 2 == 0));
+      assert (continuationProbe.committed.contains("isbn-" + i) == (i % 2 != 0));
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private List<Try<Long>> addBooksConcurrently(IntFunction<String> isbn,
+      IntPredicate shouldReturnFailure) {
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<CompletableFuture<Try<Long>>> futures = new ArrayList<>(CONCURRENT_INVOCATIONS);
+      for (int i = 0; i < CONCURRENT_INVOCATIONS; i++) {
+        int index = i;
+        futures.add(CompletableFuture.supplyAsync(() -> bookService.addBookGroupCommitted(
+            isbn.apply(index), shouldReturnFailure.test(index)), executor));
+      }
+      return futures.stream().map(CompletableFuture::join).toList();
+    }
+  }
+
+  static class DeadlineProbe {
+
+    private final Map<String, Optional<Deadline>> deadlines = new ConcurrentHashMap<>();
+
+    private final Map<String, Thread> threads = new ConcurrentHashMap<>();
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Transactional
+    @GroupCommit(maxBatchSize = 2, maxDelayMicros = 2_000_000)
+    public Try<Long> addBook(String isbn, long millis) {
+      return Try.of(() -> {
+        deadlines.put(isbn, Optional.ofNullable(Deadline.current()));
+        threads.put(isbn, Thread.currentThread());
+        sleep(millis);
+        var book = new BookEntity();
+        book.setAuthor("Author");
+        book.setIsbn(isbn);
+        book.setPrice(100);
+        book.setTitle("Title");
+        return bookRepository.save(book).getId();
+      });
+    }
+  }
+
+  static class ContinuationProbe {
+
+    private static final int BATCH_SIZE = 8;
+
+    private final Set<String> committed = ConcurrentHashMap.newKeySet();
+
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    private final CountDownLatch continued = new CountDownLatch(BATCH_SIZE / 2);
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Transactional
+    @GroupCommit(maxBatchSize = BATCH_SIZE, maxDelayMicros = 2_000_000)
+    public Try<Long> addBook(String isbn, boolean shouldReturnFailure) {
+      threads.add(Thread.currentThread());
+      Try<Long> result = Try.of(() -> {
+        var book = new BookEntity();
+        book.setAuthor("Author");
+        book.setIsbn(isbn);
+        book.setPrice(100);
+        book.setTitle("Title");
+        Long id = bookRepository.save(book).getId();
+        if (shouldReturnFailure) {
+          throw new RuntimeException("Exception thrown intentionally");
+        }
+        return id;
+      });
+      // Registered for failures too, which roll back to their savepoint and must drop it
+      return AfterCommit.onCommit(result, committedResult -> {
+        committed.add(isbn);
+        continued.countDown();
+      });
+    }
+  }
+
+  static class CommitCounter implements TransactionExecutionListener {
+
+    private final AtomicInteger commits = new AtomicInteger();
+
+    @Override
+    public void afterCommit(TransactionExecution transaction, Throwable commitFailure) {
+      if (commitFailure == null) {
+        commits.incrementAndGet();
+      }
+    }
+  }
+}
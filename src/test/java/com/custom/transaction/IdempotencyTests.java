@@ -0,0 +1,263 @@
+package com.custom.transaction;
+
+import static com.custom.transaction.CustomTransactionInterceptorTests.proxy;
+
+import com.custom.transaction.CustomTransactionInterceptorTests.NoOpTransactionManager;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.service.BookService;
+import com.custom.transaction.idempotency.IdempotencyStore;
+import com.custom.transaction.idempotency.JdbcIdempotencyStore;
+import com.custom.transaction.metrics.JoinpointMetrics;
+import com.custom.transaction.metrics.TransactionMetrics;
+import com.soumakis.control.Try;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest(properties = "example.transaction.idempotency-keys=true")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class IdempotencyTests {
+
+  private static final String ADD_BOOK_IDEMPOTENTLY =
+      "com.custom.transaction.example.service.BookService.addBookIdempotently";
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private TransactionMetrics transactionMetrics;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Test
+  void testRepeatedRequestReturnsStoredResult() {
+    Try<Long> first = bookService.addBookIdempotently("request-1", "1234567890");
+    Try<Long> repeated = bookService.addBookIdempotently("request-1", "1234567890");
+
+    assert (first.isSuccess());
+    assert (repeated.get().equals(first.get()));
+    assert (bookRepository.count() == 1);
+    // The repeated request never began a transaction
+    assert (metrics().total() == 1);
+  }
+
+  @Test
+  void testDifferentKeysRunSeparately() {
+    Try<Long> first = bookService.addBookIdempotently("request-1", "1234567890");
+    Try<Long> second = bookService.addBookIdempotently("request-2", "1234567890");
+
+    assert (!first.get().equals(second.get()));
+    assert (bookRepository.count() == 2);
+  }
+
+  @Test
+  void testConcurrentDuplicatesShareOneExecution() throws Exception {
+    int requests = 16;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(requests);
+    try {
+      List<CompletableFuture<Try<Long>>> results = IntStream.range(0, requests)
+          .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return bookService.addBookIdempotently("request-1", "1234567890");
+          }, executor))
+          .toList();
+      start.countDown();
+
+      Long id = results.get(0).join().get();
+      for (CompletableFuture<Try<Long>> result : results) {
+        assert (result.join().get().equals(id));
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assert (bookRepository.count() == 1);
+    assert (metrics().commits() == 1);
+  }
+
+  @Test
+  void testFailureIsNotStored() {
+    MapIdempotencyStore store = new MapIdempotencyStore();
+    IdempotentService service = service(new NoOpTransactionManager(), store);
+
+    assert (service.succeedOnSecondCall("request-1").isFailure());
+    assert (service.succeedOnSecondCall("request-1").get() == 2);
+    assert (service.succeedOnSecondCall("request-1").get() == 2);
+
+    assert (service.calls.get() == 2);
+  }
+
+  @Test
+  void testFailureToStoreRollsBack() {
+    RollbackOnlyRecordingTransactionManager transactionManager =
+        new RollbackOnlyRecordingTransactionManager();
+    MapIdempotencyStore store = new MapIdempotencyStore();
+    store.failing = true;
+    IdempotentService service = service(transactionManager, store);
+
+    Try<Integer> result = service.succeedOnSecondCall("request-1");
+
+    assert (result.isFailure());
+    result.onFailure(ex -> {
+      assert (ex instanceof DuplicateKeyException);
+    });
+    assert (transactionManager.rollbackOnly);
+  }
+
+  @Test
+  void testCallWithoutKeyRunsEveryTime() {
+    IdempotentService service = service(new NoOpTransactionManager(), new MapIdempotencyStore());
+
+    service.succeedOnSecondCall(null);
+    service.succeedOnSecondCall(null);
+
+    assert (service.calls.get() == 2);
+  }
+
+  @Test
+  void testStoredValueOfRejectedTypeIsNotDeserialized() throws IOException {
+    new JdbcTemplate(dataSource).update("insert into idempotency_key (idempotency_key, result, "
+        + "expires_at) values (?, ?, ?)", "request-1", serialize(new Gadget()),
+        Timestamp.from(Instant.now().plus(Duration.ofHours(1))));
+
+    try (JdbcIdempotencyStore store = store(Duration.ZERO)) {
+      store.find("request-1");
+      assert false;
+    } catch (IllegalStateException e) {
+      // Expected, the filter rejects the type before any of its code runs
+    }
+  }
+
+  @Test
+  void testValueOfRejectedTypeFailsToBeSaved() {
+    try (JdbcIdempotencyStore store = store(Duration.ZERO)) {
+      store.save("request-1", new Gadget(), Duration.ofHours(1));
+      assert false;
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    try (JdbcIdempotencyStore store = store(Duration.ZERO)) {
+      store.save("request-2", List.of(1L, "value"), Duration.ofHours(1));
+      assert (store.find("request-2").orElseThrow().equals(List.of(1L, "value")));
+    }
+  }
+
+  @Test
+  void testExpiredValuesArePurgedInTheBackground() throws InterruptedException {
+    try (JdbcIdempotencyStore store = store(Duration.ofMillis(20))) {
+      store.save("request-1", 1L, Duration.ofMillis(1));
+      Thread.sleep(500);
+    }
+
+    assert (new JdbcTemplate(dataSource).queryForObject("select count(*) from idempotency_key "
+        + "where idempotency_key = ?", Integer.class, "request-1") == 0);
+  }
+
+  private JdbcIdempotencyStore store(Duration purgeInterval) {
+    return new JdbcIdempotencyStore(dataSource, "idempotency_key", purgeInterval,
+        JdbcIdempotencyStore.DEFAULT_FILTER, Clock.systemUTC());
+  }
+
+  private static byte[] serialize(Object value) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+      output.writeObject(value);
+    }
+    return bytes.toByteArray();
+  }
+
+  private JoinpointMetrics.Snapshot metrics() {
+    return transactionMetrics.snapshot().get(ADD_BOOK_IDEMPOTENTLY);
+  }
+
+  private static IdempotentService service(NoOpTransactionManager transactionManager,
+      IdempotencyStore store) {
+    CustomTransactionInterceptor interceptor = new CustomTransactionInterceptor(
+        transactionManager, new AnnotationTransactionAttributeSource());
+    interceptor.setIdempotencyStore(store);
+    return proxy(new IdempotentService(), interceptor);
+  }
+
+  static class IdempotentService {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Transactional
+    public Try<Integer> succeedOnSecondCall(@IdempotencyKey String key) {
+      int call = calls.incrementAndGet();
+      return (call == 1) ? Try.failure(new IllegalStateException("First call fails"))
+          : Try.of(() -> call);
+    }
+  }
+
+  static class MapIdempotencyStore implements IdempotencyStore {
+
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+
+    private boolean failing;
+
+    @Override
+    public Optional<Object> find(String key) {
+      return Optional.ofNullable(values.get(key));
+    }
+
+    @Override
+    public void save(String key, Object value, Duration timeToLive) {
+      if (failing || values.putIfAbsent(key, value) != null) {
+        throw new DuplicateKeyException("Key [" + key + "] is already stored");
+      }
+    }
+  }
+
+  /**
+   * Stands for a class of the classpath whose deserialization runs code.
+   */
+  static class Gadget implements Serializable {
+
+  }
+
+  static class RollbackOnlyRecordingTransactionManager extends NoOpTransactionManager {
+
+    private boolean rollbackOnly;
+
+    @Override
+    public void commit(TransactionStatus status) {
+      rollbackOnly = status.isRollbackOnly();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package com.custom.transaction;
+
+import com.custom.transaction.datasource.LazyTransactionDataSource;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.service.BookService;
+import com.soumakis.control.Try;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+
+@SpringBootTest(properties = "example.datasource.lazy-connections=true")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class LazyConnectionTests {
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private LazyTransactionDataSource dataSource;
+
+  @Test
+  void testFailureBeforeDataAccessNeverAcquiresConnection() {
+    long physical = dataSource.getPhysicalConnectionCount();
+    long unacquired = dataSource.getUnacquiredConnectionCount();
+
+    Try<Long> result = bookService.addBookValidated("not-an-isbn");
+
+    assert (result.isFailure());
+    assert (dataSource.getPhysicalConnectionCount() == physical);
+    assert (dataSource.getUnacquiredConnectionCount() == unacquired + 1);
+  }
+
+  @Test
+  void testDataAccessAcquiresConnection() {
+    long physical = dataSource.getPhysicalConnectionCount();
+    long unacquired = dataSource.getUnacquiredConnectionCount();
+
+    Try<Long> result = bookService.addBookValidated("1234567890");
+
+    assert (result.isSuccess());
+    assert (dataSource.getPhysicalConnectionCount() == physical + 1);
+    assert (dataSource.getUnacquiredConnectionCount() == unacquired);
+    assert (bookRepository.findByIsbn("1234567890").isPresent());
+  }
+
+  @Test
+  void testBurstOfInvalidRequestsLeavesPoolUntouched() {
+    long physical = dataSource.getPhysicalConnectionCount();
+    long unacquired = dataSource.getUnacquiredConnectionCount();
+
+    List<CompletableFuture<Try<Long>>> results = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < 200; i++) {
+        results.add(CompletableFuture.supplyAsync(() -> bookService.addBookValidated("bad"),
+            executor));
+      }
+    }
+
+    assert (results.stream().allMatch(result -> result.join().isFailure()));
+    assert (dataSource.getPhysicalConnectionCount() == physical);
+    assert (dataSource.getUnacquiredConnectionCount() == unacquired + 200);
+  }
+
+  @Test
+  void testDefaultsAreReadWithFirstConnectionInsteadOfOnStartup() throws SQLException {
+    AtomicInteger opened = new AtomicInteger();
+    DriverManagerDataSource target = new DriverManagerDataSource("jdbc:h2:mem:lazydefaults", "sa",
+        "") {
+      @Override
+      public Connection getConnection() throws SQLException {
+        opened.incrementAndGet();
+        return super.getConnection();
+      }
+    };
+
+    LazyTransactionDataSource lazyDataSource = new LazyTransactionDataSource(target);
+
+    assert (opened.get() == 0);
+
+    try (Connection connection = lazyDataSource.getConnection()) {
+      assert (connection.getAutoCommit());
+    }
+
+    assert (opened.get() == 1);
+    assert (lazyDataSource.getPhysicalConnectionCount() == 0);
+    assert (lazyDataSource.getUnacquiredConnectionCount() == 1);
+  }
+
+  @Test
+  void testUnacquiredConnectionsAreGaugedNextToMonotonicCounters() throws SQLException {
+    LazyTransactionDataSource lazyDataSource = new LazyTransactionDataSource(
+        new DriverManagerDataSource("jdbc:h2:mem:lazymeters", "sa", ""));
+    MeterRegistry registry = new SimpleMeterRegistry();
+    lazyDataSource.bindTo(registry);
+
+    try (Connection unused = lazyDataSource.getConnection()) {
+      assert (registry.get("custom.transaction.connections.unacquired").gauge().value() == 1);
+    }
+    try (Connection connection = lazyDataSource.getConnection();
+        Statement statement = connection.createStatement()) {
+      statement.execute("select 1");
+    }
+
+    assert (registry.get("custom.transaction.connections.logical").functionCounter().count() == 2);
+    assert (registry.get("custom.transaction.connections.physical").functionCounter().count()
+        == 1);
+    assert (registry.get("custom.transaction.connections.unacquired").gauge().value() == 1);
+  }
+}
@@ -0,0 +1,135 @@
+package com.custom.transaction;
+
+import com.custom.transaction.LightweightFailureTests.RejectingBookService;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.soumakis.control.Try;
+import java.io.Serial;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest(properties = "example.transaction.lightweight-failures=true")
+@Import(RejectingBookService.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class LightweightFailureTests {
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private RejectingBookService rejectingBookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Test
+  void testUncheckedExceptionIsRethrownUnwrapped() {
+    try {
+      bookService.addBook(true);
+      assert false;
+    } catch (RuntimeException e) {
+      assert (e.getClass() == RuntimeException.class);
+      assert (e.getMessage().equals("Exception thrown intentionally"));
+      assert (e.getCause() == null);
+    }
+
+    assert (bookRepository.findByIsbn("1234567890").isEmpty());
+  }
+
+  @Test
+  void testNoRollbackExceptionIsRethrownUnwrappedAndCommits() {
+    try {
+      bookService.addBookWithNoRollbackException(true);
+      assert false;
+    } catch (IllegalStateException e) {
+      assert (e.getCause() == null);
+    }
+
+    assert (bookRepository.findByIsbn("1234567890").isPresent());
+  }
+
+  @Test
+  void testRejectionReturnsPreallocatedStacklessFailure() {
+    Try<Long> first = bookService.addBookOrReject("invalid");
+    Try<Long> second = bookService.addBookOrReject("invalid");
+
+    assert (first.isFailure());
+    assert (first == second);
+    first.onFailure(ex -> {
+      assert (ex instanceof BusinessFailure);
+      assert (ex.getStackTrace().length == 0);
+    });
+    assert (bookService.addBookOrReject("1234567890").isSuccess());
+    assert (bookRepository.count() == 1);
+  }
+
+  @Test
+  void testReturnedBusinessFailureRollsBack() {
+    Try<Long> result = rejectingBookService.addBookAndReject();
+
+    assert (result.isFailure());
+    assert (bookRepository.count() == 0);
+    assert (rejectingBookService.getRollbackRules() instanceof CachedRollbackRulesAttribute);
+  }
+
+  @Test
+  void testReturnedNoRollbackBusinessFailureCommits() {
+    Try<Long> result = rejectingBookService.addBookAndRejectNoRollback();
+
+    assert (result.isFailure());
+    assert (bookRepository.count() == 1);
+  }
+
+  static class OutOfStock extends BusinessFailure {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    OutOfStock() {
+      super("Out of stock");
+    }
+  }
+
+  static class RejectingBookService {
+
+    private static final BusinessFailure REJECTED = new BusinessFailure("Rejected");
+
+    private static final BusinessFailure OUT_OF_STOCK = new OutOfStock();
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private Object rollbackRules;
+
+    @Transactional
+    public Try<Long> addBookAndReject() {
+      addBook();
+      this.rollbackRules = CustomTransactionInterceptor.currentTransactionAttribute();
+      return REJECTED.toTry();
+    }
+
+    @Transactional(noRollbackFor = OutOfStock.class)
+    public Try<Long> addBookAndRejectNoRollback() {
+      addBook();
+      return OUT_OF_STOCK.toTry();
+    }
+
+    public Object getRollbackRules() {
+      return rollbackRules;
+    }
+
+    private void addBook() {
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn("1234567890");
+      book.setPrice(100);
+      book.setTitle("Title");
+      bookRepository.save(book);
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package com.custom.transaction;
+
+import com.custom.transaction.metrics.LatencyHistogram;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives a mix of operations from concurrent workers, each invoking operations back to back, first
+ * for a warmup period and then for the measured period. Only the operations that begin within the
+ * measured period are measured.
+ */
+final class LoadHarness {
+
+  private LoadHarness() {
+  }
+
+  /**
+   * Runs a scenario.
+   *
+   * @param scenario           the scenario
+   * @param workload           invokes the operations
+   * @param onMeasurementStart called once the warmup is over, before the first measured operation
+   *                           completes
+   * @return the measurement of the operations of the measured period
+   */
+  static Measurement run(Scenario scenario, Workload workload, Runnable onMeasurementStart)
+      throws InterruptedException {
+    LatencyHistogram latency = new LatencyHistogram();
+    LongAdder[] counts = new LongAdder[Operation.values().length];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = new LongAdder();
+    }
+    LongAdder unexpected = new LongAdder();
+    long measurementStart = System.nanoTime() + scenario.warmup().toNanos();
+    long end = measurementStart + scenario.duration().toNanos();
+
+    ThreadFactory threadFactory = scenario.virtualThreads()
+        ? Thread.ofVirtual().name("load-", 0).factory()
+        : Thread.ofPlatform().name("load-", 0).factory();
+    List<Thread> workers = new ArrayList<>(scenario.workers());
+    for (int i = 0; i < scenario.workers(); i++) {
+      Thread worker = threadFactory.newThread(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (long start = System.nanoTime(); start < end; start = System.nanoTime()) {
+          Operation operation = scenario.mix().pick(random);
+          boolean expected;
+          try {
+            expected = workload.invoke(operation);
+          } catch (RuntimeException e) {
+            expected = false;
+          }
+          if (start >= measurementStart) {
+            latency.record(System.nanoTime() - start);
+            counts[operation.ordinal()].increment();
+            if (!expected) {
+              unexpected.increment();
+            }
+          }
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+
+    Thread.sleep(Duration.ofNanos(Math.max(measurementStart - System.nanoTime(), 0)));
+    onMeasurementStart.run();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    return new Measurement(System.nanoTime() - measurementStart,
+        counts[Operation.SUCCESS.ordinal()].sum(), counts[Operation.TRY_FAILURE.ordinal()].sum(),
+        counts[Operation.EXCEPTION.ordinal()].sum(), unexpected.sum(), latency.snapshot());
+  }
+
+  /**
+   * An operation of the mix.
+   */
+  enum Operation {
+    /**
+     * The operation succeeds and its transaction commits.
+     */
+    SUCCESS,
+    /**
+     * The operation returns a Try#Failure and its transaction rolls back.
+     */
+    TRY_FAILURE,
+    /**
+     * The operation throws an exception and its transaction rolls back.
+     */
+    EXCEPTION
+  }
+
+  /**
+   * Invokes the operations of a scenario.
+   */
+  @FunctionalInterface
+  interface Workload {
+
+    /**
+     * Invokes an operation.
+     *
+     * @param operation the operation
+     * @return whether the operation completed the way it is expected to
+     */
+    boolean invoke(Operation operation);
+  }
+
+  /**
+   * The relative weights of the operations of a scenario.
+   */
+  record Mix(int success, int tryFailure, int exception) {
+
+    Mix {
+      if (success < 0 || tryFailure < 0 || exception < 0
+          || success + tryFailure + exception == 0) {
+        throw new IllegalArgumentException("Invalid operation mix: " + success + ","
+            + tryFailure + "," + exception);
+      }
+    }
+
+    /**
+     * Parses a mix written as {@code success,tryFailure,exception}, e.g. {@code 80,10,10}.
+     */
+    static Mix parse(String mix) {
+      String[] weights = mix.split(",");
+      if (weights.length != 3) {
+        throw new IllegalArgumentException("Invalid operation mix: " + mix);
+      }
+      return new Mix(Integer.parseInt(weights[0].trim()), Integer.parseInt(weights[1].trim()),
+          Integer.parseInt(weights[2].trim()));
+    }
+
+    Operation pick(ThreadLocalRandom random) {
+      int value = random.nextInt(success + tryFailure + exception);
+      if (value < success) {
+        return Operation.SUCCESS;
+      }
+      return value < success + tryFailure ? Operation.TRY_FAILURE : Operation.EXCEPTION;
+    }
+
+    @Override
+    public String toString() {
+      return success + "," + tryFailure + "," + exception;
+    }
+  }
+
+  /**
+   * A load scenario.
+   *
+   * @param name           the name the results are reported under
+   * @param workers        the number of concurrent workers
+   * @param virtualThreads whether the workers are virtual threads instead of platform threads
+   * @param warmup         how long the operations run before they are measured
+   * @param duration       how long the operations are measured
+   * @param mix            the relative weights of the operations
+   */
+  record Scenario(String name, int workers, boolean virtualThreads, Duration warmup,
+                  Duration duration, Mix mix) {
+
+  }
+
+  /**
+   * The measurement of the operations of the measured period.
+   *
+   * @param elapsedNanos the time from the beginning of the measured period until the last
+   *                     operation completed
+   * @param successes    the SUCCESS operations
+   * @param tryFailures  the TRY_FAILURE operations
+   * @param exceptions   the EXCEPTION operations
+   * @param unexpected   the operations that did not complete the way they are expected to
+   * @param latency      the latency of the operations, as seen by their caller
+   */
+  record Measurement(long elapsedNanos, long successes, long tryFailures, long exceptions,
+                     long unexpected, LatencyHistogram.Snapshot latency) {
+
+    long operations() {
+      return successes + tryFailures + exceptions;
+    }
+
+    double throughputPerSecond() {
+      return elapsedNanos == 0 ? 0 : operations() * 1e9 / elapsedNanos;
+    }
+  }
+}
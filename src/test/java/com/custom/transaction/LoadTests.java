@@ -0,0 +1,268 @@
+package com.custom.transaction;
+
+import com.custom.transaction.LoadHarness.Measurement;
+import com.custom.transaction.LoadHarness.Mix;
+import com.custom.transaction.LoadHarness.Scenario;
+import com.custom.transaction.LoadTests.ConnectionWaitConfig;
+import com.custom.transaction.example.service.BookService;
+import com.custom.transaction.metrics.JoinpointMetrics;
+import com.custom.transaction.metrics.LatencyHistogram;
+import com.custom.transaction.metrics.TransactionMetrics;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+
+/**
+ * Boots the application with H2 and drives {@link BookService} from concurrent workers, so that
+ * the contention between the interceptor, the connection pool and Hibernate shows up, which the
+ * JMH benchmarks cannot see. Run by the {@code loadTest} task and configured by system properties
+ * (the task forwards the {@code load.*} Gradle properties):
+ * <ul>
+ *   <li>{@code load.workers}, the number of concurrent workers, 32 by default</li>
+ *   <li>{@code load.warmupSeconds} and {@code load.durationSeconds}, 2 and 10 by default</li>
+ *   <li>{@code load.mix}, the weights of successes, Try failures and exceptions, 80,10,10 by
+ *   default</li>
+ *   <li>{@code load.results}, the directory the JSON results are written to</li>
+ *   <li>{@code load.baseline}, the JSON file of the baseline results, and
+ *   {@code load.updateBaseline}, whether to record the results of this run as the baseline instead
+ *   of checking them against it. A scenario without a baseline fails once its results are written,
+ *   unless it is being recorded</li>
+ *   <li>{@code load.tolerance}, the share by which the throughput may fall below, and the p99
+ *   latency rise above, the baseline, 0.2 by default</li>
+ * </ul>
+ */
+@SpringBootTest
+@Import(ConnectionWaitConfig.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@Tag("load")
+class LoadTests {
+
+  private static final Log logger = LogFactory.getLog(LoadTests.class);
+
+  private static final ObjectMapper objectMapper = new ObjectMapper()
+      .enable(SerializationFeature.INDENT_OUTPUT);
+
+  /**
+   * Successful books get isbns of their own, since isbns are unique.
+   */
+  private static final AtomicLong isbns = new AtomicLong(1_000_000_000_000L);
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private TransactionMetrics transactionMetrics;
+
+  @Autowired
+  private ConnectionWaitRecorder connectionWaitRecorder;
+
+  @Test
+  void testPlatformThreads() throws Exception {
+    runAndCheck(scenario("platform-threads", false));
+  }
+
+  @Test
+  void testVirtualThreads() throws Exception {
+    runAndCheck(scenario("virtual-threads", true));
+  }
+
+  private static Scenario scenario(String name, boolean virtualThreads) {
+    return new Scenario(name, Integer.getInteger("load.workers", 32), virtualThreads,
+        Duration.ofSeconds(Integer.getInteger("load.warmupSeconds", 2)),
+        Duration.ofSeconds(Integer.getInteger("load.durationSeconds", 10)),
+        Mix.parse(System.getProperty("load.mix", "80,10,10")));
+  }
+
+  private void runAndCheck(Scenario scenario) throws Exception {
+    AtomicReference<Map<String, JoinpointMetrics.Snapshot>> before = new AtomicReference<>();
+    Measurement measurement = LoadHarness.run(scenario, operation -> switch (operation) {
+      case SUCCESS -> bookService.addBookValidated(
+          String.valueOf(isbns.incrementAndGet())).isSuccess();
+      case TRY_FAILURE -> bookService.addBookTry(true).isFailure();
+      case EXCEPTION -> {
+        try {
+          bookService.addBook(true);
+          yield false;
+        } catch (RuntimeException e) {
+          yield true;
+        }
+      }
+    }, () -> {
+      before.set(transactionMetrics.snapshot());
+      connectionWaitRecorder.reset();
+    });
+    LoadResult result = LoadResult.of(scenario, measurement,
+        rollbackRatio(before.get(), transactionMetrics.snapshot()),
+        connectionWaitRecorder.snapshot());
+    logger.info("Load scenario " + result);
+
+    write(result);
+    assert (measurement.unexpected() == 0)
+        : measurement.unexpected() + " operations did not complete as expected";
+    checkAgainstBaseline(result);
+  }
+
+  private static double rollbackRatio(Map<String, JoinpointMetrics.Snapshot> before,
+      Map<String, JoinpointMetrics.Snapshot> after) {
+    long total = 0;
+    long rollbacks = 0;
+    for (JoinpointMetrics.Snapshot snapshot : after.values()) {
+      JoinpointMetrics.Snapshot previous = before.get(snapshot.joinpointIdentification());
+      total += snapshot.total() - (previous != null ? previous.total() : 0);
+      rollbacks += rollbacks(snapshot) - (previous != null ? rollbacks(previous) : 0);
+    }
+    return total == 0 ? 0 : (double) rollbacks / total;
+  }
+
+  private static long rollbacks(JoinpointMetrics.Snapshot snapshot) {
+    return snapshot.exceptionRollbacks() + snapshot.failureRollbacks()
+        + snapshot.rollbackOnlyRollbacks();
+  }
+
+  private static void write(LoadResult result) throws IOException {
+    File results = new File(System.getProperty("load.results", "build/results/load"));
+    results.mkdirs();
+    objectMapper.writeValue(new File(results, result.scenario() + ".json"), result);
+  }
+
+  private static void checkAgainstBaseline(LoadResult result) throws IOException {
+    File baselineFile = new File(System.getProperty("load.baseline",
+        "src/test/resources/load-baseline.json"));
+    Map<String, LoadResult> baseline = baselineFile.isFile()
+        ? objectMapper.readValue(baselineFile, new TypeReference<TreeMap<String, LoadResult>>() {
+        })
+        : new TreeMap<>();
+    if (Boolean.getBoolean("load.updateBaseline")) {
+      baseline.put(result.scenario(), result);
+      baselineFile.getAbsoluteFile().getParentFile().mkdirs();
+      objectMapper.writeValue(baselineFile, baseline);
+      return;
+    }
+    LoadResult expected = baseline.get(result.scenario());
+    // Without a baseline nothing can regress, so a run that checks nothing must not pass
+    assert (expected != null) : "No baseline for load scenario " + result.scenario() + " in "
+        + baselineFile + ", record one with load.updateBaseline";
+    double tolerance = Double.parseDouble(System.getProperty("load.tolerance", "0.2"));
+    assert (result.throughputPerSecond() >= expected.throughputPerSecond() * (1 - tolerance))
+        : result.scenario() + " throughput regressed to " + result.throughputPerSecond()
+        + "/s from " + expected.throughputPerSecond() + "/s";
+    assert (result.p99Micros() <= expected.p99Micros() * (1 + tolerance))
+        : result.scenario() + " p99 latency regressed to " + result.p99Micros() + "us from "
+        + expected.p99Micros() + "us";
+  }
+
+  /**
+   * The machine-readable result of a load scenario. Latencies are in microseconds.
+   *
+   * @param scenario                the name of the scenario
+   * @param workers                 the number of concurrent workers
+   * @param virtualThreads          whether the workers were virtual threads
+   * @param mix                     the weights of successes, Try failures and exceptions
+   * @param operations              the measured operations
+   * @param throughputPerSecond     the measured operations per second
+   * @param p50Micros               the median latency of the operations
+   * @param p99Micros               the 99th percentile latency of the operations
+   * @param p999Micros              the 99.9th percentile latency of the operations
+   * @param maxMicros               the highest latency of the operations
+   * @param rollbackRatio           the share of the transactions that rolled back
+   * @param connectionWaits         the number of connections taken from the pool
+   * @param connectionWaitP99Micros the 99th percentile time spent waiting for a connection
+   * @param connectionWaitMaxMicros the highest time spent waiting for a connection
+   */
+  record LoadResult(String scenario, int workers, boolean virtualThreads, String mix,
+                    long operations, double throughputPerSecond, double p50Micros,
+                    double p99Micros, double p999Micros, double maxMicros, double rollbackRatio,
+                    long connectionWaits, double connectionWaitP99Micros,
+                    double connectionWaitMaxMicros) {
+
+    static LoadResult of(Scenario scenario, Measurement measurement, double rollbackRatio,
+        LatencyHistogram.Snapshot connectionWait) {
+      LatencyHistogram.Snapshot latency = measurement.latency();
+      return new LoadResult(scenario.name(), scenario.workers(), scenario.virtualThreads(),
+          scenario.mix().toString(), measurement.operations(),
+          measurement.throughputPerSecond(), micros(latency.valueAtPercentile(50)),
+          micros(latency.valueAtPercentile(99)), micros(latency.valueAtPercentile(99.9)),
+          micros(latency.maxNanos()), rollbackRatio, connectionWait.count(),
+          micros(connectionWait.valueAtPercentile(99)), micros(connectionWait.maxNanos()));
+    }
+
+    private static double micros(long nanos) {
+      return nanos / 1_000.0;
+    }
+  }
+
+  /**
+   * Records the time the Hikari pool makes callers wait for a connection.
+   */
+  static class ConnectionWaitRecorder implements MetricsTrackerFactory, IMetricsTracker {
+
+    private volatile LatencyHistogram histogram = new LatencyHistogram();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+      return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+      histogram.record(elapsedAcquiredNanos);
+    }
+
+    void reset() {
+      histogram = new LatencyHistogram();
+    }
+
+    LatencyHistogram.Snapshot snapshot() {
+      return histogram.snapshot();
+    }
+  }
+
+  @TestConfiguration
+  static class ConnectionWaitConfig {
+
+    @Bean
+    ConnectionWaitRecorder connectionWaitRecorder() {
+      return new ConnectionWaitRecorder();
+    }
+
+    /**
+     * Installs the recorder before the pool starts, which it does on the first connection.
+     */
+    @Bean
+    static BeanPostProcessor connectionWaitRecorderInstaller(
+        ObjectProvider<ConnectionWaitRecorder> recorder) {
+      return new BeanPostProcessor() {
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) {
+          if (bean instanceof HikariDataSource dataSource) {
+            dataSource.setMetricsTrackerFactory(recorder.getObject());
+          }
+          return bean;
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package com.custom.transaction;
+
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.soumakis.control.Try;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class NaturalIdCacheTests {
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void resetStatistics() {
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.clear();
+  }
+
+  @Test
+  void testFindByNaturalIsbnIsServedFromCacheAfterCommit() {
+    Try<Long> added = bookService.addBookValidated("1234567890");
+    long queries = statistics.getPrepareStatementCount();
+
+    BookEntity first = bookRepository.findByNaturalIsbn("1234567890").orElseThrow();
+    BookEntity second = bookRepository.findByNaturalIsbn("1234567890").orElseThrow();
+
+    assert (first.getId().equals(added.get()));
+    assert (second.getId().equals(added.get()));
+    assert (statistics.getPrepareStatementCount() == queries);
+    assert (statistics.getNaturalIdCacheHitCount() == 2);
+    assert (entityManagerFactory.getCache().contains(BookEntity.class, added.get()));
+  }
+
+  @Test
+  void testUncommittedBookIsNotCached() {
+    List<Long> ids = new ArrayList<>();
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      ids.add(bookService.addBookValidated("1234567890").get());
+      assert (!entityManagerFactory.getCache().contains(BookEntity.class, ids.get(0)));
+    });
+
+    assert (entityManagerFactory.getCache().contains(BookEntity.class, ids.get(0)));
+  }
+
+  @Test
+  void testTryFailureRollbackDiscardsPendingEntries() {
+    Try<Long> result = bookService.addBookTry(true);
+
+    assert (result.isFailure());
+    assert (statistics.getSecondLevelCachePutCount() == 0);
+    assert (statistics.getNaturalIdCachePutCount() == 0);
+    assert (bookRepository.findByNaturalIsbn("1234567890").isEmpty());
+  }
+
+  @Test
+  void testExceptionRollbackDiscardsPendingEntries() {
+    try {
+      bookService.addBook(true);
+    } catch (RuntimeException e) {
+      // Expected
+    }
+
+    assert (statistics.getSecondLevelCachePutCount() == 0);
+    assert (bookRepository.findByNaturalIsbn("1234567890").isEmpty());
+  }
+
+  @Test
+  void testSavepointRollbackOfGroupCommitDiscardsPendingEntries() {
+    List<CompletableFuture<Try<Long>>> futures = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < 200; i++) {
+        int index = i;
+        futures.add(CompletableFuture.supplyAsync(() -> bookService.addBookGroupCommitted(
+            "isbn-" + index, index % 2 == 0), executor));
+      }
+    }
+
+    for (int i = 0; i < 200; i++) {
+      boolean failed = futures.get(i).join().isFailure();
+      assert (failed == (i % 2 == 0));
+      assert (bookRepository.findByNaturalIsbn("isbn-" + i).isPresent() != failed);
+    }
+  }
+
+  @Test
+  void testSavepointRollbackKeepsOtherNaturalIdsCached() {
+    bookService.addBookValidated("1234567890");
+    List<CompletableFuture<Try<Long>>> futures = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < 20; i++) {
+        int index = i;
+        futures.add(CompletableFuture.supplyAsync(() -> bookService.addBookGroupCommitted(
+            "isbn-" + index, index % 2 == 0), executor));
+      }
+    }
+    futures.forEach(CompletableFuture::join);
+    statistics.clear();
+
+    assert (bookRepository.findByNaturalIsbn("1234567890").isPresent());
+    assert (statistics.getNaturalIdCacheHitCount() == 1);
+    assert (statistics.getNaturalIdCacheMissCount() == 0);
+  }
+}
@@ -0,0 +1,152 @@
+package com.custom.transaction;
+
+import static com.custom.transaction.CustomTransactionInterceptorTests.proxy;
+
+import com.soumakis.control.Try;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tests of {@link CustomTransactionInterceptor} with a {@link R2dbcTransactionManager} over an
+ * in-memory H2 database.
+ */
+class ReactiveTransactionTests {
+
+  private DatabaseClient databaseClient;
+
+  private ReactiveBookService reactiveBookService;
+
+  @BeforeEach
+  void setUp() {
+    ConnectionFactory connectionFactory = ConnectionFactories.get(
+        "r2dbc:h2:mem:///reactive-" + System.nanoTime() + "?options=DB_CLOSE_DELAY=-1");
+    databaseClient = DatabaseClient.create(connectionFactory);
+    databaseClient.sql("CREATE TABLE book (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+        + "isbn VARCHAR(32) NOT NULL UNIQUE)").then().block();
+
+    reactiveBookService = proxy(new ReactiveBookService(databaseClient),
+        new CustomTransactionInterceptor(new R2dbcTransactionManager(connectionFactory),
+            new AnnotationTransactionAttributeSource()));
+  }
+
+  @Test
+  void testMonoTrySuccessCommits() {
+    Try<Long> result = reactiveBookService.addBookTry("1", false).block();
+
+    assert (result != null && result.isSuccess());
+    assert (countBooks() == 1);
+  }
+
+  @Test
+  void testMonoTryFailureRollsBack() {
+    Try<Long> result = reactiveBookService.addBookTry("1", true).block();
+
+    assert (result != null && result.isFailure());
+    assert (countBooks() == 0);
+  }
+
+  @Test
+  void testMonoTryFailureWithNoRollbackForCommits() {
+    Try<Long> result = reactiveBookService.addBookTryNoRollbackException("1").block();
+
+    assert (result != null && result.isFailure());
+    assert (countBooks() == 1);
+  }
+
+  @Test
+  void testMonoErrorIsEmittedAsTryFailureAndRollsBack() {
+    Try<Long> result = reactiveBookService.addBookTryWithError("1").block();
+
+    assert (result != null && result.isFailure());
+    assert (countBooks() == 0);
+  }
+
+  @Test
+  void testFluxCommitsWhenCompleted() {
+    List<String> isbns = reactiveBookService.addBooks(List.of("1", "2", "3"), false)
+        .collectList().block();
+
+    assert (isbns != null && isbns.size() == 3);
+    assert (countBooks() == 3);
+  }
+
+  @Test
+  void testFluxRollsBackOnError() {
+    try {
+      reactiveBookService.addBooks(List.of("1", "2", "3"), true).blockLast();
+    } catch (RuntimeException e) {
+      // Expected
+    }
+
+    assert (countBooks() == 0);
+  }
+
+  @Test
+  void testNothingRunsUntilSubscribed() {
+    Mono<Try<Long>> result = reactiveBookService.addBookTry("1", false);
+
+    assert (countBooks() == 0);
+    assert (result.block().isSuccess());
+    assert (countBooks() == 1);
+  }
+
+  private long countBooks() {
+    return databaseClient.sql("SELECT COUNT(*) FROM book")
+        .map(row -> row.get(0, Long.class))
+        .one()
+        .block();
+  }
+
+  static class ReactiveBookService {
+
+    private final DatabaseClient databaseClient;
+
+    ReactiveBookService(DatabaseClient databaseClient) {
+      this.databaseClient = databaseClient;
+    }
+
+    @Transactional
+    public Mono<Try<Long>> addBookTry(String isbn, boolean shouldReturnFailure) {
+      return insert(isbn).map(rows -> shouldReturnFailure
+          ? Try.failure(new RuntimeException("Failure returned intentionally"))
+          : Try.of(() -> rows));
+    }
+
+    @Transactional(noRollbackFor = IllegalStateException.class)
+    public Mono<Try<Long>> addBookTryNoRollbackException(String isbn) {
+      return insert(isbn).map(rows -> Try.failure(
+          new IllegalStateException("Failure returned intentionally")));
+    }
+
+    @Transactional
+    public Mono<Try<Long>> addBookTryWithError(String isbn) {
+      return insert(isbn).then(Mono.error(new RuntimeException("Error emitted intentionally")));
+    }
+
+    @Transactional
+    public Flux<String> addBooks(List<String> isbns, boolean shouldFailInTheEnd) {
+      Flux<String> inserted = Flux.fromIterable(isbns)
+          .concatMap(isbn -> insert(isbn).thenReturn(isbn));
+      if (shouldFailInTheEnd) {
+        return inserted.concatWith(Mono.error(new RuntimeException("Error emitted intentionally")));
+      }
+      return inserted;
+    }
+
+    private Mono<Long> insert(String isbn) {
+      return databaseClient.sql("INSERT INTO book (isbn) VALUES (:isbn)")
+          .bind("isbn", isbn)
+          .fetch()
+          .rowsUpdated();
+    }
+  }
+}
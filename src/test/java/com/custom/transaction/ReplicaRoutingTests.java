@@ -0,0 +1,222 @@
+package com.custom.transaction;
+
+import com.custom.transaction.ReplicaRoutingTests.NestedWriter;
+import com.custom.transaction.ReplicaRoutingTests.SessionProbe;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.custom.transaction.routing.ReplicaRoutingDataSource;
+import com.soumakis.control.Try;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs against two separate in-memory H2 databases, a primary and a replica. Nothing replicates
+ * the primary, so the replica is seeded with books of its own and every query tells which database
+ * it ran on. The second-level cache is off, so that no query is answered from memory.
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:routingprimary",
+    "example.datasource.replica-urls=jdbc:h2:mem:routingreplica",
+    "spring.jpa.properties.hibernate.cache.use_second_level_cache=false"})
+@Import({SessionProbe.class, NestedWriter.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class ReplicaRoutingTests {
+
+  private static final String PRIMARY_URL = "jdbc:h2:mem:routingprimary";
+
+  private static final String REPLICA_URL = "jdbc:h2:mem:routingreplica";
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private SessionProbe sessionProbe;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @BeforeEach
+  void seedDatabases() {
+    var book = new BookEntity();
+    book.setAuthor("Author");
+    book.setIsbn("1234567890");
+    book.setPrice(100);
+    book.setTitle("Primary");
+    bookRepository.save(book);
+
+    JdbcTemplate replica = new JdbcTemplate(replica());
+    replica.execute("create table if not exists book (id bigint not null, author varchar(255), "
+        + "isbn varchar(255) unique, price integer, title varchar(255), primary key (id))");
+    replica.update("delete from book");
+    replica.update("insert into book values (1, 'Author', '1234567890', 100, 'Replica')");
+  }
+
+  @Test
+  void testReadOnlyTransactionReadsFromReplica() {
+    Try<BookEntity> result = bookService.findBookTry("1234567890");
+
+    assert (result.isSuccess());
+    assert (result.get().getTitle().equals("Replica"));
+  }
+
+  @Test
+  void testReadOnlyTransactionUsesReadOnlyHibernateSession() {
+    Try<String> result = sessionProbe.readOnlyConnectionUrl(false);
+
+    assert (result.isSuccess());
+    assert (result.get().equals(REPLICA_URL));
+    assert (sessionProbe.isDefaultReadOnly());
+    assert (sessionProbe.getFlushMode() == FlushMode.MANUAL);
+  }
+
+  @Test
+  void testFailedReadOnlyTransactionNeverTouchesPrimary() {
+    Try<String> result = sessionProbe.readOnlyConnectionUrl(true);
+
+    assert (result.isFailure());
+    assert (sessionProbe.getConnectionUrl().equals(REPLICA_URL));
+    Try<BookEntity> missing = bookService.findBookTry("0987654321");
+    missing.onFailure(ex -> {
+      assert (ex instanceof NoSuchElementException);
+    });
+    assert (missing.isFailure());
+  }
+
+  @Test
+  void testReadWriteTransactionUsesPrimary() {
+    Try<Long> result = bookService.addBookAsync("0987654321", false).join();
+
+    assert (result.isSuccess());
+    assert (bookRepository.findByIsbn("0987654321").isPresent());
+    assert (new JdbcTemplate(replica())
+        .queryForObject("select count(*) from book", Integer.class) == 1);
+  }
+
+  @Test
+  void testReadOnlyMethodParticipatingInReadWriteTransactionStaysOnPrimary() {
+    AtomicReference<Try<BookEntity>> result = new AtomicReference<>();
+    new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+        result.set(bookService.findBookTry("1234567890")));
+
+    assert (result.get().isSuccess());
+    assert (result.get().get().getTitle().equals("Primary"));
+  }
+
+  @Test
+  void testReadWriteTransactionNestedInReadOnlyOneUsesPrimary() {
+    Try<String> result = sessionProbe.readOnlyThenWrite("0987654321");
+
+    assert (result.isSuccess());
+    assert (result.get().equals(PRIMARY_URL));
+    assert (sessionProbe.getConnectionUrl().equals(REPLICA_URL));
+    assert (bookRepository.findByIsbn("0987654321").isPresent());
+  }
+
+  private DataSource replica() {
+    try {
+      return dataSource.unwrap(ReplicaRoutingDataSource.class).getReplicas().get(0);
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  static class SessionProbe {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private NestedWriter nestedWriter;
+
+    private volatile String connectionUrl;
+
+    private volatile boolean defaultReadOnly;
+
+    private volatile FlushMode flushMode;
+
+    @Transactional(readOnly = true)
+    public Try<String> readOnlyConnectionUrl(boolean shouldReturnFailure) {
+      return Try.of(() -> {
+        Session session = entityManager.unwrap(Session.class);
+        connectionUrl = session.doReturningWork(connection -> connection.getMetaData().getURL());
+        defaultReadOnly = session.isDefaultReadOnly();
+        flushMode = session.getHibernateFlushMode();
+        if (shouldReturnFailure) {
+          throw new IllegalStateException("Exception thrown intentionally");
+        }
+        return connectionUrl;
+      });
+    }
+
+    /**
+     * Reads in a read-only transaction, then adds a book in a new read-write one.
+     *
+     * @return the url of the database the book was added to
+     */
+    @Transactional(readOnly = true)
+    public Try<String> readOnlyThenWrite(String isbn) {
+      Session session = entityManager.unwrap(Session.class);
+      connectionUrl = session.doReturningWork(connection -> connection.getMetaData().getURL());
+      return nestedWriter.addBook(isbn);
+    }
+
+    public String getConnectionUrl() {
+      return connectionUrl;
+    }
+
+    public boolean isDefaultReadOnly() {
+      return defaultReadOnly;
+    }
+
+    public FlushMode getFlushMode() {
+      return flushMode;
+    }
+  }
+
+  static class NestedWriter {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Try<String> addBook(String isbn) {
+      return Try.of(() -> {
+        var book = new BookEntity();
+        book.setAuthor("Author");
+        book.setIsbn(isbn);
+        book.setPrice(100);
+        book.setTitle("Nested");
+        bookRepository.saveAndFlush(book);
+        return entityManager.unwrap(Session.class)
+            .doReturningWork(connection -> connection.getMetaData().getURL());
+      });
+    }
+  }
+}
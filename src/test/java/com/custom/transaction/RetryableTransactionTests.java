@@ -0,0 +1,119 @@
+package com.custom.transaction;
+
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.custom.transaction.metrics.JoinpointMetrics;
+import com.custom.transaction.metrics.TransactionMetrics;
+import com.soumakis.control.Try;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs against an H2 database that gives up waiting for a row lock after 200ms, so that a
+ * transaction updating a book locked by another transaction fails with a lock timeout.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:retrydb;LOCK_TIMEOUT=200")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class RetryableTransactionTests {
+
+  private static final String ISBN = "1234567890";
+
+  private static final String UPDATE_PRICE_TRY =
+      "com.custom.transaction.example.service.BookService.updatePriceTry";
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private TransactionMetrics transactionMetrics;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @BeforeEach
+  void addBook() {
+    var book = new BookEntity();
+    book.setAuthor("Author");
+    book.setIsbn(ISBN);
+    book.setPrice(100);
+    book.setTitle("Title");
+    bookRepository.save(book);
+  }
+
+  @Test
+  void testLockTimeoutIsRetriedUntilTheLockIsReleased() throws Exception {
+    Thread lockHolder = holdLockOnBook(700);
+
+    Try<Integer> result = bookService.updatePriceTry(ISBN, 200);
+    lockHolder.join();
+
+    JoinpointMetrics.Snapshot metrics = transactionMetrics.snapshot().get(UPDATE_PRICE_TRY);
+    assert (result.isSuccess());
+    assert (result.get() == 200);
+    assert (bookRepository.findByIsbn(ISBN).orElseThrow().getPrice() == 200);
+    assert (metrics.commits() == 1);
+    assert (metrics.total() > 1);
+  }
+
+  @Test
+  void testLockTimeoutIsNotRetriedWhenParticipatingInOuterTransaction() throws Exception {
+    Thread lockHolder = holdLockOnBook(700);
+
+    AtomicReference<Try<Integer>> result = new AtomicReference<>();
+    try {
+      new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+          result.set(bookService.updatePriceTry(ISBN, 200)));
+    } catch (RuntimeException e) {
+      // Expected, the outer transaction cannot roll back on the connection evicted by the timeout
+    }
+    lockHolder.join();
+
+    JoinpointMetrics.Snapshot metrics = transactionMetrics.snapshot().get(UPDATE_PRICE_TRY);
+    assert (result.get().isFailure());
+    assert (metrics.total() == 1);
+  }
+
+  @Test
+  void testNonTransientFailureIsNotRetried() {
+    Try<Integer> result = bookService.updatePriceTry("unknown", 200);
+
+    JoinpointMetrics.Snapshot metrics = transactionMetrics.snapshot().get(UPDATE_PRICE_TRY);
+    assert (result.isFailure());
+    assert (metrics.failureRollbacks() == 1);
+    assert (metrics.total() == 1);
+  }
+
+  /**
+   * Starts a transaction on another thread that updates the book and keeps its row locked for the
+   * given time, and returns once the lock is held.
+   */
+  private Thread holdLockOnBook(long holdMillis) throws InterruptedException {
+    CountDownLatch locked = new CountDownLatch(1);
+    TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+    Thread lockHolder = Thread.ofPlatform().start(() ->
+        transactionTemplate.executeWithoutResult(status -> {
+          BookEntity book = bookRepository.findByIsbn(ISBN).orElseThrow();
+          book.setPrice(1);
+          bookRepository.saveAndFlush(book);
+          locked.countDown();
+          try {
+            Thread.sleep(holdMillis);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }));
+    locked.await();
+    return lockHolder;
+  }
+}
@@ -0,0 +1,189 @@
+package com.custom.transaction;
+
+import com.custom.transaction.SavepointBatchTests.NoRollbackImporter;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.soumakis.control.Try;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.annotation.Transactional;
+
+@SpringBootTest
+@Import(NoRollbackImporter.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class SavepointBatchTests {
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private NoRollbackImporter noRollbackImporter;
+
+  @Test
+  void testFailedItemsOnlyRollBackTheirOwnChanges() {
+    List<BookEntity> books = books(100);
+    for (int i = 0; i < 100; i += 10) {
+      books.get(i).setIsbn("invalid-" + i);
+    }
+
+    Try<List<Try<Long>>> result = bookService.importBooks(books);
+
+    assert (result.isSuccess());
+    List<Try<Long>> items = result.get();
+    assert (items.size() == 100);
+    for (int i = 0; i < 100; i++) {
+      assert (items.get(i).isFailure() == (i % 10 == 0));
+    }
+    assert (bookRepository.count() == 90);
+  }
+
+  @Test
+  void testDuplicateItemsFailWithoutLosingTheBatch() {
+    List<BookEntity> books = books(10);
+    books.addAll(books(5));
+
+    Try<List<Try<Long>>> result = bookService.importBooks(books);
+
+    assert (result.isSuccess());
+    assert (result.get().stream().filter(Try::isFailure).count() == 5);
+    assert (bookRepository.count() == 10);
+  }
+
+  @Test
+  void testNoRollbackForAppliesPerItem() {
+    Try<List<Try<Long>>> result = noRollbackImporter.importBooks(books(4));
+
+    assert (result.isSuccess());
+    List<Try<Long>> items = result.get();
+    assert (items.stream().allMatch(Try::isFailure));
+    // Items failing with IllegalStateException keep their changes, the others are rolled back
+    assert (bookRepository.count() == 2);
+    assert (bookRepository.findByIsbn(isbn(0)).isPresent());
+    assert (bookRepository.findByIsbn(isbn(1)).isEmpty());
+  }
+
+  @Test
+  void testConstraintViolationOnFlushLosesTheTransaction() {
+    List<BookEntity> books = books(3);
+    books.addAll(books(1));
+
+    Try<List<Try<Long>>> result = noRollbackImporter.importWithoutChecks(books);
+
+    assert (result.isFailure());
+    result.onFailure(ex -> {
+      assert (ex instanceof UnexpectedRollbackException);
+    });
+    assert (bookRepository.count() == 0);
+  }
+
+  @Test
+  void testFailedFirstItemKeepsTheChangesOfTheCaller() {
+    long id = bookRepository.save(books(1).get(0)).getId();
+
+    Try<List<Try<Long>>> result = noRollbackImporter.renameThenImport(id, "Renamed", books(1));
+
+    assert (result.isSuccess());
+    assert (result.get().get(0).isFailure());
+    assert (bookRepository.findById(id).orElseThrow().getTitle().equals("Renamed"));
+  }
+
+  @Test
+  void testEntitiesOfTheCallerStayManagedAfterFailedItem() {
+    long id = bookRepository.save(books(1).get(0)).getId();
+
+    Try<String> result = noRollbackImporter.importThenRename(id, "Renamed", books(2));
+
+    assert (result.isSuccess());
+    // The failed item changed the book of the caller, which was refreshed after its rollback
+    assert (result.get().equals("Title 0"));
+    assert (bookRepository.findById(id).orElseThrow().getTitle().equals("Renamed"));
+    assert (bookRepository.count() == 1);
+  }
+
+  @Test
+  void testRequiresTransaction() {
+    try {
+      SavepointBatch.run(List.of(1), item -> Try.of(() -> item));
+      assert false;
+    } catch (NoTransactionException e) {
+      // Expected
+    }
+  }
+
+  private static List<BookEntity> books(int count) {
+    List<BookEntity> books = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn(isbn(i));
+      book.setPrice(100);
+      book.setTitle("Title " + i);
+      books.add(book);
+    }
+    return books;
+  }
+
+  private static String isbn(int i) {
+    return String.format("%010d", i);
+  }
+
+  static class NoRollbackImporter {
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Transactional(noRollbackFor = IllegalStateException.class)
+    public Try<List<Try<Long>>> importBooks(List<BookEntity> books) {
+      return Try.of(() -> SavepointBatch.run(books, book -> Try.of(() -> {
+        bookRepository.save(book);
+        if (books.indexOf(book) % 2 == 0) {
+          throw new IllegalStateException("Kept");
+        }
+        throw new IllegalArgumentException("Rolled back");
+      })));
+    }
+
+    @Transactional
+    public Try<List<Try<Long>>> renameThenImport(long id, String title, List<BookEntity> books) {
+      bookRepository.findById(id).orElseThrow().setTitle(title);
+      return Try.of(() -> SavepointBatch.run(books, book -> Try.of(() -> {
+        bookRepository.save(book);
+        throw new IllegalArgumentException("Rolled back");
+      })));
+    }
+
+    @Transactional
+    public Try<String> importThenRename(long id, String title, List<BookEntity> books) {
+      BookEntity loaded = bookRepository.findById(id).orElseThrow();
+      return Try.of(() -> {
+        SavepointBatch.run(books, book -> Try.of(() -> {
+          loaded.setTitle("Changed by " + book.getTitle());
+          bookRepository.save(book);
+          throw new IllegalArgumentException("Rolled back");
+        }));
+        String titleAfterBatch = loaded.getTitle();
+        loaded.setTitle(title);
+        return titleAfterBatch;
+      });
+    }
+
+    @Transactional
+    public Try<List<Try<Long>>> importWithoutChecks(List<BookEntity> books) {
+      return Try.of(() -> SavepointBatch.run(books, book -> Try.of(() -> {
+        bookRepository.save(book);
+        return book.getId();
+      })));
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package com.custom.transaction;
+
+import static com.custom.transaction.CustomTransactionInterceptorTests.proxy;
+
+import com.custom.transaction.CustomTransactionInterceptorTests.NoOpTransactionManager;
+import com.custom.transaction.ShardCommitException.Outcome;
+import com.custom.transaction.example.repository.ShardedBookRepository;
+import com.custom.transaction.example.service.ShardedBookService;
+import com.custom.transaction.sharding.Shards;
+import com.soumakis.control.Try;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+/**
+ * Runs against two separate in-memory H2 databases, the shards of the books of
+ * {@link ShardedBookService}, next to the primary database of the application.
+ */
+@SpringBootTest(properties = "example.sharding.urls="
+    + "jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1,jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class ShardingTests {
+
+  @Autowired
+  private ShardedBookService shardedBookService;
+
+  @Autowired
+  private ShardedBookRepository shardedBookRepository;
+
+  @Autowired
+  private Shards shards;
+
+  @BeforeEach
+  void clearShards() {
+    for (int i = 0; i < shards.size(); i++) {
+      new JdbcTemplate(shards.getDataSource(i)).update("delete from sharded_book");
+    }
+  }
+
+  @Test
+  void testBookIsStoredOnShardOfItsIsbn() {
+    String isbn = isbnOn(1, 0);
+
+    assert (shardedBookService.addBook(isbn, "Title").isSuccess());
+
+    assert (shardedBookRepository.count(0) == 0);
+    assert (shardedBookRepository.count(1) == 1);
+    assert (shardedBookService.findTitle(isbn).get().orElseThrow().equals("Title"));
+  }
+
+  @Test
+  void testFailureRollsBackOnlyItsShard() {
+    String isbn = isbnOn(0, 0);
+    assert (shardedBookService.addBook(isbn, "Title").isSuccess());
+
+    assert (shardedBookService.addBook(isbn, "Duplicate").isFailure());
+    assert (shardedBookService.addBook(isbnOn(1, 0), "Title").isSuccess());
+
+    assert (shardedBookRepository.count(0) == 1);
+    assert (shardedBookRepository.count(1) == 1);
+  }
+
+  @Test
+  void testBooksOnSeveralShardsCommitTogether() {
+    List<String> isbns = List.of(isbnOn(0, 0), isbnOn(1, 0), isbnOn(0, 1), isbnOn(1, 1));
+
+    Try<ShardedResult<Integer>> result = shardedBookService.addBooks(isbns);
+
+    assert (result.isSuccess());
+    assert (result.get().getValue() == 4);
+    assert (result.get().getOutcomes().equals(
+        Map.of(0, Outcome.COMMITTED, 1, Outcome.COMMITTED)));
+    assert (shardedBookRepository.count(0) == 2);
+    assert (shardedBookRepository.count(1) == 2);
+  }
+
+  @Test
+  void testFailureOnOneShardRollsBackEveryShard() {
+    String duplicate = isbnOn(1, 0);
+    List<String> isbns = List.of(isbnOn(0, 0), duplicate, duplicate);
+
+    Try<ShardedResult<Integer>> result = shardedBookService.addBooks(isbns);
+
+    assert (result.isFailure());
+    assert (shardedBookRepository.count(0) == 0);
+    assert (shardedBookRepository.count(1) == 0);
+  }
+
+  @Test
+  void testFailedCommitReportsOutcomeOfEveryShard() {
+    List<CountingTransactionManager> transactionManagers = List.of(
+        new CountingTransactionManager(false), new CountingTransactionManager(true),
+        new CountingTransactionManager(false));
+    Shards fakeShards = fakeShards(transactionManagers);
+    KeyedService service = keyedService(fakeShards);
+
+    Try<Integer> result = service.write(List.of(keyOn(fakeShards, 0), keyOn(fakeShards, 1),
+        keyOn(fakeShards, 2)));
+
+    assert (result.isFailure());
+    result.onFailure(ex -> {
+      assert (ex instanceof ShardCommitException);
+      // The shards commit in reverse order, so the first one is still open when the second fails
+      assert (((ShardCommitException) ex).getOutcomes().equals(Map.of(
+          0, Outcome.ROLLED_BACK, 1, Outcome.COMMIT_FAILED, 2, Outcome.COMMITTED)));
+    });
+    assert (transactionManagers.get(0).rollbacks.get() == 1);
+    assert (transactionManagers.get(2).commits.get() == 1);
+  }
+
+  @Test
+  void testRollbackOnlyTransactionOfAnyShardRollsBackEveryShard() {
+    List<CountingTransactionManager> transactionManagers = List.of(
+        new CountingTransactionManager(false), new CountingTransactionManager(false),
+        new CountingTransactionManager(false));
+    Shards fakeShards = fakeShards(transactionManagers);
+    KeyedService service = keyedService(fakeShards);
+
+    // Marks the transaction of the last shard, the innermost one
+    Try<Integer> result = service.writeRollbackOnly(List.of(keyOn(fakeShards, 0),
+        keyOn(fakeShards, 1), keyOn(fakeShards, 2)));
+
+    assert (result.isFailure());
+    result.onFailure(ex -> {
+      assert (ex instanceof UnexpectedRollbackException);
+    });
+    for (CountingTransactionManager transactionManager : transactionManagers) {
+      assert (transactionManager.commits.get() == 0);
+      assert (transactionManager.rollbacks.get() == 1);
+    }
+  }
+
+  @Test
+  void testContinuationsRunOnceEveryShardHasCommitted() {
+    List<CountingTransactionManager> transactionManagers = List.of(
+        new CountingTransactionManager(false), new CountingTransactionManager(false),
+        new CountingTransactionManager(false));
+    Shards fakeShards = fakeShards(transactionManagers);
+    KeyedService service = keyedService(fakeShards);
+    List<Integer> commitsSeen = new ArrayList<>();
+
+    Try<Integer> result = service.writeWithContinuation(List.of(keyOn(fakeShards, 0),
+        keyOn(fakeShards, 1), keyOn(fakeShards, 2)), () -> commitsSeen.add(
+        transactionManagers.stream().mapToInt(manager -> manager.commits.get()).sum()));
+
+    assert (result.isSuccess());
+    assert (commitsSeen.equals(List.of(3)));
+  }
+
+  @Test
+  void testContinuationsAreDroppedWhenAShardFailsToCommit() {
+    List<CountingTransactionManager> transactionManagers = List.of(
+        new CountingTransactionManager(false), new CountingTransactionManager(true),
+        new CountingTransactionManager(false));
+    Shards fakeShards = fakeShards(transactionManagers);
+    KeyedService service = keyedService(fakeShards);
+    AtomicInteger continuations = new AtomicInteger();
+
+    Try<Integer> result = service.writeWithContinuation(List.of(keyOn(fakeShards, 0),
+        keyOn(fakeShards, 1), keyOn(fakeShards, 2)), continuations::incrementAndGet);
+
+    assert (result.isFailure());
+    assert (continuations.get() == 0);
+  }
+
+  private static Shards fakeShards(List<CountingTransactionManager> transactionManagers) {
+    return new Shards(List.<DataSource>of(new DriverManagerDataSource(),
+        new DriverManagerDataSource(), new DriverManagerDataSource()), transactionManagers);
+  }
+
+  private static KeyedService keyedService(Shards shards) {
+    CustomTransactionInterceptor interceptor = new CustomTransactionInterceptor(
+        new NoOpTransactionManager(), new AnnotationTransactionAttributeSource());
+    interceptor.setShards(shards);
+    interceptor.setAfterCommitExecutor(Runnable::run);
+    return proxy(new KeyedService(), interceptor);
+  }
+
+  private String isbnOn(int shard, int skip) {
+    List<String> isbns = new ArrayList<>();
+    for (int i = 0; isbns.size() <= skip; i++) {
+      String isbn = String.format("%010d", i);
+      if (shards.shardOf(isbn) == shard) {
+        isbns.add(isbn);
+      }
+    }
+    return isbns.get(skip);
+  }
+
+  private static String keyOn(Shards shards, int shard) {
+    for (int i = 0; ; i++) {
+      String key = "key-" + i;
+      if (shards.shardOf(key) == shard) {
+        return key;
+      }
+    }
+  }
+
+  static class KeyedService {
+
+    @Transactional
+    public Try<Integer> write(@ShardKey Collection<String> keys) {
+      return Try.of(keys::size);
+    }
+
+    @Transactional
+    public Try<Integer> writeWithContinuation(@ShardKey Collection<String> keys,
+        Runnable continuation) {
+      return AfterCommit.onSuccess(Try.of(keys::size), size -> continuation.run());
+    }
+
+    @Transactional
+    public Try<Integer> writeRollbackOnly(@ShardKey Collection<String> keys) {
+      TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+      return Try.of(keys::size);
+    }
+  }
+
+  static class CountingTransactionManager extends NoOpTransactionManager {
+
+    private final boolean failsToCommit;
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+
+    CountingTransactionManager(boolean failsToCommit) {
+      this.failsToCommit = failsToCommit;
+    }
+
+    @Override
+    public void commit(TransactionStatus status) {
+      if (failsToCommit) {
+        throw new TransactionSystemException("Shard is unreachable");
+      }
+      commits.incrementAndGet();
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) {
+      rollbacks.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package com.custom.transaction;
+
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.custom.transaction.metrics.JoinpointMetrics;
+import com.custom.transaction.metrics.TransactionMetrics;
+import com.soumakis.control.Try;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@SpringBootTest(properties = {"example.transaction.stream-detach-interval=100",
+    "example.books.stream-fetch-size=50"})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class StreamingTransactionTests {
+
+  private static final int BOOKS = 1000;
+
+  private static final String STREAM_BOOKS =
+      "com.custom.transaction.example.service.BookService.streamBooks";
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private TransactionMetrics transactionMetrics;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @BeforeEach
+  void addBooks() {
+    List<BookEntity> books = new ArrayList<>(BOOKS);
+    for (int i = 0; i < BOOKS; i++) {
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn(String.format("%010d", i));
+      book.setPrice(100);
+      book.setTitle("Title");
+      books.add(book);
+    }
+    assert (bookService.addBooks(books).isSuccess());
+  }
+
+  @Test
+  void testTransactionStaysOpenUntilStreamIsConsumed() {
+    AtomicInteger exported = new AtomicInteger();
+    AtomicInteger mostManaged = new AtomicInteger();
+
+    bookService.streamBooks().get().forEach(book -> {
+      assert (TransactionSynchronizationManager.isActualTransactionActive());
+      mostManaged.accumulateAndGet(managedEntities(), Math::max);
+      exported.incrementAndGet();
+    });
+
+    assert (exported.get() == BOOKS);
+    // The persistence context is detached every hundred books instead of holding the catalogue
+    assert (mostManaged.get() <= 100);
+    assert (!TransactionSynchronizationManager.isActualTransactionActive());
+    assert (metrics().commits() == 1);
+  }
+
+  @Test
+  void testTransactionCompletesWhenStreamIsClosedEarly() {
+    try (Stream<BookEntity> books = bookService.streamBooks().get()) {
+      assert (books.limit(10).count() == 10);
+      assert (TransactionSynchronizationManager.isActualTransactionActive());
+    }
+
+    assert (!TransactionSynchronizationManager.isActualTransactionActive());
+    assert (metrics().commits() == 1);
+  }
+
+  @Test
+  void testFailureWhileConsumingRollsBack() {
+    try (Stream<BookEntity> books = bookService.streamBooks().get()) {
+      books.forEach(book -> {
+        throw new IllegalStateException("Export failed");
+      });
+      assert false;
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+
+    assert (!TransactionSynchronizationManager.isActualTransactionActive());
+    assert (metrics().exceptionRollbacks() == 1);
+    assert (metrics().commits() == 0);
+  }
+
+  @Test
+  void testTransactionalCallWhileProcessingElementJoinsStreamingTransaction() {
+    try (Stream<BookEntity> books = bookService.streamBooks().get()) {
+      books.limit(10).forEach(book -> {
+        assert (bookService.findBookTry(book.getIsbn()).isSuccess());
+      });
+    }
+
+    assert (metrics().commits() == 1);
+  }
+
+  @Test
+  void testTransactionBeginningWhileStreamIsOpenFailsAndRollsStreamBack() {
+    Stream<BookEntity> books = bookService.streamBooks().get();
+
+    Try<BookEntity> found = bookService.findBookTry("0000000000");
+
+    assert (found.isFailure());
+    found.onFailure(ex -> {
+      assert (ex instanceof IllegalTransactionStateException);
+    });
+    assert (!TransactionSynchronizationManager.isActualTransactionActive());
+    assert (metrics().exceptionRollbacks() == 1);
+    try {
+      books.findFirst();
+      assert false;
+    } catch (IllegalTransactionStateException e) {
+      // Expected
+    }
+    // The thread can begin transactions again
+    assert (bookService.findBookTry("0000000000").isSuccess());
+  }
+
+  @Test
+  void testAbandonedStreamIsRolledBackAndReleasesItsConnection()
+      throws InterruptedException, SQLException {
+    Thread thread = Thread.ofPlatform().start(() -> {
+      Stream<BookEntity> books = bookService.streamBooks().get();
+      assert (books.iterator().hasNext());
+    });
+    thread.join();
+
+    for (int i = 0; i < 100 && metrics().exceptionRollbacks() == 0; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+
+    assert (metrics().exceptionRollbacks() == 1);
+    assert (metrics().commits() == 0);
+    assert (dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean()
+        .getActiveConnections() == 0);
+  }
+
+  @Test
+  void testResourcesOfAbandonedStreamAreUnboundOnNextCallOfItsThread()
+      throws InterruptedException {
+    abandonStream();
+    for (int i = 0; i < 100 && metrics().exceptionRollbacks() == 0; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    assert (metrics().exceptionRollbacks() == 1);
+    // Released from the cleaner thread, but still bound to this one
+    assert (TransactionSynchronizationManager.isActualTransactionActive());
+
+    // Asynchronous, so that no transaction begins on this thread
+    assert (bookService.addBookAsync("1000000000", false).join().isSuccess());
+
+    assert (!TransactionSynchronizationManager.isActualTransactionActive());
+    assert (TransactionSynchronizationManager.getResourceMap().isEmpty());
+  }
+
+  private void abandonStream() {
+    Stream<BookEntity> books = bookService.streamBooks().get();
+    assert (books.iterator().hasNext());
+  }
+
+  private int managedEntities() {
+    return EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory)
+        .unwrap(SessionImplementor.class).getPersistenceContextInternal()
+        .getNumberOfManagedEntities();
+  }
+
+  private JoinpointMetrics.Snapshot metrics() {
+    return transactionMetrics.snapshot().get(STREAM_BOOKS);
+  }
+}
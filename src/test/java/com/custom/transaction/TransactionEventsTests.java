@@ -0,0 +1,206 @@
+package com.custom.transaction;
+
+import static com.custom.transaction.CustomTransactionInterceptorTests.proxy;
+
+import com.custom.transaction.CustomTransactionInterceptorTests.NoOpTransactionManager;
+import com.custom.transaction.datasource.ConnectionAcquisitionDataSource;
+import com.custom.transaction.datasource.LazyTransactionDataSource;
+import com.soumakis.control.Try;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Records the Java Flight Recorder events of {@link CustomTransactionInterceptor} with the bundled
+ * settings, without their thresholds, and reads them back from the recording file.
+ */
+class TransactionEventsTests {
+
+  private static final String BEGIN = "com.custom.transaction.Begin";
+
+  private static final String COMMIT = "com.custom.transaction.Commit";
+
+  private static final String ROLLBACK = "com.custom.transaction.Rollback";
+
+  private static final String CONNECTION_ACQUISITION =
+      "com.custom.transaction.ConnectionAcquisition";
+
+  private Recording recording;
+
+  @BeforeEach
+  void startRecording() throws Exception {
+    try (Reader settings = new InputStreamReader(
+        getClass().getResourceAsStream("/jfr/transactions.jfc"), StandardCharsets.UTF_8)) {
+      recording = new Recording(Configuration.create(settings));
+    }
+    for (String event : List.of(BEGIN, COMMIT, ROLLBACK, CONNECTION_ACQUISITION)) {
+      recording.enable(event).withThreshold(Duration.ZERO);
+    }
+    recording.start();
+  }
+
+  @AfterEach
+  void closeRecording() {
+    recording.close();
+  }
+
+  @Test
+  void testCommittedTransactionRecordsBeginAndCommit() throws Exception {
+    EventService service = service(new NoOpTransactionManager());
+
+    assert (service.succeed().isSuccess());
+
+    List<RecordedEvent> events = stopRecording();
+    RecordedEvent begin = single(events, BEGIN);
+    assert (begin.getString("joinpoint").endsWith("EventService.succeed"));
+    assert (begin.getString("propagation").equals("REQUIRED"));
+    assert (begin.getString("isolation").equals("READ_COMMITTED"));
+    assert (begin.getInt("timeoutSeconds") == 5);
+    assert (begin.getBoolean("newTransaction"));
+    assert (single(events, COMMIT).getString("joinpoint").endsWith("EventService.succeed"));
+    assert (named(events, ROLLBACK).isEmpty());
+  }
+
+  @Test
+  void testRollbacksRecordTheirCause() throws Exception {
+    EventService service = service(new NoOpTransactionManager());
+
+    assert (service.fail().isFailure());
+    try {
+      service.fail("thrown");
+      assert false;
+    } catch (RuntimeException e) {
+      // Expected
+    }
+    assert (service(new FailingCommitTransactionManager()).succeed().isFailure());
+
+    List<RecordedEvent> rollbacks = named(stopRecording(), ROLLBACK);
+    assert (rollbacks.size() == 3);
+    assert (rollbacks.get(0).getString("cause").equals("TRY_FAILURE"));
+    assert (rollbacks.get(1).getString("cause").equals("EXCEPTION"));
+    assert (rollbacks.get(1).getClass("exceptionClass").getName()
+        .equals(IllegalArgumentException.class.getName()));
+    assert (rollbacks.get(1).getString("exceptionMessage").equals("thrown"));
+    assert (rollbacks.get(2).getString("cause").equals("COMMIT_FAILURE"));
+    assert (rollbacks.get(2).getClass("exceptionClass").getName()
+        .equals(TransactionSystemException.class.getName()));
+  }
+
+  @Test
+  void testConnectionWaitIsRecordedWithItsTransaction() throws Exception {
+    LazyTransactionDataSource dataSource = new LazyTransactionDataSource(
+        new DriverManagerDataSource("jdbc:h2:mem:transactionevents", "sa", ""));
+    EventService service = proxy(new EventService(new JdbcTemplate(dataSource)),
+        new CustomTransactionInterceptor(new DataSourceTransactionManager(dataSource),
+            new AnnotationTransactionAttributeSource()));
+
+    assert (service.query().get() == 1);
+
+    RecordedEvent acquisition = named(stopRecording(), CONNECTION_ACQUISITION).stream()
+        .filter(event -> event.getString("transaction") != null)
+        .findFirst().orElseThrow();
+    assert (acquisition.getString("transaction").endsWith("EventService.query"));
+    assert (acquisition.getBoolean("readOnly"));
+  }
+
+  @Test
+  void testConnectionWaitWhileBeginningIsRecordedWithItsTransaction() throws Exception {
+    ConnectionAcquisitionDataSource dataSource = new ConnectionAcquisitionDataSource(
+        new DriverManagerDataSource("jdbc:h2:mem:transactionevents", "sa", ""));
+    EventService service = proxy(new EventService(new JdbcTemplate(dataSource)),
+        new CustomTransactionInterceptor(new DataSourceTransactionManager(dataSource),
+            new AnnotationTransactionAttributeSource()));
+
+    assert (service.query().get() == 1);
+
+    RecordedEvent acquisition = single(stopRecording(), CONNECTION_ACQUISITION);
+    assert (acquisition.getString("transaction").endsWith("EventService.query"));
+    assert (acquisition.getBoolean("readOnly"));
+  }
+
+  private List<RecordedEvent> stopRecording() throws Exception {
+    recording.stop();
+    Path file = Files.createTempFile("transaction-events", ".jfr");
+    try {
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+    return events.stream()
+        .filter(event -> event.getEventType().getName().equals(name))
+        .sorted((first, second) -> first.getStartTime().compareTo(second.getStartTime()))
+        .toList();
+  }
+
+  private static RecordedEvent single(List<RecordedEvent> events, String name) {
+    List<RecordedEvent> named = named(events, name);
+    assert (named.size() == 1);
+    return named.get(0);
+  }
+
+  private static EventService service(PlatformTransactionManager transactionManager) {
+    return proxy(new EventService(null), new CustomTransactionInterceptor(transactionManager,
+        new AnnotationTransactionAttributeSource()));
+  }
+
+  static class EventService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    EventService(JdbcTemplate jdbcTemplate) {
+      this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Transactional(isolation = Isolation.READ_COMMITTED, timeout = 5)
+    public Try<Long> succeed() {
+      return Try.of(() -> 1L);
+    }
+
+    @Transactional
+    public Try<Long> fail() {
+      return Try.failure(new IllegalArgumentException());
+    }
+
+    @Transactional
+    public Long fail(String message) {
+      throw new IllegalArgumentException(message);
+    }
+
+    @Transactional(readOnly = true)
+    public Try<Integer> query() {
+      return Try.of(() -> jdbcTemplate.queryForObject("select 1", Integer.class));
+    }
+  }
+
+  static class FailingCommitTransactionManager extends NoOpTransactionManager {
+
+    @Override
+    public void commit(TransactionStatus status) {
+      throw new TransactionSystemException("Commit failed");
+    }
+  }
+}
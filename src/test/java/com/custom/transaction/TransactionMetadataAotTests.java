@@ -0,0 +1,211 @@
+package com.custom.transaction;
+
+import com.custom.transaction.CustomTransactionInterceptorTests.NoOpTransactionManager;
+import com.custom.transaction.InvocationPlan.ReturnKind;
+import com.soumakis.control.Try;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.generate.GeneratedMethods;
+import org.springframework.aot.generate.MethodReference;
+import org.springframework.aot.test.generate.CompilerFiles;
+import org.springframework.aot.test.generate.TestGenerationContext;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationAotContribution;
+import org.springframework.beans.factory.aot.BeanFactoryInitializationCode;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.test.tools.CompileWithForkedClassLoader;
+import org.springframework.core.test.tools.TestCompiler;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.DefaultTransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttributeSource;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Compiles the code {@link TransactionMetadataAotProcessor} generates, in a class loader of its own
+ * so that it can reach the package-private types of the interceptor.
+ */
+@CompileWithForkedClassLoader
+class TransactionMetadataAotTests {
+
+  @Test
+  void testGeneratedCodeRegistersPrecomputedMetadata() throws NoSuchMethodException {
+    TransactionMetadata metadata = precomputeMetadata();
+
+    assert (metadata.size() == 3);
+    TransactionMetadata.Joinpoint succeed = metadata.get(
+        InventoryService.class.getMethod("reserve", String.class), InventoryService.class);
+    assert (succeed.returnKind() == ReturnKind.TRY);
+    assert (succeed.joinpointIdentification().equals(InventoryService.class.getName() + ".reserve"));
+    assert (succeed.transactionAttribute().rollbackOn(new IllegalStateException()));
+
+    TransactionMetadata.Joinpoint noRollback = metadata.get(
+        InventoryService.class.getMethod("reserveOrKeep", String.class), InventoryService.class);
+    assert (!noRollback.transactionAttribute().rollbackOn(new IllegalStateException()));
+    assert (noRollback.transactionAttribute().rollbackOn(new IllegalArgumentException()));
+
+    TransactionMetadata.Joinpoint count = metadata.get(
+        InventoryService.class.getMethod("count"), InventoryService.class);
+    assert (count.returnKind() == ReturnKind.PLAIN);
+    assert (count.transactionAttribute().isReadOnly());
+    assert (count.transactionAttribute().getPropagationBehavior()
+        == TransactionDefinition.PROPAGATION_SUPPORTS);
+    assert (metadata.get(InventoryService.class.getMethod("name"), InventoryService.class) == null);
+  }
+
+  @Test
+  void testInterceptorPlansPrecomputedMethodsWithAnnotationAttributeSource()
+      throws NoSuchMethodException {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    CustomTransactionInterceptor interceptor = new CustomTransactionInterceptor(
+        transactionManager, new AnnotationTransactionAttributeSource());
+    interceptor.setTransactionMetadata(withTransactionalName(precomputeMetadata()));
+    InventoryService service = CustomTransactionInterceptorTests.proxy(new InventoryService(),
+        interceptor);
+
+    assert (service.reserve("invalid").isFailure());
+    assert (transactionManager.committedRollbackOnly.get(0));
+    assert (service.reserveOrKeep("invalid").isFailure());
+    assert (!transactionManager.committedRollbackOnly.get(1));
+    assert (service.count() == 3);
+
+    // Only the metadata knows name() as transactional
+    assert (service.name().equals("inventory"));
+    assert (transactionManager.committedRollbackOnly.size() == 4);
+  }
+
+  @Test
+  void testInterceptorResolvesEveryMethodFromAnotherAttributeSource()
+      throws NoSuchMethodException {
+    RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+    CountingTransactionAttributeSource tas = new CountingTransactionAttributeSource();
+    CustomTransactionInterceptor interceptor = new CustomTransactionInterceptor(
+        transactionManager, tas);
+    interceptor.setTransactionMetadata(withTransactionalName(precomputeMetadata()));
+    InventoryService service = CustomTransactionInterceptorTests.proxy(new InventoryService(),
+        interceptor);
+
+    assert (service.reserve("invalid").isFailure());
+    assert (service.reserveOrKeep("invalid").isFailure());
+    assert (service.count() == 3);
+    assert (service.name().equals("inventory"));
+
+    assert (tas.lookups.get() == 4);
+    assert (transactionManager.committedRollbackOnly.size() == 3);
+  }
+
+  @Test
+  void testNothingIsContributedWithoutTransactionalBeans() {
+    DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+    beanFactory.registerBeanDefinition("string", new RootBeanDefinition(StringBuilder.class));
+
+    assert (new TransactionMetadataAotProcessor().processAheadOfTime(beanFactory) == null);
+  }
+
+  /**
+   * Registers name() as well, which is not transactional, to tell whether the metadata was used.
+   */
+  private static TransactionMetadata withTransactionalName(TransactionMetadata metadata)
+      throws NoSuchMethodException {
+    metadata.register(TransactionMetadata.key(InventoryService.class.getMethod("name"),
+            InventoryService.class), InventoryService.class.getName() + ".name", ReturnKind.PLAIN,
+        new DefaultTransactionAttribute());
+    return metadata;
+  }
+
+  private static TransactionMetadata precomputeMetadata() {
+    DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+    beanFactory.registerBeanDefinition("inventoryService",
+        new RootBeanDefinition(InventoryService.class));
+    BeanFactoryInitializationAotContribution contribution = new TransactionMetadataAotProcessor()
+        .processAheadOfTime(beanFactory);
+    TestGenerationContext generationContext = new TestGenerationContext();
+    RecordingInitializationCode initializationCode = new RecordingInitializationCode();
+    contribution.applyTo(generationContext, initializationCode);
+    generationContext.writeGeneratedContent();
+
+    DefaultListableBeanFactory runtimeBeanFactory = new DefaultListableBeanFactory();
+    TestCompiler.forSystem().with(CompilerFiles.from(generationContext.getGeneratedFiles()))
+        .compile(compiled -> {
+          // A static method reference renders as DeclaringClass::methodName
+          String[] initializer = initializationCode.initializers.get(0).toCodeBlock().toString()
+              .split("::");
+          Class<?> generatedClass = ClassUtils.resolveClassName(initializer[0],
+              compiled.getClassLoader());
+          Method method = ReflectionUtils.findMethod(generatedClass, initializer[1],
+              DefaultListableBeanFactory.class);
+          ReflectionUtils.invokeMethod(method, null, runtimeBeanFactory);
+        });
+    return runtimeBeanFactory.getBean(TransactionMetadata.BEAN_NAME, TransactionMetadata.class);
+  }
+
+  public static class InventoryService {
+
+    @Transactional
+    public Try<Long> reserve(String sku) {
+      return Try.failure(new IllegalStateException("Out of stock: " + sku));
+    }
+
+    @Transactional(noRollbackFor = IllegalStateException.class)
+    public Try<Long> reserveOrKeep(String sku) {
+      return Try.failure(new IllegalStateException("Out of stock: " + sku));
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public Long count() {
+      return 3L;
+    }
+
+    public String name() {
+      return "inventory";
+    }
+  }
+
+  static class RecordingInitializationCode implements BeanFactoryInitializationCode {
+
+    private final List<MethodReference> initializers = new ArrayList<>();
+
+    @Override
+    public GeneratedMethods getMethods() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addInitializer(MethodReference methodReference) {
+      initializers.add(methodReference);
+    }
+  }
+
+  static class RecordingTransactionManager extends NoOpTransactionManager {
+
+    private final List<Boolean> committedRollbackOnly = new ArrayList<>();
+
+    @Override
+    public void commit(TransactionStatus status) {
+      committedRollbackOnly.add(status.isRollbackOnly());
+    }
+  }
+
+  static class CountingTransactionAttributeSource implements TransactionAttributeSource {
+
+    private final TransactionAttributeSource delegate = new AnnotationTransactionAttributeSource();
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    @Override
+    @Nullable
+    public TransactionAttribute getTransactionAttribute(Method method,
+        @Nullable Class<?> targetClass) {
+      lookups.incrementAndGet();
+      return delegate.getTransactionAttribute(method, targetClass);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.custom.transaction;
+
+import com.custom.transaction.TransactionMetricsTests.MeterRegistryConfig;
+import com.custom.transaction.TransactionMetricsTests.RollbackOnlyService;
+import com.custom.transaction.example.service.BookService;
+import com.custom.transaction.metrics.JoinpointMetrics;
+import com.custom.transaction.metrics.LatencyHistogram;
+import com.custom.transaction.metrics.TransactionMetrics;
+import com.soumakis.control.Try;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest
+@Import({MeterRegistryConfig.class, RollbackOnlyService.class})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class TransactionMetricsTests {
+
+  private static final String BOOK_SERVICE = "com.custom.transaction.example.service.BookService.";
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private TransactionMetrics transactionMetrics;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private RollbackOnlyService rollbackOnlyService;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Test
+  void testOutcomesAreRecordedPerJoinpoint() {
+    bookService.addBookTry(false);
+    bookService.addBookTry(true);
+    bookService.alwaysThrowingException();
+    // The isbn is a natural id, so the insert of the second book fails on flush at commit time
+    bookService.addBookTry(false);
+
+    JoinpointMetrics.Snapshot addBookTry = transactionMetrics.snapshot()
+        .get(BOOK_SERVICE + "addBookTry");
+    assert (addBookTry.commits() == 1);
+    assert (addBookTry.failureRollbacks() == 1);
+    assert (addBookTry.commitFailures() == 1);
+    assert (addBookTry.latency().count() == 3);
+
+    JoinpointMetrics.Snapshot alwaysThrowing = transactionMetrics.snapshot()
+        .get(BOOK_SERVICE + "alwaysThrowingException");
+    assert (alwaysThrowing.exceptionRollbacks() == 1);
+    assert (alwaysThrowing.total() == 1);
+  }
+
+  @Test
+  void testFailuresCommittedBecauseOfNoRollbackForAreRecorded() {
+    bookService.addBookTryNoRollbackException(true);
+
+    JoinpointMetrics.Snapshot noRollback = transactionMetrics.snapshot()
+        .get(BOOK_SERVICE + "addBookTryNoRollbackException");
+    assert (noRollback.noRollbackCommits() == 1);
+    assert (noRollback.total() == 1);
+  }
+
+  @Test
+  void testCallsJoiningTheTransactionOfTheirCallerAreNotRecorded() {
+    new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      bookService.addBookTry(false);
+      bookService.addBookTry(true);
+    });
+
+    JoinpointMetrics.Snapshot addBookTry = transactionMetrics.snapshot()
+        .get(BOOK_SERVICE + "addBookTry");
+    assert (addBookTry.total() == 0);
+    assert (addBookTry.latency().count() == 0);
+  }
+
+  @Test
+  void testSuccessOfRollbackOnlyTransactionIsRecordedAsRollback() {
+    assert (rollbackOnlyService.succeedRollbackOnly().isSuccess());
+
+    JoinpointMetrics.Snapshot rollbackOnly = transactionMetrics.snapshot()
+        .get(RollbackOnlyService.class.getName() + ".succeedRollbackOnly");
+    assert (rollbackOnly.rollbackOnlyRollbacks() == 1);
+    assert (rollbackOnly.commits() == 0);
+    assert (rollbackOnly.total() == 1);
+  }
+
+  @Test
+  void testMetricsAreExposedThroughMeterRegistry() {
+    bookService.addBookTry(false);
+    bookService.addBookTry(true);
+
+    FunctionCounter commits = meterRegistry.get(TransactionMetrics.OUTCOMES_METER)
+        .tag("joinpoint", BOOK_SERVICE + "addBookTry")
+        .tag("outcome", "commit")
+        .functionCounter();
+    FunctionCounter failureRollbacks = meterRegistry.get(TransactionMetrics.OUTCOMES_METER)
+        .tag("joinpoint", BOOK_SERVICE + "addBookTry")
+        .tag("outcome", "failure_rollback")
+        .functionCounter();
+    FunctionTimer duration = meterRegistry.get(TransactionMetrics.DURATION_METER)
+        .tag("joinpoint", BOOK_SERVICE + "addBookTry")
+        .functionTimer();
+
+    assert (commits.count() == 1);
+    assert (failureRollbacks.count() == 1);
+    assert (duration.count() == 2);
+    assert (duration.totalTime(TimeUnit.NANOSECONDS) > 0);
+  }
+
+  @Test
+  void testLatencyHistogramPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.record(micros * 1000);
+    }
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assert (snapshot.count() == 1000);
+    assert (snapshot.maxNanos() == 1_000_000);
+    assert (within(snapshot.valueAtPercentile(50), 500_000));
+    assert (within(snapshot.valueAtPercentile(99), 990_000));
+    assert (snapshot.valueAtPercentile(100) == 1_000_000);
+    assert (within((long) snapshot.meanNanos(), 500_500));
+  }
+
+  private static boolean within(long actual, long expected) {
+    // The buckets of the histogram guarantee a relative error of 1/64
+    return Math.abs(actual - expected) <= expected / 64;
+  }
+
+  static class RollbackOnlyService {
+
+    @Transactional
+    public Try<Long> succeedRollbackOnly() {
+      TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+      return Try.of(() -> 1L);
+    }
+  }
+
+  static class MeterRegistryConfig {
+
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+}
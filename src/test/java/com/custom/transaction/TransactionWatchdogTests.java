@@ -0,0 +1,163 @@
+package com.custom.transaction;
+
+import com.custom.transaction.TransactionWatchdogTests.SlowBookService;
+import com.custom.transaction.example.repository.BookRepository;
+import com.custom.transaction.example.repository.entity.BookEntity;
+import com.custom.transaction.example.service.BookService;
+import com.custom.transaction.watchdog.LongRunningTransaction;
+import com.custom.transaction.watchdog.TransactionWatchdog;
+import com.soumakis.control.Try;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@SpringBootTest(properties = {
+    "example.transaction.watchdog.threshold=100ms",
+    "example.transaction.watchdog.abort=true"})
+@Import(SlowBookService.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+class TransactionWatchdogTests {
+
+  private static final String ADD_BOOK_SLOWLY =
+      "com.custom.transaction.TransactionWatchdogTests$SlowBookService.addBookSlowly";
+
+  @Autowired
+  private SlowBookService slowBookService;
+
+  @Autowired
+  private BookService bookService;
+
+  @Autowired
+  private BookRepository bookRepository;
+
+  @Autowired
+  private TransactionWatchdog transactionWatchdog;
+
+  @Test
+  void testLongRunningTryTransactionIsAbortedAsFailure() {
+    Try<Long> result = slowBookService.addBookSlowly(500);
+
+    assert (result.isFailure());
+    result.onFailure(ex -> {
+      assert (ex instanceof TransactionTimedOutException);
+    });
+    assert (bookRepository.count() == 0);
+    assert (transactionWatchdog.getFlaggedCount() == 1);
+    assert (transactionWatchdog.getActiveCount() == 0);
+  }
+
+  @Test
+  void testLongRunningPlainTransactionIsAbortedWithException() {
+    try {
+      slowBookService.addBookSlowlyPlain(500);
+      assert false;
+    } catch (RuntimeException e) {
+      assert (e.getCause() instanceof TransactionTimedOutException);
+    }
+
+    assert (bookRepository.count() == 0);
+    assert (transactionWatchdog.getActiveCount() == 0);
+  }
+
+  @Test
+  void testTopOffendersIncludeStackOfFlaggedTransaction() throws Exception {
+    CompletableFuture<Try<Long>> slow = CompletableFuture.supplyAsync(
+        () -> slowBookService.addBookSlowly(1000));
+    Thread.sleep(500);
+
+    List<LongRunningTransaction> offenders = transactionWatchdog.topOffenders(5);
+    slow.join();
+
+    assert (offenders.size() == 1);
+    LongRunningTransaction offender = offenders.get(0);
+    assert (offender.joinpointIdentification().equals(ADD_BOOK_SLOWLY));
+    assert (offender.flagged());
+    assert (offender.aborted());
+    assert (offender.holdTime().toMillis() >= 100);
+    assert (offender.stackTrace().stream()
+        .anyMatch(element -> element.getMethodName().equals("addBookSlowly")));
+    assert (transactionWatchdog.topOffenders(5).isEmpty());
+  }
+
+  @Test
+  void testTransactionFlaggedAfterItsOutcomeIsDecidedStillCommits() {
+    // The transaction is flagged while it commits, after the interceptor decided its outcome
+    Try<Long> result = slowBookService.addBookSlowlyBeforeCommit(500);
+
+    assert (result.isSuccess());
+    assert (bookRepository.findById(result.get()).isPresent());
+    assert (transactionWatchdog.getFlaggedCount() == 1);
+    assert (transactionWatchdog.getActiveCount() == 0);
+  }
+
+  @Test
+  void testShortTransactionIsNotFlagged() {
+    Try<Long> result = bookService.addBookTry(false);
+
+    assert (result.isSuccess());
+    assert (transactionWatchdog.getFlaggedCount() == 0);
+    assert (transactionWatchdog.getActiveCount() == 0);
+  }
+
+  static class SlowBookService {
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Transactional
+    public Try<Long> addBookSlowly(long millis) {
+      return Try.of(() -> {
+        BookEntity book = addBook();
+        sleep(millis);
+        return book.getId();
+      });
+    }
+
+    @Transactional
+    public Long addBookSlowlyPlain(long millis) {
+      BookEntity book = addBook();
+      sleep(millis);
+      return book.getId();
+    }
+
+    @Transactional
+    public Try<Long> addBookSlowlyBeforeCommit(long millis) {
+      return Try.of(() -> {
+        BookEntity book = addBook();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+          @Override
+          public void beforeCommit(boolean readOnly) {
+            sleep(millis);
+          }
+        });
+        return book.getId();
+      });
+    }
+
+    private BookEntity addBook() {
+      var book = new BookEntity();
+      book.setAuthor("Author");
+      book.setIsbn("1234567890");
+      book.setPrice(100);
+      book.setTitle("Title");
+      return bookRepository.saveAndFlush(book);
+    }
+
+    private static void sleep(long millis) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}